@@ -0,0 +1,151 @@
+package br.gov.lexml.coleta.validador;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * {@link OuvinteValidacao} que emite eventos do JDK Flight Recorder para cada fase, consulta de núcleo e registro
+ * validado. Os eventos só têm custo quando habilitados em uma gravação, por exemplo:
+ *
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start name=lexml settings=profile
+ * </pre>
+ *
+ * Os eventos estão na categoria "LexML / Validação" e informam a duração medida no campo "duracao". Como o
+ * {@link OuvinteValidacao} só é chamado ao fim de cada medição, os eventos são instantâneos (duração própria zero,
+ * registrados no fim da fase): a opção threshold das configurações da gravação não os filtra e as visões de linha
+ * do tempo não mostram o intervalo. A duração deve ser lida do campo "duracao", por exemplo:
+ *
+ * <pre>
+ * jfr print --events br.gov.lexml.coleta.validador.Registro gravacao.jfr
+ * </pre>
+ * <p/>
+ * Requer JDK com o módulo jdk.jfr; verifique com {@link #isDisponivel()} antes de instanciar. Esta classe fica em
+ * src/jfr/java, é compilada pelo perfil jfr do pom (ativado automaticamente em JDK 11 ou superior) e é distribuída
+ * no artefato com classificador jfr, que deve ser incluído como dependência junto com o artefato principal. O jar
+ * principal não a contém, de modo que é o mesmo em qualquer JDK e continua executando em Java 8.
+ */
+public class OuvinteJFR implements OuvinteValidacao {
+
+    private static final String PREFIXO = "br.gov.lexml.coleta.validador.";
+
+    /**
+     * @return se o JDK Flight Recorder está disponível na JVM atual
+     */
+    public static boolean isDisponivel() {
+        try {
+            Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            return (Boolean) flightRecorder.getMethod("isAvailable").invoke(null);
+        }
+        catch (Exception e) {
+            return false;
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    public void fase(final FaseValidacao fase, final long duracaoNanos) {
+        EventoFase evento = new EventoFase();
+        if (evento.isEnabled()) {
+            evento.fase = fase.name();
+            evento.regra = fase.getCodigo();
+            evento.duracao = duracaoNanos;
+            evento.commit();
+        }
+    }
+
+    public void nucleo(final Integer idPublicador, final boolean valido, final long duracaoNanos) {
+        EventoNucleo evento = new EventoNucleo();
+        if (evento.isEnabled()) {
+            evento.idPublicador = idPublicador == null ? -1 : idPublicador;
+            evento.valido = valido;
+            evento.duracao = duracaoNanos;
+            evento.commit();
+        }
+    }
+
+    public void registro(final String idRegistroItem, final Integer idPublicador, final RegraValidacao regra,
+                         final TipoErroValidacao tipoErro, final long duracaoNanos) {
+        EventoRegistro evento = new EventoRegistro();
+        if (evento.isEnabled()) {
+            evento.idRegistroItem = idRegistroItem;
+            evento.idPublicador = idPublicador == null ? -1 : idPublicador;
+            evento.valido = tipoErro == null;
+            evento.regra = regra == null ? null : regra.getCodigo() + " " + regra.name();
+            evento.tipoErro = tipoErro == null ? null : tipoErro.name();
+            evento.duracao = duracaoNanos;
+            evento.commit();
+        }
+    }
+
+    @Name(PREFIXO + "Fase")
+    @Label("Fase da validação")
+    @Category({ "LexML", "Validação" })
+    @StackTrace(false)
+    static class EventoFase extends Event {
+
+        @Label("Fase")
+        String fase;
+
+        @Label("Regra")
+        String regra;
+
+        @Label("Duração")
+        @Timespan(Timespan.NANOSECONDS)
+        long duracao;
+
+    }
+
+    @Name(PREFIXO + "Nucleo")
+    @Label("Consulta de núcleo")
+    @Description("Consulta de núcleo de URN ao IndicePerfil ou a ValidadorService.isNucleoValido")
+    @Category({ "LexML", "Validação" })
+    @StackTrace(false)
+    static class EventoNucleo extends Event {
+
+        @Label("Publicador")
+        int idPublicador;
+
+        @Label("Válido")
+        boolean valido;
+
+        @Label("Duração")
+        @Timespan(Timespan.NANOSECONDS)
+        long duracao;
+
+    }
+
+    @Name(PREFIXO + "Registro")
+    @Label("Validação de registro")
+    @Category({ "LexML", "Validação" })
+    @StackTrace(false)
+    static class EventoRegistro extends Event {
+
+        @Label("Registro")
+        String idRegistroItem;
+
+        @Label("Publicador")
+        int idPublicador;
+
+        @Label("Válido")
+        boolean valido;
+
+        @Label("Regra")
+        String regra;
+
+        @Label("Tipo de erro")
+        String tipoErro;
+
+        @Label("Duração")
+        @Timespan(Timespan.NANOSECONDS)
+        long duracao;
+
+    }
+
+}
@@ -0,0 +1,63 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Assert;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+public class OuvinteJFRTest {
+
+    @Test
+    public void testEventos() throws Exception {
+        Assume.assumeTrue(OuvinteJFR.isDisponivel());
+
+        ValidadorRegistroItem validador = MetricasValidacaoTest.criaValidador(new OuvinteJFR());
+        File arquivo = File.createTempFile("validacao", ".jfr");
+        try {
+            Recording gravacao = new Recording();
+            gravacao.enable(OuvinteJFR.EventoFase.class);
+            gravacao.enable(OuvinteJFR.EventoNucleo.class);
+            gravacao.enable(OuvinteJFR.EventoRegistro.class);
+            gravacao.start();
+            byte[] xml = MetricasValidacaoTest.leXml("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml");
+            validador.validar("rel", xml, null);
+            gravacao.stop();
+            gravacao.dump(arquivo.toPath());
+            gravacao.close();
+
+            Set<String> fases = new HashSet<String>();
+            int registros = 0;
+            int nucleos = 0;
+            for (RecordedEvent evento : RecordingFile.readAllEvents(arquivo.toPath())) {
+                String nome = evento.getEventType().getName();
+                if (nome.endsWith(".Fase")) {
+                    fases.add(evento.getString("fase"));
+                }
+                else if (nome.endsWith(".Nucleo")) {
+                    nucleos++;
+                }
+                else if (nome.endsWith(".Registro")) {
+                    registros++;
+                    Assert.assertEquals("rel", evento.getString("idRegistroItem"));
+                    Assert.assertFalse(evento.getBoolean("valido"));
+                    Assert.assertEquals("URN_INCOMPATIVEL", evento.getString("tipoErro"));
+                }
+            }
+            Assert.assertEquals(1, registros);
+            Assert.assertTrue(nucleos > 0);
+            Assert.assertTrue(fases.contains("PARSE"));
+            Assert.assertTrue(fases.contains("URN_RELACIONAMENTO"));
+        }
+        finally {
+            arquivo.delete();
+        }
+    }
+
+}
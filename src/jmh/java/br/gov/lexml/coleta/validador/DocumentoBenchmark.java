@@ -0,0 +1,64 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * Vazão das regras RV#5 a RV#8 sobre um DOM já lido: extração dos dados por XPath e verificação das URNs.
+ * Cada thread do benchmark tem o seu DOM, pois o DOM do Xerces não é thread-safe nem para leitura.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class DocumentoBenchmark {
+
+    @Param({"pequeno", "grande" })
+    public String registro;
+
+    @Param({"servico", "indice" })
+    public String perfil;
+
+    private Document doc;
+
+    private ValidadorRegistroItem validador;
+
+    @Setup
+    public void inicia() throws Exception {
+        ValidadorXMLHelper helper = new ValidadorXMLHelper(ValidadorXMLHelper.getSchemaCompartilhado());
+        doc = helper.parse(new InputSource(new ByteArrayInputStream(RegistrosBenchmark.registro(registro))),
+            new ArrayList<String>());
+        validador = new ValidadorRegistroItem();
+        validador.setValidadorService(RegistrosBenchmark.servico());
+        validador.setTamanhoPool(1);
+        if ("indice".equals(perfil)) {
+            validador.setIndicePerfil(RegistrosBenchmark.indicePerfil());
+        }
+        if (!validador.validarDocumento(RegistrosBenchmark.ID, doc, null)) {
+            throw new IllegalStateException("Registro do benchmark é inválido: " + registro);
+        }
+    }
+
+    @Benchmark
+    public boolean validarDocumento() {
+        return validador.validarDocumento(RegistrosBenchmark.ID, doc, null);
+    }
+
+}
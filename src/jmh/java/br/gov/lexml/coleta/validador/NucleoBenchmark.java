@@ -0,0 +1,95 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Custo por URN da localização do núcleo e da consulta ao perfil, pelo índice em memória e pela chave
+ * textual de {@link ValidadorService#isNucleoValido(String)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class NucleoBenchmark {
+
+    private static final int URNS = 500;
+
+    private String[] urns;
+
+    private IndicePerfil indice;
+
+    private ValidadorService servico;
+
+    private NucleoURN nucleo;
+
+    private StringBuilder chave;
+
+    @Setup
+    public void inicia() {
+        List<String> lista = RegistrosBenchmark.urns();
+        urns = lista.toArray(new String[URNS]);
+        indice = RegistrosBenchmark.indicePerfil();
+        servico = RegistrosBenchmark.servico();
+        nucleo = new NucleoURN();
+        chave = new StringBuilder();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URNS)
+    public int analisaURN() {
+        int n = 0;
+        for (String urn : urns) {
+            if (nucleo.analisa(urn)) {
+                n += nucleo.getFimTipo(false);
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URNS)
+    public int consultaIndice() {
+        int n = 0;
+        for (String urn : urns) {
+            nucleo.analisa(urn);
+            if (indice.isNucleoValido(18, IndicePerfil.PERFIL_RELACIONAMENTO, urn, nucleo.getIniLocalidade(),
+                nucleo.getFimLocalidade(), urn, nucleo.getIniAutoridade(), nucleo.getFimAutoridade(false), urn,
+                nucleo.getIniTipo(), nucleo.getFimTipo(false))) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(URNS)
+    public int consultaServico() {
+        int n = 0;
+        for (String urn : urns) {
+            nucleo.analisa(urn);
+            chave.setLength(0);
+            chave.append(18).append(':').append(IndicePerfil.PERFIL_RELACIONAMENTO).append(':');
+            nucleo.appendNucleo(chave, false, false);
+            if (servico.isNucleoValido(chave.toString())) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+}
@@ -0,0 +1,115 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Registros e serviços usados pelos benchmarks.
+ */
+final class RegistrosBenchmark {
+
+    static final String ID = "oai:acordao.stf.jus.br:aco/100005";
+
+    private static final String URN_DOCUMENTO = "urn:lex:br:supremo.tribunal.federal;turma.1:acordao;ai.agr:2002-02-05;";
+
+    private RegistrosBenchmark() {
+    }
+
+    /**
+     * @param tamanho "pequeno" (registro de exemplo: 2 Itens e 1 Relacionamento) ou "grande" (20 Itens de 10
+     *            publicadores e 500 Relacionamentos)
+     */
+    static byte[] registro(final String tamanho) {
+        String xml = leExemplo();
+        if ("pequeno".equals(tamanho)) {
+            return toBytes(xml);
+        }
+        if (!"grande".equals(tamanho)) {
+            throw new IllegalArgumentException("Tamanho de registro desconhecido: " + tamanho);
+        }
+        StringBuilder itens = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            itens.append("\t<Item formato=\"text/html\" idPublicador=\"").append(18 + i % 10)
+                .append("\" tipo=\"metadado\">http://www.stf.jus.br/portal/jurisprudencia/").append(i)
+                .append("</Item>\n");
+        }
+        StringBuilder relacionamentos = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            relacionamentos.append("\t<Relacionamento idPublicador=\"").append(18 + i % 10)
+                .append("\" tipo=\"cita\">").append(URN_DOCUMENTO).append(200000 + i).append("</Relacionamento>\n");
+        }
+        int inicioItens = xml.indexOf("<Item");
+        int fimItens = xml.indexOf("<DocumentoIndividual>");
+        int fimRegistro = xml.indexOf("</LexML>");
+        return toBytes(xml.substring(0, inicioItens) + itens + "\t" + xml.substring(fimItens, fimRegistro)
+            + relacionamentos + xml.substring(fimRegistro));
+    }
+
+    /**
+     * @return URNs de DocumentoIndividual e Relacionamento do registro "grande"
+     */
+    static List<String> urns() {
+        List<String> urns = new ArrayList<String>();
+        for (int i = 0; i < 500; i++) {
+            urns.add(URN_DOCUMENTO + (200000 + i));
+        }
+        return urns;
+    }
+
+    /**
+     * @return índice com o perfil dos publicadores 18 a 27 para as URNs dos registros
+     */
+    static IndicePerfil indicePerfil() {
+        IndicePerfil.Construtor construtor = IndicePerfil.construtor();
+        for (int id = 18; id < 28; id++) {
+            construtor.adiciona(id, "T", "br", "supremo.tribunal.federal;turma.1", "acordao;ai.agr");
+            construtor.adiciona(id, "T", "br", "supremo.tribunal.federal", "acordao");
+        }
+        return construtor.constroi();
+    }
+
+    /**
+     * @return serviço que aceita os núcleos de {@link #indicePerfil()} e descarta os erros
+     */
+    static ValidadorService servico() {
+        final IndicePerfil indice = indicePerfil();
+        return new ValidadorService() {
+
+            public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                                 final Object ctxUsr) {
+            }
+
+            public boolean isNucleoValido(final String nucleo) {
+                return indice.isNucleoValido(nucleo);
+            }
+
+        };
+    }
+
+    private static String leExemplo() {
+        InputStream is = RegistrosBenchmark.class.getResourceAsStream("/oai/oai_acordao.stf.jus.br_aco_100005.xml");
+        try {
+            return IOUtils.toString(is, "UTF-8");
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    private static byte[] toBytes(final String xml) {
+        try {
+            return xml.getBytes("UTF-8");
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Vazão da validação completa ({@link ValidadorRegistroItem#validar}) e do parse com validação de schema
+ * isolado, para os dois motores de validação.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ValidadorBenchmark {
+
+    @Param({"pequeno", "grande" })
+    public String registro;
+
+    @Param({"DOM", "STREAMING" })
+    public MotorValidacao motor;
+
+    private byte[] xml;
+
+    private ValidadorRegistroItem validador;
+
+    @Setup
+    public void inicia() {
+        xml = RegistrosBenchmark.registro(registro);
+        validador = new ValidadorRegistroItem();
+        validador.setValidadorService(RegistrosBenchmark.servico());
+        validador.setSchemaCompartilhado(true);
+        validador.setMotorValidacao(motor);
+        // Um parser por thread do benchmark, no máximo
+        validador.setTamanhoPool(Math.max(64, Runtime.getRuntime().availableProcessors()));
+        if (!validador.validar(RegistrosBenchmark.ID, xml, null)) {
+            throw new IllegalStateException("Registro do benchmark é inválido: " + registro);
+        }
+    }
+
+    @Benchmark
+    public boolean validar() {
+        return validador.validar(RegistrosBenchmark.ID, xml, null);
+    }
+
+    @Benchmark
+    public Object parseComSchema(final ParserThread parser) throws Exception {
+        List<String> erros = new ArrayList<String>();
+        InputSource is = new InputSource(new ByteArrayInputStream(xml));
+        if (motor == MotorValidacao.STREAMING) {
+            return parser.helper.parseDados(is, erros);
+        }
+        return parser.helper.parse(is, erros);
+    }
+
+    @State(Scope.Thread)
+    public static class ParserThread {
+
+        ValidadorXMLHelper helper;
+
+        @Setup
+        public void inicia() {
+            helper = new ValidadorXMLHelper(ValidadorXMLHelper.getSchemaCompartilhado());
+        }
+
+    }
+
+}
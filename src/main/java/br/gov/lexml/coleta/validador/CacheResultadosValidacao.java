@@ -0,0 +1,520 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache dos resultados de validação, indexado pelo id do registro, pelo SHA-256 do XML e por uma época
+ * informada pela aplicação (versão dos perfis, do schema etc.). Um registro recoletado sem alterações recebe o
+ * resultado anterior sem novo parse (ver {@link ValidadorRegistroItem#setCacheResultados}).
+ * <p/>
+ * Os resultados mais recentes ficam em memória (LRU), distribuídos em até 16 segmentos (uma potência de dois não
+ * maior que o tamanho máximo) que repartem o tamanho máximo sem arredondamento para cima, de modo que o limite
+ * nunca é excedido. Opcionalmente, todos os resultados são gravados em um arquivo de log (somente acréscimos) que
+ * sobrevive às reinicializações: na abertura, apenas a posição de cada resultado da época corrente é mantida em
+ * memória e o arquivo é compactado se a maior parte dele for de épocas anteriores.
+ * <p/>
+ * Ao alterar os perfis dos publicadores ou a configuração do validador, altere a época com
+ * {@link #setEpoca(long)}. Instâncias são thread-safe.
+ */
+public class CacheResultadosValidacao implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheResultadosValidacao.class);
+
+    private static final int MAXIMO_SEGMENTOS = 16;
+
+    private static final int ASSINATURA = 0x4c58525a;
+
+    private static final int VERSAO = 2;
+
+    private static final int TAMANHO_CABECALHO = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final LRUMap[] segmentos;
+
+    private final File arquivo;
+
+    private final Map<Chave, Long> posicoes = new ConcurrentHashMap<Chave, Long>();
+
+    private RandomAccessFile raf;
+
+    private FileChannel canal;
+
+    private long fim;
+
+    private volatile long epoca;
+
+    private final AtomicLong acertos = new AtomicLong();
+
+    private final AtomicLong falhas = new AtomicLong();
+
+    /**
+     * Cria o cache somente em memória.
+     *
+     * @param tamanhoMaximo Número máximo de resultados mantidos em memória
+     */
+    public CacheResultadosValidacao(final int tamanhoMaximo) {
+        this(tamanhoMaximo, 0);
+    }
+
+    public CacheResultadosValidacao(final int tamanhoMaximo, final long epoca) {
+        segmentos = criaSegmentos(tamanhoMaximo);
+        this.epoca = epoca;
+        arquivo = null;
+    }
+
+    /**
+     * Cria o cache em memória e em arquivo. O arquivo é criado se não existir; se existir, os resultados da
+     * época informada voltam a ser usados.
+     *
+     * @param tamanhoMaximo Número máximo de resultados mantidos em memória
+     * @param arquivo Arquivo de log dos resultados
+     * @param epoca Época corrente
+     */
+    public CacheResultadosValidacao(final int tamanhoMaximo, final File arquivo, final long epoca)
+        throws IOException {
+        segmentos = criaSegmentos(tamanhoMaximo);
+        this.epoca = epoca;
+        this.arquivo = arquivo;
+        abreArquivo();
+    }
+
+    public long getEpoca() {
+        return epoca;
+    }
+
+    /**
+     * Altera a época corrente. Resultados gravados em outras épocas deixam de ser usados.
+     */
+    public synchronized void setEpoca(final long epoca) {
+        if (epoca == this.epoca) {
+            return;
+        }
+        this.epoca = epoca;
+        posicoes.clear();
+        for (LRUMap segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.clear();
+            }
+        }
+    }
+
+    /**
+     * @return resultado anterior do registro com o mesmo conteúdo na época corrente ou null
+     */
+    ResultadoValidacao obtem(final String idRegistroItem, final byte[] digest) {
+        Chave chave = new Chave(idRegistroItem, digest);
+        LRUMap segmento = getSegmento(chave);
+        long epocaConsulta = epoca;
+
+        Entrada entrada;
+        synchronized (segmento) {
+            entrada = (Entrada) segmento.get(chave);
+        }
+        if (entrada != null && entrada.epoca == epocaConsulta) {
+            acertos.incrementAndGet();
+            return entrada.resultado;
+        }
+
+        Long posicao = posicoes.get(chave);
+        if (posicao != null) {
+            try {
+                entrada = le(posicao, chave);
+            }
+            catch (IOException e) {
+                log.warn("Falha ao ler resultado de " + idRegistroItem + " em " + arquivo, e);
+                entrada = null;
+            }
+            if (entrada != null && entrada.epoca == epocaConsulta) {
+                synchronized (segmento) {
+                    segmento.put(chave, entrada);
+                }
+                acertos.incrementAndGet();
+                return entrada.resultado;
+            }
+        }
+
+        falhas.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param epocaValidacao Época corrente no início da validação; o resultado é descartado se a época mudou
+     */
+    void registra(final ResultadoValidacao resultado, final byte[] digest, final long epocaValidacao) {
+        if (epocaValidacao != epoca) {
+            return;
+        }
+        Chave chave = new Chave(resultado.getIdRegistroItem(), digest);
+        // O cache guarda somente a mensagem já montada, não o erro com o contexto do usuário e os argumentos
+        Entrada entrada = new Entrada(epocaValidacao, new ResultadoValidacao(resultado.getIdRegistroItem(),
+            resultado.isValido(), resultado.getRegra(), resultado.getTipoErro(), resultado.getMensagem()));
+        LRUMap segmento = getSegmento(chave);
+        synchronized (segmento) {
+            segmento.put(chave, entrada);
+        }
+        if (arquivo != null) {
+            try {
+                grava(chave, entrada);
+            }
+            catch (IOException e) {
+                log.warn("Falha ao gravar resultado de " + resultado.getIdRegistroItem() + " em " + arquivo, e);
+            }
+        }
+    }
+
+    /**
+     * @return número de registros cujo resultado foi obtido do cache
+     */
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    /**
+     * @return número de registros que precisaram ser validados
+     */
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    /**
+     * @return número de resultados mantidos em memória
+     */
+    public int getTamanho() {
+        int tamanho = 0;
+        for (LRUMap segmento : segmentos) {
+            synchronized (segmento) {
+                tamanho += segmento.size();
+            }
+        }
+        return tamanho;
+    }
+
+    public synchronized void close() throws IOException {
+        if (raf != null) {
+            canal.force(false);
+            raf.close();
+            raf = null;
+            canal = null;
+        }
+    }
+
+    private static LRUMap[] criaSegmentos(final int tamanhoMaximo) {
+        if (tamanhoMaximo < 1) {
+            throw new IllegalArgumentException("Tamanho do cache deve ser maior que zero: " + tamanhoMaximo);
+        }
+        LRUMap[] segmentos = new LRUMap[Integer.highestOneBit(Math.min(MAXIMO_SEGMENTOS, tamanhoMaximo))];
+        int tamanhoSegmento = tamanhoMaximo / segmentos.length;
+        int resto = tamanhoMaximo % segmentos.length;
+        for (int i = 0; i < segmentos.length; i++) {
+            // O resto da divisão é distribuído entre os primeiros segmentos
+            segmentos[i] = new LRUMap(i < resto ? tamanhoSegmento + 1 : tamanhoSegmento);
+        }
+        return segmentos;
+    }
+
+    private LRUMap getSegmento(final Chave chave) {
+        int h = chave.hashCode();
+        h ^= h >>> 16;
+        return segmentos[h & (segmentos.length - 1)];
+    }
+
+    private void abreArquivo() throws IOException {
+        long inicio = System.currentTimeMillis();
+        int total = 0;
+        long validoAte = TAMANHO_CABECALHO;
+        long tamanhoArquivo = arquivo.length();
+        boolean recria = tamanhoArquivo < TAMANHO_CABECALHO;
+
+        if (tamanhoArquivo >= TAMANHO_CABECALHO) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)));
+            try {
+                if (in.readInt() != ASSINATURA) {
+                    throw new IOException("Arquivo não é um cache de resultados de validação: " + arquivo);
+                }
+                if (in.readInt() != VERSAO) {
+                    // Formato anterior: os resultados são descartados
+                    log.warn("Versão do cache de resultados " + arquivo + " incompatível; o arquivo será recriado.");
+                    tamanhoArquivo = 0;
+                    recria = true;
+                }
+                while (tamanhoArquivo > 0) {
+                    int tamanho;
+                    byte[] registro;
+                    try {
+                        tamanho = in.readInt();
+                        if (tamanho < 0 || validoAte + 4 + tamanho > tamanhoArquivo) {
+                            break;
+                        }
+                        registro = new byte[tamanho];
+                        in.readFully(registro);
+                    }
+                    catch (EOFException e) {
+                        // Registro incompleto (gravação interrompida) é descartado
+                        break;
+                    }
+                    DataInputStream dis = new DataInputStream(new ByteArrayInputStream(registro));
+                    long epocaRegistro = dis.readLong();
+                    Chave chave = leChave(dis);
+                    if (epocaRegistro == epoca) {
+                        posicoes.put(chave, validoAte);
+                    }
+                    else {
+                        posicoes.remove(chave);
+                    }
+                    total++;
+                    validoAte += 4 + tamanho;
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+
+        if (total > 0 && posicoes.size() < total / 2) {
+            try {
+                compacta(validoAte);
+            }
+            catch (IOException e) {
+                // O arquivo original permanece íntegro e continua sendo usado
+                log.warn("Falha ao compactar o cache de resultados " + arquivo, e);
+            }
+        }
+        if (canal == null) {
+            raf = new RandomAccessFile(arquivo, "rw");
+            canal = raf.getChannel();
+            if (recria) {
+                gravaCabecalho(canal);
+                validoAte = TAMANHO_CABECALHO;
+            }
+            canal.truncate(validoAte);
+            fim = validoAte;
+        }
+        log.info(posicoes.size() + " resultados da época " + epoca + " carregados de " + arquivo + " em "
+            + (System.currentTimeMillis() - inicio) + "ms");
+    }
+
+    /**
+     * Regrava o arquivo somente com os resultados da época corrente. O novo conteúdo é gravado em um arquivo
+     * temporário que substitui o original atomicamente: se a compactação falhar, o original não é alterado.
+     */
+    private void compacta(final long validoAte) throws IOException {
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        Map<Chave, Long> novasPosicoes = new HashMap<Chave, Long>();
+        try {
+            RandomAccessFile origem = new RandomAccessFile(arquivo, "r");
+            RandomAccessFile destino = new RandomAccessFile(temporario, "rw");
+            try {
+                FileChannel canalOrigem = origem.getChannel();
+                FileChannel canalDestino = destino.getChannel();
+                canalDestino.truncate(0);
+                gravaCabecalho(canalDestino);
+                long posicao = TAMANHO_CABECALHO;
+                for (Map.Entry<Chave, Long> e : posicoes.entrySet()) {
+                    byte[] registro = leRegistro(canalOrigem, e.getValue());
+                    escreve(canalDestino, ByteBuffer.wrap(registro), posicao);
+                    novasPosicoes.put(e.getKey(), posicao);
+                    posicao += registro.length;
+                }
+                canalDestino.force(false);
+            }
+            finally {
+                origem.close();
+                destino.close();
+            }
+            Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            temporario.delete();
+            throw e;
+        }
+        posicoes.putAll(novasPosicoes);
+        raf = new RandomAccessFile(arquivo, "rw");
+        canal = raf.getChannel();
+        fim = raf.length();
+        log.info("Cache de resultados " + arquivo + " compactado de " + validoAte + " para " + fim + " bytes");
+    }
+
+    private synchronized void grava(final Chave chave, final Entrada entrada) throws IOException {
+        if (canal == null || entrada.epoca != epoca) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeLong(entrada.epoca);
+        escreveTexto(out, chave.idRegistroItem);
+        out.writeInt(chave.digest.length);
+        out.write(chave.digest);
+        out.writeBoolean(entrada.resultado.isValido());
+        RegraValidacao regra = entrada.resultado.getRegra();
+        escreveTexto(out, regra == null ? null : regra.name());
+        TipoErroValidacao tipoErro = entrada.resultado.getTipoErro();
+        escreveTexto(out, tipoErro == null ? null : tipoErro.name());
+        escreveTexto(out, entrada.resultado.getMensagem());
+        out.close();
+
+        ByteBuffer registro = ByteBuffer.wrap(bytes.toByteArray());
+        registro.putInt(0, registro.limit() - 4);
+        escreve(canal, registro, fim);
+        posicoes.put(chave, fim);
+        fim += registro.limit();
+    }
+
+    private Entrada le(final long posicao, final Chave chave) throws IOException {
+        FileChannel canal;
+        synchronized (this) {
+            canal = this.canal;
+        }
+        if (canal == null) {
+            return null;
+        }
+        byte[] registro = leRegistro(canal, posicao);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(registro, 4, registro.length - 4));
+        long epocaRegistro = in.readLong();
+        if (!chave.equals(leChave(in))) {
+            return null;
+        }
+        boolean valido = in.readBoolean();
+        String regra = leTexto(in);
+        String tipoErro = leTexto(in);
+        String mensagem = leTexto(in);
+        return new Entrada(epocaRegistro, new ResultadoValidacao(chave.idRegistroItem, valido,
+            regra == null ? null : RegraValidacao.valueOf(regra),
+            tipoErro == null ? null : TipoErroValidacao.valueOf(tipoErro), mensagem));
+    }
+
+    /**
+     * Lê o registro completo (inclusive o tamanho) na posição informada.
+     */
+    private static byte[] leRegistro(final FileChannel canal, final long posicao) throws IOException {
+        ByteBuffer tamanho = ByteBuffer.allocate(4);
+        le(canal, tamanho, posicao);
+        ByteBuffer registro = ByteBuffer.allocate(4 + tamanho.getInt(0));
+        le(canal, registro, posicao);
+        return registro.array();
+    }
+
+    private static void le(final FileChannel canal, final ByteBuffer buffer, final long posicao) throws IOException {
+        long p = posicao;
+        while (buffer.hasRemaining()) {
+            int n = canal.read(buffer, p);
+            if (n < 0) {
+                throw new EOFException("Fim inesperado do cache de resultados na posição " + p);
+            }
+            p += n;
+        }
+    }
+
+    private static void escreve(final FileChannel canal, final ByteBuffer buffer, final long posicao)
+        throws IOException {
+        long p = posicao;
+        while (buffer.hasRemaining()) {
+            p += canal.write(buffer, p);
+        }
+    }
+
+    private static void gravaCabecalho(final FileChannel canal) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(TAMANHO_CABECALHO);
+        cabecalho.putInt(ASSINATURA).putInt(VERSAO).flip();
+        escreve(canal, cabecalho, 0);
+    }
+
+    private static Chave leChave(final DataInputStream in) throws IOException {
+        String idRegistroItem = leTexto(in);
+        byte[] digest = new byte[in.readInt()];
+        in.readFully(digest);
+        return new Chave(idRegistroItem, digest);
+    }
+
+    private static void escreveTexto(final DataOutputStream out, final String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String leTexto(final DataInputStream in) throws IOException {
+        int tamanho = in.readInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[tamanho];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static class Chave {
+
+        final String idRegistroItem;
+
+        final byte[] digest;
+
+        final int hash;
+
+        Chave(final String idRegistroItem, final byte[] digest) {
+            this.idRegistroItem = idRegistroItem;
+            this.digest = digest;
+            hash = 31 * idRegistroItem.hashCode() + Arrays.hashCode(digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Chave)) {
+                return false;
+            }
+            Chave outra = (Chave) obj;
+            return hash == outra.hash && idRegistroItem.equals(outra.idRegistroItem)
+                && Arrays.equals(digest, outra.digest);
+        }
+
+    }
+
+    private static class Entrada {
+
+        final long epoca;
+
+        final ResultadoValidacao resultado;
+
+        Entrada(final long epoca, final ResultadoValidacao resultado) {
+            this.epoca = epoca;
+            this.resultado = resultado;
+        }
+
+    }
+
+}
@@ -0,0 +1,186 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Catálogo dos XSDs distribuídos no classpath em /xsd/ (lexml-xml-schemas). Os XSDs são lidos uma única vez e
+ * mantidos em memória; um systemId é resolvido pelo nome do arquivo, sem nenhum acesso à rede.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class CatalogoSchemas {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogoSchemas.class);
+
+    private static final String DIRETORIO = "xsd/";
+
+    private static final Pattern PATTERN_XSD = Pattern.compile("([^/]+\\.xsd)$", Pattern.CASE_INSENSITIVE);
+
+    private static final byte[] AUSENTE = new byte[0];
+
+    private static volatile CatalogoSchemas padrao;
+
+    private final ConcurrentMap<String, byte[]> schemas = new ConcurrentHashMap<String, byte[]>();
+
+    CatalogoSchemas() {
+        URL url = CatalogoSchemas.class.getResource("/" + DIRETORIO + "oai_lexml.xsd");
+        if (url == null) {
+            log.warn("Diretório /" + DIRETORIO + " não encontrado no classpath.");
+            return;
+        }
+        long inicio = System.currentTimeMillis();
+        try {
+            if ("jar".equals(url.getProtocol())) {
+                carregaJar(url);
+            }
+            else if ("file".equals(url.getProtocol())) {
+                carregaDiretorio(new File(url.toURI()).getParentFile());
+            }
+        }
+        catch (IOException e) {
+            log.warn("Falha ao listar os XSDs de " + url + "; serão lidos sob demanda.", e);
+        }
+        catch (URISyntaxException e) {
+            log.warn("Falha ao listar os XSDs de " + url + "; serão lidos sob demanda.", e);
+        }
+        log.info(schemas.size() + " XSDs carregados no catálogo em " + (System.currentTimeMillis() - inicio) + "ms");
+    }
+
+    /**
+     * Retorna o catálogo do classpath, montado na primeira chamada.
+     */
+    public static CatalogoSchemas getPadrao() {
+        CatalogoSchemas catalogo = padrao;
+        if (catalogo == null) {
+            synchronized (CatalogoSchemas.class) {
+                catalogo = padrao;
+                if (catalogo == null) {
+                    catalogo = new CatalogoSchemas();
+                    padrao = catalogo;
+                }
+            }
+        }
+        return catalogo;
+    }
+
+    /**
+     * Abre o XSD correspondente ao systemId informado.
+     *
+     * @return stream sobre o XSD em memória ou null se o systemId não corresponde a nenhum XSD do catálogo
+     */
+    public InputStream abre(final String systemId) {
+        String nome = getNome(systemId);
+        if (nome == null) {
+            return null;
+        }
+        byte[] xsd = schemas.get(nome);
+        if (xsd == null) {
+            // XSD fora da listagem inicial (por exemplo, em outro jar): procura uma única vez no classpath
+            xsd = leRecurso(nome);
+            byte[] anterior = schemas.putIfAbsent(nome, xsd);
+            if (anterior != null) {
+                xsd = anterior;
+            }
+            else if (xsd == AUSENTE) {
+                log.warn("Schema não encontrado: /" + DIRETORIO + nome);
+            }
+        }
+        return xsd == AUSENTE ? null : new ByteArrayInputStream(xsd);
+    }
+
+    public boolean contem(final String systemId) {
+        String nome = getNome(systemId);
+        if (nome == null) {
+            return false;
+        }
+        byte[] xsd = schemas.get(nome);
+        return xsd != null ? xsd != AUSENTE : leRecurso(nome) != AUSENTE;
+    }
+
+    private static String getNome(final String systemId) {
+        if (systemId == null) {
+            return null;
+        }
+        Matcher m = PATTERN_XSD.matcher(systemId);
+        return m.find() ? m.group(1) : null;
+    }
+
+    private void carregaJar(final URL url) throws IOException {
+        URLConnection conn = url.openConnection();
+        if (!(conn instanceof JarURLConnection)) {
+            return;
+        }
+        JarURLConnection jarConn = (JarURLConnection) conn;
+        jarConn.setUseCaches(false);
+        JarFile jar = jarConn.getJarFile();
+        try {
+            Enumeration<JarEntry> entradas = jar.entries();
+            while (entradas.hasMoreElements()) {
+                JarEntry entrada = entradas.nextElement();
+                String nome = entrada.getName();
+                if (!entrada.isDirectory() && nome.startsWith(DIRETORIO) && nome.indexOf('/', DIRETORIO.length()) < 0
+                    && getNome(nome) != null) {
+                    InputStream is = jar.getInputStream(entrada);
+                    try {
+                        schemas.put(nome.substring(DIRETORIO.length()), IOUtils.toByteArray(is));
+                    }
+                    finally {
+                        is.close();
+                    }
+                }
+            }
+        }
+        finally {
+            jar.close();
+        }
+    }
+
+    private void carregaDiretorio(final File diretorio) {
+        File[] arquivos = diretorio.listFiles();
+        if (arquivos == null) {
+            return;
+        }
+        for (File arquivo : arquivos) {
+            if (arquivo.isFile() && getNome(arquivo.getName()) != null) {
+                schemas.put(arquivo.getName(), leRecurso(arquivo.getName()));
+            }
+        }
+    }
+
+    private static byte[] leRecurso(final String nome) {
+        InputStream is = CatalogoSchemas.class.getResourceAsStream("/" + DIRETORIO + nome);
+        if (is == null) {
+            return AUSENTE;
+        }
+        try {
+            return IOUtils.toByteArray(is);
+        }
+        catch (IOException e) {
+            log.warn("Falha ao ler o schema /" + DIRETORIO + nome, e);
+            return AUSENTE;
+        }
+        finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+}
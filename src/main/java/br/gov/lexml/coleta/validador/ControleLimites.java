@@ -0,0 +1,155 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.xml.sax.InputSource;
+
+/**
+ * Verificação dos {@link LimitesValidacao} durante a validação de um registro: contagem de elementos e prazo.
+ * Usado por uma única thread de cada vez.
+ */
+class ControleLimites {
+
+    private final LimitesValidacao limites;
+
+    // Tempo restante enquanto a validação está pausada (validação em lote)
+    private long restante;
+
+    private long prazo;
+
+    private int elementos;
+
+    private int itens;
+
+    private int relacionamentos;
+
+    ControleLimites(final LimitesValidacao limites) {
+        this.limites = limites;
+        restante = limites.getTempoMaximoNanos();
+        retoma();
+    }
+
+    LimitesValidacao getLimites() {
+        return limites;
+    }
+
+    /**
+     * Suspende a contagem do tempo (por exemplo, enquanto os demais registros do lote são lidos).
+     */
+    void pausa() {
+        if (limites.getTempoMaximoNanos() > 0) {
+            restante = prazo - System.nanoTime();
+        }
+    }
+
+    void retoma() {
+        if (limites.getTempoMaximoNanos() > 0) {
+            prazo = System.nanoTime() + restante;
+        }
+    }
+
+    boolean isPrazoExcedido() {
+        return limites.getTempoMaximoNanos() > 0 && System.nanoTime() - prazo > 0;
+    }
+
+    String getMensagemPrazo() {
+        return "Tempo máximo de validação de " + TimeUnit.NANOSECONDS.toMillis(limites.getTempoMaximoNanos())
+            + " ms excedido";
+    }
+
+    void verificaPrazo() throws LimiteExcedidoException {
+        if (isPrazoExcedido()) {
+            throw new LimiteExcedidoException(getMensagemPrazo());
+        }
+    }
+
+    /**
+     * Reinicia a contagem de elementos para uma nova leitura do XML.
+     */
+    void iniciaLeitura() {
+        elementos = 0;
+        itens = 0;
+        relacionamentos = 0;
+    }
+
+    /**
+     * Contabiliza um elemento lido.
+     *
+     * @param profundidade profundidade do elemento (1 para o elemento raiz)
+     */
+    void elemento(final int profundidade, final boolean item, final boolean relacionamento)
+        throws LimiteExcedidoException {
+        elementos++;
+        if (limites.getProfundidadeMaxima() > 0 && profundidade > limites.getProfundidadeMaxima()) {
+            throw new LimiteExcedidoException("Profundidade máxima de " + limites.getProfundidadeMaxima()
+                + " elementos excedida");
+        }
+        if (limites.getMaximoElementos() > 0 && elementos > limites.getMaximoElementos()) {
+            throw new LimiteExcedidoException("Número máximo de " + limites.getMaximoElementos()
+                + " elementos excedido");
+        }
+        if (item && limites.getMaximoItens() > 0 && ++itens > limites.getMaximoItens()) {
+            throw new LimiteExcedidoException("Número máximo de " + limites.getMaximoItens() + " Item excedido");
+        }
+        if (relacionamento && limites.getMaximoRelacionamentos() > 0
+            && ++relacionamentos > limites.getMaximoRelacionamentos()) {
+            throw new LimiteExcedidoException("Número máximo de " + limites.getMaximoRelacionamentos()
+                + " Relacionamento excedido");
+        }
+        if ((elementos & 15) == 0) {
+            verificaPrazo();
+        }
+    }
+
+    /**
+     * Envolve a entrada para que o prazo seja verificado a cada leitura do parser (inclusive no motor DOM).
+     */
+    InputSource limita(final InputSource is) {
+        if (limites.getTempoMaximoNanos() == 0) {
+            return is;
+        }
+        if (is.getByteStream() != null) {
+            is.setByteStream(new FilterInputStream(is.getByteStream()) {
+
+                @Override
+                public int read() throws IOException {
+                    verificaPrazoLeitura();
+                    return super.read();
+                }
+
+                @Override
+                public int read(final byte[] b, final int off, final int len) throws IOException {
+                    verificaPrazoLeitura();
+                    return super.read(b, off, len);
+                }
+            });
+        }
+        else if (is.getCharacterStream() != null) {
+            is.setCharacterStream(new FilterReader(is.getCharacterStream()) {
+
+                @Override
+                public int read() throws IOException {
+                    verificaPrazoLeitura();
+                    return super.read();
+                }
+
+                @Override
+                public int read(final char[] cbuf, final int off, final int len) throws IOException {
+                    verificaPrazoLeitura();
+                    return super.read(cbuf, off, len);
+                }
+            });
+        }
+        return is;
+    }
+
+    private void verificaPrazoLeitura() throws IOException {
+        if (isPrazoExcedido()) {
+            throw new IOException(getMensagemPrazo(), new LimiteExcedidoException(getMensagemPrazo()));
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dados do registro consultados pelas regras de URN: a URN do DocumentoIndividual, o idPublicador de cada
+ * Item e o idPublicador/URN de cada Relacionamento.
+ */
+class DadosRegistro {
+
+    String urnDocumentoIndividual = "";
+
+    final List<Integer> idPublicadoresItem = new ArrayList<Integer>();
+
+    /** idPublicador de cada Relacionamento (null se o atributo não foi informado) */
+    final List<Integer> idPublicadoresRelacionamento = new ArrayList<Integer>();
+
+    final List<String> urnsRelacionamento = new ArrayList<String>();
+
+    void adicionaRelacionamento(final Integer idPublicador, final String urn) {
+        idPublicadoresRelacionamento.add(idPublicador);
+        urnsRelacionamento.add(urn);
+    }
+
+    int getQuantidadeRelacionamentos() {
+        return urnsRelacionamento.size();
+    }
+
+}
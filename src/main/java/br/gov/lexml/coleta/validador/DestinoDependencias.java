@@ -0,0 +1,21 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.Map;
+
+/**
+ * Destino dos núcleos consultados na validação de cada registro (ver
+ * {@link ValidadorRegistroItem#setDestinoDependencias}), usado para restringir a revalidação após uma alteração de
+ * perfil aos registros afetados. Implementação: {@link IndiceImpacto}.
+ */
+public interface DestinoDependencias {
+
+    /**
+     * Registra os núcleos consultados na validação do registro, substituindo os registrados anteriormente. Chamado
+     * na thread de validação; deve ser thread-safe.
+     *
+     * @param nucleos chaves de {@link ValidadorService#isNucleoValido(String)} consultadas, na ordem das consultas,
+     *            com o resultado de cada uma (vazio se o registro foi concluído sem consultar núcleos)
+     */
+    void registra(String idRegistroItem, Map<String, Boolean> nucleos);
+
+}
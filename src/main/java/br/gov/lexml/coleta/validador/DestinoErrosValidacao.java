@@ -0,0 +1,17 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.List;
+
+/**
+ * Destino dos erros de validação entregues em lotes pelo {@link PublicadorErrosValidacao} (por exemplo, uma
+ * inserção em lote no banco de dados).
+ */
+public interface DestinoErrosValidacao {
+
+    /**
+     * Registra um lote de erros. Chamado sempre pela mesma thread do publicador; a lista não deve ser mantida
+     * após o retorno.
+     */
+    void registra(List<ErroValidacao> erros);
+
+}
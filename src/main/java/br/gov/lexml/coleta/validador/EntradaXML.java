@@ -0,0 +1,217 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.InputSource;
+
+/**
+ * XML de um registro a ser validado. Entradas em bytes são entregues ao parser sem conversão para String; a
+ * codificação é detectada pelo próprio parser a partir da declaração XML.
+ */
+abstract class EntradaXML {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @return se a entrada é nula ou vazia (RV#2)
+     */
+    abstract boolean isVazia();
+
+    /**
+     * @return a entrada para o parser (pode ser obtida uma única vez, exceto após {@link #carrega()})
+     */
+    abstract InputSource getInputSource();
+
+    /**
+     * Permite que {@link #getInputSource()} seja chamado mais de uma vez. Entradas em stream são lidas para a
+     * memória.
+     */
+    void carrega() throws IOException {
+    }
+
+    /**
+     * Tamanho da entrada em bytes (em caracteres para entradas em String). Entradas em stream são lidas para a
+     * memória, até no máximo o tamanho informado mais um byte.
+     *
+     * @return tamanho da entrada ou, para streams maiores que o máximo, um valor maior que o máximo
+     */
+    abstract long getTamanho(long maximo) throws IOException;
+
+    /**
+     * Calcula o SHA-256 do conteúdo da entrada, que continua disponível para {@link #getInputSource()}.
+     * Entradas em String são consideradas em UTF-8.
+     */
+    byte[] calculaDigest() throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        atualizaDigest(md);
+        return md.digest();
+    }
+
+    abstract void atualizaDigest(MessageDigest md) throws IOException;
+
+    static EntradaXML de(final String xml) {
+        return new EntradaString(xml);
+    }
+
+    static EntradaXML de(final byte[] xml) {
+        return xml == null ? new EntradaString(null) : new EntradaBuffer(ByteBuffer.wrap(xml));
+    }
+
+    static EntradaXML de(final ByteBuffer xml) {
+        return xml == null ? new EntradaString(null) : new EntradaBuffer(xml);
+    }
+
+    static EntradaXML de(final InputStream xml) {
+        return xml == null ? new EntradaString(null) : new EntradaStream(xml);
+    }
+
+    private static class EntradaString extends EntradaXML {
+
+        private final String xml;
+
+        EntradaString(final String xml) {
+            this.xml = xml;
+        }
+
+        @Override
+        boolean isVazia() {
+            return StringUtils.isEmpty(xml);
+        }
+
+        @Override
+        InputSource getInputSource() {
+            return new InputSource(new StringReader(xml));
+        }
+
+        @Override
+        long getTamanho(final long maximo) {
+            return xml.length();
+        }
+
+        @Override
+        void atualizaDigest(final MessageDigest md) {
+            md.update(xml.getBytes(UTF_8));
+        }
+
+    }
+
+    private static class EntradaBuffer extends EntradaXML {
+
+        private final ByteBuffer xml;
+
+        EntradaBuffer(final ByteBuffer xml) {
+            this.xml = xml;
+        }
+
+        @Override
+        boolean isVazia() {
+            return !xml.hasRemaining();
+        }
+
+        @Override
+        InputSource getInputSource() {
+            if (xml.hasArray()) {
+                return new InputSource(new ByteArrayInputStream(xml.array(), xml.arrayOffset() + xml.position(),
+                    xml.remaining()));
+            }
+            return new InputSource(new ByteBufferInputStream(xml));
+        }
+
+        @Override
+        long getTamanho(final long maximo) {
+            return xml.remaining();
+        }
+
+        @Override
+        void atualizaDigest(final MessageDigest md) {
+            md.update(xml.duplicate());
+        }
+
+    }
+
+    private static class EntradaStream extends EntradaXML {
+
+        private final PushbackInputStream xml;
+
+        // Conteúdo já lido do stream por carrega()
+        private byte[] lido;
+
+        EntradaStream(final InputStream xml) {
+            this.xml = new PushbackInputStream(xml);
+        }
+
+        @Override
+        boolean isVazia() {
+            if (lido != null) {
+                return lido.length == 0;
+            }
+            try {
+                int b = xml.read();
+                if (b == -1) {
+                    return true;
+                }
+                xml.unread(b);
+                return false;
+            }
+            catch (IOException e) {
+                // A falha de leitura será informada pelo parser
+                return false;
+            }
+        }
+
+        @Override
+        InputSource getInputSource() {
+            if (lido != null) {
+                return new InputSource(new ByteArrayInputStream(lido));
+            }
+            return new InputSource(xml);
+        }
+
+        @Override
+        void carrega() throws IOException {
+            if (lido == null) {
+                lido = IOUtils.toByteArray(xml);
+            }
+        }
+
+        @Override
+        long getTamanho(final long maximo) throws IOException {
+            if (lido == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                long tamanho = IOUtils.copyLarge(xml, out, 0, maximo + 1);
+                if (tamanho > maximo) {
+                    // Entrada recusada; o restante do stream não é lido
+                    return tamanho;
+                }
+                lido = out.toByteArray();
+            }
+            return lido.length;
+        }
+
+        @Override
+        void atualizaDigest(final MessageDigest md) throws IOException {
+            carrega();
+            md.update(lido);
+        }
+
+    }
+
+}
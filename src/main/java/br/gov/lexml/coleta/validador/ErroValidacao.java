@@ -0,0 +1,87 @@
+package br.gov.lexml.coleta.validador;
+
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * Erro de validação de um registro. A mensagem é mantida como padrão e argumentos (no formato "{}" do slf4j) e só
+ * é montada quando {@link #getMensagem()} é chamado, normalmente por quem consome os erros, fora da thread de
+ * validação.
+ */
+public class ErroValidacao {
+
+    private final String idRegistroItem;
+
+    private final RegraValidacao regra;
+
+    private final TipoErroValidacao tipoErro;
+
+    private final String padrao;
+
+    private final Object[] argumentos;
+
+    private final Object ctxUsr;
+
+    private volatile String mensagem;
+
+    public ErroValidacao(final String idRegistroItem, final RegraValidacao regra, final TipoErroValidacao tipoErro,
+                         final Object ctxUsr, final String padrao, final Object... argumentos) {
+        this.idRegistroItem = idRegistroItem;
+        this.regra = regra;
+        this.tipoErro = tipoErro;
+        this.ctxUsr = ctxUsr;
+        this.padrao = padrao;
+        this.argumentos = argumentos;
+    }
+
+    public String getIdRegistroItem() {
+        return idRegistroItem;
+    }
+
+    public RegraValidacao getRegra() {
+        return regra;
+    }
+
+    /**
+     * @return código da regra violada ("RV#n") ou null se o erro não decorre de uma regra de validação
+     */
+    public String getCodigo() {
+        return regra == null ? null : regra.getCodigo();
+    }
+
+    public TipoErroValidacao getTipoErro() {
+        return tipoErro;
+    }
+
+    /**
+     * @return objeto de contexto do usuário passado em ValidadorRegistroItem.validar
+     */
+    public Object getCtxUsr() {
+        return ctxUsr;
+    }
+
+    public String getPadrao() {
+        return padrao;
+    }
+
+    public Object[] getArgumentos() {
+        return argumentos.clone();
+    }
+
+    /**
+     * @return mensagem do erro, montada na primeira chamada
+     */
+    public String getMensagem() {
+        String msg = mensagem;
+        if (msg == null) {
+            msg = argumentos.length == 0 ? padrao : MessageFormatter.arrayFormat(padrao, argumentos).getMessage();
+            mensagem = msg;
+        }
+        return msg;
+    }
+
+    @Override
+    public String toString() {
+        return idRegistroItem + ": " + tipoErro + " " + getMensagem();
+    }
+
+}
@@ -0,0 +1,42 @@
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Fases da validação de um registro medidas pelo {@link OuvinteValidacao}.
+ */
+public enum FaseValidacao {
+
+    /** Cálculo do SHA-256 do XML e consulta ao {@link CacheResultadosValidacao} */
+    CACHE(null),
+
+    /** Leitura do XML sem validação para a pré-validação das URNs */
+    PRE_VALIDACAO(null),
+
+    /** RV#3: Parse do XML com validação de schema (inclui a resolução dos XSDs e, no motor STREAMING, a extração) */
+    PARSE("RV#3"),
+
+    /** Extração dos dados do DOM por XPath (somente no motor DOM) */
+    EXTRACAO(null),
+
+    /** RV#5: Verificação estrutural da URN de DocumentoIndividual */
+    URN_DOCUMENTO("RV#5"),
+
+    /** RV#6: Compatibilidade da URN de DocumentoIndividual com o perfil dos publicadores dos Items */
+    URN_ITEM("RV#6"),
+
+    /** RV#5, RV#7 e RV#8: Compatibilidade das URNs com o perfil dos publicadores dos Relacionamentos */
+    URN_RELACIONAMENTO("RV#7");
+
+    private final String codigo;
+
+    private FaseValidacao(final String codigo) {
+        this.codigo = codigo;
+    }
+
+    /**
+     * @return código da regra de validação verificada na fase ("RV#n") ou null
+     */
+    public String getCodigo() {
+        return codigo;
+    }
+
+}
@@ -0,0 +1,194 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Filtro de Bloom dos núcleos válidos do perfil dos publicadores, no formato de
+ * {@link ValidadorService#isNucleoValido(String)}. Responde com certeza que um núcleo <b>não</b> é válido; uma
+ * resposta positiva deve ser confirmada no ValidadorService (ver {@link ValidadorServiceComFiltro}).
+ * <p/>
+ * Os núcleos do perfil "T" (todos) são incluídos como "D" e "R"; uma consulta pelo perfil "T" verifica as duas
+ * chaves, como {@link IndicePerfil}. Maiúsculas e minúsculas não são diferenciadas, de modo que o filtro nunca
+ * rejeita um núcleo aceito por uma consulta insensível a maiúsculas.
+ * <p/>
+ * Instâncias são imutáveis e podem ser compartilhadas entre threads.
+ */
+public class FiltroNucleos {
+
+    private final long[] bits;
+
+    private final long tamanhoBits;
+
+    private final int funcoes;
+
+    private final int quantidade;
+
+    private FiltroNucleos(final long[] bits, final long tamanhoBits, final int funcoes, final int quantidade) {
+        this.bits = bits;
+        this.tamanhoBits = tamanhoBits;
+        this.funcoes = funcoes;
+        this.quantidade = quantidade;
+    }
+
+    /**
+     * @param taxaFalsosPositivos proporção desejada de núcleos inválidos não filtrados, entre 0 e 1 (exclusive)
+     */
+    public static Construtor construtor(final double taxaFalsosPositivos) {
+        return new Construtor(taxaFalsosPositivos);
+    }
+
+    /**
+     * Carrega o filtro de um arquivo no formato de {@link IndicePerfil#carrega(Reader)}.
+     */
+    public static FiltroNucleos carrega(final Reader reader, final double taxaFalsosPositivos) throws IOException {
+        Construtor construtor = construtor(taxaFalsosPositivos);
+        BufferedReader br = new BufferedReader(reader);
+        String linha;
+        while ((linha = br.readLine()) != null) {
+            linha = linha.trim();
+            if (linha.length() > 0 && linha.charAt(0) != '#') {
+                construtor.adiciona(linha);
+            }
+        }
+        return construtor.constroi();
+    }
+
+    /**
+     * @return false se o núcleo certamente não é válido; true se pode ser válido
+     */
+    public boolean contemTalvez(final CharSequence nucleo) {
+        int tipo = indiceTipoPerfil(nucleo);
+        if (tipo >= 0 && Character.toUpperCase(nucleo.charAt(tipo)) == IndicePerfil.PERFIL_TODOS) {
+            // Válido no perfil "T" somente se válido em "D" e em "R"
+            StringBuilder chave = new StringBuilder(nucleo);
+            chave.setCharAt(tipo, IndicePerfil.PERFIL_DOCUMENTO_INDIVIDUAL);
+            if (!contemChave(chave)) {
+                return false;
+            }
+            chave.setCharAt(tipo, IndicePerfil.PERFIL_RELACIONAMENTO);
+            return contemChave(chave);
+        }
+        return contemChave(nucleo);
+    }
+
+    private boolean contemChave(final CharSequence nucleo) {
+        long h1 = hash(nucleo, 0);
+        long h2 = hash(nucleo, 1);
+        for (int i = 0; i < funcoes; i++) {
+            long bit = indice(h1, h2, i);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return número de núcleos incluídos (os do perfil "T" contam duas vezes)
+     */
+    public int getQuantidade() {
+        return quantidade;
+    }
+
+    /**
+     * @return tamanho do filtro em bytes
+     */
+    public long getTamanhoBytes() {
+        return bits.length * 8L;
+    }
+
+    /**
+     * @return posição do tipo de perfil (campo de um caractere após o idPublicador) ou -1 se não há esse campo
+     */
+    private static int indiceTipoPerfil(final CharSequence nucleo) {
+        for (int i = 0; i < nucleo.length(); i++) {
+            if (nucleo.charAt(i) == ':') {
+                return i + 2 < nucleo.length() && nucleo.charAt(i + 2) == ':' ? i + 1 : -1;
+            }
+        }
+        return -1;
+    }
+
+    private long indice(final long h1, final long h2, final int i) {
+        return ((h1 + i * h2) & Long.MAX_VALUE) % tamanhoBits;
+    }
+
+    // FNV-1a de 64 bits sobre os caracteres em minúsculas, seguido da finalização do MurmurHash3
+    private static long hash(final CharSequence s, final int semente) {
+        long h = 0xcbf29ce484222325L ^ (semente * 0x9e3779b97f4a7c15L);
+        for (int i = 0; i < s.length(); i++) {
+            h ^= Character.toLowerCase(s.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Acumula os núcleos e monta o {@link FiltroNucleos} dimensionado para a quantidade de núcleos adicionados.
+     */
+    public static class Construtor {
+
+        private final double taxaFalsosPositivos;
+
+        // Pares de hashes dos núcleos adicionados
+        private long[] hashes = new long[1024];
+
+        private int quantidade;
+
+        private Construtor(final double taxaFalsosPositivos) {
+            if (!(taxaFalsosPositivos > 0 && taxaFalsosPositivos < 1)) {
+                throw new IllegalArgumentException("Taxa de falsos positivos inválida: " + taxaFalsosPositivos);
+            }
+            this.taxaFalsosPositivos = taxaFalsosPositivos;
+        }
+
+        /**
+         * Adiciona um núcleo no formato ID_PUBLICADOR:TIPO_PERFIL:LOCALIDADE:AUTORIDADE:TIPO_DOCUMENTO.
+         */
+        public Construtor adiciona(final String nucleo) {
+            for (String chave : IndicePerfil.expande(nucleo)) {
+                adicionaHash(chave);
+            }
+            return this;
+        }
+
+        private void adicionaHash(final String nucleo) {
+            if (2 * quantidade + 2 > hashes.length) {
+                hashes = Arrays.copyOf(hashes, 2 * hashes.length);
+            }
+            hashes[2 * quantidade] = hash(nucleo, 0);
+            hashes[2 * quantidade + 1] = hash(nucleo, 1);
+            quantidade++;
+        }
+
+        public FiltroNucleos constroi() {
+            // m = -n ln(p) / ln(2)^2 bits e k = (m / n) ln(2) funções
+            int n = Math.max(quantidade, 1);
+            long tamanhoBits = Math.max(64,
+                (long) Math.ceil(-n * Math.log(taxaFalsosPositivos) / (Math.log(2) * Math.log(2))));
+            int funcoes = Math.max(1, (int) Math.round((double) tamanhoBits / n * Math.log(2)));
+            long[] bits = new long[(int) ((tamanhoBits + 63) >>> 6)];
+
+            FiltroNucleos filtro = new FiltroNucleos(bits, tamanhoBits, funcoes, quantidade);
+            for (int j = 0; j < quantidade; j++) {
+                long h1 = hashes[2 * j];
+                long h2 = hashes[2 * j + 1];
+                for (int i = 0; i < funcoes; i++) {
+                    long bit = filtro.indice(h1, h2, i);
+                    bits[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            return filtro;
+        }
+
+    }
+
+}
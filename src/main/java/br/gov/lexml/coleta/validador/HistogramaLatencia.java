@@ -0,0 +1,128 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latências com faixas em potências de 2 (em nanossegundos). O registro de uma medição custa
+ * apenas alguns incrementos atômicos; os percentis têm precisão de um fator 2.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class HistogramaLatencia {
+
+    private static final int FAIXAS = 64;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(FAIXAS);
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong maximo = new AtomicLong();
+
+    public void registra(final long duracaoNanos) {
+        long duracao = Math.max(duracaoNanos, 0);
+        contagens.incrementAndGet(faixa(duracao));
+        total.addAndGet(duracao);
+        long max = maximo.get();
+        while (duracao > max && !maximo.compareAndSet(max, duracao)) {
+            max = maximo.get();
+        }
+    }
+
+    public long getContagem() {
+        long contagem = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            contagem += contagens.get(i);
+        }
+        return contagem;
+    }
+
+    public long getTotalNanos() {
+        return total.get();
+    }
+
+    public long getMaximoNanos() {
+        return maximo.get();
+    }
+
+    public long getMediaNanos() {
+        long contagem = getContagem();
+        return contagem == 0 ? 0 : total.get() / contagem;
+    }
+
+    /**
+     * @param percentil entre 0 e 100
+     * @return limite superior da faixa que contém o percentil informado (0 se não há medições)
+     */
+    public long getPercentilNanos(final double percentil) {
+        long[] copia = new long[FAIXAS];
+        long contagem = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            copia[i] = contagens.get(i);
+            contagem += copia[i];
+        }
+        if (contagem == 0) {
+            return 0;
+        }
+        long alvo = (long) Math.ceil(contagem * Math.min(Math.max(percentil, 0), 100) / 100);
+        long acumulado = 0;
+        for (int i = 0; i < FAIXAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= alvo && acumulado > 0) {
+                return Math.min(limiteSuperior(i), maximo.get());
+            }
+        }
+        return maximo.get();
+    }
+
+    /**
+     * Acrescenta as medições de outro histograma.
+     */
+    public void soma(final HistogramaLatencia outro) {
+        for (int i = 0; i < FAIXAS; i++) {
+            contagens.addAndGet(i, outro.contagens.get(i));
+        }
+        total.addAndGet(outro.total.get());
+        long max = maximo.get();
+        while (outro.maximo.get() > max && !maximo.compareAndSet(max, outro.maximo.get())) {
+            max = maximo.get();
+        }
+    }
+
+    void grava(final DataOutput out) throws IOException {
+        for (int i = 0; i < FAIXAS; i++) {
+            out.writeLong(contagens.get(i));
+        }
+        out.writeLong(total.get());
+        out.writeLong(maximo.get());
+    }
+
+    static HistogramaLatencia le(final DataInput in) throws IOException {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (int i = 0; i < FAIXAS; i++) {
+            histograma.contagens.set(i, in.readLong());
+        }
+        histograma.total.set(in.readLong());
+        histograma.maximo.set(in.readLong());
+        return histograma;
+    }
+
+    // Faixa i contém as durações em [2^(i-1), 2^i); a faixa 0 contém somente 0
+    private static int faixa(final long duracao) {
+        return Math.min(FAIXAS - Long.numberOfLeadingZeros(duracao), FAIXAS - 1);
+    }
+
+    private static long limiteSuperior(final int faixa) {
+        return faixa >= FAIXAS - 1 ? Long.MAX_VALUE : (1L << faixa) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + getContagem() + " média=" + getMediaNanos() + "ns p50=" + getPercentilNanos(50) + "ns p99="
+            + getPercentilNanos(99) + "ns máx=" + getMaximoNanos() + "ns";
+    }
+
+}
@@ -0,0 +1,314 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Índice invertido dos núcleos consultados para os registros validados, que leva uma alteração de perfil aos
+ * registros que precisam ser revalidados.
+ * <p/>
+ * Cada registro depende apenas dos núcleos efetivamente consultados na sua validação: as demais consultas só
+ * acontecem se o resultado de um deles mudar. Um núcleo incluído no perfil afeta os registros que o consultaram
+ * com resultado inválido; um núcleo excluído, os que o consultaram com resultado válido.
+ * <p/>
+ * Núcleos e registros são codificados como inteiros: cada registro guarda o vetor ordenado dos núcleos
+ * consultados (id * 2 + resultado) e cada núcleo a lista dos registros que o consultaram. As listas não são
+ * alteradas quando um registro é revalidado; entradas obsoletas são descartadas nas consultas e removidas quando
+ * passam da metade do índice. Maiúsculas e minúsculas não são diferenciadas nas chaves, o que pode incluir
+ * registros a mais, nunca a menos.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class IndiceImpacto implements DestinoDependencias {
+
+    private static final int ASSINATURA = 0x4c58494d;
+
+    private static final int VERSAO = 1;
+
+    private static final int[] VAZIO = new int[0];
+
+    private final Map<String, Integer> idsNucleos = new HashMap<String, Integer>();
+
+    private final List<String> nucleos = new ArrayList<String>();
+
+    private final Map<String, Integer> idsRegistros = new HashMap<String, Integer>();
+
+    private final List<String> registros = new ArrayList<String>();
+
+    // Núcleos consultados por registro (id do núcleo * 2 + resultado), em ordem crescente
+    private int[][] consultas = new int[16][];
+
+    // Registros por núcleo e tamanho de cada lista
+    private int[][] listas = new int[16][];
+
+    private int[] tamanhos = new int[16];
+
+    private long entradas;
+
+    private long entradasValidas;
+
+    public synchronized void registra(final String idRegistroItem, final Map<String, Boolean> nucleosConsultados) {
+        int registro = getIdRegistro(idRegistroItem);
+        int[] anteriores = consultas[registro];
+        int[] atuais = new int[nucleosConsultados.size()];
+        int n = 0;
+        for (Map.Entry<String, Boolean> consulta : nucleosConsultados.entrySet()) {
+            atuais[n++] = getIdNucleo(normaliza(consulta.getKey())) * 2 + (consulta.getValue() ? 1 : 0);
+        }
+        Arrays.sort(atuais);
+        consultas[registro] = atuais;
+        entradasValidas += atuais.length - (anteriores == null ? 0 : anteriores.length);
+        for (int c : atuais) {
+            if (anteriores == null || resultado(anteriores, c >>> 1) < 0) {
+                adicionaLista(c >>> 1, registro);
+            }
+        }
+        if (entradas > 2 * entradasValidas + 1024) {
+            compacta();
+        }
+    }
+
+    /**
+     * Remove as dependências de um registro excluído da coleta.
+     */
+    public synchronized void remove(final String idRegistroItem) {
+        Integer registro = idsRegistros.get(idRegistroItem);
+        if (registro != null && consultas[registro] != null) {
+            entradasValidas -= consultas[registro].length;
+            consultas[registro] = VAZIO;
+        }
+    }
+
+    /**
+     * @return registros que consultaram algum dos núcleos, qualquer que tenha sido o resultado
+     */
+    public Set<String> afetados(final Collection<String> nucleosAlterados) {
+        return afetados(nucleosAlterados, nucleosAlterados);
+    }
+
+    /**
+     * @param incluidos chaves de {@link ValidadorService#isNucleoValido(String)} que passaram a ser válidas
+     * @param excluidos chaves que deixaram de ser válidas
+     * @return registros cujo resultado pode ter mudado, na ordem da primeira validação
+     */
+    public synchronized Set<String> afetados(final Collection<String> incluidos, final Collection<String> excluidos) {
+        Set<Integer> afetados = new HashSet<Integer>();
+        coletaAfetados(incluidos, 0, afetados);
+        coletaAfetados(excluidos, 1, afetados);
+        Integer[] ordenados = afetados.toArray(new Integer[afetados.size()]);
+        Arrays.sort(ordenados);
+        Set<String> ids = new LinkedHashSet<String>();
+        for (Integer registro : ordenados) {
+            ids.add(registros.get(registro));
+        }
+        return ids;
+    }
+
+    /**
+     * Compara duas versões de um arquivo de perfil no formato de {@link IndicePerfil#carrega(Reader)}.
+     *
+     * @return registros cujo resultado pode ter mudado
+     */
+    public Set<String> afetados(final Reader perfilAnterior, final Reader perfilNovo) throws IOException {
+        Set<String> anterior = leChaves(perfilAnterior);
+        Set<String> novo = leChaves(perfilNovo);
+        Set<String> incluidos = new HashSet<String>(novo);
+        incluidos.removeAll(anterior);
+        anterior.removeAll(novo);
+        return afetados(incluidos, anterior);
+    }
+
+    /**
+     * @return chaves consultadas pelo registro, com o resultado, ou null se o registro não está no índice
+     */
+    public synchronized Map<String, Boolean> getNucleos(final String idRegistroItem) {
+        Integer registro = idsRegistros.get(idRegistroItem);
+        if (registro == null || consultas[registro] == null) {
+            return null;
+        }
+        Map<String, Boolean> resultado = new HashMap<String, Boolean>();
+        for (int c : consultas[registro]) {
+            resultado.put(nucleos.get(c >>> 1), (c & 1) != 0);
+        }
+        return resultado;
+    }
+
+    public synchronized int getQuantidadeRegistros() {
+        return registros.size();
+    }
+
+    public synchronized int getQuantidadeNucleos() {
+        return nucleos.size();
+    }
+
+    /**
+     * Grava o índice em formato binário, lido por {@link #carrega(InputStream)}.
+     */
+    public synchronized void grava(final OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(os);
+        out.writeInt(ASSINATURA);
+        out.writeInt(VERSAO);
+        out.writeInt(nucleos.size());
+        for (String nucleo : nucleos) {
+            out.writeUTF(nucleo);
+        }
+        out.writeInt(registros.size());
+        for (int registro = 0; registro < registros.size(); registro++) {
+            out.writeUTF(registros.get(registro));
+            int[] c = consultas[registro] == null ? VAZIO : consultas[registro];
+            out.writeInt(c.length);
+            for (int i = 0; i < c.length; i++) {
+                out.writeInt(c[i]);
+            }
+        }
+        out.flush();
+    }
+
+    public static IndiceImpacto carrega(final InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(is);
+        if (in.readInt() != ASSINATURA || in.readInt() != VERSAO) {
+            throw new IOException("Formato de índice de impacto não suportado");
+        }
+        IndiceImpacto indice = new IndiceImpacto();
+        int quantidadeNucleos = in.readInt();
+        for (int i = 0; i < quantidadeNucleos; i++) {
+            indice.getIdNucleo(in.readUTF());
+        }
+        int quantidadeRegistros = in.readInt();
+        for (int i = 0; i < quantidadeRegistros; i++) {
+            int registro = indice.getIdRegistro(in.readUTF());
+            int[] c = new int[in.readInt()];
+            for (int j = 0; j < c.length; j++) {
+                c[j] = in.readInt();
+                if ((c[j] >>> 1) >= quantidadeNucleos) {
+                    throw new IOException("Índice de impacto corrompido");
+                }
+            }
+            indice.consultas[registro] = c;
+            indice.entradasValidas += c.length;
+        }
+        indice.compacta();
+        return indice;
+    }
+
+    private void coletaAfetados(final Collection<String> chaves, final int resultadoAnterior,
+                                final Set<Integer> afetados) {
+        for (String chave : chaves) {
+            for (String expandida : IndicePerfil.expande(chave)) {
+                Integer nucleo = idsNucleos.get(normaliza(expandida));
+                if (nucleo == null) {
+                    continue;
+                }
+                int[] lista = listas[nucleo];
+                for (int i = 0; i < tamanhos[nucleo]; i++) {
+                    if (resultado(consultas[lista[i]], nucleo) == resultadoAnterior) {
+                        afetados.add(lista[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return resultado da consulta do núcleo (0 ou 1) ou -1 se o núcleo não foi consultado
+     */
+    private static int resultado(final int[] consultas, final int nucleo) {
+        int i = Arrays.binarySearch(consultas, nucleo * 2);
+        if (i >= 0) {
+            return 0;
+        }
+        i = -i - 1;
+        return i < consultas.length && consultas[i] == nucleo * 2 + 1 ? 1 : -1;
+    }
+
+    private void adicionaLista(final int nucleo, final int registro) {
+        int[] lista = listas[nucleo];
+        if (lista == null) {
+            lista = new int[2];
+        }
+        else if (tamanhos[nucleo] == lista.length) {
+            lista = Arrays.copyOf(lista, 2 * lista.length);
+        }
+        lista[tamanhos[nucleo]++] = registro;
+        listas[nucleo] = lista;
+        entradas++;
+    }
+
+    /**
+     * Refaz as listas de registros por núcleo a partir dos núcleos consultados por registro.
+     */
+    private void compacta() {
+        Arrays.fill(listas, null);
+        Arrays.fill(tamanhos, 0);
+        entradas = 0;
+        for (int registro = 0; registro < registros.size(); registro++) {
+            if (consultas[registro] != null) {
+                for (int c : consultas[registro]) {
+                    adicionaLista(c >>> 1, registro);
+                }
+            }
+        }
+    }
+
+    private int getIdRegistro(final String idRegistroItem) {
+        Integer id = idsRegistros.get(idRegistroItem);
+        if (id == null) {
+            id = registros.size();
+            idsRegistros.put(idRegistroItem, id);
+            registros.add(idRegistroItem);
+            if (id == consultas.length) {
+                consultas = Arrays.copyOf(consultas, 2 * id);
+            }
+        }
+        return id;
+    }
+
+    private int getIdNucleo(final String nucleo) {
+        Integer id = idsNucleos.get(nucleo);
+        if (id == null) {
+            id = nucleos.size();
+            idsNucleos.put(nucleo, id);
+            nucleos.add(nucleo);
+            if (id == listas.length) {
+                listas = Arrays.copyOf(listas, 2 * id);
+                tamanhos = Arrays.copyOf(tamanhos, 2 * id);
+            }
+        }
+        return id;
+    }
+
+    private static String normaliza(final String chave) {
+        return chave.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static Set<String> leChaves(final Reader reader) throws IOException {
+        Set<String> chaves = new HashSet<String>();
+        BufferedReader br = new BufferedReader(reader);
+        String linha;
+        while ((linha = br.readLine()) != null) {
+            linha = linha.trim();
+            if (linha.length() > 0 && linha.charAt(0) != '#') {
+                for (String chave : IndicePerfil.expande(linha)) {
+                    chaves.add(normaliza(chave));
+                }
+            }
+        }
+        return chaves;
+    }
+
+}
@@ -0,0 +1,502 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Índice em memória dos núcleos válidos do perfil dos publicadores, alternativo às consultas
+ * {@link ValidadorService#isNucleoValido(String)}.
+ * <p/>
+ * Localidade, autoridade e tipo de documento são codificados em um dicionário de termos e cada núcleo é
+ * mantido em uma tabela hash de inteiros (idPublicador, localidade, autoridade, tipo), de forma que as
+ * consultas não alocam objetos. O perfil "T" (todos) é resolvido na carga: vale tanto para DocumentoIndividual
+ * ("D") quanto para Relacionamento ("R").
+ * <p/>
+ * O índice pode ser gravado em um arquivo binário ({@link #grava(File)}) e mapeado em memória somente para leitura
+ * ({@link #mapeia(File)}): as tabelas são consultadas diretamente no arquivo, sem cópia para o heap, e várias JVMs
+ * na mesma máquina compartilham as mesmas páginas do cache do sistema operacional.
+ * <p/>
+ * Instâncias são imutáveis e podem ser compartilhadas entre threads.
+ */
+public class IndicePerfil {
+
+    public static final char PERFIL_DOCUMENTO_INDIVIDUAL = 'D';
+    public static final char PERFIL_RELACIONAMENTO = 'R';
+    public static final char PERFIL_TODOS = 'T';
+
+    private static final int FLAG_DOCUMENTO_INDIVIDUAL = 1;
+    private static final int FLAG_RELACIONAMENTO = 2;
+
+    private static final int CAMPOS_ENTRADA = 5;
+
+    private static final int ASSINATURA = 0x4c585046;
+
+    private static final int VERSAO_FORMATO = 1;
+
+    // Assinatura, formato, versão, núcleos, termos, caracteres, tamanho das tabelas e CRC-32 dos dados
+    private static final int TAMANHO_CABECALHO = 40;
+
+    // Dicionário de termos: caracteres concatenados, início de cada termo e tabela hash (id do termo + 1)
+    private final CharBuffer caracteres;
+    private final IntBuffer inicioTermo;
+    private final IntBuffer tabelaTermos;
+
+    // Tabela hash de núcleos: idPublicador, localidade, autoridade, tipo e flags de perfil (0 = posição livre)
+    private final IntBuffer tabelaNucleos;
+
+    private final int quantidadeNucleos;
+
+    private final long versao;
+
+    private IndicePerfil(final CharBuffer caracteres, final IntBuffer inicioTermo, final IntBuffer tabelaTermos,
+                         final IntBuffer tabelaNucleos, final int quantidadeNucleos, final long versao) {
+        this.caracteres = caracteres;
+        this.inicioTermo = inicioTermo;
+        this.tabelaTermos = tabelaTermos;
+        this.tabelaNucleos = tabelaNucleos;
+        this.quantidadeNucleos = quantidadeNucleos;
+        this.versao = versao;
+    }
+
+    public static Construtor construtor() {
+        return new Construtor();
+    }
+
+    /**
+     * Carrega o índice de um arquivo com um núcleo por linha no formato de
+     * {@link ValidadorService#isNucleoValido(String)}: ID_PUBLICADOR:TIPO_PERFIL:LOCALIDADE:AUTORIDADE:TIPO_DOCUMENTO.
+     * Linhas vazias ou iniciadas por "#" são ignoradas.
+     */
+    public static IndicePerfil carrega(final Reader reader) throws IOException {
+        Construtor construtor = construtor();
+        BufferedReader br = new BufferedReader(reader);
+        String linha;
+        while ((linha = br.readLine()) != null) {
+            linha = linha.trim();
+            if (linha.length() > 0 && linha.charAt(0) != '#') {
+                construtor.adiciona(linha);
+            }
+        }
+        return construtor.constroi();
+    }
+
+    /**
+     * Mapeia em memória, somente para leitura, um índice gravado por {@link #grava(File)}. O conteúdo do arquivo é
+     * conferido (CRC-32) e as consultas passam a ler diretamente as páginas mapeadas. O mapeamento é liberado quando
+     * o índice deixa de ser referenciado; por isso o arquivo deve ser substituído (como em {@link #grava(File)}) e
+     * nunca reescrito no lugar.
+     */
+    public static IndicePerfil mapeia(final File arquivo) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(arquivo, "r");
+        MappedByteBuffer dados;
+        try {
+            FileChannel canal = raf.getChannel();
+            if (canal.size() < TAMANHO_CABECALHO || canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Arquivo de perfil inválido: " + arquivo);
+            }
+            dados = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        finally {
+            raf.close();
+        }
+
+        if (dados.getInt(0) != ASSINATURA || dados.getInt(4) != VERSAO_FORMATO) {
+            throw new IOException("Formato de arquivo de perfil não suportado: " + arquivo);
+        }
+        long versao = dados.getLong(8);
+        int quantidadeNucleos = dados.getInt(16);
+        int termos = dados.getInt(20);
+        int totalCaracteres = dados.getInt(24);
+        int capacidadeTermos = dados.getInt(28);
+        int capacidadeNucleos = dados.getInt(32);
+        long tamanho = tamanhoArquivo(termos, totalCaracteres, capacidadeTermos, capacidadeNucleos);
+        if (quantidadeNucleos < 0 || termos < 0 || totalCaracteres < 0 || !isPotenciaDe2(capacidadeTermos)
+            || !isPotenciaDe2(capacidadeNucleos) || capacidadeTermos < 2 * termos
+            || capacidadeNucleos < 2 * quantidadeNucleos || tamanho != dados.capacity()) {
+            throw new IOException("Arquivo de perfil corrompido: " + arquivo);
+        }
+        CRC32 crc = new CRC32();
+        dados.position(TAMANHO_CABECALHO);
+        crc.update(dados);
+        if ((int) crc.getValue() != dados.getInt(36)) {
+            throw new IOException("Arquivo de perfil corrompido: " + arquivo);
+        }
+
+        dados.position(TAMANHO_CABECALHO);
+        IntBuffer inicioTermo = fatia(dados, termos + 1).asIntBuffer();
+        IntBuffer tabelaTermos = fatia(dados, capacidadeTermos).asIntBuffer();
+        IntBuffer tabelaNucleos = fatia(dados, capacidadeNucleos * CAMPOS_ENTRADA).asIntBuffer();
+        CharBuffer caracteres = dados.slice().asCharBuffer();
+        return new IndicePerfil(caracteres, inicioTermo, tabelaTermos, tabelaNucleos, quantidadeNucleos, versao);
+    }
+
+    /**
+     * Grava o índice no formato binário lido por {@link #mapeia(File)}. O arquivo é escrito ao lado do destino e
+     * então renomeado atomicamente sobre ele: índices já mapeados do arquivo anterior continuam válidos.
+     */
+    public void grava(final File arquivo) throws IOException {
+        int termos = inicioTermo.capacity() - 1;
+        int capacidadeNucleos = tabelaNucleos.capacity() / CAMPOS_ENTRADA;
+        long tamanho = tamanhoArquivo(termos, caracteres.capacity(), tabelaTermos.capacity(), capacidadeNucleos);
+        if (tamanho > Integer.MAX_VALUE) {
+            throw new IOException("Perfil grande demais para o formato binário: " + tamanho + " bytes");
+        }
+        ByteBuffer dados = ByteBuffer.allocate((int) tamanho);
+        dados.putInt(ASSINATURA).putInt(VERSAO_FORMATO).putLong(versao).putInt(quantidadeNucleos).putInt(termos)
+            .putInt(caracteres.capacity()).putInt(tabelaTermos.capacity()).putInt(capacidadeNucleos).putInt(0);
+        for (IntBuffer tabela : new IntBuffer[] {inicioTermo, tabelaTermos, tabelaNucleos }) {
+            for (int i = 0; i < tabela.capacity(); i++) {
+                dados.putInt(tabela.get(i));
+            }
+        }
+        for (int i = 0; i < caracteres.capacity(); i++) {
+            dados.putChar(caracteres.get(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(dados.array(), TAMANHO_CABECALHO, dados.capacity() - TAMANHO_CABECALHO);
+        dados.putInt(36, (int) crc.getValue());
+        dados.flip();
+
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temporario, "rw");
+        try {
+            FileChannel canal = raf.getChannel();
+            canal.truncate(0);
+            while (dados.hasRemaining()) {
+                canal.write(dados);
+            }
+            canal.force(false);
+        }
+        finally {
+            raf.close();
+        }
+        Files.move(temporario.toPath(), arquivo.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return true se o arquivo começa com a assinatura do formato de {@link #grava(File)}
+     */
+    public static boolean isArquivoBinario(final File arquivo) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(arquivo, "r");
+        try {
+            return raf.length() >= TAMANHO_CABECALHO && raf.readInt() == ASSINATURA;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static long tamanhoArquivo(final int termos, final int totalCaracteres, final int capacidadeTermos,
+                                       final int capacidadeNucleos) {
+        return TAMANHO_CABECALHO + 4L * (termos + 1) + 4L * capacidadeTermos
+            + 4L * CAMPOS_ENTRADA * capacidadeNucleos + 2L * totalCaracteres;
+    }
+
+    private static boolean isPotenciaDe2(final int n) {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    /**
+     * Retorna os próximos n inteiros do buffer, avançando a posição.
+     */
+    private static ByteBuffer fatia(final ByteBuffer dados, final int n) {
+        ByteBuffer fatia = dados.slice();
+        fatia.limit(4 * n);
+        dados.position(dados.position() + 4 * n);
+        return fatia;
+    }
+
+    /**
+     * Consulta no formato de {@link ValidadorService#isNucleoValido(String)}.
+     */
+    public boolean isNucleoValido(final String nucleo) {
+        String[] part = StringUtils.splitPreserveAllTokens(nucleo, ':');
+        if (part.length != 5 || part[1].length() != 1) {
+            return false;
+        }
+        try {
+            return isNucleoValido(Integer.parseInt(part[0]), part[1].charAt(0), part[2], part[3], part[4]);
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public boolean isNucleoValido(final int idPublicador, final char tipoPerfil, final CharSequence localidade,
+                                  final CharSequence autoridade, final CharSequence tipoDocumento) {
+        return isNucleoValido(idPublicador, tipoPerfil, localidade, 0, localidade.length(), autoridade, 0,
+            autoridade.length(), tipoDocumento, 0, tipoDocumento.length());
+    }
+
+    /**
+     * Verifica se o núcleo existe no perfil do publicador para o tipo de perfil informado ("D" ou "R"),
+     * considerando também o perfil "T". Uma consulta pelo perfil "T" exige o núcleo nos dois perfis (informado como
+     * "T" ou como "D" e "R"). Cada componente é informado como um trecho [inicio, fim) de uma
+     * sequência de caracteres, o que permite consultar diretamente trechos da URN sem criar Strings.
+     */
+    public boolean isNucleoValido(final int idPublicador, final char tipoPerfil, final CharSequence localidade,
+                                  final int iniLocalidade, final int fimLocalidade, final CharSequence autoridade,
+                                  final int iniAutoridade, final int fimAutoridade, final CharSequence tipoDocumento,
+                                  final int iniTipo, final int fimTipo) {
+        int flag = getFlag(tipoPerfil);
+        if (flag == 0) {
+            return false;
+        }
+        int loc = getIdTermo(localidade, iniLocalidade, fimLocalidade);
+        if (loc < 0) {
+            return false;
+        }
+        int aut = getIdTermo(autoridade, iniAutoridade, fimAutoridade);
+        if (aut < 0) {
+            return false;
+        }
+        int tipo = getIdTermo(tipoDocumento, iniTipo, fimTipo);
+        if (tipo < 0) {
+            return false;
+        }
+        int pos = posicaoNucleo(tabelaNucleos, idPublicador, loc, aut, tipo);
+        return (tabelaNucleos.get(pos + 4) & flag) == flag;
+    }
+
+    public int getQuantidadeNucleos() {
+        return quantidadeNucleos;
+    }
+
+    /**
+     * @return versão do perfil informada em {@link Construtor#versao(long)}, gravada junto com o índice
+     */
+    public long getVersao() {
+        return versao;
+    }
+
+    /**
+     * Retorna as chaves de {@link ValidadorService#isNucleoValido(String)} cobertas por um núcleo do perfil no
+     * formato ID_PUBLICADOR:TIPO_PERFIL:LOCALIDADE:AUTORIDADE:TIPO_DOCUMENTO: o perfil "T" é expandido em "D" e "R".
+     */
+    static String[] expande(final String nucleo) {
+        String[] part = StringUtils.splitPreserveAllTokens(nucleo, ':');
+        if (part.length != 5) {
+            throw new IllegalArgumentException("Núcleo inválido: " + nucleo);
+        }
+        if (!part[1].equalsIgnoreCase(String.valueOf(PERFIL_TODOS))) {
+            return new String[] {nucleo };
+        }
+        String sufixo = ":" + part[2] + ":" + part[3] + ":" + part[4];
+        return new String[] {part[0] + ":" + PERFIL_DOCUMENTO_INDIVIDUAL + sufixo,
+                             part[0] + ":" + PERFIL_RELACIONAMENTO + sufixo };
+    }
+
+    private int getIdTermo(final CharSequence s, final int ini, final int fim) {
+        int mascara = tabelaTermos.capacity() - 1;
+        int i = espalha(hash(s, ini, fim)) & mascara;
+        while (true) {
+            int id = tabelaTermos.get(i) - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (igual(id, s, ini, fim)) {
+                return id;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    private boolean igual(final int id, final CharSequence s, final int ini, final int fim) {
+        int inicio = inicioTermo.get(id);
+        if (inicioTermo.get(id + 1) - inicio != fim - ini) {
+            return false;
+        }
+        for (int i = ini; i < fim; i++) {
+            if (caracteres.get(inicio++) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getFlag(final char tipoPerfil) {
+        switch (tipoPerfil) {
+            case PERFIL_DOCUMENTO_INDIVIDUAL:
+                return FLAG_DOCUMENTO_INDIVIDUAL;
+            case PERFIL_RELACIONAMENTO:
+                return FLAG_RELACIONAMENTO;
+            case PERFIL_TODOS:
+                return FLAG_DOCUMENTO_INDIVIDUAL | FLAG_RELACIONAMENTO;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Retorna a posição do núcleo na tabela ou a posição livre onde ele deve ser inserido.
+     */
+    private static int posicaoNucleo(final IntBuffer tabela, final int idPublicador, final int loc, final int aut,
+                                     final int tipo) {
+        int mascara = tabela.capacity() / CAMPOS_ENTRADA - 1;
+        int h = idPublicador;
+        h = 31 * h + loc;
+        h = 31 * h + aut;
+        h = 31 * h + tipo;
+        int i = espalha(h) & mascara;
+        while (true) {
+            int pos = i * CAMPOS_ENTRADA;
+            if (tabela.get(pos + 4) == 0
+                || (tabela.get(pos) == idPublicador && tabela.get(pos + 1) == loc && tabela.get(pos + 2) == aut
+                    && tabela.get(pos + 3) == tipo)) {
+                return pos;
+            }
+            i = (i + 1) & mascara;
+        }
+    }
+
+    private static int hash(final CharSequence s, final int ini, final int fim) {
+        // Mesmo cálculo de String.hashCode()
+        int h = 0;
+        for (int i = ini; i < fim; i++) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static int espalha(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static int capacidade(final int n) {
+        int c = 2;
+        while (c < 2 * n) {
+            c <<= 1;
+        }
+        return c;
+    }
+
+    /**
+     * Acumula os núcleos do perfil e monta o {@link IndicePerfil}.
+     */
+    public static class Construtor {
+
+        private final Map<String, Integer> termos = new HashMap<String, Integer>();
+
+        private final List<String> listaTermos = new ArrayList<String>();
+
+        private final List<int[]> nucleos = new ArrayList<int[]>();
+
+        private long versao;
+
+        private Construtor() {
+        }
+
+        /**
+         * Versão do perfil (por exemplo, o instante da extração), disponível em {@link IndicePerfil#getVersao()}.
+         */
+        public Construtor versao(final long versao) {
+            this.versao = versao;
+            return this;
+        }
+
+        /**
+         * Adiciona um núcleo no formato ID_PUBLICADOR:TIPO_PERFIL:LOCALIDADE:AUTORIDADE:TIPO_DOCUMENTO.
+         */
+        public Construtor adiciona(final String nucleo) {
+            String[] part = StringUtils.splitPreserveAllTokens(nucleo, ':');
+            if (part.length != 5) {
+                throw new IllegalArgumentException("Núcleo inválido: " + nucleo);
+            }
+            try {
+                return adiciona(Integer.parseInt(part[0]), part[1], part[2], part[3], part[4]);
+            }
+            catch (NumberFormatException e) {
+                throw new IllegalArgumentException("idPublicador inválido no núcleo: " + nucleo);
+            }
+        }
+
+        /**
+         * @param tipoPerfil "D" (DocumentoIndividual), "R" (Relacionamento) ou "T" (todos)
+         */
+        public Construtor adiciona(final int idPublicador, final String tipoPerfil, final String localidade,
+                                   final String autoridade, final String tipoDocumento) {
+            int flag = tipoPerfil.length() == 1 ? getFlag(Character.toUpperCase(tipoPerfil.charAt(0))) : 0;
+            if (flag == 0) {
+                throw new IllegalArgumentException("Tipo de perfil inválido: " + tipoPerfil);
+            }
+            nucleos.add(new int[] {idPublicador, getIdTermo(localidade), getIdTermo(autoridade),
+                                   getIdTermo(tipoDocumento), flag });
+            return this;
+        }
+
+        private int getIdTermo(final String termo) {
+            Integer id = termos.get(termo);
+            if (id == null) {
+                id = listaTermos.size();
+                termos.put(termo, id);
+                listaTermos.add(termo);
+            }
+            return id;
+        }
+
+        public IndicePerfil constroi() {
+            int totalCaracteres = 0;
+            for (String termo : listaTermos) {
+                totalCaracteres += termo.length();
+            }
+            char[] caracteres = new char[totalCaracteres];
+            int[] inicioTermo = new int[listaTermos.size() + 1];
+            int[] tabelaTermos = new int[capacidade(listaTermos.size())];
+            int pos = 0;
+            for (int id = 0; id < listaTermos.size(); id++) {
+                String termo = listaTermos.get(id);
+                termo.getChars(0, termo.length(), caracteres, pos);
+                inicioTermo[id] = pos;
+                pos += termo.length();
+                int mascara = tabelaTermos.length - 1;
+                int i = espalha(termo.hashCode()) & mascara;
+                while (tabelaTermos[i] != 0) {
+                    i = (i + 1) & mascara;
+                }
+                tabelaTermos[i] = id + 1;
+            }
+            inicioTermo[listaTermos.size()] = pos;
+
+            IntBuffer tabelaNucleos = IntBuffer.allocate(capacidade(nucleos.size()) * CAMPOS_ENTRADA);
+            int quantidade = 0;
+            for (int[] n : nucleos) {
+                int p = posicaoNucleo(tabelaNucleos, n[0], n[1], n[2], n[3]);
+                if (tabelaNucleos.get(p + 4) == 0) {
+                    quantidade++;
+                    tabelaNucleos.put(p, n[0]);
+                    tabelaNucleos.put(p + 1, n[1]);
+                    tabelaNucleos.put(p + 2, n[2]);
+                    tabelaNucleos.put(p + 3, n[3]);
+                }
+                tabelaNucleos.put(p + 4, tabelaNucleos.get(p + 4) | n[4]);
+            }
+
+            return new IndicePerfil(CharBuffer.wrap(caracteres), IntBuffer.wrap(inicioTermo),
+                IntBuffer.wrap(tabelaTermos), tabelaNucleos, quantidade, versao);
+        }
+
+    }
+
+}
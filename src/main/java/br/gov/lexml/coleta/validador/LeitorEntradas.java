@@ -0,0 +1,301 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Leitura das entradas da validação em massa ({@link ValidadorEmMassa} e {@link ValidadorParticionado}):
+ * diretórios (recursivamente, em ordem alfabética: arquivos .xml, .zip e .gz), arquivos .zip e .gz, respostas
+ * ListRecords do OAI-PMH e arquivos com um registro LexML cada. O conteúdo é entregue ao {@link Destino}.
+ * <p/>
+ * Os arquivos são lidos por NIO, mapeados em memória quando possível. Cada arquivo (ou entrada de arquivo zip) é
+ * informado em {@link Destino#inicia(String)} na ordem de leitura, inclusive os que não puderam ser abertos, de modo
+ * que a posição de cada arquivo é a mesma em todas as leituras das mesmas entradas.
+ */
+class LeitorEntradas {
+
+    // Arquivos menores são lidos para a memória; o mapeamento só compensa para arquivos maiores
+    private static final int TAMANHO_MINIMO_MAPEAMENTO = 64 * 1024;
+
+    // Bytes examinados para distinguir uma resposta ListRecords de um registro
+    private static final int TAMANHO_INICIO = 4096;
+
+    private final Destino destino;
+
+    LeitorEntradas(final Destino destino) {
+        this.destino = destino;
+    }
+
+    /**
+     * Lê um diretório ou um arquivo. Falhas de leitura de um arquivo são informadas ao destino sem interromper a
+     * leitura dos demais.
+     */
+    void le(final File entrada) throws IOException {
+        if (entrada.isDirectory()) {
+            final List<Path> arquivos = new ArrayList<Path>();
+            final Map<Path, IOException> falhas = new HashMap<Path, IOException>();
+            Files.walkFileTree(entrada.toPath(), new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult visitFile(final Path arquivo, final BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && getExtensao(arquivo.toString()) != null) {
+                        arquivos.add(arquivo);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path arquivo, final IOException e) {
+                    // Arquivo ou subdiretório inacessível: informado na ordem dos demais, sem interromper a leitura
+                    arquivos.add(arquivo);
+                    falhas.put(arquivo, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            Collections.sort(arquivos);
+            for (Path arquivo : arquivos) {
+                IOException falha = falhas.get(arquivo);
+                if (falha == null) {
+                    leArquivo(arquivo);
+                }
+                else if (destino.inicia(arquivo.toString())) {
+                    destino.falhaLeitura(arquivo.toString(), falha);
+                }
+            }
+        }
+        else if (entrada.isFile()) {
+            leArquivo(entrada.toPath());
+        }
+        else {
+            throw new IOException("Arquivo não encontrado: " + entrada);
+        }
+    }
+
+    private void leArquivo(final Path caminho) throws IOException {
+        String nome = caminho.toString();
+        if (".zip".equals(getExtensao(nome))) {
+            leZip(caminho.toFile());
+            return;
+        }
+        if (!destino.inicia(nome)) {
+            return;
+        }
+        try {
+            FileChannel canal = FileChannel.open(caminho, StandardOpenOption.READ);
+            try {
+                if (".gz".equals(getExtensao(nome))) {
+                    leStream(nome, new GZIPInputStream(Channels.newInputStream(canal), 1 << 16));
+                }
+                else if (canal.size() > Integer.MAX_VALUE) {
+                    leStream(nome, Channels.newInputStream(canal));
+                }
+                else {
+                    leBuffer(nome, le(canal));
+                }
+            }
+            finally {
+                canal.close();
+            }
+        }
+        catch (IOException e) {
+            destino.falhaLeitura(nome, e);
+        }
+    }
+
+    private void leZip(final File arquivoZip) throws IOException {
+        ZipFile zip;
+        try {
+            zip = new ZipFile(arquivoZip);
+        }
+        catch (IOException e) {
+            if (destino.inicia(arquivoZip.getPath())) {
+                destino.falhaLeitura(arquivoZip.getPath(), e);
+            }
+            return;
+        }
+        try {
+            Enumeration<? extends ZipEntry> entradas = zip.entries();
+            while (entradas.hasMoreElements()) {
+                ZipEntry entrada = entradas.nextElement();
+                String extensao = getExtensao(entrada.getName());
+                if (entrada.isDirectory() || extensao == null || ".zip".equals(extensao)) {
+                    continue;
+                }
+                String nome = arquivoZip + "!/" + entrada.getName();
+                if (!destino.inicia(nome)) {
+                    continue;
+                }
+                InputStream is = null;
+                try {
+                    is = zip.getInputStream(entrada);
+                    leStream(nome, ".gz".equals(extensao) ? new GZIPInputStream(is, 1 << 16) : is);
+                }
+                catch (IOException e) {
+                    destino.falhaLeitura(nome, e);
+                }
+                finally {
+                    IOUtils.closeQuietly(is);
+                }
+            }
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    private void leStream(final String nome, final InputStream is) throws IOException {
+        BufferedInputStream bis = new BufferedInputStream(is, 1 << 16);
+        bis.mark(TAMANHO_INICIO);
+        byte[] bytesInicio = new byte[TAMANHO_INICIO];
+        int n = IOUtils.read(bis, bytesInicio);
+        bis.reset();
+        if (isListRecords(bytesInicio, n)) {
+            destino.listRecords(nome, bis);
+            return;
+        }
+        String idRegistroItem = getIdRegistroItem(nome);
+        if (destino.aceitaRegistro(idRegistroItem)) {
+            destino.registro(nome, idRegistroItem, ByteBuffer.wrap(IOUtils.toByteArray(bis)));
+        }
+    }
+
+    private void leBuffer(final String nome, final ByteBuffer xml) throws IOException {
+        byte[] bytesInicio = new byte[Math.min(TAMANHO_INICIO, xml.remaining())];
+        xml.duplicate().get(bytesInicio);
+        if (isListRecords(bytesInicio, bytesInicio.length)) {
+            destino.listRecords(nome, new ByteBufferInputStream(xml));
+            return;
+        }
+        String idRegistroItem = getIdRegistroItem(nome);
+        if (destino.aceitaRegistro(idRegistroItem)) {
+            destino.registro(nome, idRegistroItem, xml);
+        }
+    }
+
+    private static ByteBuffer le(final FileChannel canal) throws IOException {
+        long tamanho = canal.size();
+        if (tamanho >= TAMANHO_MINIMO_MAPEAMENTO) {
+            // O mapeamento continua válido após o fechamento do canal
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanho);
+        }
+        ByteBuffer xml = ByteBuffer.allocate((int) tamanho);
+        while (xml.hasRemaining() && canal.read(xml) >= 0) {
+            continue;
+        }
+        xml.flip();
+        return xml;
+    }
+
+    /**
+     * Verifica se o elemento raiz é OAI-PMH (ou ListRecords), ignorando a declaração XML, comentários e DOCTYPE.
+     */
+    static boolean isListRecords(final byte[] inicio, final int tamanho) {
+        int i = 0;
+        while (i < tamanho) {
+            if (inicio[i] != '<') {
+                i++;
+                continue;
+            }
+            if (i + 1 < tamanho && (inicio[i + 1] == '?' || inicio[i + 1] == '!')) {
+                i += 2;
+                continue;
+            }
+            int fim = i + 1;
+            while (fim < tamanho && inicio[fim] != '>' && inicio[fim] != '/' && inicio[fim] > ' ') {
+                fim++;
+            }
+            String nome = new String(inicio, i + 1, fim - i - 1);
+            int doisPontos = nome.indexOf(':');
+            nome = doisPontos < 0 ? nome : nome.substring(doisPontos + 1);
+            return "OAI-PMH".equals(nome) || "ListRecords".equals(nome);
+        }
+        return false;
+    }
+
+    /**
+     * @return extensão tratada (".xml", ".zip" ou ".gz") do nome do arquivo ou null
+     */
+    static String getExtensao(final String nome) {
+        String minusculo = nome.toLowerCase(Locale.ENGLISH);
+        for (String extensao : new String[] {".xml", ".zip", ".gz" }) {
+            if (minusculo.endsWith(extensao)) {
+                return extensao;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Nome do arquivo sem diretório e sem as extensões .gz e .xml.
+     */
+    static String getIdRegistroItem(final String nome) {
+        String id = nome.substring(Math.max(nome.lastIndexOf('/'), nome.lastIndexOf(File.separatorChar)) + 1);
+        for (String extensao : new String[] {".gz", ".xml" }) {
+            if (id.toLowerCase(Locale.ENGLISH).endsWith(extensao)) {
+                id = id.substring(0, id.length() - extensao.length());
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Recebe o conteúdo das entradas, na ordem de leitura e na thread que chama {@link LeitorEntradas#le(File)}.
+     */
+    interface Destino {
+
+        /**
+         * Início de um arquivo ou entrada de arquivo zip, antes da leitura (ou da falha de leitura).
+         *
+         * @return false para não ler o arquivo
+         */
+        boolean inicia(String nome);
+
+        /**
+         * Chamado para arquivos com um único registro, antes da leitura do restante do arquivo.
+         *
+         * @param idRegistroItem identificador do registro, o nome do arquivo sem extensões
+         * @return false para não ler o registro
+         */
+        boolean aceitaRegistro(String idRegistroItem);
+
+        /**
+         * Arquivo com um único registro, aceito em {@link #aceitaRegistro(String)}.
+         */
+        void registro(String nome, String idRegistroItem, ByteBuffer xml) throws IOException;
+
+        /**
+         * Resposta ListRecords, lida pelo destino.
+         */
+        void listRecords(String nome, InputStream is) throws IOException;
+
+        /**
+         * Falha na leitura do arquivo iniciado.
+         */
+        void falhaLeitura(String nome, IOException e);
+
+    }
+
+}
@@ -0,0 +1,157 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Lê uma resposta ListRecords do OAI-PMH registro a registro (StAX), separando o identificador do header e o
+ * XML LexML do metadado (em UTF-8) sem carregar a resposta inteira em memória. Registros sem metadado (excluídos) são
+ * ignorados.
+ */
+public class LeitorListRecords {
+
+    static final String NS_OAI = "http://www.openarchives.org/OAI/2.0/";
+
+    private static final XMLInputFactory inputFactory;
+
+    private static final XMLOutputFactory outputFactory;
+
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        outputFactory = XMLOutputFactory.newInstance();
+        outputFactory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, Boolean.TRUE);
+    }
+
+    private final XMLStreamReader reader;
+
+    private String identificador;
+
+    public LeitorListRecords(final InputStream is) throws XMLStreamException {
+        reader = inputFactory.createXMLStreamReader(is);
+    }
+
+    /**
+     * @return o próximo registro com metadado ou null ao final da resposta
+     */
+    public RegistroItem proximo() throws XMLStreamException {
+        return avanca() ? new RegistroItem(identificador, leMetadado()) : null;
+    }
+
+    /**
+     * Avança até o metadado do próximo registro, sem lê-lo: o metadado pode ser lido com {@link #leMetadado()} ou
+     * ignorado com uma nova chamada a avanca.
+     *
+     * @return false ao final da resposta
+     */
+    boolean avanca() throws XMLStreamException {
+        identificador = null;
+        while (reader.hasNext()) {
+            int evento = reader.next();
+            if (evento != XMLStreamConstants.START_ELEMENT || !NS_OAI.equals(reader.getNamespaceURI())) {
+                continue;
+            }
+            String nome = reader.getLocalName();
+            if ("record".equals(nome)) {
+                identificador = null;
+            }
+            else if ("identifier".equals(nome) && identificador == null) {
+                identificador = reader.getElementText().trim();
+            }
+            else if ("metadata".equals(nome)) {
+                if (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return identificador do registro em que o leitor está posicionado por {@link #avanca()}
+     */
+    String getIdentificador() {
+        return identificador;
+    }
+
+    /**
+     * @return XML do metadado do registro em que o leitor está posicionado por {@link #avanca()}
+     */
+    byte[] leMetadado() throws XMLStreamException {
+        return copiaElemento();
+    }
+
+    public void close() throws XMLStreamException {
+        reader.close();
+    }
+
+    /**
+     * Serializa o elemento corrente (e seus descendentes), declarando os namespaces herdados dos ancestrais.
+     */
+    private byte[] copiaElemento() throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        XMLStreamWriter writer = outputFactory.createXMLStreamWriter(out, "UTF-8");
+        int profundidade = 0;
+        while (true) {
+            switch (reader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    profundidade++;
+                    writer.writeStartElement(prefixo(reader.getPrefix()), reader.getLocalName(),
+                        uri(reader.getNamespaceURI()));
+                    for (int i = 0; i < reader.getNamespaceCount(); i++) {
+                        writer.writeNamespace(prefixo(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i));
+                    }
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        writer.writeAttribute(prefixo(reader.getAttributePrefix(i)),
+                            uri(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+                            reader.getAttributeValue(i));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    profundidade--;
+                    writer.writeEndElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case XMLStreamConstants.CDATA:
+                    writer.writeCData(reader.getText());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    writer.writeComment(reader.getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                    break;
+                default:
+                    break;
+            }
+            if (profundidade == 0) {
+                break;
+            }
+            reader.next();
+        }
+        writer.close();
+        return out.toByteArray();
+    }
+
+    private static String prefixo(final String prefixo) {
+        return prefixo == null ? "" : prefixo;
+    }
+
+    private static String uri(final String uri) {
+        return uri == null ? "" : uri;
+    }
+
+}
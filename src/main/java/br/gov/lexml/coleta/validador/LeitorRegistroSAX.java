@@ -0,0 +1,227 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Extrai os {@link DadosRegistro} durante o parse SAX, considerando apenas os filhos diretos do
+ * elemento raiz (equivalente às consultas XPath do motor DOM). Deve ser registrado também como
+ * {@link #PROPRIEDADE_LEXICAL_HANDLER}, para que comentários encerrem o texto do DocumentoIndividual como no DOM.
+ */
+class LeitorRegistroSAX extends DefaultHandler implements LexicalHandler {
+
+    static final String NS_LEXML = "http://www.lexml.gov.br/oai_lexml";
+
+    static final String PROPRIEDADE_LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+    private static final int NENHUM = 0;
+    private static final int DOCUMENTO_INDIVIDUAL = 1;
+    private static final int RELACIONAMENTO = 2;
+
+    private final StringBuilder texto = new StringBuilder();
+
+    private String urnDocumentoIndividual;
+
+    // Os idPublicador são mantidos como lidos e só convertidos em Leitura.getDados(), após a verificação dos erros
+    // de schema: um valor não numérico é informado como erro de schema, como no motor DOM
+    private final List<String> idPublicadoresItem = new ArrayList<String>();
+
+    private final List<String> idPublicadoresRelacionamento = new ArrayList<String>();
+
+    private final List<String> urnsRelacionamento = new ArrayList<String>();
+
+    private int profundidade;
+
+    private int elementoAtual;
+
+    private boolean documentoIndividualLido;
+
+    private String idPublicadorRelacionamento;
+
+    // null se não há limites a verificar
+    private ControleLimites controle;
+
+    void inicia() {
+        inicia(null);
+    }
+
+    void inicia(final ControleLimites controle) {
+        this.controle = controle;
+        if (controle != null) {
+            controle.iniciaLeitura();
+        }
+        urnDocumentoIndividual = "";
+        idPublicadoresItem.clear();
+        idPublicadoresRelacionamento.clear();
+        urnsRelacionamento.clear();
+        profundidade = 0;
+        elementoAtual = NENHUM;
+        documentoIndividualLido = false;
+        texto.setLength(0);
+    }
+
+    /**
+     * @return dados lidos, com os idPublicador ainda não convertidos
+     */
+    Leitura getLeitura() {
+        return new Leitura(urnDocumentoIndividual, new ArrayList<String>(idPublicadoresItem),
+            new ArrayList<String>(idPublicadoresRelacionamento), new ArrayList<String>(urnsRelacionamento));
+    }
+
+    /**
+     * @throws NumberFormatException se algum idPublicador não é numérico
+     */
+    DadosRegistro getDados() {
+        return getLeitura().getDados();
+    }
+
+    @Override
+    public void startElement(final String uri, final String localName, final String qName,
+                             final Attributes attributes) throws SAXException {
+        profundidade++;
+        if (controle != null) {
+            boolean lexml = profundidade == 2 && NS_LEXML.equals(uri);
+            controle.elemento(profundidade, lexml && "Item".equals(localName),
+                lexml && "Relacionamento".equals(localName));
+        }
+        if (profundidade == 2 && NS_LEXML.equals(uri)) {
+            if ("Item".equals(localName)) {
+                idPublicadoresItem.add(attributes.getValue("idPublicador"));
+            }
+            else if ("DocumentoIndividual".equals(localName) && !documentoIndividualLido) {
+                elementoAtual = DOCUMENTO_INDIVIDUAL;
+                texto.setLength(0);
+            }
+            else if ("Relacionamento".equals(localName)) {
+                elementoAtual = RELACIONAMENTO;
+                idPublicadorRelacionamento = attributes.getValue("idPublicador");
+                texto.setLength(0);
+            }
+        }
+        else if (profundidade > 2 && elementoAtual == DOCUMENTO_INDIVIDUAL) {
+            encerraPrimeiroTexto();
+        }
+    }
+
+    @Override
+    public void endElement(final String uri, final String localName, final String qName) {
+        if (profundidade == 2) {
+            if (elementoAtual == DOCUMENTO_INDIVIDUAL) {
+                encerraDocumentoIndividual();
+            }
+            else if (elementoAtual == RELACIONAMENTO) {
+                idPublicadoresRelacionamento.add(idPublicadorRelacionamento);
+                urnsRelacionamento.add(texto.toString().trim());
+                elementoAtual = NENHUM;
+            }
+        }
+        profundidade--;
+    }
+
+    @Override
+    public void characters(final char[] ch, final int start, final int length) {
+        if (elementoAtual == RELACIONAMENTO || elementoAtual == DOCUMENTO_INDIVIDUAL && profundidade == 2) {
+            texto.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void processingInstruction(final String target, final String data) {
+        encerraPrimeiroTexto();
+    }
+
+    public void comment(final char[] ch, final int start, final int length) {
+        encerraPrimeiroTexto();
+    }
+
+    public void startDTD(final String name, final String publicId, final String systemId) {
+    }
+
+    public void endDTD() {
+    }
+
+    public void startEntity(final String name) {
+    }
+
+    public void endEntity(final String name) {
+    }
+
+    public void startCDATA() {
+    }
+
+    public void endCDATA() {
+    }
+
+    /**
+     * Somente o primeiro nó texto do DocumentoIndividual é considerado (lexml:DocumentoIndividual/text()): um
+     * comentário, instrução de processamento ou elemento encerra o texto já lido; se ainda não há texto, o primeiro
+     * nó texto é o seguinte.
+     */
+    private void encerraPrimeiroTexto() {
+        if (elementoAtual == DOCUMENTO_INDIVIDUAL && texto.length() > 0) {
+            encerraDocumentoIndividual();
+        }
+    }
+
+    private void encerraDocumentoIndividual() {
+        urnDocumentoIndividual = texto.toString();
+        documentoIndividualLido = true;
+        elementoAtual = NENHUM;
+    }
+
+    private static Integer toInteger(final String val) {
+        if (!StringUtils.isEmpty(val)) {
+            return Integer.parseInt(val);
+        }
+        return null;
+    }
+
+    /**
+     * Dados de um registro como lidos do XML.
+     */
+    static class Leitura {
+
+        private final String urnDocumentoIndividual;
+
+        private final List<String> idPublicadoresItem;
+
+        private final List<String> idPublicadoresRelacionamento;
+
+        private final List<String> urnsRelacionamento;
+
+        Leitura(final String urnDocumentoIndividual, final List<String> idPublicadoresItem,
+                final List<String> idPublicadoresRelacionamento, final List<String> urnsRelacionamento) {
+            this.urnDocumentoIndividual = urnDocumentoIndividual;
+            this.idPublicadoresItem = idPublicadoresItem;
+            this.idPublicadoresRelacionamento = idPublicadoresRelacionamento;
+            this.urnsRelacionamento = urnsRelacionamento;
+        }
+
+        /**
+         * Converte os idPublicador. Deve ser chamado somente depois de verificados os erros de schema.
+         * 
+         * @throws NumberFormatException se algum idPublicador não é numérico
+         */
+        DadosRegistro getDados() {
+            DadosRegistro dados = new DadosRegistro();
+            dados.urnDocumentoIndividual = urnDocumentoIndividual;
+            for (String idPublicador : idPublicadoresItem) {
+                dados.idPublicadoresItem.add(toInteger(idPublicador));
+            }
+            for (int i = 0; i < urnsRelacionamento.size(); i++) {
+                dados.adicionaRelacionamento(toInteger(idPublicadoresRelacionamento.get(i)),
+                    urnsRelacionamento.get(i));
+            }
+            return dados;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package br.gov.lexml.coleta.validador;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Registro que excede um dos {@link LimitesValidacao} configurados, detectado durante a leitura do XML.
+ */
+public class LimiteExcedidoException extends SAXException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LimiteExcedidoException(final String mensagem) {
+        super(mensagem);
+    }
+
+    /**
+     * Procura a exceção entre as causas informadas: leituras interrompidas pelo limite de tempo chegam ao parser
+     * como IOException.
+     *
+     * @return a exceção encontrada ou null
+     */
+    static LimiteExcedidoException de(final Throwable t) {
+        Throwable causa = t;
+        for (int i = 0; causa != null && i < 10; i++) {
+            if (causa instanceof LimiteExcedidoException) {
+                return (LimiteExcedidoException) causa;
+            }
+            Throwable proxima = causa instanceof SAXException ? ((SAXException) causa).getException() : null;
+            causa = proxima != null ? proxima : causa.getCause();
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,182 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limites do custo da validação de um registro (ver {@link ValidadorRegistroItem#setLimitesValidacao}). Registros
+ * que excedem um limite são recusados assim que o excesso é detectado, com a regra
+ * {@link RegraValidacao#LIMITE_EXCEDIDO}, sem ler o restante do XML. O valor 0 indica ausência de limite.
+ * <p/>
+ * Os limites de profundidade e de quantidade de elementos são verificados durante a leitura SAX: com eles, o motor
+ * {@link MotorValidacao#DOM} é substituído pelo {@link MotorValidacao#STREAMING}, que produz os mesmos resultados.
+ * O limite de erros de schema não recusa o registro: a validação de schema é interrompida e o registro é
+ * informado como inválido (RV#3) com os primeiros erros encontrados.
+ * <p/>
+ * Instâncias são imutáveis e podem ser compartilhadas entre threads.
+ */
+public class LimitesValidacao {
+
+    public static final LimitesValidacao SEM_LIMITES = construtor().constroi();
+
+    private final long tamanhoMaximo;
+
+    private final int profundidadeMaxima;
+
+    private final int maximoElementos;
+
+    private final int maximoItens;
+
+    private final int maximoRelacionamentos;
+
+    private final int maximoErrosSchema;
+
+    private final long tempoMaximoNanos;
+
+    private LimitesValidacao(final Construtor c) {
+        tamanhoMaximo = c.tamanhoMaximo;
+        profundidadeMaxima = c.profundidadeMaxima;
+        maximoElementos = c.maximoElementos;
+        maximoItens = c.maximoItens;
+        maximoRelacionamentos = c.maximoRelacionamentos;
+        maximoErrosSchema = c.maximoErrosSchema;
+        tempoMaximoNanos = c.tempoMaximoNanos;
+    }
+
+    public static Construtor construtor() {
+        return new Construtor();
+    }
+
+    /**
+     * @return tamanho máximo do XML em bytes (em caracteres para XML informado como String)
+     */
+    public long getTamanhoMaximo() {
+        return tamanhoMaximo;
+    }
+
+    public int getProfundidadeMaxima() {
+        return profundidadeMaxima;
+    }
+
+    public int getMaximoElementos() {
+        return maximoElementos;
+    }
+
+    public int getMaximoItens() {
+        return maximoItens;
+    }
+
+    public int getMaximoRelacionamentos() {
+        return maximoRelacionamentos;
+    }
+
+    public int getMaximoErrosSchema() {
+        return maximoErrosSchema;
+    }
+
+    public long getTempoMaximoNanos() {
+        return tempoMaximoNanos;
+    }
+
+    /**
+     * @return se algum limite está configurado
+     */
+    public boolean isLimitado() {
+        return tamanhoMaximo > 0 || isEstrutural() || maximoErrosSchema > 0 || tempoMaximoNanos > 0;
+    }
+
+    /**
+     * @return se há limites verificados a cada elemento lido
+     */
+    boolean isEstrutural() {
+        return profundidadeMaxima > 0 || maximoElementos > 0 || maximoItens > 0 || maximoRelacionamentos > 0;
+    }
+
+    /**
+     * Acumula a configuração e monta os {@link LimitesValidacao}.
+     */
+    public static class Construtor {
+
+        private long tamanhoMaximo;
+
+        private int profundidadeMaxima;
+
+        private int maximoElementos;
+
+        private int maximoItens;
+
+        private int maximoRelacionamentos;
+
+        private int maximoErrosSchema;
+
+        private long tempoMaximoNanos;
+
+        private Construtor() {
+        }
+
+        /**
+         * @param tamanhoMaximo tamanho máximo do XML em bytes (em caracteres para XML informado como String).
+         *            Entradas em stream são lidas para a memória até esse tamanho.
+         */
+        public Construtor tamanhoMaximo(final long tamanhoMaximo) {
+            this.tamanhoMaximo = naoNegativo(tamanhoMaximo);
+            return this;
+        }
+
+        /**
+         * @param profundidadeMaxima profundidade máxima de aninhamento de elementos (o elemento raiz tem
+         *            profundidade 1)
+         */
+        public Construtor profundidadeMaxima(final int profundidadeMaxima) {
+            this.profundidadeMaxima = (int) naoNegativo(profundidadeMaxima);
+            return this;
+        }
+
+        /**
+         * @param maximoElementos número máximo de elementos do registro
+         */
+        public Construtor maximoElementos(final int maximoElementos) {
+            this.maximoElementos = (int) naoNegativo(maximoElementos);
+            return this;
+        }
+
+        public Construtor maximoItens(final int maximoItens) {
+            this.maximoItens = (int) naoNegativo(maximoItens);
+            return this;
+        }
+
+        public Construtor maximoRelacionamentos(final int maximoRelacionamentos) {
+            this.maximoRelacionamentos = (int) naoNegativo(maximoRelacionamentos);
+            return this;
+        }
+
+        /**
+         * @param maximoErrosSchema número de erros de schema após o qual a validação de schema é interrompida
+         */
+        public Construtor maximoErrosSchema(final int maximoErrosSchema) {
+            this.maximoErrosSchema = (int) naoNegativo(maximoErrosSchema);
+            return this;
+        }
+
+        /**
+         * @param tempoMaximo tempo máximo de validação de um registro, incluindo a leitura do XML e as consultas de
+         *            núcleo (uma consulta em andamento não é interrompida)
+         */
+        public Construtor tempoMaximo(final long tempoMaximo, final TimeUnit unidade) {
+            this.tempoMaximoNanos = unidade.toNanos(naoNegativo(tempoMaximo));
+            return this;
+        }
+
+        public LimitesValidacao constroi() {
+            return new LimitesValidacao(this);
+        }
+
+        private static long naoNegativo(final long valor) {
+            if (valor < 0) {
+                throw new IllegalArgumentException("Limite inválido: " + valor);
+            }
+            return valor;
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link OuvinteValidacao} que acumula em memória contadores e histogramas de latência por fase, por
+ * {@link TipoErroValidacao} e por idPublicador.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class MetricasValidacao implements OuvinteValidacao {
+
+    private final HistogramaLatencia[] fases = criaHistogramas(FaseValidacao.values().length);
+
+    private final HistogramaLatencia registros = new HistogramaLatencia();
+
+    private final HistogramaLatencia validos = new HistogramaLatencia();
+
+    private final HistogramaLatencia[] erros = criaHistogramas(TipoErroValidacao.values().length);
+
+    private final AtomicLong[] regras = new AtomicLong[RegraValidacao.values().length];
+
+    private final HistogramaLatencia nucleos = new HistogramaLatencia();
+
+    private final AtomicLong nucleosInvalidos = new AtomicLong();
+
+    private final ConcurrentMap<Integer, MetricasPublicador> publicadores =
+        new ConcurrentHashMap<Integer, MetricasPublicador>();
+
+    public MetricasValidacao() {
+        for (int i = 0; i < regras.length; i++) {
+            regras[i] = new AtomicLong();
+        }
+    }
+
+    public void fase(final FaseValidacao fase, final long duracaoNanos) {
+        fases[fase.ordinal()].registra(duracaoNanos);
+    }
+
+    public void nucleo(final Integer idPublicador, final boolean valido, final long duracaoNanos) {
+        nucleos.registra(duracaoNanos);
+        if (!valido) {
+            nucleosInvalidos.incrementAndGet();
+        }
+        MetricasPublicador publicador = getOuCriaPublicador(idPublicador);
+        if (publicador != null) {
+            publicador.nucleos.registra(duracaoNanos);
+        }
+    }
+
+    public void registro(final String idRegistroItem, final Integer idPublicador, final RegraValidacao regra,
+                         final TipoErroValidacao tipoErro, final long duracaoNanos) {
+        registros.registra(duracaoNanos);
+        if (tipoErro == null) {
+            validos.registra(duracaoNanos);
+        }
+        else {
+            erros[tipoErro.ordinal()].registra(duracaoNanos);
+        }
+        if (regra != null) {
+            regras[regra.ordinal()].incrementAndGet();
+        }
+        MetricasPublicador publicador = getOuCriaPublicador(idPublicador);
+        if (publicador != null) {
+            publicador.registros.registra(duracaoNanos);
+            if (tipoErro != null) {
+                publicador.erros.incrementAndGet();
+            }
+        }
+    }
+
+    public HistogramaLatencia getFase(final FaseValidacao fase) {
+        return fases[fase.ordinal()];
+    }
+
+    /**
+     * @return duração da validação de todos os registros, válidos ou não
+     */
+    public HistogramaLatencia getRegistros() {
+        return registros;
+    }
+
+    public HistogramaLatencia getValidos() {
+        return validos;
+    }
+
+    public HistogramaLatencia getErros(final TipoErroValidacao tipoErro) {
+        return erros[tipoErro.ordinal()];
+    }
+
+    /**
+     * @return número de registros rejeitados pela regra
+     */
+    public long getViolacoes(final RegraValidacao regra) {
+        return regras[regra.ordinal()].get();
+    }
+
+    /**
+     * @return duração das consultas de núcleo (IndicePerfil ou ValidadorService.isNucleoValido)
+     */
+    public HistogramaLatencia getNucleos() {
+        return nucleos;
+    }
+
+    public long getNucleosInvalidos() {
+        return nucleosInvalidos.get();
+    }
+
+    /**
+     * @return publicadores com registros ou consultas de núcleo medidos, em ordem crescente
+     */
+    public Set<Integer> getIdPublicadores() {
+        return Collections.unmodifiableSet(new TreeSet<Integer>(publicadores.keySet()));
+    }
+
+    /**
+     * @return métricas do publicador ou null se não há medições para ele
+     */
+    public MetricasPublicador getPublicador(final Integer idPublicador) {
+        return publicadores.get(idPublicador);
+    }
+
+    private MetricasPublicador getOuCriaPublicador(final Integer idPublicador) {
+        if (idPublicador == null) {
+            return null;
+        }
+        MetricasPublicador publicador = publicadores.get(idPublicador);
+        if (publicador == null) {
+            publicador = new MetricasPublicador();
+            MetricasPublicador anterior = publicadores.putIfAbsent(idPublicador, publicador);
+            if (anterior != null) {
+                publicador = anterior;
+            }
+        }
+        return publicador;
+    }
+
+    private static HistogramaLatencia[] criaHistogramas(final int quantidade) {
+        HistogramaLatencia[] histogramas = new HistogramaLatencia[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            histogramas[i] = new HistogramaLatencia();
+        }
+        return histogramas;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("registros: ").append(registros).append('\n');
+        for (FaseValidacao fase : FaseValidacao.values()) {
+            sb.append(fase).append(": ").append(fases[fase.ordinal()]).append('\n');
+        }
+        sb.append("núcleos: ").append(nucleos).append(" inválidos=").append(nucleosInvalidos).append('\n');
+        for (TipoErroValidacao tipoErro : TipoErroValidacao.values()) {
+            HistogramaLatencia h = erros[tipoErro.ordinal()];
+            if (h.getContagem() > 0) {
+                sb.append(tipoErro).append(": ").append(h).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Métricas de um publicador: registros cujo primeiro Item é do publicador e consultas de núcleo feitas para
+     * ele.
+     */
+    public static class MetricasPublicador {
+
+        private final HistogramaLatencia registros = new HistogramaLatencia();
+
+        private final AtomicLong erros = new AtomicLong();
+
+        private final HistogramaLatencia nucleos = new HistogramaLatencia();
+
+        public HistogramaLatencia getRegistros() {
+            return registros;
+        }
+
+        public long getErros() {
+            return erros.get();
+        }
+
+        public HistogramaLatencia getNucleos() {
+            return nucleos;
+        }
+
+    }
+
+}
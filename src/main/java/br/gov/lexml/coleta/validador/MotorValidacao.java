@@ -0,0 +1,15 @@
+
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Forma de leitura do registro durante a validação.
+ */
+public enum MotorValidacao {
+
+    /** Monta o DOM do registro e consulta os elementos por XPath */
+    DOM,
+
+    /** Valida o schema e extrai os dados em uma única passada SAX, sem montar o DOM */
+    STREAMING;
+
+}
@@ -0,0 +1,138 @@
+
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Localiza o núcleo (localidade:autoridade:tipo-documento) de uma URN LexML sem criar Strings: os componentes
+ * são mantidos como posições na própria URN. A mesma instância pode ser reutilizada para várias URNs, mas não é
+ * thread-safe.
+ */
+class NucleoURN {
+
+    private static final String PREFIXO = "urn:lex:";
+
+    private CharSequence urn;
+
+    private int iniLocalidade;
+    private int fimLocalidade;
+    private int iniAutoridade;
+    private int fimAutoridade;
+    private int iniTipo;
+    private int fimTipo;
+
+    // Posição do primeiro ";" da autoridade e do tipo (-1 se não há núcleos reduzidos)
+    private int fimAutoridadeReduzida;
+    private int fimTipoReduzido;
+
+    /**
+     * Analisa a URN, que deve iniciar com "urn:lex:<localidade>:<autoridade>:<tipo-documento>" (equivalente a
+     * <code>urn.substring(8).split(":").length >= 3</code>).
+     *
+     * @return se a URN é estruturalmente válida
+     */
+    boolean analisa(final CharSequence urn) {
+        this.urn = urn;
+        fimAutoridadeReduzida = -1;
+        fimTipoReduzido = -1;
+
+        int tamanho = urn.length();
+        if (tamanho < PREFIXO.length()) {
+            return false;
+        }
+        for (int i = 0; i < PREFIXO.length(); i++) {
+            if (urn.charAt(i) != PREFIXO.charAt(i)) {
+                return false;
+            }
+        }
+
+        iniLocalidade = PREFIXO.length();
+        fimLocalidade = indexOf(urn, ':', iniLocalidade, tamanho);
+        if (fimLocalidade < 0) {
+            return false;
+        }
+        iniAutoridade = fimLocalidade + 1;
+        fimAutoridade = indexOf(urn, ':', iniAutoridade, tamanho);
+        if (fimAutoridade < 0) {
+            return false;
+        }
+        iniTipo = fimAutoridade + 1;
+        fimTipo = indexOf(urn, ':', iniTipo, tamanho);
+        if (fimTipo < 0) {
+            fimTipo = tamanho;
+        }
+
+        // O split descarta os campos vazios do final: é preciso haver algum caractere após o segundo ":"
+        boolean temTipo = false;
+        for (int i = iniTipo; i < tamanho && !temTipo; i++) {
+            temTipo = urn.charAt(i) != ':';
+        }
+        if (!temTipo) {
+            return false;
+        }
+
+        int pontoVirgulaAutoridade = indexOf(urn, ';', iniAutoridade, fimAutoridade);
+        int pontoVirgulaTipo = indexOf(urn, ';', iniTipo, fimTipo);
+        if (pontoVirgulaAutoridade >= 0 && pontoVirgulaTipo >= 0) {
+            fimAutoridadeReduzida = pontoVirgulaAutoridade;
+            fimTipoReduzido = pontoVirgulaTipo;
+        }
+
+        return true;
+    }
+
+    CharSequence getURN() {
+        return urn;
+    }
+
+    int getIniLocalidade() {
+        return iniLocalidade;
+    }
+
+    int getFimLocalidade() {
+        return fimLocalidade;
+    }
+
+    int getIniAutoridade() {
+        return iniAutoridade;
+    }
+
+    /**
+     * @return fim da autoridade ou da autoridade reduzida (-1 se a URN não tem núcleos reduzidos)
+     */
+    int getFimAutoridade(final boolean reduzida) {
+        return reduzida ? fimAutoridadeReduzida : fimAutoridade;
+    }
+
+    int getIniTipo() {
+        return iniTipo;
+    }
+
+    /**
+     * @return fim do tipo de documento ou do tipo reduzido (-1 se a URN não tem núcleos reduzidos)
+     */
+    int getFimTipo(final boolean reduzido) {
+        return reduzido ? fimTipoReduzido : fimTipo;
+    }
+
+    boolean temNucleosReduzidos() {
+        return fimAutoridadeReduzida >= 0;
+    }
+
+    /**
+     * Acrescenta ao StringBuilder o núcleo localidade:autoridade:tipo, com autoridade e/ou tipo reduzidos.
+     */
+    void appendNucleo(final StringBuilder sb, final boolean autoridadeReduzida, final boolean tipoReduzido) {
+        sb.append(urn, iniLocalidade, fimLocalidade).append(':');
+        sb.append(urn, iniAutoridade, getFimAutoridade(autoridadeReduzida)).append(':');
+        sb.append(urn, iniTipo, getFimTipo(tipoReduzido));
+    }
+
+    private static int indexOf(final CharSequence s, final char c, final int ini, final int fim) {
+        for (int i = ini; i < fim; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
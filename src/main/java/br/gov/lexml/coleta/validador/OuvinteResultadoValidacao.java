@@ -0,0 +1,14 @@
+
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Recebe os resultados da validação em lote à medida que são concluídos.
+ */
+public interface OuvinteResultadoValidacao {
+
+    /**
+     * Chamado na thread que iniciou a validação em lote, na ordem em que os registros são concluídos.
+     */
+    void resultado(ResultadoValidacao resultado);
+
+}
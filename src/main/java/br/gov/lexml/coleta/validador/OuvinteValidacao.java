@@ -0,0 +1,32 @@
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Recebe as medições da validação de cada registro (ver {@link ValidadorRegistroItem#setOuvinteValidacao}). Os
+ * métodos são chamados na thread de validação e devem ser rápidos e thread-safe.
+ * <p/>
+ * Implementações: {@link MetricasValidacao} (contadores e histogramas em memória) e OuvinteJFR (eventos do JDK
+ * Flight Recorder, distribuído no artefato com classificador jfr; ver o perfil jfr do pom).
+ */
+public interface OuvinteValidacao {
+
+    /**
+     * Conclusão de uma fase da validação de um registro.
+     */
+    void fase(FaseValidacao fase, long duracaoNanos);
+
+    /**
+     * Consulta de um núcleo de URN ao {@link IndicePerfil} ou a ValidadorService.isNucleoValido.
+     */
+    void nucleo(Integer idPublicador, boolean valido, long duracaoNanos);
+
+    /**
+     * Conclusão da validação de um registro.
+     *
+     * @param idPublicador publicador do primeiro Item do registro ou null se os dados do registro não foram lidos
+     * @param regra regra violada ou null se o registro é válido
+     * @param tipoErro tipo do erro informado ou null se o registro é válido
+     */
+    void registro(String idRegistroItem, Integer idPublicador, RegraValidacao regra, TipoErroValidacao tipoErro,
+                  long duracaoNanos);
+
+}
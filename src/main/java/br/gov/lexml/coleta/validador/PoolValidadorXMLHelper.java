@@ -0,0 +1,108 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.validation.Schema;
+
+/**
+ * Pool limitado de {@link ValidadorXMLHelper}. Os helpers são criados sob demanda até o tamanho máximo;
+ * a partir daí, {@link #obtem()} aguarda a devolução de um helper por outra thread.
+ */
+public class PoolValidadorXMLHelper {
+
+    private final Schema schema;
+
+    private final int tamanhoMaximo;
+
+    private final boolean offline;
+
+    private final AtomicInteger criados = new AtomicInteger();
+
+    private final BlockingQueue<ValidadorXMLHelper> livres = new LinkedBlockingQueue<ValidadorXMLHelper>();
+
+    /**
+     * @param schema Schema compartilhado pelos helpers ou null para resolver o schema a cada parse
+     * @param tamanhoMaximo Número máximo de helpers criados pelo pool
+     */
+    public PoolValidadorXMLHelper(final Schema schema, final int tamanhoMaximo) {
+        this(schema, tamanhoMaximo, false);
+    }
+
+    /**
+     * @param schema Schema compartilhado pelos helpers ou null para resolver o schema a cada parse
+     * @param tamanhoMaximo Número máximo de helpers criados pelo pool
+     * @param offline Se os helpers devem recusar entidades externas fora do {@link CatalogoSchemas}
+     */
+    public PoolValidadorXMLHelper(final Schema schema, final int tamanhoMaximo, final boolean offline) {
+        if (tamanhoMaximo < 1) {
+            throw new IllegalArgumentException("Tamanho do pool deve ser maior que zero: " + tamanhoMaximo);
+        }
+        this.schema = schema;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.offline = offline;
+    }
+
+    /**
+     * Obtém um helper para uso exclusivo da thread corrente. Deve ser devolvido com {@link #devolve}.
+     */
+    public ValidadorXMLHelper obtem() {
+        ValidadorXMLHelper helper = livres.poll();
+        if (helper != null) {
+            return helper;
+        }
+        while (true) {
+            int n = criados.get();
+            if (n >= tamanhoMaximo) {
+                break;
+            }
+            if (criados.compareAndSet(n, n + 1)) {
+                return cria();
+            }
+        }
+        try {
+            return livres.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrompido aguardando ValidadorXMLHelper livre.", e);
+        }
+    }
+
+    /**
+     * Cria de antemão os helpers ainda não criados, até o tamanho máximo, para que as primeiras validações não
+     * paguem a criação dos parsers.
+     */
+    public void preenche() {
+        while (true) {
+            int n = criados.get();
+            if (n >= tamanhoMaximo) {
+                return;
+            }
+            if (criados.compareAndSet(n, n + 1)) {
+                livres.offer(cria());
+            }
+        }
+    }
+
+    private ValidadorXMLHelper cria() {
+        try {
+            return new ValidadorXMLHelper(schema, offline);
+        }
+        catch (RuntimeException e) {
+            criados.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public void devolve(final ValidadorXMLHelper helper) {
+        livres.offer(helper);
+    }
+
+    public int getTamanhoMaximo() {
+        return tamanhoMaximo;
+    }
+
+}
@@ -0,0 +1,251 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publica os erros de validação de forma assíncrona: os erros são enfileirados pela thread de validação e
+ * entregues em lotes ao {@link DestinoErrosValidacao} por uma thread própria, onde também são montadas as
+ * mensagens. A fila é limitada; quando está cheia, quem publica aguarda até haver espaço.
+ * <p/>
+ * Ao final da coleta, {@link #flush()} ou {@link #close()} garantem a entrega dos erros já publicados.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class PublicadorErrosValidacao implements Flushable, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(PublicadorErrosValidacao.class);
+
+    // Marca de fim da fila, enfileirada por close
+    private static final ErroValidacao FIM = new ErroValidacao(null, null, null, null, null);
+
+    private final DestinoErrosValidacao destino;
+
+    private final int tamanhoLote;
+
+    private final BlockingQueue<ErroValidacao> fila;
+
+    private final Thread consumidor;
+
+    private final AtomicLong publicados = new AtomicLong();
+
+    private final AtomicLong falhas = new AtomicLong();
+
+    // Erros entregues ao destino, com ou sem sucesso; protegido por this
+    private long processados;
+
+    // Falhas já informadas por flush; protegido por this
+    private long falhasInformadas;
+
+    private volatile boolean fechado;
+
+    /**
+     * @param destino recebe os lotes de erros
+     * @param capacidade número máximo de erros na fila
+     * @param tamanhoLote número máximo de erros por chamada a {@link DestinoErrosValidacao#registra(List)}
+     */
+    public PublicadorErrosValidacao(final DestinoErrosValidacao destino, final int capacidade,
+                                    final int tamanhoLote) {
+        if (capacidade < 1 || tamanhoLote < 1) {
+            throw new IllegalArgumentException("Capacidade e tamanho do lote devem ser positivos.");
+        }
+        this.destino = destino;
+        this.tamanhoLote = tamanhoLote;
+        fila = new ArrayBlockingQueue<ErroValidacao>(capacidade);
+        consumidor = new Thread(new Runnable() {
+
+            public void run() {
+                consome();
+            }
+        }, "PublicadorErrosValidacao");
+        consumidor.setDaemon(true);
+        consumidor.start();
+    }
+
+    /**
+     * Adapta um {@link ValidadorService} como destino: cada erro do lote é repassado a
+     * ValidadorService.logError.
+     */
+    public static DestinoErrosValidacao destinoPara(final ValidadorService svc) {
+        return new DestinoErrosValidacao() {
+
+            public void registra(final List<ErroValidacao> erros) {
+                for (ErroValidacao erro : erros) {
+                    svc.logError(erro.getIdRegistroItem(), erro.getTipoErro(), erro.getMensagem(), erro.getCtxUsr());
+                }
+            }
+        };
+    }
+
+    /**
+     * Enfileira o erro, aguardando se a fila estiver cheia. Uma interrupção durante a espera não descarta o erro:
+     * a espera continua e o estado de interrupção da thread é restaurado ao final.
+     *
+     * @throws IllegalStateException se o publicador já foi fechado
+     */
+    public void publica(final ErroValidacao erro) {
+        if (fechado) {
+            throw new IllegalStateException("Publicador de erros fechado.");
+        }
+        boolean interrompido = false;
+        try {
+            while (true) {
+                try {
+                    fila.put(erro);
+                    break;
+                }
+                catch (InterruptedException e) {
+                    interrompido = true;
+                }
+            }
+        }
+        finally {
+            if (interrompido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        publicados.incrementAndGet();
+    }
+
+    /**
+     * Aguarda a entrega de todos os erros publicados até o momento.
+     *
+     * @throws IOException se algum erro foi descartado por falha do destino desde o último flush (a falha do
+     *             destino é registrada no log)
+     */
+    public void flush() throws IOException {
+        long alvo = publicados.get();
+        long perdidos;
+        synchronized (this) {
+            try {
+                while (processados < alvo) {
+                    if (!consumidor.isAlive()) {
+                        entregaPendentes();
+                        break;
+                    }
+                    wait(100);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrompido aguardando a entrega dos erros de validação.");
+            }
+            long total = falhas.get();
+            perdidos = total - falhasInformadas;
+            falhasInformadas = total;
+        }
+        if (perdidos > 0) {
+            throw new IOException(perdidos + " erros de validação não foram entregues.");
+        }
+    }
+
+    /**
+     * Entrega os erros pendentes e encerra a thread do publicador. Publicações posteriores são rejeitadas.
+     */
+    public void close() throws IOException {
+        if (!fechado) {
+            fechado = true;
+            try {
+                fila.put(FIM);
+                consumidor.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrompido aguardando a entrega dos erros de validação.");
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return número de erros na fila, ainda não entregues
+     */
+    public int getPendentes() {
+        return fila.size();
+    }
+
+    /**
+     * @return número de erros publicados desde a criação
+     */
+    public long getPublicados() {
+        return publicados.get();
+    }
+
+    /**
+     * @return número de erros descartados por falha do destino
+     */
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    private void consome() {
+        List<ErroValidacao> lote = new ArrayList<ErroValidacao>(tamanhoLote);
+        try {
+            boolean fim = false;
+            while (!fim) {
+                ErroValidacao erro = fila.take();
+                do {
+                    if (erro == FIM) {
+                        fim = true;
+                        break;
+                    }
+                    lote.add(erro);
+                }
+                while (lote.size() < tamanhoLote && (erro = fila.poll()) != null);
+                if (!lote.isEmpty()) {
+                    entrega(lote);
+                    lote.clear();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            log.warn("Thread do publicador de erros interrompida; os erros pendentes serão entregues no flush.");
+        }
+    }
+
+    /**
+     * Entrega na thread atual o que restou na fila após o término do consumidor (publicações concorrentes ao
+     * close).
+     */
+    private synchronized void entregaPendentes() {
+        List<ErroValidacao> lote = new ArrayList<ErroValidacao>(tamanhoLote);
+        ErroValidacao erro;
+        while ((erro = fila.poll()) != null) {
+            if (erro != FIM) {
+                lote.add(erro);
+            }
+            if (lote.size() == tamanhoLote) {
+                entrega(lote);
+                lote.clear();
+            }
+        }
+        if (!lote.isEmpty()) {
+            entrega(lote);
+        }
+    }
+
+    private void entrega(final List<ErroValidacao> lote) {
+        try {
+            destino.registra(lote);
+        }
+        catch (RuntimeException e) {
+            falhas.addAndGet(lote.size());
+            log.error("Falha ao entregar " + lote.size() + " erros de validação; os erros foram descartados.", e);
+        }
+        synchronized (this) {
+            processados += lote.size();
+            notifyAll();
+        }
+    }
+
+}
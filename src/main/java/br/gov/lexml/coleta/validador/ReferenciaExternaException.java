@@ -0,0 +1,25 @@
+
+package br.gov.lexml.coleta.validador;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Referência a uma entidade externa que não consta do {@link CatalogoSchemas}, recusada no modo offline do
+ * {@link ValidadorXMLHelper} para evitar o acesso à rede durante o parse.
+ */
+public class ReferenciaExternaException extends SAXException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String systemId;
+
+    public ReferenciaExternaException(final String systemId) {
+        super("Referência externa não disponível no catálogo de schemas: " + systemId);
+        this.systemId = systemId;
+    }
+
+    public String getSystemId() {
+        return systemId;
+    }
+
+}
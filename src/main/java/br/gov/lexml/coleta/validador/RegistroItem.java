@@ -0,0 +1,26 @@
+
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Registro a ser validado: o identificador (header/identifier do OAI-PMH) e os bytes do XML LexML do metadado.
+ */
+public class RegistroItem {
+
+    private final String idRegistroItem;
+
+    private final byte[] xml;
+
+    public RegistroItem(final String idRegistroItem, final byte[] xml) {
+        this.idRegistroItem = idRegistroItem;
+        this.xml = xml;
+    }
+
+    public String getIdRegistroItem() {
+        return idRegistroItem;
+    }
+
+    public byte[] getXml() {
+        return xml;
+    }
+
+}
@@ -0,0 +1,131 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Conjunto de registros representativos usado por {@link ValidadorRegistroItem#aquece(int)}: registros válidos de
+ * publicadores diferentes (inclusive em ISO-8859-1 e com relacionamentos) e um registro com cada tipo de erro. Os
+ * registros e o perfil com os núcleos dos registros válidos estão no classpath, em
+ * br/gov/lexml/coleta/validador/aquecimento/.
+ * <p/>
+ * Instâncias são imutáveis e podem ser compartilhadas entre threads.
+ */
+class RegistrosAquecimento {
+
+    private static final String DIRETORIO = "aquecimento/";
+
+    private static final String[] VALIDOS = { "oai_acordao.stf.jus.br_aco_100005.xml",
+        "oai_acordao.stf.jus.br_aco_100005-latin1.xml", "oai_cojur.tse.gov.br_acordao_000037322.xml",
+        "teofilootoni.xml", "oai_rvbi-ok.xml", "item_com_nota_sem_uri.xml" };
+
+    private static final String[] INVALIDOS = { "oai_acordao.stf.jus.br_aco_100005-erro-schema.xml",
+        "oai_acordao.stf.jus.br_aco_100005-erro-xml.xml",
+        "oai_acordao.stf.jus.br_aco_100005-erro-documentoIndividual.xml",
+        "oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml" };
+
+    private static volatile RegistrosAquecimento padrao;
+
+    private final List<Registro> registros;
+
+    private final IndicePerfil indicePerfil;
+
+    private RegistrosAquecimento(final List<Registro> registros, final IndicePerfil indicePerfil) {
+        this.registros = Collections.unmodifiableList(registros);
+        this.indicePerfil = indicePerfil;
+    }
+
+    /**
+     * Retorna os registros do classpath, lidos na primeira chamada.
+     */
+    static RegistrosAquecimento getPadrao() {
+        RegistrosAquecimento conjunto = padrao;
+        if (conjunto == null) {
+            synchronized (RegistrosAquecimento.class) {
+                conjunto = padrao;
+                if (conjunto == null) {
+                    try {
+                        conjunto = carrega();
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException("Falha ao ler os registros de aquecimento.", e);
+                    }
+                    padrao = conjunto;
+                }
+            }
+        }
+        return conjunto;
+    }
+
+    private static RegistrosAquecimento carrega() throws IOException {
+        List<Registro> registros = new ArrayList<Registro>();
+        for (String nome : VALIDOS) {
+            registros.add(new Registro(nome, le(nome), true));
+        }
+        for (String nome : INVALIDOS) {
+            registros.add(new Registro(nome, le(nome), false));
+        }
+        InputStream is = abre("perfil.txt");
+        try {
+            Reader reader = new InputStreamReader(is, "UTF-8");
+            return new RegistrosAquecimento(registros, IndicePerfil.carrega(reader));
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    private static byte[] le(final String nome) throws IOException {
+        InputStream is = abre(nome);
+        try {
+            return IOUtils.toByteArray(is);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    private static InputStream abre(final String nome) throws IOException {
+        InputStream is = RegistrosAquecimento.class.getResourceAsStream(DIRETORIO + nome);
+        if (is == null) {
+            throw new IOException("Registro de aquecimento não encontrado no classpath: " + DIRETORIO + nome);
+        }
+        return is;
+    }
+
+    List<Registro> getRegistros() {
+        return registros;
+    }
+
+    /**
+     * Índice com os núcleos dos registros válidos.
+     */
+    IndicePerfil getIndicePerfil() {
+        return indicePerfil;
+    }
+
+    static class Registro {
+
+        final String idRegistroItem;
+
+        final byte[] xml;
+
+        // Resultado esperado da validação
+        final boolean valido;
+
+        Registro(final String nome, final byte[] xml, final boolean valido) {
+            this.idRegistroItem = "aquecimento:" + nome;
+            this.xml = xml;
+            this.valido = valido;
+        }
+
+    }
+
+}
@@ -0,0 +1,67 @@
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Regras de validação que registram erro, com o {@link TipoErroValidacao} informado por padrão. O tipo
+ * informado para cada regra pode ser alterado com {@link ValidadorRegistroItem#setTipoErro}.
+ * <p/>
+ * A regra RV#4 (id do registro vazio) não registra erro em ValidadorService.logError e por isso não consta
+ * desta lista.
+ */
+public enum RegraValidacao {
+
+    /** RV#1: O ID_REGISTRO_ITEM não pode conter espaços em branco */
+    ID_COM_ESPACOS("RV#1", TipoErroValidacao.ERRO_GENERICO),
+
+    /** RV#2: O XML não pode ser nulo ou vazio */
+    XML_VAZIO("RV#2", TipoErroValidacao.XML_MAL_FORMADO),
+
+    /** RV#3: O XML deve ser bem formado */
+    XML_MAL_FORMADO("RV#3", TipoErroValidacao.XML_MAL_FORMADO),
+
+    /** RV#3: O XML deve ser válido segundo o schema */
+    XML_INVALIDO("RV#3", TipoErroValidacao.XML_INVALIDO),
+
+    /** RV#5: A URN de DocumentoIndividual deve ser estruturalmente válida */
+    URN_DOCUMENTO_MAL_FORMADA("RV#5", TipoErroValidacao.URN_INVALIDO),
+
+    /** RV#6: A URN de DocumentoIndividual deve ser compatível com o perfil dos publicadores dos Items */
+    URN_DOCUMENTO_INCOMPATIVEL_ITEM("RV#6", TipoErroValidacao.URN_INCOMPATIVEL),
+
+    /** RV#5: A URN de DocumentoIndividual deve ser compatível com o perfil dos publicadores dos Relacionamentos */
+    URN_DOCUMENTO_INCOMPATIVEL_RELACIONAMENTO("RV#5", TipoErroValidacao.URN_INCOMPATIVEL),
+
+    /** RV#8: O Relacionamento deve ter idPublicador (próprio ou do primeiro Item) */
+    RELACIONAMENTO_SEM_PUBLICADOR("RV#8", TipoErroValidacao.URN_INCOMPATIVEL),
+
+    /** RV#7: A URN de Relacionamento deve ser compatível com o perfil do publicador do Relacionamento */
+    URN_RELACIONAMENTO_INCOMPATIVEL("RV#7", TipoErroValidacao.URN_INCOMPATIVEL),
+
+    /**
+     * RV#9: O registro deve respeitar os {@link LimitesValidacao} configurados. Informada por padrão como
+     * ERRO_GENERICO, que existe na tabela de tipos de erro da coleta; para distinguir os registros recusados por
+     * limite, inclua o tipo LIMITE_EXCEDIDO (id 7) no banco e configure-o com
+     * {@link ValidadorRegistroItem#setTipoErro}.
+     */
+    LIMITE_EXCEDIDO("RV#9", TipoErroValidacao.ERRO_GENERICO);
+
+    private final String codigo;
+
+    private final TipoErroValidacao tipoErroPadrao;
+
+    private RegraValidacao(final String codigo, final TipoErroValidacao tipoErroPadrao) {
+        this.codigo = codigo;
+        this.tipoErroPadrao = tipoErroPadrao;
+    }
+
+    /**
+     * @return código da regra ("RV#n"), usado também no início das mensagens de erro
+     */
+    public String getCodigo() {
+        return codigo;
+    }
+
+    public TipoErroValidacao getTipoErroPadrao() {
+        return tipoErroPadrao;
+    }
+
+}
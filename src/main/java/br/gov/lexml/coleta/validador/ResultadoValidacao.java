@@ -0,0 +1,81 @@
+
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Resultado da validação de um registro.
+ */
+public class ResultadoValidacao {
+
+    private final String idRegistroItem;
+
+    private final boolean valido;
+
+    private final RegraValidacao regra;
+
+    private final TipoErroValidacao tipoErro;
+
+    private final String mensagem;
+
+    // Se informado, a mensagem é montada a partir do erro somente quando solicitada
+    private final ErroValidacao erro;
+
+    public ResultadoValidacao(final String idRegistroItem, final boolean valido, final TipoErroValidacao tipoErro,
+                              final String mensagem) {
+        this(idRegistroItem, valido, null, tipoErro, mensagem);
+    }
+
+    public ResultadoValidacao(final String idRegistroItem, final boolean valido, final RegraValidacao regra,
+                              final TipoErroValidacao tipoErro, final String mensagem) {
+        this.idRegistroItem = idRegistroItem;
+        this.valido = valido;
+        this.regra = regra;
+        this.tipoErro = tipoErro;
+        this.mensagem = mensagem;
+        erro = null;
+    }
+
+    ResultadoValidacao(final boolean valido, final ErroValidacao erro) {
+        idRegistroItem = erro.getIdRegistroItem();
+        this.valido = valido;
+        regra = erro.getRegra();
+        tipoErro = erro.getTipoErro();
+        mensagem = null;
+        this.erro = erro;
+    }
+
+    public String getIdRegistroItem() {
+        return idRegistroItem;
+    }
+
+    public boolean isValido() {
+        return valido;
+    }
+
+    /**
+     * @return regra violada ou null se o registro é válido, se o id do registro é vazio (RV#4) ou se o erro não
+     *         decorre de uma regra de validação (falha inesperada)
+     */
+    public RegraValidacao getRegra() {
+        return regra;
+    }
+
+    /**
+     * @return tipo do erro encontrado ou null se o registro é válido (ou se o id do registro é vazio, RV#4)
+     */
+    public TipoErroValidacao getTipoErro() {
+        return tipoErro;
+    }
+
+    /**
+     * @return mensagem do erro encontrado ou null se o registro é válido
+     */
+    public String getMensagem() {
+        return erro != null ? erro.getMensagem() : mensagem;
+    }
+
+    @Override
+    public String toString() {
+        return idRegistroItem + (valido ? ": válido" : ": " + tipoErro + " " + getMensagem());
+    }
+
+}
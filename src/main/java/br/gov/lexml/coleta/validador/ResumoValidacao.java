@@ -0,0 +1,140 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resumo de uma execução do {@link ValidadorEmMassa}: quantidades, vazão e latência por registro.
+ */
+public class ResumoValidacao {
+
+    private final long arquivos;
+
+    private final long falhasLeitura;
+
+    private final long registros;
+
+    private final long validos;
+
+    private final long duracaoNanos;
+
+    private final HistogramaLatencia latencia;
+
+    private final Map<TipoErroValidacao, Long> erros;
+
+    ResumoValidacao(final long arquivos, final long falhasLeitura, final long registros, final long validos,
+                    final Map<TipoErroValidacao, Long> erros, final long duracaoNanos,
+                    final HistogramaLatencia latencia) {
+        this.arquivos = arquivos;
+        this.falhasLeitura = falhasLeitura;
+        this.registros = registros;
+        this.validos = validos;
+        this.erros = erros;
+        this.duracaoNanos = duracaoNanos;
+        this.latencia = latencia;
+    }
+
+    /**
+     * @return número de arquivos (ou entradas de arquivos zip) lidos
+     */
+    public long getArquivos() {
+        return arquivos;
+    }
+
+    /**
+     * @return número de arquivos que não puderam ser lidos (por exemplo, respostas ListRecords truncadas)
+     */
+    public long getFalhasLeitura() {
+        return falhasLeitura;
+    }
+
+    public long getRegistros() {
+        return registros;
+    }
+
+    public long getValidos() {
+        return validos;
+    }
+
+    public long getInvalidos() {
+        return registros - validos;
+    }
+
+    public long getDuracaoNanos() {
+        return duracaoNanos;
+    }
+
+    /**
+     * @return registros validados por segundo
+     */
+    public double getVazao() {
+        return duracaoNanos == 0 ? 0 : registros * 1e9 / duracaoNanos;
+    }
+
+    /**
+     * @return latência da validação de cada registro, sem a leitura dos arquivos
+     */
+    public HistogramaLatencia getLatencia() {
+        return latencia;
+    }
+
+    /**
+     * @return número de registros inválidos por tipo de erro
+     */
+    public Map<TipoErroValidacao, Long> getErros() {
+        return erros;
+    }
+
+    public String toJSON() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"arquivos\":").append(arquivos);
+        sb.append(",\"falhasLeitura\":").append(falhasLeitura);
+        sb.append(",\"registros\":").append(registros);
+        sb.append(",\"validos\":").append(validos);
+        sb.append(",\"invalidos\":").append(getInvalidos());
+        sb.append(",\"duracaoMs\":").append(duracaoNanos / 1000000);
+        sb.append(",\"vazao\":").append(formata(getVazao()));
+        sb.append(",\"latenciaMs\":{\"media\":").append(ms(latencia.getMediaNanos()));
+        sb.append(",\"p50\":").append(ms(latencia.getPercentilNanos(50)));
+        sb.append(",\"p90\":").append(ms(latencia.getPercentilNanos(90)));
+        sb.append(",\"p99\":").append(ms(latencia.getPercentilNanos(99)));
+        sb.append(",\"maximo\":").append(ms(latencia.getMaximoNanos())).append('}');
+        sb.append(",\"erros\":{");
+        String sep = "";
+        for (Map.Entry<TipoErroValidacao, Long> erro : erros.entrySet()) {
+            sb.append(sep).append('"').append(erro.getKey()).append("\":").append(erro.getValue());
+            sep = ",";
+        }
+        return sb.append("}}").toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(registros).append(" registros (").append(validos).append(" válidos, ").append(getInvalidos())
+            .append(" inválidos) em ").append(arquivos).append(" arquivos");
+        if (falhasLeitura > 0) {
+            sb.append(", ").append(falhasLeitura).append(" falhas de leitura");
+        }
+        sb.append('\n');
+        sb.append("Tempo: ").append(ms(duracaoNanos)).append(" ms; vazão: ").append(formata(getVazao()))
+            .append(" registros/s\n");
+        sb.append("Latência por registro (ms): média ").append(ms(latencia.getMediaNanos())).append(", p50 ")
+            .append(ms(latencia.getPercentilNanos(50))).append(", p90 ").append(ms(latencia.getPercentilNanos(90)))
+            .append(", p99 ").append(ms(latencia.getPercentilNanos(99))).append(", máximo ")
+            .append(ms(latencia.getMaximoNanos()));
+        for (Map.Entry<TipoErroValidacao, Long> erro : erros.entrySet()) {
+            sb.append('\n').append(erro.getKey()).append(": ").append(erro.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static String ms(final long nanos) {
+        return formata(nanos / 1e6);
+    }
+
+    private static String formata(final double valor) {
+        return String.format(Locale.ENGLISH, "%.3f", valor);
+    }
+
+}
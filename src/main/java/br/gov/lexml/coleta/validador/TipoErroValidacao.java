@@ -9,7 +9,11 @@ public enum TipoErroValidacao {
     XML_INVALIDO,
     URN_MAL_FORMADO,
     URN_INVALIDO,
-    URN_INCOMPATIVEL;
+    URN_INCOMPATIVEL,
+    // Registro recusado por exceder os LimitesValidacao configurados (tamanho, profundidade, elementos ou tempo).
+    // Id 7, ausente da tabela de tipos de erro da coleta: só é informado se configurado com
+    // ValidadorRegistroItem.setTipoErro(RegraValidacao.LIMITE_EXCEDIDO, LIMITE_EXCEDIDO), depois de incluído no banco
+    LIMITE_EXCEDIDO;
 
     public int getIdTipoErro() {
         return ordinal() + 1;
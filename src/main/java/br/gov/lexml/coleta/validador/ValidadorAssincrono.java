@@ -0,0 +1,166 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fachada assíncrona do {@link ValidadorRegistroItem}: cada validação é executada em uma tarefa do executor e o
+ * resultado é entregue em um {@link CompletableFuture}.
+ * <p/>
+ * Por padrão, em JVMs com threads virtuais (Java 21 ou superior) cada validação é executada em uma thread virtual
+ * própria, de modo que esperas do ValidadorService (por exemplo, consultas ao banco em isNucleoValido e logError)
+ * não ocupam threads da plataforma. Em JVMs anteriores é usado um pool limitado de threads. Em ambos os casos os
+ * parsers continuam no {@link PoolValidadorXMLHelper} do validador e só são retidos durante a leitura do XML.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class ValidadorAssincrono implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidadorAssincrono.class);
+
+    private final ValidadorRegistroItem validador;
+
+    private final ExecutorService executor;
+
+    private final boolean executorProprio;
+
+    private final boolean threadsVirtuais;
+
+    /**
+     * Usa threads virtuais, se disponíveis, ou um pool de até 16 threads por processador.
+     */
+    public ValidadorAssincrono(final ValidadorRegistroItem validador) {
+        this(validador, 16 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Usa threads virtuais, se disponíveis, ou um pool com o número máximo de threads informado.
+     */
+    public ValidadorAssincrono(final ValidadorRegistroItem validador, final int maximoThreads) {
+        this.validador = validador;
+        ExecutorService virtual = criaExecutorVirtual();
+        threadsVirtuais = virtual != null;
+        executor = threadsVirtuais ? virtual : criaPool(maximoThreads);
+        executorProprio = true;
+    }
+
+    /**
+     * Usa o executor informado, que não é encerrado por {@link #close()}.
+     */
+    public ValidadorAssincrono(final ValidadorRegistroItem validador, final ExecutorService executor) {
+        this.validador = validador;
+        this.executor = executor;
+        executorProprio = false;
+        threadsVirtuais = false;
+    }
+
+    /**
+     * @return se as validações são executadas em threads virtuais criadas por esta instância
+     */
+    public boolean isThreadsVirtuais() {
+        return threadsVirtuais;
+    }
+
+    public CompletableFuture<ResultadoValidacao> validarAsync(final String idRegistroItem, final String xml,
+                                                              final Object ctxUsr) {
+        return executa(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    /**
+     * O array não deve ser alterado até a conclusão da validação.
+     */
+    public CompletableFuture<ResultadoValidacao> validarAsync(final String idRegistroItem, final byte[] xml,
+                                                              final Object ctxUsr) {
+        return executa(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    /**
+     * Os bytes restantes do buffer não devem ser alterados até a conclusão da validação; a posição do buffer não é
+     * alterada.
+     */
+    public CompletableFuture<ResultadoValidacao> validarAsync(final String idRegistroItem, final ByteBuffer xml,
+                                                              final Object ctxUsr) {
+        return executa(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    private CompletableFuture<ResultadoValidacao> executa(final String idRegistroItem, final EntradaXML xml,
+                                                          final Object ctxUsr) {
+        return CompletableFuture.supplyAsync(new Supplier<ResultadoValidacao>() {
+
+            public ResultadoValidacao get() {
+                return validador.validarComResultado(idRegistroItem, xml, ctxUsr);
+            }
+        }, executor);
+    }
+
+    /**
+     * Aguarda a conclusão das validações em andamento e encerra o executor criado por esta instância. Validações
+     * solicitadas depois do close são rejeitadas.
+     */
+    public void close() throws IOException {
+        if (!executorProprio) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("Aguardando a conclusão das validações assíncronas.");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido aguardando a conclusão das validações.");
+        }
+    }
+
+    /**
+     * Obtém Executors.newVirtualThreadPerTaskExecutor() por reflexão, para manter a compatibilidade com JVMs
+     * anteriores ao Java 21.
+     *
+     * @return executor ou null se a JVM não oferece threads virtuais
+     */
+    static ExecutorService criaExecutorVirtual() {
+        try {
+            Method metodo = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metodo.invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+        catch (Exception e) {
+            // Java 19 e 20: threads virtuais em preview, não habilitadas
+            log.debug("Threads virtuais indisponíveis: " + e);
+            return null;
+        }
+    }
+
+    private static ExecutorService criaPool(final int maximoThreads) {
+        final AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(maximoThreads, maximoThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "ValidadorAssincrono-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+}
@@ -0,0 +1,368 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validação em massa de arquivos locais, sem o banco da coleta: diretórios, arquivos .zip e .gz, respostas
+ * ListRecords do OAI-PMH e arquivos com um registro LexML cada. Para cada registro é gravada uma linha JSON com o
+ * resultado; ao final, {@link #conclui()} retorna o {@link ResumoValidacao} com a vazão e a latência.
+ * <p/>
+ * Os arquivos são lidos por {@link LeitorEntradas} (NIO, mapeados em memória quando possível) e os registros são
+ * validados em paralelo pelo número de threads informado. Arquivos de um registro são identificados pelo nome sem
+ * extensão; os registros de respostas ListRecords, pelo identificador do header.
+ * <p/>
+ * Uso em linha de comando (ver {@link #main(String[])}):
+ *
+ * <pre>
+ * java -cp ... br.gov.lexml.coleta.validador.ValidadorEmMassa perfil=perfil.txt threads=8 saida=resultado.jsonl \
+ *     dumps/ coleta.zip listrecords.xml.gz
+ * </pre>
+ */
+public class ValidadorEmMassa implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidadorEmMassa.class);
+
+    private final ValidadorRegistroItem validador;
+
+    private final ExecutorService executor;
+
+    private final int maximoEmAndamento;
+
+    private final Semaphore emAndamento;
+
+    private final Writer saida;
+
+    private final MetricasValidacao metricas = new MetricasValidacao();
+
+    private final AtomicLong arquivos = new AtomicLong();
+
+    private final AtomicLong falhasLeitura = new AtomicLong();
+
+    private final long inicio;
+
+    // Acessados somente em registra
+    private long registros;
+
+    private long validos;
+
+    private final Map<TipoErroValidacao, Long> erros = new TreeMap<TipoErroValidacao, Long>();
+
+    private IOException falhaSaida;
+
+    /**
+     * O validador deve estar configurado (ValidadorService, perfil, motor); o tamanho do pool de parsers e o
+     * {@link OuvinteValidacao} são substituídos.
+     *
+     * @param threads número de registros validados em paralelo
+     * @param saida recebe uma linha JSON por registro
+     */
+    public ValidadorEmMassa(final ValidadorRegistroItem validador, final int threads, final Writer saida) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Número de threads deve ser maior que zero: " + threads);
+        }
+        this.validador = validador;
+        this.saida = saida;
+        validador.setTamanhoPool(threads);
+        validador.setOuvinteValidacao(metricas);
+        final AtomicInteger contador = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "ValidadorEmMassa-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        maximoEmAndamento = 4 * threads;
+        emAndamento = new Semaphore(maximoEmAndamento);
+        inicio = System.nanoTime();
+    }
+
+    /**
+     * Valida um diretório (recursivamente: arquivos .xml, .zip e .gz) ou um arquivo. Falhas de leitura de um
+     * arquivo são registradas no log e contadas no resumo, sem interromper a validação dos demais.
+     */
+    public void valida(final File entrada) throws IOException {
+        new LeitorEntradas(new LeitorEntradas.Destino() {
+
+            public boolean inicia(final String nome) {
+                return true;
+            }
+
+            public boolean aceitaRegistro(final String idRegistroItem) {
+                return true;
+            }
+
+            public void registro(final String nome, final String idRegistroItem, final ByteBuffer xml) {
+                arquivos.incrementAndGet();
+                validaRegistro(nome, idRegistroItem, xml);
+            }
+
+            public void listRecords(final String nome, final InputStream is) throws IOException {
+                arquivos.incrementAndGet();
+                validaListRecords(nome, is);
+            }
+
+            public void falhaLeitura(final String nome, final IOException e) {
+                ValidadorEmMassa.this.falhaLeitura(nome, e);
+            }
+        }).le(entrada);
+    }
+
+    /**
+     * Aguarda a validação dos registros lidos e retorna o resumo. A saída é descarregada, mas não fechada.
+     */
+    public ResumoValidacao conclui() throws IOException {
+        emAndamento.acquireUninterruptibly(maximoEmAndamento);
+        emAndamento.release(maximoEmAndamento);
+        long duracao = System.nanoTime() - inicio;
+        synchronized (this) {
+            if (falhaSaida != null) {
+                throw falhaSaida;
+            }
+            saida.flush();
+            return new ResumoValidacao(arquivos.get(), falhasLeitura.get(), registros, validos,
+                new TreeMap<TipoErroValidacao, Long>(erros), duracao, metricas.getRegistros());
+        }
+    }
+
+    /**
+     * Encerra as threads de validação.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    private void validaListRecords(final String nome, final InputStream is) throws IOException {
+        ValidadorLote lote = new ValidadorLote(validador, executor);
+        lote.setMaximoEmAndamento(maximoEmAndamento);
+        lote.validar(is, nome, new OuvinteResultadoValidacao() {
+
+            public void resultado(final ResultadoValidacao resultado) {
+                registra(nome, resultado);
+            }
+        });
+    }
+
+    private void validaRegistro(final String nome, final String idRegistroItem, final ByteBuffer xml) {
+        emAndamento.acquireUninterruptibly();
+        try {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        registra(nome, validador.validarComResultado(idRegistroItem, xml, nome));
+                    }
+                    catch (RuntimeException e) {
+                        log.error("Falha inesperada na validação do registro " + idRegistroItem, e);
+                        registra(nome, new ResultadoValidacao(idRegistroItem, false, TipoErroValidacao.ERRO_GENERICO,
+                            "Falha inesperada na validação: " + e.getMessage()));
+                    }
+                    finally {
+                        emAndamento.release();
+                    }
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            emAndamento.release();
+            throw e;
+        }
+    }
+
+    private synchronized void registra(final String arquivo, final ResultadoValidacao resultado) {
+        registros++;
+        if (resultado.isValido()) {
+            validos++;
+        }
+        else if (resultado.getTipoErro() != null) {
+            Long anterior = erros.get(resultado.getTipoErro());
+            erros.put(resultado.getTipoErro(), anterior == null ? 1 : anterior + 1);
+        }
+        if (falhaSaida != null) {
+            return;
+        }
+        try {
+            saida.write(linhaJSON(arquivo, resultado));
+        }
+        catch (IOException e) {
+            falhaSaida = e;
+        }
+    }
+
+    /**
+     * Linha JSON com o resultado de um registro, escrita na saída.
+     */
+    static String linhaJSON(final String arquivo, final ResultadoValidacao resultado) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append("{\"id\":");
+        escreveJSON(sb, resultado.getIdRegistroItem());
+        sb.append(",\"arquivo\":");
+        escreveJSON(sb, arquivo);
+        sb.append(",\"valido\":").append(resultado.isValido());
+        if (!resultado.isValido()) {
+            sb.append(",\"regra\":");
+            escreveJSON(sb, resultado.getRegra() == null ? null : resultado.getRegra().getCodigo());
+            sb.append(",\"tipoErro\":");
+            escreveJSON(sb, resultado.getTipoErro() == null ? null : resultado.getTipoErro().name());
+            sb.append(",\"mensagem\":");
+            escreveJSON(sb, resultado.getMensagem());
+        }
+        return sb.append("}\n").toString();
+    }
+
+    private void falhaLeitura(final String nome, final IOException e) {
+        falhasLeitura.incrementAndGet();
+        log.error("Falha na leitura de " + nome, e);
+    }
+
+    private static void escreveJSON(final StringBuilder sb, final String s) {
+        if (s == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Argumentos: <code>perfil=arquivo [threads=n] [saida=arquivo] [resumo=arquivo] [motor=DOM|STREAMING]
+     * [prevalidacao=true|false] entrada...</code>, onde cada entrada é um diretório ou arquivo. Sem
+     * <code>saida</code>, os resultados são escritos na saída padrão; o resumo é escrito na saída de erro e, em JSON,
+     * no arquivo <code>resumo</code>. O código de saída é 0 se todos os registros são válidos, 1 se há registros
+     * inválidos ou falhas de leitura e 2 se os argumentos são inválidos.
+     */
+    public static void main(final String[] args) throws IOException {
+        File arquivoPerfil = null;
+        File arquivoSaida = null;
+        File arquivoResumo = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        MotorValidacao motor = MotorValidacao.DOM;
+        boolean preValidacao = false;
+        List<File> entradas = new ArrayList<File>();
+        try {
+            for (String arg : args) {
+                int igual = arg.indexOf('=');
+                String nome = igual < 0 ? "" : arg.substring(0, igual);
+                String valor = arg.substring(igual + 1);
+                if ("perfil".equals(nome)) {
+                    arquivoPerfil = new File(valor);
+                }
+                else if ("threads".equals(nome)) {
+                    threads = Integer.parseInt(valor);
+                }
+                else if ("saida".equals(nome)) {
+                    arquivoSaida = new File(valor);
+                }
+                else if ("resumo".equals(nome)) {
+                    arquivoResumo = new File(valor);
+                }
+                else if ("motor".equals(nome)) {
+                    motor = MotorValidacao.valueOf(valor.toUpperCase(Locale.ENGLISH));
+                }
+                else if ("prevalidacao".equals(nome)) {
+                    preValidacao = Boolean.parseBoolean(valor);
+                }
+                else {
+                    entradas.add(new File(arg));
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Argumento inválido: " + e.getMessage());
+            entradas.clear();
+        }
+        if (arquivoPerfil == null || entradas.isEmpty() || threads < 1) {
+            System.err.println("Uso: ValidadorEmMassa perfil=arquivo [threads=n] [saida=arquivo] [resumo=arquivo] "
+                + "[motor=DOM|STREAMING] [prevalidacao=true|false] entrada...");
+            System.exit(2);
+        }
+
+        ValidadorServicePerfilLocal svc = ValidadorServicePerfilLocal.carrega(arquivoPerfil);
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(svc);
+        validador.setIndicePerfil(svc.getIndicePerfil());
+        validador.setMotorValidacao(motor);
+        validador.setPreValidacao(preValidacao);
+
+        Writer saida = new BufferedWriter(new OutputStreamWriter(arquivoSaida == null ? System.out
+            : new FileOutputStream(arquivoSaida), "UTF-8"), 1 << 16);
+        ResumoValidacao resumo;
+        ValidadorEmMassa validadorEmMassa = new ValidadorEmMassa(validador, threads, saida);
+        try {
+            for (File entrada : entradas) {
+                validadorEmMassa.valida(entrada);
+            }
+            resumo = validadorEmMassa.conclui();
+        }
+        finally {
+            validadorEmMassa.close();
+            if (arquivoSaida != null) {
+                saida.close();
+            }
+        }
+
+        System.err.println(resumo);
+        if (arquivoResumo != null) {
+            Writer w = new OutputStreamWriter(new FileOutputStream(arquivoResumo), "UTF-8");
+            try {
+                w.write(resumo.toJSON());
+                w.write('\n');
+            }
+            finally {
+                w.close();
+            }
+        }
+        System.exit(resumo.getInvalidos() == 0 && resumo.getFalhasLeitura() == 0 ? 0 : 1);
+    }
+
+}
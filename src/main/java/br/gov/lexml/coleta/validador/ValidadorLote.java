@@ -0,0 +1,223 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validação em lote de respostas ListRecords do OAI-PMH. Os registros são separados à medida que a resposta é
+ * lida e validados em paralelo no executor configurado; os resultados são entregues ao
+ * {@link OuvinteResultadoValidacao} assim que concluídos.
+ * <p/>
+ * O pool de parsers do {@link ValidadorRegistroItem} deve ter tamanho compatível com o paralelismo do executor.
+ */
+public class ValidadorLote {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidadorLote.class);
+
+    private final ValidadorRegistroItem validador;
+
+    private final ExecutorService executor;
+
+    private int maximoEmAndamento;
+
+    private int tamanhoGrupo = 1;
+
+    /**
+     * Cria o validador em lote com um pool próprio de threads do tamanho do pool de parsers do validador. As tarefas
+     * aguardam parsers livres e as respostas do ValidadorService (por exemplo, consultas ao banco), por isso não
+     * devem ocupar executores compartilhados como o ForkJoinPool.commonPool(). As threads são daemon e encerradas
+     * depois de 60 segundos sem uso.
+     */
+    public ValidadorLote(final ValidadorRegistroItem validador) {
+        this(validador, criaPool(validador.getTamanhoPool()));
+    }
+
+    public ValidadorLote(final ValidadorRegistroItem validador, final ExecutorService executor) {
+        this.validador = validador;
+        this.executor = executor;
+        maximoEmAndamento = 4 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Número máximo de registros lidos e ainda não validados. Limita a memória usada com respostas grandes.
+     */
+    public void setMaximoEmAndamento(final int maximoEmAndamento) {
+        this.maximoEmAndamento = maximoEmAndamento;
+    }
+
+    /**
+     * Número de registros validados em conjunto por {@link ValidadorRegistroItem#validarLote}. Com um
+     * {@link ValidadorServiceLote}, os núcleos de cada grupo são verificados em uma única consulta. Padrão: 1 (cada
+     * registro validado individualmente).
+     */
+    public void setTamanhoGrupo(final int tamanhoGrupo) {
+        if (tamanhoGrupo < 1) {
+            throw new IllegalArgumentException("Tamanho do grupo deve ser maior que zero: " + tamanhoGrupo);
+        }
+        this.tamanhoGrupo = tamanhoGrupo;
+    }
+
+    public int validar(final File arquivo, final Object ctxUsr, final OuvinteResultadoValidacao ouvinte)
+        throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(arquivo));
+        try {
+            return validar(is, ctxUsr, ouvinte);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Valida todos os registros da resposta ListRecords.
+     *
+     * @param is Resposta ListRecords
+     * @param ctxUsr Objeto de contexto repassado para ValidadorService.logError
+     * @param ouvinte Recebe os resultados à medida que são concluídos
+     * @return número de registros validados
+     */
+    public int validar(final InputStream is, final Object ctxUsr, final OuvinteResultadoValidacao ouvinte)
+        throws IOException {
+        CompletionService<List<ResultadoValidacao>> cs =
+            new ExecutorCompletionService<List<ResultadoValidacao>>(executor);
+        int tamanhoGrupo = this.tamanhoGrupo;
+        // Contados em registros
+        int enviados = 0;
+        int concluidos = 0;
+        try {
+            LeitorListRecords leitor = new LeitorListRecords(is);
+            try {
+                List<RegistroItem> grupo = new ArrayList<RegistroItem>(tamanhoGrupo);
+                RegistroItem registro;
+                while ((registro = leitor.proximo()) != null) {
+                    grupo.add(registro);
+                    if (grupo.size() < tamanhoGrupo) {
+                        continue;
+                    }
+                    cs.submit(new TarefaValidacao(grupo, ctxUsr));
+                    enviados += grupo.size();
+                    grupo = new ArrayList<RegistroItem>(tamanhoGrupo);
+                    while (enviados - concluidos >= maximoEmAndamento) {
+                        concluidos += entrega(cs.take(), ouvinte);
+                    }
+                    Future<List<ResultadoValidacao>> f;
+                    while ((f = cs.poll()) != null) {
+                        concluidos += entrega(f, ouvinte);
+                    }
+                }
+                if (!grupo.isEmpty()) {
+                    cs.submit(new TarefaValidacao(grupo, ctxUsr));
+                    enviados += grupo.size();
+                }
+            }
+            finally {
+                leitor.close();
+            }
+            while (concluidos < enviados) {
+                concluidos += entrega(cs.take(), ouvinte);
+            }
+        }
+        catch (XMLStreamException e) {
+            throw new IOException("Falha na leitura da resposta ListRecords: " + e.getMessage(), e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Validação em lote interrompida.", e);
+        }
+        return enviados;
+    }
+
+    private static ExecutorService criaPool(final int threads) {
+        final AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(r, "ValidadorLote-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    private int entrega(final Future<List<ResultadoValidacao>> f, final OuvinteResultadoValidacao ouvinte)
+        throws InterruptedException {
+        try {
+            List<ResultadoValidacao> resultados = f.get();
+            for (ResultadoValidacao resultado : resultados) {
+                ouvinte.resultado(resultado);
+            }
+            return resultados.size();
+        }
+        catch (ExecutionException e) {
+            // TarefaValidacao não propaga exceções
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private class TarefaValidacao implements Callable<List<ResultadoValidacao>> {
+
+        private final List<RegistroItem> registros;
+
+        private final Object ctxUsr;
+
+        TarefaValidacao(final List<RegistroItem> registros, final Object ctxUsr) {
+            this.registros = registros;
+            this.ctxUsr = ctxUsr;
+        }
+
+        public List<ResultadoValidacao> call() {
+            if (registros.size() > 1) {
+                try {
+                    return validador.validarLote(registros, ctxUsr);
+                }
+                catch (RuntimeException e) {
+                    log.error("Falha inesperada na validação de um grupo de " + registros.size()
+                        + " registros; os registros serão validados individualmente.", e);
+                }
+            }
+            List<ResultadoValidacao> resultados = new ArrayList<ResultadoValidacao>(registros.size());
+            for (RegistroItem registro : registros) {
+                resultados.add(valida(registro));
+            }
+            return resultados;
+        }
+
+        private ResultadoValidacao valida(final RegistroItem registro) {
+            try {
+                return validador.validarComResultado(registro.getIdRegistroItem(), registro.getXml(), ctxUsr);
+            }
+            catch (RuntimeException e) {
+                log.error("Falha inesperada na validação do registro " + registro.getIdRegistroItem(), e);
+                return new ResultadoValidacao(registro.getIdRegistroItem(), false, TipoErroValidacao.ERRO_GENERICO,
+                    "Falha inesperada na validação: " + e.getMessage());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,876 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Validação em massa particionada e retomável, para revalidações longas divididas entre vários nós sem
+ * coordenação. As entradas são as mesmas do {@link ValidadorEmMassa}; cada registro pertence à partição
+ * {@link #getParticao(String, int)} do seu idRegistroItem e cada nó valida somente os registros da sua partição.
+ * <p/>
+ * Os resultados são escritos na ordem de leitura das entradas, em <code>particao-I-de-N.jsonl</code> no diretório de
+ * trabalho. Periodicamente, o ponto de controle <code>particao-I-de-N.controle</code> é gravado com a posição do
+ * último registro escrito (arquivo e registro dentro do arquivo), o tamanho da saída e as contagens por
+ * {@link TipoErroValidacao}. Se a execução é interrompida, a próxima execução com as mesmas entradas descarta o que
+ * foi escrito depois do ponto de controle e continua a partir dele, sem validar novamente os registros anteriores.
+ * Ao final, o ponto de controle é marcado como concluído e serve de relatório da partição;
+ * {@link #mescla(List)} junta os relatórios de todas as partições em um único {@link ResumoValidacao}.
+ * <p/>
+ * As entradas não podem mudar entre as execuções de uma mesma tarefa: as posições dependem da ordem dos arquivos
+ * (diretórios são percorridos em ordem alfabética) e dos registros dentro deles. Cada nó lê o início de todos os
+ * arquivos e percorre todas as respostas ListRecords, mas só valida os registros da sua partição.
+ * <p/>
+ * Uso em linha de comando (ver {@link #main(String[])}):
+ *
+ * <pre>
+ * java -cp ... br.gov.lexml.coleta.validador.ValidadorParticionado perfil=perfil.bin particao=0/4 trabalho=revalidacao \
+ *     dumps/
+ * java -cp ... br.gov.lexml.coleta.validador.ValidadorParticionado mescla resumo=resumo.json revalidacao/
+ * </pre>
+ */
+public class ValidadorParticionado implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidadorParticionado.class);
+
+    private static final int ASSINATURA = 0x4c585043;
+
+    private static final int VERSAO = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ValidadorRegistroItem validador;
+
+    private final int particao;
+
+    private final int particoes;
+
+    private final File arquivoResultados;
+
+    private final File arquivoControle;
+
+    private final ExecutorService executor;
+
+    private final int maximoEmAndamento;
+
+    private final Semaphore emAndamento;
+
+    private long intervaloControleNanos = TimeUnit.SECONDS.toNanos(10);
+
+    // Estado da execução, protegido por this
+
+    private PontoControle controle;
+
+    // Eventos lidos e ainda não aplicados, na ordem das entradas
+    private final ArrayDeque<Evento> eventos = new ArrayDeque<Evento>();
+
+    private FileChannel canalResultados;
+
+    private Writer resultados;
+
+    private long inicioExecucao;
+
+    private long ultimoControle;
+
+    private IOException falhaSaida;
+
+    private Error falhaValidacao;
+
+    /**
+     * O validador deve estar configurado (ValidadorService, perfil, motor); o tamanho do pool de parsers é
+     * substituído.
+     *
+     * @param particao partição validada, de 0 a particoes - 1
+     * @param particoes número de partições da tarefa
+     * @param diretorio diretório de trabalho da partição: resultados e ponto de controle
+     * @param threads número de registros validados em paralelo
+     */
+    public ValidadorParticionado(final ValidadorRegistroItem validador, final int particao, final int particoes,
+                                 final File diretorio, final int threads) {
+        if (particoes < 1 || particao < 0 || particao >= particoes) {
+            throw new IllegalArgumentException("Partição inválida: " + particao + "/" + particoes);
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Número de threads deve ser maior que zero: " + threads);
+        }
+        this.validador = validador;
+        this.particao = particao;
+        this.particoes = particoes;
+        String nome = "particao-" + particao + "-de-" + particoes;
+        arquivoResultados = new File(diretorio, nome + ".jsonl");
+        arquivoControle = new File(diretorio, nome + ".controle");
+        validador.setTamanhoPool(threads);
+        final AtomicInteger contador = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "ValidadorParticionado-" + contador.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        maximoEmAndamento = 4 * threads;
+        emAndamento = new Semaphore(maximoEmAndamento);
+    }
+
+    /**
+     * Intervalo mínimo entre as gravações do ponto de controle. Padrão: 10 segundos.
+     */
+    public void setIntervaloControle(final long intervalo, final TimeUnit unidade) {
+        intervaloControleNanos = unidade.toNanos(intervalo);
+    }
+
+    public File getArquivoResultados() {
+        return arquivoResultados;
+    }
+
+    public File getArquivoControle() {
+        return arquivoControle;
+    }
+
+    /**
+     * Partição de um registro: CRC-32 do idRegistroItem em UTF-8, módulo o número de partições.
+     */
+    public static int getParticao(final String idRegistroItem, final int particoes) {
+        CRC32 crc = new CRC32();
+        if (idRegistroItem != null) {
+            crc.update(idRegistroItem.getBytes(UTF_8));
+        }
+        return (int) (crc.getValue() % particoes);
+    }
+
+    /**
+     * Valida os registros da partição, continuando a partir do ponto de controle se houver. Se a partição já foi
+     * concluída, apenas retorna o resumo gravado. Falhas de leitura de um arquivo são registradas no log e contadas
+     * no resumo, sem interromper a validação dos demais.
+     *
+     * @param entradas diretórios ou arquivos, sempre os mesmos (e na mesma ordem) em todas as execuções da tarefa
+     * @return resumo da partição, considerando também as execuções anteriores
+     */
+    public ResumoValidacao executa(final List<File> entradas) throws IOException {
+        List<String> nomes = new ArrayList<String>(entradas.size());
+        for (File entrada : entradas) {
+            nomes.add(entrada.getPath());
+        }
+        Enumeracao enumeracao = inicia(nomes);
+        if (enumeracao == null) {
+            log.info("Partição " + particao + "/" + particoes + " já concluída: " + arquivoControle);
+            return controle.getResumo();
+        }
+        try {
+            for (File entrada : entradas) {
+                enumeracao.enumera(entrada);
+            }
+            emAndamento.acquireUninterruptibly(maximoEmAndamento);
+            emAndamento.release(maximoEmAndamento);
+            synchronized (this) {
+                verificaFalhas();
+                controle.concluido = true;
+                gravaControle();
+                return controle.getResumo();
+            }
+        }
+        catch (FalhaSaida e) {
+            throw e.getCause();
+        }
+        finally {
+            synchronized (this) {
+                try {
+                    resultados.close();
+                }
+                catch (IOException e) {
+                    log.warn("Falha ao fechar " + arquivoResultados, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Encerra as threads de validação.
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Junta os relatórios (pontos de controle concluídos) de todas as partições de uma tarefa. A duração é a da
+     * partição mais demorada, já que as partições são executadas em paralelo.
+     */
+    public static ResumoValidacao mescla(final List<File> arquivosControle) throws IOException {
+        PontoControle total = null;
+        boolean[] presentes = null;
+        for (File arquivo : arquivosControle) {
+            PontoControle p = PontoControle.le(arquivo);
+            if (!p.concluido) {
+                throw new IOException("Partição " + p.particao + "/" + p.particoes + " não concluída: " + arquivo);
+            }
+            if (total == null) {
+                total = new PontoControle(0, p.particoes, p.entradas);
+                total.concluido = true;
+                presentes = new boolean[p.particoes];
+            }
+            else if (p.particoes != total.particoes || !p.entradas.equals(total.entradas)) {
+                throw new IOException("Relatório de outra tarefa: " + arquivo);
+            }
+            if (presentes[p.particao]) {
+                throw new IOException("Partição " + p.particao + "/" + p.particoes + " repetida: " + arquivo);
+            }
+            presentes[p.particao] = true;
+            total.soma(p);
+        }
+        if (total == null) {
+            throw new IOException("Nenhum relatório de partição informado");
+        }
+        for (int i = 0; i < presentes.length; i++) {
+            if (!presentes[i]) {
+                throw new IOException("Falta o relatório da partição " + i + "/" + presentes.length);
+            }
+        }
+        return total.getResumo();
+    }
+
+    /**
+     * Lê o ponto de controle e prepara o arquivo de resultados.
+     *
+     * @return enumeração das entradas a partir do ponto de controle ou null se a partição já foi concluída
+     */
+    private synchronized Enumeracao inicia(final List<String> entradas) throws IOException {
+        if (arquivoControle.exists()) {
+            controle = PontoControle.le(arquivoControle);
+            if (controle.particao != particao || controle.particoes != particoes
+                || !controle.entradas.equals(entradas)) {
+                throw new IOException("Ponto de controle de outra tarefa: " + arquivoControle);
+            }
+            if (controle.concluido) {
+                return null;
+            }
+            log.info("Partição " + particao + "/" + particoes + " retomada após " + controle.registros
+                + " registros");
+        }
+        else {
+            controle = new PontoControle(particao, particoes, entradas);
+        }
+        canalResultados = FileChannel.open(arquivoResultados.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        if (canalResultados.size() < controle.tamanhoResultados) {
+            canalResultados.close();
+            throw new IOException("Arquivo de resultados menor que o registrado no ponto de controle: "
+                + arquivoResultados);
+        }
+        // Descarta os resultados escritos depois do ponto de controle
+        canalResultados.truncate(controle.tamanhoResultados);
+        canalResultados.position(controle.tamanhoResultados);
+        resultados = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(canalResultados), UTF_8),
+            1 << 16);
+        inicioExecucao = System.nanoTime();
+        ultimoControle = inicioExecucao;
+        return new Enumeracao(controle.arquivo, controle.registro);
+    }
+
+    /**
+     * Enfileira um evento. Eventos de registro são concluídos pela thread de validação.
+     */
+    private synchronized void adiciona(final Evento evento) {
+        verificaFalhas();
+        eventos.add(evento);
+        if (evento.concluido) {
+            aplica();
+        }
+    }
+
+    private synchronized void conclui(final Evento evento, final ResultadoValidacao resultado,
+                                      final long duracaoNanos) {
+        evento.resultado = resultado;
+        evento.duracaoNanos = duracaoNanos;
+        evento.concluido = true;
+        aplica();
+    }
+
+    /**
+     * Aplica os eventos concluídos no início da fila: escreve os resultados, atualiza as contagens e a posição e,
+     * se passou o intervalo, grava o ponto de controle.
+     */
+    private void aplica() {
+        Evento evento;
+        while ((evento = eventos.peek()) != null && evento.concluido) {
+            eventos.poll();
+            controle.aplica(evento);
+            if (evento.resultado != null) {
+                emAndamento.release();
+                if (falhaSaida == null) {
+                    try {
+                        resultados.write(ValidadorEmMassa.linhaJSON(evento.nome, evento.resultado));
+                    }
+                    catch (IOException e) {
+                        falhaSaida = e;
+                    }
+                }
+            }
+        }
+        if (falhaSaida == null && falhaValidacao == null
+            && System.nanoTime() - ultimoControle >= intervaloControleNanos) {
+            try {
+                gravaControle();
+            }
+            catch (IOException e) {
+                falhaSaida = e;
+            }
+        }
+    }
+
+    /**
+     * Grava o ponto de controle depois de garantir que os resultados aplicados estão no disco.
+     */
+    private void gravaControle() throws IOException {
+        resultados.flush();
+        canalResultados.force(false);
+        long agora = System.nanoTime();
+        controle.duracaoNanos += agora - inicioExecucao;
+        inicioExecucao = agora;
+        ultimoControle = agora;
+        controle.tamanhoResultados = canalResultados.position();
+        controle.grava(arquivoControle);
+    }
+
+    /**
+     * Interrompe a leitura das entradas se a validação ou a escrita dos resultados falhou.
+     */
+    private void verificaFalhas() {
+        if (falhaValidacao != null) {
+            throw falhaValidacao;
+        }
+        if (falhaSaida != null) {
+            throw new FalhaSaida(falhaSaida);
+        }
+    }
+
+    private void validaRegistro(final Evento evento, final String idRegistroItem, final ByteBuffer xml) {
+        emAndamento.acquireUninterruptibly();
+        try {
+            adiciona(evento);
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    long inicio = System.nanoTime();
+                    ResultadoValidacao resultado;
+                    try {
+                        resultado = validador.validarComResultado(idRegistroItem, xml, evento.nome);
+                    }
+                    catch (RuntimeException e) {
+                        log.error("Falha inesperada na validação do registro " + idRegistroItem, e);
+                        resultado = new ResultadoValidacao(idRegistroItem, false, TipoErroValidacao.ERRO_GENERICO,
+                            "Falha inesperada na validação: " + e.getMessage());
+                    }
+                    catch (Error e) {
+                        // O registro não é concluído: a execução é interrompida sem avançar o ponto de controle
+                        synchronized (ValidadorParticionado.this) {
+                            falhaValidacao = e;
+                        }
+                        emAndamento.release(maximoEmAndamento);
+                        throw e;
+                    }
+                    conclui(evento, resultado, System.nanoTime() - inicio);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            emAndamento.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Percorre as entradas na ordem, numerando os arquivos (e entradas de arquivos zip) e os registros de cada
+     * arquivo. Executada somente pela thread que chama {@link #executa(List)}.
+     */
+    private class Enumeracao implements LeitorEntradas.Destino {
+
+        // Posição do ponto de controle no início da execução; as posições até ela já foram aplicadas
+        private final long arquivoRetomada;
+
+        private final long registroRetomada;
+
+        private final LeitorEntradas leitor = new LeitorEntradas(this);
+
+        private long arquivo = -1;
+
+        Enumeracao(final long arquivoRetomada, final long registroRetomada) {
+            this.arquivoRetomada = arquivoRetomada;
+            this.registroRetomada = registroRetomada;
+        }
+
+        void enumera(final File entrada) throws IOException {
+            leitor.le(entrada);
+        }
+
+        public boolean inicia(final String nome) {
+            // Falhas de leitura também são numeradas, para que todas as partições concordem sobre as posições
+            arquivo++;
+            return !isAnterior(arquivo, Long.MAX_VALUE);
+        }
+
+        public boolean aceitaRegistro(final String idRegistroItem) {
+            return isDaParticao(idRegistroItem);
+        }
+
+        public void registro(final String nome, final String idRegistroItem, final ByteBuffer xml) {
+            registraArquivo(nome);
+            validaRegistro(new Evento(arquivo, 0, nome), idRegistroItem, xml);
+        }
+
+        public void listRecords(final String nome, final InputStream is) throws IOException {
+            enumeraListRecords(nome, is);
+        }
+
+        public void falhaLeitura(final String nome, final IOException e) {
+            falhaLeitura(nome, e, 0);
+        }
+
+        private void enumeraListRecords(final String nome, final InputStream is) throws IOException {
+            if (isDonoDoArquivo(nome)) {
+                registraArquivo(nome);
+            }
+            long registro = 0;
+            try {
+                LeitorListRecords leitor = new LeitorListRecords(is);
+                try {
+                    for (; leitor.avanca(); registro++) {
+                        String idRegistroItem = leitor.getIdentificador();
+                        if (isDaParticao(idRegistroItem) && !isAnterior(arquivo, registro)) {
+                            validaRegistro(new Evento(arquivo, registro, nome), idRegistroItem,
+                                ByteBuffer.wrap(leitor.leMetadado()));
+                        }
+                    }
+                }
+                finally {
+                    leitor.close();
+                }
+            }
+            catch (XMLStreamException e) {
+                falhaLeitura(nome, new IOException("Falha na leitura da resposta ListRecords: " + e.getMessage(), e),
+                    registro);
+            }
+        }
+
+        /**
+         * Conta o arquivo no resumo da partição (na posição -1, antes dos seus registros).
+         */
+        private void registraArquivo(final String nome) {
+            if (!isAnterior(arquivo, -1)) {
+                Evento evento = new Evento(arquivo, -1, nome);
+                evento.concluido = true;
+                adiciona(evento);
+            }
+        }
+
+        /**
+         * Registra a falha de leitura na partição responsável pelo arquivo, na posição em que ocorreu.
+         */
+        private void falhaLeitura(final String nome, final IOException e, final long registro) {
+            if (isDonoDoArquivo(nome) && !isAnterior(arquivo, registro)) {
+                log.error("Falha na leitura de " + nome, e);
+                Evento evento = new Evento(arquivo, registro, nome);
+                evento.falhaLeitura = true;
+                evento.concluido = true;
+                adiciona(evento);
+            }
+        }
+
+        /**
+         * Cada arquivo é contado (e suas falhas de leitura, informadas) somente na partição do nome do arquivo, que
+         * no caso de arquivos de um registro é a partição do próprio registro.
+         */
+        private boolean isDonoDoArquivo(final String nome) {
+            return isDaParticao(LeitorEntradas.getIdRegistroItem(nome));
+        }
+
+        private boolean isDaParticao(final String idRegistroItem) {
+            return getParticao(idRegistroItem, particoes) == particao;
+        }
+
+        /**
+         * Verifica se a posição já foi aplicada em uma execução anterior.
+         */
+        private boolean isAnterior(final long arquivo, final long registro) {
+            return arquivo < arquivoRetomada || (arquivo == arquivoRetomada && registro <= registroRetomada);
+        }
+
+    }
+
+    /**
+     * Falha na escrita dos resultados ou do ponto de controle, propagada sem ser confundida com falhas de leitura
+     * das entradas.
+     */
+    private static class FalhaSaida extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        FalhaSaida(final IOException causa) {
+            super(causa);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+
+    }
+
+    /**
+     * Arquivo, registro ou falha de leitura, na posição (arquivo, registro) em que foi lido.
+     */
+    private static class Evento {
+
+        final long arquivo;
+
+        final long registro;
+
+        final String nome;
+
+        boolean falhaLeitura;
+
+        boolean concluido;
+
+        ResultadoValidacao resultado;
+
+        long duracaoNanos;
+
+        Evento(final long arquivo, final long registro, final String nome) {
+            this.arquivo = arquivo;
+            this.registro = registro;
+            this.nome = nome;
+        }
+
+        boolean isArquivo() {
+            return registro < 0;
+        }
+
+    }
+
+    /**
+     * Posição e contagens de uma partição, gravadas atomicamente (arquivo temporário e renomeação).
+     */
+    private static class PontoControle {
+
+        final int particao;
+
+        final int particoes;
+
+        final List<String> entradas;
+
+        boolean concluido;
+
+        // Posição do último evento aplicado
+        long arquivo = -1;
+
+        long registro = -1;
+
+        long tamanhoResultados;
+
+        long arquivos;
+
+        long falhasLeitura;
+
+        long registros;
+
+        long validos;
+
+        long duracaoNanos;
+
+        final Map<TipoErroValidacao, Long> erros = new TreeMap<TipoErroValidacao, Long>();
+
+        HistogramaLatencia latencia = new HistogramaLatencia();
+
+        PontoControle(final int particao, final int particoes, final List<String> entradas) {
+            this.particao = particao;
+            this.particoes = particoes;
+            this.entradas = entradas;
+        }
+
+        void aplica(final Evento evento) {
+            arquivo = evento.arquivo;
+            registro = evento.registro;
+            if (evento.falhaLeitura) {
+                falhasLeitura++;
+            }
+            else if (evento.isArquivo()) {
+                arquivos++;
+            }
+            else {
+                ResultadoValidacao resultado = evento.resultado;
+                registros++;
+                latencia.registra(evento.duracaoNanos);
+                if (resultado.isValido()) {
+                    validos++;
+                }
+                else if (resultado.getTipoErro() != null) {
+                    soma(resultado.getTipoErro(), 1);
+                }
+            }
+        }
+
+        void soma(final PontoControle outro) {
+            arquivos += outro.arquivos;
+            falhasLeitura += outro.falhasLeitura;
+            registros += outro.registros;
+            validos += outro.validos;
+            duracaoNanos = Math.max(duracaoNanos, outro.duracaoNanos);
+            for (Map.Entry<TipoErroValidacao, Long> erro : outro.erros.entrySet()) {
+                soma(erro.getKey(), erro.getValue());
+            }
+            latencia.soma(outro.latencia);
+        }
+
+        private void soma(final TipoErroValidacao tipoErro, final long quantidade) {
+            Long anterior = erros.get(tipoErro);
+            erros.put(tipoErro, anterior == null ? quantidade : anterior + quantidade);
+        }
+
+        ResumoValidacao getResumo() {
+            return new ResumoValidacao(arquivos, falhasLeitura, registros, validos,
+                new TreeMap<TipoErroValidacao, Long>(erros), duracaoNanos, latencia);
+        }
+
+        void grava(final File destino) throws IOException {
+            File temporario = new File(destino.getPath() + ".tmp");
+            FileOutputStream fos = new FileOutputStream(temporario);
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+                out.writeInt(ASSINATURA);
+                out.writeInt(VERSAO);
+                out.writeInt(particao);
+                out.writeInt(particoes);
+                out.writeInt(entradas.size());
+                for (String entrada : entradas) {
+                    out.writeUTF(entrada);
+                }
+                out.writeBoolean(concluido);
+                out.writeLong(arquivo);
+                out.writeLong(registro);
+                out.writeLong(tamanhoResultados);
+                out.writeLong(arquivos);
+                out.writeLong(falhasLeitura);
+                out.writeLong(registros);
+                out.writeLong(validos);
+                out.writeLong(duracaoNanos);
+                // Tipos gravados pelo nome, como no CacheResultadosValidacao
+                out.writeInt(erros.size());
+                for (Map.Entry<TipoErroValidacao, Long> erro : erros.entrySet()) {
+                    out.writeUTF(erro.getKey().name());
+                    out.writeLong(erro.getValue());
+                }
+                latencia.grava(out);
+                out.flush();
+                fos.getFD().sync();
+            }
+            finally {
+                fos.close();
+            }
+            Files.move(temporario.toPath(), destino.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        static PontoControle le(final File arquivo) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivo)));
+            try {
+                if (in.readInt() != ASSINATURA || in.readInt() != VERSAO) {
+                    throw new IOException("Formato de ponto de controle não suportado: " + arquivo);
+                }
+                int particao = in.readInt();
+                int particoes = in.readInt();
+                if (particoes < 1 || particao < 0 || particao >= particoes) {
+                    throw new IOException("Ponto de controle corrompido: " + arquivo);
+                }
+                int quantidadeEntradas = in.readInt();
+                List<String> entradas = new ArrayList<String>(quantidadeEntradas);
+                for (int i = 0; i < quantidadeEntradas; i++) {
+                    entradas.add(in.readUTF());
+                }
+                PontoControle p = new PontoControle(particao, particoes, entradas);
+                p.concluido = in.readBoolean();
+                p.arquivo = in.readLong();
+                p.registro = in.readLong();
+                p.tamanhoResultados = in.readLong();
+                p.arquivos = in.readLong();
+                p.falhasLeitura = in.readLong();
+                p.registros = in.readLong();
+                p.validos = in.readLong();
+                p.duracaoNanos = in.readLong();
+                int quantidadeErros = in.readInt();
+                for (int i = 0; i < quantidadeErros; i++) {
+                    String tipo = in.readUTF();
+                    long quantidade = in.readLong();
+                    try {
+                        p.soma(TipoErroValidacao.valueOf(tipo), quantidade);
+                    }
+                    catch (IllegalArgumentException e) {
+                        throw new IOException("Tipo de erro desconhecido no ponto de controle: " + tipo);
+                    }
+                }
+                p.latencia = HistogramaLatencia.le(in);
+                return p;
+            }
+            finally {
+                in.close();
+            }
+        }
+
+    }
+
+    /**
+     * Argumentos: <code>perfil=arquivo particao=I/N trabalho=diretorio [threads=n] [controle=segundos]
+     * [motor=DOM|STREAMING] [prevalidacao=true|false] entrada...</code> para validar (ou retomar) uma partição, ou
+     * <code>mescla [resumo=arquivo] relatorio...</code> para juntar os relatórios das partições (arquivos .controle
+     * ou diretórios que os contêm). O resumo é escrito na saída de erro e, em JSON, no arquivo <code>resumo</code>.
+     * O código de saída é 0 se todos os registros são válidos, 1 se há registros inválidos ou falhas de leitura e 2
+     * se os argumentos são inválidos.
+     */
+    public static void main(final String[] args) throws IOException {
+        boolean mescla = args.length > 0 && "mescla".equals(args[0]);
+        File arquivoPerfil = null;
+        File trabalho = null;
+        File arquivoResumo = null;
+        int particao = -1;
+        int particoes = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long intervaloControle = 10;
+        MotorValidacao motor = MotorValidacao.DOM;
+        boolean preValidacao = false;
+        List<File> entradas = new ArrayList<File>();
+        try {
+            for (int i = mescla ? 1 : 0; i < args.length; i++) {
+                String arg = args[i];
+                int igual = arg.indexOf('=');
+                String nome = igual < 0 ? "" : arg.substring(0, igual);
+                String valor = arg.substring(igual + 1);
+                if ("perfil".equals(nome)) {
+                    arquivoPerfil = new File(valor);
+                }
+                else if ("particao".equals(nome)) {
+                    int barra = valor.indexOf('/');
+                    particao = Integer.parseInt(valor.substring(0, barra < 0 ? 0 : barra));
+                    particoes = Integer.parseInt(valor.substring(barra + 1));
+                }
+                else if ("trabalho".equals(nome)) {
+                    trabalho = new File(valor);
+                }
+                else if ("threads".equals(nome)) {
+                    threads = Integer.parseInt(valor);
+                }
+                else if ("controle".equals(nome)) {
+                    intervaloControle = Long.parseLong(valor);
+                }
+                else if ("resumo".equals(nome)) {
+                    arquivoResumo = new File(valor);
+                }
+                else if ("motor".equals(nome)) {
+                    motor = MotorValidacao.valueOf(valor.toUpperCase(Locale.ENGLISH));
+                }
+                else if ("prevalidacao".equals(nome)) {
+                    preValidacao = Boolean.parseBoolean(valor);
+                }
+                else {
+                    entradas.add(new File(arg));
+                }
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Argumento inválido: " + e.getMessage());
+            entradas.clear();
+        }
+        catch (IndexOutOfBoundsException e) {
+            System.err.println("Argumento inválido: " + e.getMessage());
+            entradas.clear();
+        }
+        if (entradas.isEmpty() || (!mescla && (arquivoPerfil == null || trabalho == null || particoes < 1
+            || particao < 0 || particao >= particoes || threads < 1))) {
+            System.err.println("Uso: ValidadorParticionado perfil=arquivo particao=I/N trabalho=diretorio "
+                + "[threads=n] [controle=segundos] [motor=DOM|STREAMING] [prevalidacao=true|false] entrada...");
+            System.err.println("     ValidadorParticionado mescla [resumo=arquivo] relatorio...");
+            System.exit(2);
+        }
+
+        ResumoValidacao resumo;
+        if (mescla) {
+            List<File> relatorios = new ArrayList<File>();
+            for (File entrada : entradas) {
+                File[] arquivos = entrada.isDirectory() ? entrada.listFiles() : new File[] {entrada };
+                for (File arquivo : arquivos) {
+                    if (arquivo.getName().endsWith(".controle")) {
+                        relatorios.add(arquivo);
+                    }
+                }
+            }
+            resumo = mescla(relatorios);
+        }
+        else {
+            ValidadorServicePerfilLocal svc = ValidadorServicePerfilLocal.carrega(arquivoPerfil);
+            ValidadorRegistroItem validador = new ValidadorRegistroItem();
+            validador.setValidadorService(svc);
+            validador.setIndicePerfil(svc.getIndicePerfil());
+            validador.setMotorValidacao(motor);
+            validador.setPreValidacao(preValidacao);
+            if (!trabalho.isDirectory() && !trabalho.mkdirs()) {
+                throw new IOException("Não foi possível criar o diretório " + trabalho);
+            }
+            ValidadorParticionado validadorParticionado =
+                new ValidadorParticionado(validador, particao, particoes, trabalho, threads);
+            try {
+                validadorParticionado.setIntervaloControle(intervaloControle, TimeUnit.SECONDS);
+                resumo = validadorParticionado.executa(entradas);
+            }
+            finally {
+                validadorParticionado.close();
+            }
+        }
+
+        System.err.println(resumo);
+        if (arquivoResumo != null) {
+            Writer w = new OutputStreamWriter(new FileOutputStream(arquivoResumo), UTF_8);
+            try {
+                w.write(resumo.toJSON());
+                w.write('\n');
+            }
+            finally {
+                w.close();
+            }
+        }
+        System.exit(resumo.getInvalidos() == 0 && resumo.getFalhasLeitura() == 0 ? 0 : 1);
+    }
+
+}
@@ -1,39 +1,228 @@
 
 package br.gov.lexml.coleta.validador;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.validation.Schema;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
+/**
+ * Validador de registros da coleta. Uma mesma instância pode ser compartilhada entre threads: os
+ * parsers são obtidos de um {@link PoolValidadorXMLHelper} a cada chamada e o estado da validação é
+ * mantido por chamada.
+ */
 public class ValidadorRegistroItem {
 
     private static final Logger log = LoggerFactory.getLogger(ValidadorRegistroItem.class);
 
     private static final String SEP = ":";
 
-    private static final String TIPO_PERFIL_DOCUMENTO_INDIVIDUAL = "D";
-    private static final String TIPO_PERFIL_RELACIONAMENTO = "R";
+    private static final char TIPO_PERFIL_DOCUMENTO_INDIVIDUAL = IndicePerfil.PERFIL_DOCUMENTO_INDIVIDUAL;
+    private static final char TIPO_PERFIL_RELACIONAMENTO = IndicePerfil.PERFIL_RELACIONAMENTO;
+
+    private volatile ValidadorService svc;
+
+    private volatile IndicePerfil indicePerfil;
+
+    private boolean schemaCompartilhado;
+
+    private int tamanhoPool = Runtime.getRuntime().availableProcessors();
+
+    private boolean offline;
+
+    private volatile CacheResultadosValidacao cacheResultados;
+
+    private volatile PublicadorErrosValidacao publicadorErros;
+
+    private volatile OuvinteValidacao ouvinteValidacao;
+
+    private volatile DestinoDependencias destinoDependencias;
+
+    private volatile LimitesValidacao limitesValidacao = LimitesValidacao.SEM_LIMITES;
+
+    private volatile boolean preValidacao;
 
-    private ValidadorService svc;
+    private volatile TipoErroValidacao[] tiposErro = tiposErroPadrao();
 
-    private final ValidadorXMLHelper xmlHelper;
+    private volatile MotorValidacao motorValidacao = MotorValidacao.DOM;
+
+    private volatile PoolValidadorXMLHelper pool;
+
+    // Pool preparado pelo último aquecimento; o validador está pronto enquanto ele for o pool vigente
+    private volatile PoolValidadorXMLHelper poolAquecido;
 
     public ValidadorRegistroItem() {
-        xmlHelper = new ValidadorXMLHelper();
+        pool = criaPool();
     }
 
     public void setValidadorService(final ValidadorService validadorService) {
         svc = validadorService;
     }
 
+    /**
+     * Se informado, os núcleos das URNs são verificados diretamente no índice, sem consultar
+     * ValidadorService.isNucleoValido. O ValidadorService continua sendo usado para o registro dos erros.
+     * <p/>
+     * O índice pode ser trocado durante as validações (por exemplo, por uma nova versão mapeada com
+     * {@link IndicePerfil#mapeia}): cada registro é validado inteiramente com o índice vigente no seu início. Os
+     * resultados de registros iniciados antes da troca não são gravados no cache; altere a época do cache depois da
+     * troca para descartar os anteriores.
+     */
+    public void setIndicePerfil(final IndicePerfil indicePerfil) {
+        this.indicePerfil = indicePerfil;
+    }
+
+    /**
+     * Se verdadeiro, os registros são validados contra o schema oai_lexml compilado uma única vez
+     * (compartilhado entre todas as instâncias), em vez de resolver e compilar os XSDs a cada parse a
+     * partir do xsi:schemaLocation do registro.
+     */
+    public synchronized void setSchemaCompartilhado(final boolean schemaCompartilhado) {
+        this.schemaCompartilhado = schemaCompartilhado;
+        pool = criaPool();
+    }
+
+    /**
+     * Número máximo de parsers mantidos no pool, isto é, de validações executadas simultaneamente.
+     * Padrão: número de processadores disponíveis.
+     */
+    public synchronized void setTamanhoPool(final int tamanhoPool) {
+        this.tamanhoPool = tamanhoPool;
+        pool = criaPool();
+    }
+
+    public synchronized int getTamanhoPool() {
+        return tamanhoPool;
+    }
+
+    /**
+     * Se verdadeiro, os schemas e demais entidades externas são resolvidos somente pelo {@link CatalogoSchemas}
+     * (XSDs do classpath mantidos em memória), sem nenhum acesso à rede. Uma referência externa desconhecida
+     * torna o registro inválido (XML_INVALIDO) imediatamente. Com o schema compartilhado, um import/include fora
+     * do catálogo interrompe a compilação do schema.
+     */
+    public synchronized void setOffline(final boolean offline) {
+        this.offline = offline;
+        pool = criaPool();
+    }
+
+    /**
+     * Se informado, um registro cujo XML não mudou desde a última validação (mesmo id, mesmo SHA-256 e mesma
+     * época do cache) recebe o resultado anterior sem novo parse. Os erros continuam sendo registrados em
+     * ValidadorService.logError.
+     */
+    public void setCacheResultados(final CacheResultadosValidacao cacheResultados) {
+        this.cacheResultados = cacheResultados;
+    }
+
+    /**
+     * Se informado, os erros são publicados no {@link PublicadorErrosValidacao}, que os entrega em lotes em outra
+     * thread, em vez de registrados diretamente em ValidadorService.logError. O ValidadorService continua sendo
+     * usado para a consulta dos núcleos.
+     */
+    public void setPublicadorErros(final PublicadorErrosValidacao publicadorErros) {
+        this.publicadorErros = publicadorErros;
+    }
+
+    /**
+     * Se informado, recebe a duração de cada fase da validação, de cada consulta de núcleo e de cada registro
+     * validado, com o resultado. Sem ouvinte, nenhuma medição é feita.
+     *
+     * @see MetricasValidacao
+     */
+    public void setOuvinteValidacao(final OuvinteValidacao ouvinteValidacao) {
+        this.ouvinteValidacao = ouvinteValidacao;
+    }
+
+    /**
+     * Se informado, recebe os núcleos consultados na validação de cada registro, com o resultado de cada consulta.
+     * Registros obtidos do {@link CacheResultadosValidacao} não são informados, pois os núcleos não são consultados.
+     *
+     * @see IndiceImpacto
+     */
+    public void setDestinoDependencias(final DestinoDependencias destinoDependencias) {
+        this.destinoDependencias = destinoDependencias;
+    }
+
+    /**
+     * Limita o custo da validação de cada registro: registros acima dos limites são recusados com a regra
+     * {@link RegraValidacao#LIMITE_EXCEDIDO} assim que o excesso é detectado, informada como
+     * {@link TipoErroValidacao#ERRO_GENERICO} salvo configuração com {@link #setTipoErro}. Resultados recusados por
+     * limite não são gravados no {@link CacheResultadosValidacao}. Padrão: {@link LimitesValidacao#SEM_LIMITES}.
+     */
+    public void setLimitesValidacao(final LimitesValidacao limitesValidacao) {
+        this.limitesValidacao = limitesValidacao == null ? LimitesValidacao.SEM_LIMITES : limitesValidacao;
+    }
+
+    public LimitesValidacao getLimitesValidacao() {
+        return limitesValidacao;
+    }
+
+    /**
+     * Define a forma de leitura dos registros. O padrão é {@link MotorValidacao#DOM}; o motor
+     * {@link MotorValidacao#STREAMING} não monta o DOM e tem consumo de memória constante por registro.
+     */
+    public void setMotorValidacao(final MotorValidacao motorValidacao) {
+        this.motorValidacao = motorValidacao;
+    }
+
+    /**
+     * Se verdadeiro, antes da validação de schema o XML é percorrido sem validação para extrair as URNs e os
+     * publicadores, e as regras de URN (RV#5 a RV#8) são aplicadas primeiro: registros com URN inválida ou
+     * incompatível com o perfil são rejeitados sem o custo da validação de schema. Nesse modo, um registro que
+     * viola tanto o schema quanto as regras de URN é informado com o erro de URN.
+     */
+    public void setPreValidacao(final boolean preValidacao) {
+        this.preValidacao = preValidacao;
+    }
+
+    /**
+     * Altera o tipo de erro informado em ValidadorService.logError quando a regra é violada.
+     */
+    public synchronized void setTipoErro(final RegraValidacao regra, final TipoErroValidacao tipoErro) {
+        if (tipoErro == null) {
+            throw new IllegalArgumentException("Tipo de erro não informado para a regra " + regra);
+        }
+        TipoErroValidacao[] novos = tiposErro.clone();
+        novos[regra.ordinal()] = tipoErro;
+        tiposErro = novos;
+    }
+
+    public TipoErroValidacao getTipoErro(final RegraValidacao regra) {
+        return tiposErro[regra.ordinal()];
+    }
+
+    private static TipoErroValidacao[] tiposErroPadrao() {
+        RegraValidacao[] regras = RegraValidacao.values();
+        TipoErroValidacao[] tipos = new TipoErroValidacao[regras.length];
+        for (RegraValidacao regra : regras) {
+            tipos[regra.ordinal()] = regra.getTipoErroPadrao();
+        }
+        return tipos;
+    }
+
+    private PoolValidadorXMLHelper criaPool() {
+        Schema schema = schemaCompartilhado ? ValidadorXMLHelper.getSchemaCompartilhado(offline) : null;
+        return new PoolValidadorXMLHelper(schema, tamanhoPool, offline);
+    }
+
     /*
      * Validação de REGISTRO_ITEM
      * 
@@ -55,71 +244,600 @@ public class ValidadorRegistroItem {
      * @param ctxUsr Objeto de contexto a ser repassado para o método ValidadorService.logError
      */
     public boolean validar(final String idRegistroItem, final String xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr).isValido();
+    }
+
+    /**
+     * Valida o registro a partir dos bytes do XML. A codificação é obtida da declaração XML (UTF-8 se
+     * ausente).
+     */
+    public boolean validar(final String idRegistroItem, final byte[] xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr).isValido();
+    }
+
+    /**
+     * Valida o registro a partir dos bytes restantes do buffer (que pode ser direto ou mapeado em memória). A
+     * posição do buffer não é alterada.
+     */
+    public boolean validar(final String idRegistroItem, final ByteBuffer xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr).isValido();
+    }
+
+    /**
+     * Valida o registro lido do stream, que não é fechado por este método.
+     */
+    public boolean validar(final String idRegistroItem, final InputStream xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr).isValido();
+    }
+
+    /**
+     * Valida o registro como {@link #validar(String, String, Object)}, retornando também o tipo e a
+     * mensagem do erro encontrado. O erro continua sendo registrado em ValidadorService.logError.
+     */
+    public ResultadoValidacao validarComResultado(final String idRegistroItem, final String xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    public ResultadoValidacao validarComResultado(final String idRegistroItem, final byte[] xml, final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    public ResultadoValidacao validarComResultado(final String idRegistroItem, final ByteBuffer xml,
+                                                  final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    public ResultadoValidacao validarComResultado(final String idRegistroItem, final InputStream xml,
+                                                  final Object ctxUsr) {
+        return validarComResultado(idRegistroItem, EntradaXML.de(xml), ctxUsr);
+    }
+
+    ResultadoValidacao validarComResultado(final String idRegistroItem, final EntradaXML xml, final Object ctxUsr) {
+
+        ValidadorService svc = getValidadorService();
+        ContextoValidacao ctx = criaContexto(svc, indicePerfil, idRegistroItem, ctxUsr);
+        long inicio = ctx.agora();
+        boolean valido = valida(ctx, xml);
+        return concluiRegistro(ctx, valido, ctx.agora() - inicio);
+    }
+
+    /**
+     * Valida um lote de registros (por exemplo, uma página da coleta), retornando os resultados na ordem dos
+     * registros. Se o ValidadorService implementa {@link ValidadorServiceLote} (e não há {@link IndicePerfil}
+     * configurado), os registros são lidos primeiro, os núcleos distintos de todos eles são verificados em uma única
+     * chamada a {@link ValidadorServiceLote#nucleosValidos} e só então as regras de URN são aplicadas. Os
+     * resultados são os mesmos da validação individual de cada registro.
+     * 
+     * @param ctxUsr Objeto de contexto a ser repassado para o método ValidadorService.logError
+     */
+    public List<ResultadoValidacao> validarLote(final List<RegistroItem> registros, final Object ctxUsr) {
+
+        ValidadorService svc = getValidadorService();
+        IndicePerfil indicePerfil = this.indicePerfil;
+        List<ResultadoValidacao> resultados = new ArrayList<ResultadoValidacao>(registros.size());
+        if (!(svc instanceof ValidadorServiceLote) || indicePerfil != null) {
+            for (RegistroItem registro : registros) {
+                resultados.add(validarComResultado(registro.getIdRegistroItem(), EntradaXML.de(registro.getXml()),
+                    ctxUsr));
+            }
+            return resultados;
+        }
+
+        // Leitura dos registros, adiando as regras de URN
+        LoteNucleos lote = new LoteNucleos();
+        ContextoValidacao[] contextos = new ContextoValidacao[registros.size()];
+        boolean[] validos = new boolean[registros.size()];
+        long[] duracoes = new long[registros.size()];
+        for (int i = 0; i < contextos.length; i++) {
+            RegistroItem registro = registros.get(i);
+            ContextoValidacao ctx = criaContexto(svc, null, registro.getIdRegistroItem(), ctxUsr);
+            ctx.lote = lote;
+            long inicio = ctx.agora();
+            validos[i] = valida(ctx, EntradaXML.de(registro.getXml()));
+            if (ctx.dadosPendentes != null) {
+                coletaNucleos(ctx, ctx.dadosPendentes, lote.chaves);
+                if (ctx.limites != null) {
+                    // O tempo de espera pelos demais registros do lote não conta para o limite
+                    ctx.limites.pausa();
+                }
+            }
+            duracoes[i] = ctx.agora() - inicio;
+            contextos[i] = ctx;
+        }
+
+        lote.resolve((ValidadorServiceLote) svc);
+
+        for (int i = 0; i < contextos.length; i++) {
+            ContextoValidacao ctx = contextos[i];
+            if (ctx.dadosPendentes != null) {
+                long inicio = ctx.agora();
+                if (ctx.limites != null) {
+                    ctx.limites.retoma();
+                }
+                validos[i] = concluiPendente(ctx);
+                duracoes[i] += ctx.agora() - inicio;
+            }
+            resultados.add(concluiRegistro(ctx, validos[i], duracoes[i]));
+        }
+        return resultados;
+    }
+
+    /**
+     * Prepara o validador para atender na vazão máxima logo após a inicialização: carrega os XSDs do catálogo (e
+     * compila o schema, se compartilhado), cria todos os parsers do pool e valida os registros de aquecimento
+     * (válidos e com cada tipo de erro, embutidos no jar) pelo fluxo completo, com o motor e a pré-validação
+     * configurados, o número de vezes informado, para que a JVM compile os trechos mais usados. Os limites de
+     * validação não são aplicados aos registros de aquecimento.
+     * <p/>
+     * Os registros de aquecimento não são informados ao ValidadorService, ao publicador de erros, ao cache, ao
+     * ouvinte nem ao destino das dependências. Deve ser chamado depois da configuração do validador: as alterações
+     * do schema, do pool ou do modo offline recriam os parsers e o validador deixa de estar pronto até um novo
+     * aquecimento. Ao final, {@link #isPronto()} passa a retornar verdadeiro.
+     * 
+     * @param iteracoes Número de vezes que o conjunto de registros é validado
+     * @throws IllegalStateException se algum registro de aquecimento não tiver o resultado esperado
+     */
+    public void aquece(final int iteracoes) {
+        if (iteracoes < 1) {
+            throw new IllegalArgumentException("Número de iterações deve ser maior que zero: " + iteracoes);
+        }
+        poolAquecido = null;
+        long inicio = System.currentTimeMillis();
+        CatalogoSchemas.getPadrao();
+        synchronized (this) {
+            if (schemaCompartilhado) {
+                ValidadorXMLHelper.getSchemaCompartilhado(offline);
+            }
+        }
+        PoolValidadorXMLHelper aquecido = pool;
+        aquecido.preenche();
+
+        RegistrosAquecimento conjunto = RegistrosAquecimento.getPadrao();
+        ValidadorService svc = new ValidadorServicePerfilLocal(conjunto.getIndicePerfil());
+        // Com índice configurado, os núcleos são verificados no índice, como na validação normal
+        IndicePerfil indice = indicePerfil == null ? null : conjunto.getIndicePerfil();
+        int registros = 0;
+        for (int i = 0; i < iteracoes; i++) {
+            for (RegistrosAquecimento.Registro registro : conjunto.getRegistros()) {
+                ContextoValidacao ctx = new ContextoValidacao(svc, indice, null, registro.idRegistroItem, null);
+                ctx.aquecimento = true;
+                boolean valido = valida(ctx, EntradaXML.de(registro.xml));
+                if (i == 0 && valido != registro.valido) {
+                    throw new IllegalStateException("Resultado inesperado no aquecimento para o registro "
+                        + registro.idRegistroItem + ": " + criaResultado(ctx, valido).getMensagem());
+                }
+                registros++;
+            }
+        }
+        poolAquecido = aquecido;
+        log.info("Validador aquecido com " + registros + " validações em " + (System.currentTimeMillis() - inicio)
+            + "ms");
+    }
+
+    /**
+     * Indica se o validador foi aquecido por {@link #aquece(int)} depois da última alteração dos parsers (schema,
+     * tamanho do pool ou modo offline), por exemplo para que o balanceador só envie registros da coleta aos nós
+     * prontos.
+     */
+    public boolean isPronto() {
+        PoolValidadorXMLHelper aquecido = poolAquecido;
+        return aquecido != null && aquecido == pool;
+    }
+
+    private ContextoValidacao criaContexto(final ValidadorService svc, final IndicePerfil indicePerfil,
+                                           final String idRegistroItem, final Object ctxUsr) {
+        ContextoValidacao ctx = new ContextoValidacao(svc, indicePerfil, ouvinteValidacao, idRegistroItem, ctxUsr);
+        ctx.registraDependencias(destinoDependencias);
+        LimitesValidacao limites = limitesValidacao;
+        if (limites.isLimitado()) {
+            ctx.limites = new ControleLimites(limites);
+        }
+        return ctx;
+    }
 
+    private ValidadorService getValidadorService() {
+        ValidadorService svc = this.svc;
         if (svc == null) {
             throw new RuntimeException("ValidatorService não informado.");
         }
+        return svc;
+    }
 
-        if (StringUtils.isEmpty(idRegistroItem)) {
-            log.error("RV#4 Objeto RegistroItem ri passado é nulo");
+    private ResultadoValidacao concluiRegistro(final ContextoValidacao ctx, final boolean valido,
+                                               final long duracaoNanos) {
+        if (ctx.ouvinte != null) {
+            ErroValidacao erro = ctx.erro;
+            ctx.ouvinte.registro(ctx.idRegistroItem, ctx.idPublicador, erro == null ? null : erro.getRegra(),
+                erro == null ? null : erro.getTipoErro(), duracaoNanos);
+        }
+        if (ctx.nucleosConsultados != null && StringUtils.isNotEmpty(ctx.idRegistroItem) && !isLimiteExcedido(ctx)) {
+            try {
+                ctx.destinoDependencias.registra(ctx.idRegistroItem, ctx.nucleosConsultados);
+            }
+            catch (RuntimeException e) {
+                log.warn("Falha ao registrar os núcleos consultados para o REGISTRO_ITEM " + ctx.idRegistroItem, e);
+            }
+        }
+        return criaResultado(ctx, valido);
+    }
+
+    /**
+     * Aplica as regras de URN adiadas pela validação em lote (e, na pré-validação, a validação de schema) e
+     * registra o resultado no cache.
+     */
+    private boolean concluiPendente(final ContextoValidacao ctx) {
+        boolean valido = validaDados(ctx, ctx.dadosPendentes)
+            && (ctx.schemaPendente == null || leDados(ctx, ctx.schemaPendente, MotorValidacao.STREAMING) != null);
+        if (ctx.cache != null && isCacheavel(ctx)) {
+            ctx.cache.registra(criaResultado(ctx, valido), ctx.digest, ctx.epoca);
+        }
+        return valido;
+    }
+
+    /**
+     * Resultados recusados por limite dependem da configuração e, no caso do tempo, da carga do momento: não são
+     * gravados no cache nem substituem as dependências informadas anteriormente.
+     */
+    private static boolean isLimiteExcedido(final ContextoValidacao ctx) {
+        return ctx.erro != null && ctx.erro.getRegra() == RegraValidacao.LIMITE_EXCEDIDO;
+    }
+
+    /**
+     * Verifica se o resultado pode ser gravado no cache: não excedeu limites e o índice do perfil não foi trocado
+     * durante a validação.
+     */
+    private boolean isCacheavel(final ContextoValidacao ctx) {
+        return !isLimiteExcedido(ctx) && (ctx.indicePerfil == null || ctx.indicePerfil == indicePerfil);
+    }
+
+    /**
+     * Inclui no conjunto as chaves de todos os núcleos que as regras RV#5 a RV#8 podem consultar para o registro.
+     */
+    private void coletaNucleos(final ContextoValidacao ctx, final DadosRegistro dados, final Set<String> chaves) {
+
+        NucleoURN nucleo = ctx.nucleo;
+        if (dados.urnDocumentoIndividual == null || !nucleo.analisa(dados.urnDocumentoIndividual)) {
+            return;
+        }
+
+        Integer idPublicadorDefault = dados.idPublicadoresItem.isEmpty() ? null : dados.idPublicadoresItem.get(0);
+        Set<Integer> idPublicadores = new LinkedHashSet<Integer>(dados.idPublicadoresItem);
+        for (int i = 0; i < dados.getQuantidadeRelacionamentos(); i++) {
+            idPublicadores.add(getIdPublicadorRelacionamento(dados, i, idPublicadorDefault));
+        }
+        for (Integer idPublicador : idPublicadores) {
+            if (idPublicador != null) {
+                adicionaChaves(ctx, idPublicador, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL, chaves);
+            }
+        }
+
+        for (int i = 0; i < dados.getQuantidadeRelacionamentos(); i++) {
+            Integer idPublicador = getIdPublicadorRelacionamento(dados, i, idPublicadorDefault);
+            String urn = dados.urnsRelacionamento.get(i);
+            if (idPublicador != null && urn != null && nucleo.analisa(urn)) {
+                adicionaChaves(ctx, idPublicador, TIPO_PERFIL_RELACIONAMENTO, chaves);
+            }
+        }
+    }
+
+    private void adicionaChaves(final ContextoValidacao ctx, final Integer idPublicador, final char tipoPerfil,
+                                final Set<String> chaves) {
+        chaves.add(montaChave(ctx, idPublicador, false, false, tipoPerfil));
+        if (ctx.nucleo.temNucleosReduzidos()) {
+            chaves.add(montaChave(ctx, idPublicador, true, false, tipoPerfil));
+            chaves.add(montaChave(ctx, idPublicador, false, true, tipoPerfil));
+        }
+    }
+
+    private boolean valida(final ContextoValidacao ctx, final EntradaXML xml) {
+
+        if (StringUtils.isEmpty(ctx.idRegistroItem)) {
+            ctx.mensagem = "RV#4 Objeto RegistroItem ri passado é nulo";
+            log.error(ctx.mensagem);
             return false;
         }
 
-        if (idRegistroItem.indexOf(' ') != -1) {
-            svc.logError(idRegistroItem, TipoErroValidacao.ERRO_GENERICO,
-                "RV#1 ID_REGISTRO_ITEM não pode conter espaços em branco", ctxUsr);
+        if (ctx.idRegistroItem.indexOf(' ') != -1) {
+            registraErro(ctx, RegraValidacao.ID_COM_ESPACOS, "RV#1 ID_REGISTRO_ITEM não pode conter espaços em branco");
             return false;
         }
 
-        if (StringUtils.isEmpty(xml)) {
-            svc.logError(idRegistroItem, TipoErroValidacao.XML_MAL_FORMADO,
-                "RV#2 XML nulo foi passado para validação", ctxUsr);
+        if (xml.isVazia()) {
+            registraErro(ctx, RegraValidacao.XML_VAZIO, "RV#2 XML nulo foi passado para validação");
             return false;
         }
 
-        Document doc = parseDocument(idRegistroItem, xml, ctxUsr);
-        if (doc == null) {
+        if (ctx.limites != null && !verificaTamanho(ctx, xml)) {
             return false;
         }
 
-        return validaDocumento(idRegistroItem, doc, ctxUsr);
+        CacheResultadosValidacao cache = ctx.aquecimento ? null : cacheResultados;
+        if (cache == null) {
+            return validaXML(ctx, xml);
+        }
+
+        long inicio = ctx.agora();
+        byte[] digest;
+        try {
+            digest = xml.calculaDigest();
+        }
+        catch (IOException e) {
+            // A falha de leitura será informada pelo parser
+            return validaXML(ctx, xml);
+        }
+
+        long epoca = cache.getEpoca();
+        ResultadoValidacao anterior = cache.obtem(ctx.idRegistroItem, digest);
+        ctx.mede(FaseValidacao.CACHE, inicio);
+        if (anterior != null) {
+            // Os núcleos de que o resultado depende foram informados na validação original
+            ctx.nucleosConsultados = null;
+            if (!anterior.isValido()) {
+                registraErro(ctx, anterior.getRegra(), anterior.getMensagem());
+            }
+            return anterior.isValido();
+        }
+
+        boolean valido = validaXML(ctx, xml);
+        if (ctx.dadosPendentes != null) {
+            // Registrado no cache ao final da validação em lote
+            ctx.cache = cache;
+            ctx.digest = digest;
+            ctx.epoca = epoca;
+            return false;
+        }
+        if (isCacheavel(ctx)) {
+            cache.registra(criaResultado(ctx, valido), digest, epoca);
+        }
+        return valido;
     }
 
-    private Document parseDocument(final String idRegistroItem, final String xml, final Object ctxUsr) {
+    private boolean verificaTamanho(final ContextoValidacao ctx, final EntradaXML xml) {
+        long maximo = ctx.limites.getLimites().getTamanhoMaximo();
+        if (maximo == 0) {
+            return true;
+        }
+        long tamanho;
+        try {
+            tamanho = xml.getTamanho(maximo);
+        }
+        catch (IOException e) {
+            registraErro(ctx, RegraValidacao.XML_MAL_FORMADO, "XML mal formado: {}", e.getMessage());
+            return false;
+        }
+        if (tamanho > maximo) {
+            registraErro(ctx, RegraValidacao.LIMITE_EXCEDIDO, "RV#9 Tamanho máximo de {} bytes excedido", maximo);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean validaXML(final ContextoValidacao ctx, final EntradaXML xml) {
+
+        if (preValidacao) {
+            DadosRegistro dados = leDados(ctx, xml, null);
+            if (dados != null) {
+                if (ctx.lote != null) {
+                    ctx.dadosPendentes = dados;
+                    ctx.schemaPendente = xml;
+                    return false;
+                }
+                // Regras de URN primeiro; o schema só é validado se elas forem atendidas
+                return validaDados(ctx, dados) && leDados(ctx, xml, MotorValidacao.STREAMING) != null;
+            }
+        }
+
+        DadosRegistro dados = leDados(ctx, xml, motorValidacao);
+        if (dados == null) {
+            return false;
+        }
+
+        if (ctx.lote != null) {
+            ctx.dadosPendentes = dados;
+            return false;
+        }
+
+        return validaDados(ctx, dados);
+    }
+
+    /**
+     * Lê os dados do registro com um helper obtido do pool. O helper é devolvido antes da aplicação das regras de
+     * URN, que podem aguardar o ValidadorService (por exemplo, em consultas ao banco) sem reter um parser.
+     * 
+     * @param motor motor de validação ou null para a leitura sem validação da pré-validação
+     */
+    private DadosRegistro leDados(final ContextoValidacao ctx, final EntradaXML xml, final MotorValidacao motor) {
+        PoolValidadorXMLHelper pool = this.pool;
+        ctx.xmlHelper = pool.obtem();
+        try {
+            if (motor == null) {
+                return preLeDados(ctx, xml);
+            }
+            if (ctx.limites != null && ctx.limites.getLimites().isEstrutural()) {
+                // Os limites estruturais são verificados durante a leitura SAX
+                return parseDados(ctx, xml, MotorValidacao.STREAMING);
+            }
+            return parseDados(ctx, xml, motor);
+        }
+        finally {
+            pool.devolve(ctx.xmlHelper);
+            ctx.xmlHelper = null;
+        }
+    }
+
+    /**
+     * Aplica as regras RV#5 a RV#8 a um registro já lido e validado segundo o schema, sem novo parse. Usado
+     * pelos benchmarks para medir a extração dos dados do DOM e a verificação das URNs isoladamente.
+     */
+    boolean validarDocumento(final String idRegistroItem, final Document doc, final Object ctxUsr) {
+        ContextoValidacao ctx = new ContextoValidacao(getValidadorService(), indicePerfil, ouvinteValidacao,
+            idRegistroItem, ctxUsr);
+        PoolValidadorXMLHelper pool = this.pool;
+        DadosRegistro dados;
+        ctx.xmlHelper = pool.obtem();
+        try {
+            dados = extraiDados(ctx, doc);
+        }
+        finally {
+            pool.devolve(ctx.xmlHelper);
+            ctx.xmlHelper = null;
+        }
+        return validaDados(ctx, dados);
+    }
+
+    /**
+     * Registra o erro em ValidadorService.logError ou no publicador de erros, se configurado. No segundo caso a
+     * mensagem só é montada (a partir do padrão no formato "{}" do slf4j) quando o erro é consumido. Os erros dos
+     * registros de aquecimento não são registrados.
+     */
+    private void registraErro(final ContextoValidacao ctx, final RegraValidacao regra, final String padrao,
+                              final Object... argumentos) {
+        ErroValidacao erro = new ErroValidacao(ctx.idRegistroItem, regra, tiposErro[regra.ordinal()], ctx.ctxUsr,
+            padrao, argumentos);
+        ctx.erro = erro;
+        if (ctx.aquecimento) {
+            return;
+        }
+        PublicadorErrosValidacao publicador = publicadorErros;
+        if (publicador != null) {
+            publicador.publica(erro);
+        }
+        else {
+            ctx.svc.logError(ctx.idRegistroItem, erro.getTipoErro(), erro.getMensagem(), ctx.ctxUsr);
+        }
+    }
+
+    private static ResultadoValidacao criaResultado(final ContextoValidacao ctx, final boolean valido) {
+        if (ctx.erro != null) {
+            return new ResultadoValidacao(valido, ctx.erro);
+        }
+        return new ResultadoValidacao(ctx.idRegistroItem, valido, null, ctx.mensagem);
+    }
 
+    /**
+     * Extrai os dados do registro sem validação de schema, para a pré-validação das URNs.
+     * 
+     * @return dados do registro ou null se a extração falhar (o erro será informado pela validação completa)
+     */
+    private DadosRegistro preLeDados(final ContextoValidacao ctx, final EntradaXML xml) {
+        long inicio = ctx.agora();
+        try {
+            // A entrada será lida novamente pela validação de schema
+            xml.carrega();
+            return ctx.xmlHelper.leDados(xml.getInputSource(), ctx.limites);
+        }
+        catch (Exception e) {
+            return null;
+        }
+        finally {
+            ctx.mede(FaseValidacao.PRE_VALIDACAO, inicio);
+        }
+    }
+
+    /**
+     * Faz o parse e a validação do XML segundo o schema e extrai os dados do registro usando o motor
+     * configurado.
+     * 
+     * @return dados do registro ou null se o XML é mal formado ou inválido (o erro já foi registrado)
+     */
+    private DadosRegistro parseDados(final ContextoValidacao ctx, final EntradaXML xml, final MotorValidacao motor) {
+
+        List<String> erros = new ArrayList<String>();
         Document doc = null;
+        LeitorRegistroSAX.Leitura leitura = null;
 
+        long inicio = ctx.agora();
         try {
-            InputStream is = new ByteArrayInputStream(xml.getBytes());
-            doc = xmlHelper.parse(is);
-            is.close();
-
-            String parseErrors = xmlHelper.getParseErrorsAsString();
-            if (parseErrors != null) {
-                svc.logError(idRegistroItem, TipoErroValidacao.XML_INVALIDO,
-                    "RV#3 Xml não é válido segundo o schema: " + parseErrors, ctxUsr);
-                doc = null;
+            InputSource is = xml.getInputSource();
+            if (motor == MotorValidacao.STREAMING) {
+                leitura = ctx.xmlHelper.parseDados(is, erros, ctx.limites);
+            }
+            else {
+                doc = ctx.xmlHelper.parse(is, erros, ctx.limites);
             }
+            ctx.mede(FaseValidacao.PARSE, inicio);
+        }
+        catch (ValidadorXMLHelper.ParseInterrompidoException e) {
+            // Limite de erros de schema atingido: o registro é informado com os erros encontrados
+            ctx.mede(FaseValidacao.PARSE, inicio);
+        }
+        catch (ReferenciaExternaException e) {
+            ctx.mede(FaseValidacao.PARSE, inicio);
+            registraErro(ctx, RegraValidacao.XML_INVALIDO, "RV#3 {}", e.getMessage());
+            return null;
         }
         catch (Exception e) {
-            svc.logError(idRegistroItem, TipoErroValidacao.XML_MAL_FORMADO, "XML mal formado: " + e.getMessage(),
-                ctxUsr);
+            ctx.mede(FaseValidacao.PARSE, inicio);
+            LimiteExcedidoException limite = LimiteExcedidoException.de(e);
+            if (limite != null) {
+                registraErro(ctx, RegraValidacao.LIMITE_EXCEDIDO, "RV#9 {}", limite.getMessage());
+            }
+            else {
+                registraErro(ctx, RegraValidacao.XML_MAL_FORMADO, "XML mal formado: {}", e.getMessage());
+            }
+            return null;
         }
 
-        return doc;
+        String parseErrors = ValidadorXMLHelper.getErrorsAsString(erros);
+        if (parseErrors != null) {
+            registraErro(ctx, RegraValidacao.XML_INVALIDO, "RV#3 Xml não é válido segundo o schema: {}", parseErrors);
+            return null;
+        }
+
+        if (doc != null) {
+            return extraiDados(ctx, doc);
+        }
+        // Os idPublicador são convertidos somente depois da validação de schema, como no DOM
+        return leitura == null ? null : leitura.getDados();
     }
 
-    private boolean validaDocumento(final String idRegistroItem, final Document doc, final Object ctxUsr) {
+    private DadosRegistro extraiDados(final ContextoValidacao ctx, final Document doc) {
 
+        long inicio = ctx.agora();
+        ValidadorXMLHelper xmlHelper = ctx.xmlHelper;
         Node root = doc.getDocumentElement();
 
-        ContextoValidacao ctx = new ContextoValidacao();
+        DadosRegistro dados = new DadosRegistro();
 
-        String tstURNDocumentoIndividual = xmlHelper.getString(root, "lexml:DocumentoIndividual/text()");
+        // Consultas fixas percorrem o DOM diretamente, sem XPath
+        dados.urnDocumentoIndividual = xmlHelper.getTextoFilho(root, "DocumentoIndividual");
 
-        if (!isEstruturalmenteValid(ctx, tstURNDocumentoIndividual)) {
-            svc.logError(idRegistroItem, TipoErroValidacao.URN_INVALIDO, "RV#5 A URN de DocumentoIndividual \""
-                + tstURNDocumentoIndividual + "\" é estruturalmente inválida", ctxUsr);
+        for (Element item : xmlHelper.getFilhos(root, "Item")) {
+            dados.idPublicadoresItem.add(xmlHelper.getAttributeAsInteger(item, "idPublicador"));
+        }
+
+        for (Element relacionamento : xmlHelper.getFilhos(root, "Relacionamento")) {
+            dados.adicionaRelacionamento(xmlHelper.getAttributeAsInteger(relacionamento, "idPublicador"),
+                relacionamento.getTextContent().trim());
+        }
+
+        ctx.mede(FaseValidacao.EXTRACAO, inicio);
+        return dados;
+    }
+
+    private boolean validaDados(final ContextoValidacao ctx, final DadosRegistro dados) {
+        if (ctx.limites == null) {
+            return validaURNs(ctx, dados);
+        }
+        try {
+            return validaURNs(ctx, dados);
+        }
+        catch (PrazoExcedidoException e) {
+            registraErro(ctx, RegraValidacao.LIMITE_EXCEDIDO, "RV#9 {}", ctx.limites.getMensagemPrazo());
+            return false;
+        }
+    }
+
+    private boolean validaURNs(final ContextoValidacao ctx, final DadosRegistro dados) {
+
+        if (!dados.idPublicadoresItem.isEmpty()) {
+            ctx.idPublicador = dados.idPublicadoresItem.get(0);
+        }
+
+        long inicio = ctx.agora();
+        boolean valido = validaDocumentoIndividual(ctx, dados);
+        ctx.mede(FaseValidacao.URN_DOCUMENTO, inicio);
+        if (!valido) {
             return false;
         }
 
@@ -127,34 +845,68 @@ public class ValidadorRegistroItem {
         // novamente)
         List<Integer> idPublicadoresTestados = new ArrayList<Integer>();
 
+        inicio = ctx.agora();
+        valido = validaItens(ctx, dados, idPublicadoresTestados);
+        ctx.mede(FaseValidacao.URN_ITEM, inicio);
+        if (!valido) {
+            return false;
+        }
+
+        inicio = ctx.agora();
+        valido = validaRelacionamentos(ctx, dados, idPublicadoresTestados);
+        ctx.mede(FaseValidacao.URN_RELACIONAMENTO, inicio);
+        return valido;
+    }
+
+    private boolean validaDocumentoIndividual(final ContextoValidacao ctx, final DadosRegistro dados) {
+
+        String tstURNDocumentoIndividual = dados.urnDocumentoIndividual;
+
+        if (!isEstruturalmenteValid(ctx, tstURNDocumentoIndividual)) {
+            registraErro(ctx, RegraValidacao.URN_DOCUMENTO_MAL_FORMADA,
+                "RV#5 A URN de DocumentoIndividual \"{}\" é estruturalmente inválida", tstURNDocumentoIndividual);
+            return false;
+        }
+
+        return true;
+    }
+
+    private boolean validaItens(final ContextoValidacao ctx, final DadosRegistro dados,
+                                final List<Integer> idPublicadoresTestados) {
+
+        String tstURNDocumentoIndividual = dados.urnDocumentoIndividual;
+
         // --------------------------------
         // Itens
 
-        NodeList itens = xmlHelper.getNodeList(root, "lexml:Item");
-
         // RV#5 e RV6
         // Todos os DocumentoIndividual's devem ser válidos para TODOS os idPublicador
         // existentes no registro (tanto de Item quanto Relacionamento).
-        for (int i = 0; i < itens.getLength(); i++) {
-            Node item = itens.item(i);
-            Integer idPublicador = xmlHelper.getAttributeAsInteger(item, "idPublicador");
+        for (Integer idPublicador : dados.idPublicadoresItem) {
             if (idPublicadoresTestados.contains(idPublicador)) {
                 continue;
             }
             if (!isDocumentoIndividualValid(ctx, idPublicador)) {
-                svc.logError(idRegistroItem, TipoErroValidacao.URN_INCOMPATIVEL,
-                    "RV#5 A URN de DocumentoIndividual \"" + tstURNDocumentoIndividual
-                        + "\" não é compatível com a configuração atual " + "em relação ao perfil para o "
-                        + "publicador \"" + idPublicador + "\"", ctxUsr);
+                registraErro(ctx, RegraValidacao.URN_DOCUMENTO_INCOMPATIVEL_ITEM,
+                    "RV#5 A URN de DocumentoIndividual \"{}\" não é compatível com a configuração atual "
+                        + "em relação ao perfil para o publicador \"{}\"", tstURNDocumentoIndividual, idPublicador);
                 return false;
             }
             idPublicadoresTestados.add(idPublicador);
         }
 
+        return true;
+    }
+
+    private boolean validaRelacionamentos(final ContextoValidacao ctx, final DadosRegistro dados,
+                                          final List<Integer> idPublicadoresTestados) {
+
+        String tstURNDocumentoIndividual = dados.urnDocumentoIndividual;
+
         // --------------------------------
         // Relacionamentos
 
-        NodeList relacionamentos = xmlHelper.getNodeList(root, "lexml:Relacionamento");
+        int qtdRelacionamentos = dados.getQuantidadeRelacionamentos();
 
         Integer idPublicadorDefault = null;
         if (!idPublicadoresTestados.isEmpty()) {
@@ -163,17 +915,15 @@ public class ValidadorRegistroItem {
 
         // Testamos a URN do DocumentoIndividual contra os relacionamentos
         // RV#5 e RV#7
-        for (int i = 0; i < relacionamentos.getLength(); i++) {
-            Node relacionamento = relacionamentos.item(i);
-            Integer idPublicador = getIdPublicadorRelacionamento(relacionamento, idPublicadorDefault);
+        for (int i = 0; i < qtdRelacionamentos; i++) {
+            Integer idPublicador = getIdPublicadorRelacionamento(dados, i, idPublicadorDefault);
 
             if (!idPublicadoresTestados.contains(idPublicador)) {
                 if (!isDocumentoIndividualValid(ctx, idPublicador)) {
-                    svc.logError(idRegistroItem, TipoErroValidacao.URN_INCOMPATIVEL,
-                        "RV#5 A URN de DocumentoIndividual \"" + tstURNDocumentoIndividual
-                            + "\" não é compatível com a configuração atual "
-                            + "em relação ao perfil para o relacionamento do publicador \"" + idPublicador + "\"",
-                        ctxUsr);
+                    registraErro(ctx, RegraValidacao.URN_DOCUMENTO_INCOMPATIVEL_RELACIONAMENTO,
+                        "RV#5 A URN de DocumentoIndividual \"{}\" não é compatível com a configuração atual "
+                            + "em relação ao perfil para o relacionamento do publicador \"{}\"",
+                        tstURNDocumentoIndividual, idPublicador);
                     return false;
                 }
                 idPublicadoresTestados.add(idPublicador);
@@ -183,21 +933,22 @@ public class ValidadorRegistroItem {
         // E testamos tambem as URNs de cada Relacionamento
         // Este loop foi separado do anterior para permitir a reutilização do parse da URN do doc
         // individual no loop anterior pelo método isDocumentoIndividualValid
-        for (int i = 0; i < relacionamentos.getLength(); i++) {
-            Node relacionamento = relacionamentos.item(i);
-            Integer idPublicador = getIdPublicadorRelacionamento(relacionamento, idPublicadorDefault);
+        for (int i = 0; i < qtdRelacionamentos; i++) {
+            Integer idPublicador = getIdPublicadorRelacionamento(dados, i, idPublicadorDefault);
 
-            String tstURNRelacionamento = relacionamento.getTextContent().trim();
+            String tstURNRelacionamento = dados.urnsRelacionamento.get(i);
 
             if (null == idPublicador) {
-                svc.logError(idRegistroItem, TipoErroValidacao.URN_INCOMPATIVEL, "RV#8 A URN de Relacionamento \""
-                    + tstURNRelacionamento + "\" não pode ser validada por ausência de idPublicador", ctxUsr);
+                registraErro(ctx, RegraValidacao.RELACIONAMENTO_SEM_PUBLICADOR,
+                    "RV#8 A URN de Relacionamento \"{}\" não pode ser validada por ausência de idPublicador",
+                    tstURNRelacionamento);
                 return false;
             }
 
             if (!isRelacionamentoValid(ctx, tstURNRelacionamento, idPublicador)) {
-                svc.logError(idRegistroItem, TipoErroValidacao.URN_INCOMPATIVEL, "RV#7 A URN de Relacionamento \""
-                    + tstURNRelacionamento + "\" não é compatível com a configuração atual de perfil", ctxUsr);
+                registraErro(ctx, RegraValidacao.URN_RELACIONAMENTO_INCOMPATIVEL,
+                    "RV#7 A URN de Relacionamento \"{}\" não é compatível com a configuração atual de perfil",
+                    tstURNRelacionamento);
                 return false;
             }
         }
@@ -218,25 +969,7 @@ public class ValidadorRegistroItem {
         // return false;
         // }
 
-        if (!urn.startsWith("urn:lex:")) {
-            return false;
-        }
-
-        String[] part = urn.substring(8).split(SEP);
-        if (part.length < 3) {
-            return false;
-        }
-
-        ctx.tstNucleoURN = part[0] + SEP + part[1] + SEP + part[2];
-
-        if (part[1].contains(";") && part[2].contains(";")) {
-            String autoridade = part[1].substring(0, part[1].indexOf(";"));
-            String tipo = part[2].substring(0, part[2].indexOf(";"));
-            ctx.tstNucleoURNAutoridadeReduzida = part[0] + SEP + autoridade + SEP + part[2];
-            ctx.tstNucleoURNTipoReduzida = part[0] + SEP + part[1] + SEP + tipo;
-        }
-
-        return true;
+        return ctx.nucleo.analisa(urn);
     }
 
     /**
@@ -253,14 +986,14 @@ public class ValidadorRegistroItem {
             return false;
         }
 
-        if (isCoreValid(p_idPublicador, ctx.tstNucleoURN, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL)) {
+        if (isCoreValid(ctx, p_idPublicador, false, false, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL)) {
             return true;
         }
 
         // Se a validação básica não funciona somente a junção dos 2 testes abaixo valida a
         // p_urn.
-        return isCoreValid(p_idPublicador, ctx.tstNucleoURNAutoridadeReduzida, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL)
-            && isCoreValid(p_idPublicador, ctx.tstNucleoURNTipoReduzida, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL);
+        return isCoreValid(ctx, p_idPublicador, true, false, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL)
+            && isCoreValid(ctx, p_idPublicador, false, true, TIPO_PERFIL_DOCUMENTO_INDIVIDUAL);
     }
 
     /**
@@ -277,46 +1010,228 @@ public class ValidadorRegistroItem {
             return false;
         }
 
-        if (isCoreValid(p_idPublicador, ctx.tstNucleoURN, TIPO_PERFIL_RELACIONAMENTO)) {
+        if (isCoreValid(ctx, p_idPublicador, false, false, TIPO_PERFIL_RELACIONAMENTO)) {
             return true;
         }
 
         // Se a validação básica não funciona somente a junção dos 2 testes abaixo valida a
         // p_urn.
-        return isCoreValid(p_idPublicador, ctx.tstNucleoURNAutoridadeReduzida, TIPO_PERFIL_RELACIONAMENTO)
-            && isCoreValid(p_idPublicador, ctx.tstNucleoURNTipoReduzida, TIPO_PERFIL_RELACIONAMENTO);
+        return isCoreValid(ctx, p_idPublicador, true, false, TIPO_PERFIL_RELACIONAMENTO)
+            && isCoreValid(ctx, p_idPublicador, false, true, TIPO_PERFIL_RELACIONAMENTO);
     }
 
     /**
-     * Valida a p_tstNucleoURN segundo pelo menos uma das regras:
+     * Valida o núcleo localidade:autoridade:tipo da última URN analisada segundo pelo menos uma das regras:
      * <p/>
-     * <li>OU: Se a p_tstNucleoURN existe no perfil do idPublicador para o tipo de perfil TODOS</li>
-     * <li>OU: Se a p_tstNucleoURN existe no perfil do idPublicador para o tipo de perfil p_tipoCore</li>
+     * <li>OU: Se o núcleo existe no perfil do idPublicador para o tipo de perfil TODOS</li>
+     * <li>OU: Se o núcleo existe no perfil do idPublicador para o tipo de perfil p_tipoCore</li>
      * 
-     * @param p_urn
      * @param p_idPublicador
-     * @param nucleoURN
+     * @param autoridadeReduzida se deve ser usada a autoridade reduzida (prefixo antes do ";")
+     * @param tipoReduzido se deve ser usado o tipo de documento reduzido (prefixo antes do ";")
+     * @param p_tipoCore
      * @return
      */
-    private boolean isCoreValid(final Integer p_idPublicador, final String nucleoURN, final String p_tipoCore) {
+    private boolean isCoreValid(final ContextoValidacao ctx, final Integer p_idPublicador,
+                                final boolean autoridadeReduzida, final boolean tipoReduzido, final char p_tipoCore) {
 
-        if (null == nucleoURN) {
+        NucleoURN nucleo = ctx.nucleo;
+
+        if ((autoridadeReduzida || tipoReduzido) && !nucleo.temNucleosReduzidos()) {
             return false;
         }
 
-        return svc.isNucleoValido(p_idPublicador + SEP + p_tipoCore + SEP + nucleoURN);
+        if (ctx.limites != null && ctx.limites.isPrazoExcedido()) {
+            throw new PrazoExcedidoException();
+        }
+
+        if (ctx.ouvinte == null) {
+            return consultaNucleo(ctx, p_idPublicador, autoridadeReduzida, tipoReduzido, p_tipoCore);
+        }
+        long inicio = System.nanoTime();
+        boolean valido = consultaNucleo(ctx, p_idPublicador, autoridadeReduzida, tipoReduzido, p_tipoCore);
+        ctx.ouvinte.nucleo(p_idPublicador, valido, System.nanoTime() - inicio);
+        return valido;
     }
 
-    private Integer getIdPublicadorRelacionamento(final Node relacionamento, final Integer idDefault) {
-        Integer idPublicador = xmlHelper.getAttributeAsInteger(relacionamento, "idPublicador");
+    private boolean consultaNucleo(final ContextoValidacao ctx, final Integer p_idPublicador,
+                                   final boolean autoridadeReduzida, final boolean tipoReduzido,
+                                   final char p_tipoCore) {
+
+        NucleoURN nucleo = ctx.nucleo;
+
+        if (ctx.indicePerfil != null) {
+            CharSequence urn = nucleo.getURN();
+            boolean valido = ctx.indicePerfil.isNucleoValido(p_idPublicador, p_tipoCore, urn,
+                nucleo.getIniLocalidade(), nucleo.getFimLocalidade(), urn, nucleo.getIniAutoridade(),
+                nucleo.getFimAutoridade(autoridadeReduzida), urn, nucleo.getIniTipo(), nucleo.getFimTipo(tipoReduzido));
+            if (ctx.nucleosConsultados != null) {
+                ctx.nucleosConsultados.put(montaChave(ctx, p_idPublicador, autoridadeReduzida, tipoReduzido,
+                    p_tipoCore), valido);
+            }
+            return valido;
+        }
+
+        String chave = montaChave(ctx, p_idPublicador, autoridadeReduzida, tipoReduzido, p_tipoCore);
+        Boolean valido = ctx.lote == null ? null : ctx.lote.consulta(chave);
+        if (valido == null) {
+            valido = ctx.svc.isNucleoValido(chave);
+        }
+        if (ctx.nucleosConsultados != null) {
+            ctx.nucleosConsultados.put(chave, valido);
+        }
+        return valido;
+    }
+
+    /**
+     * Monta a chave de ValidadorService.isNucleoValido para o núcleo da última URN analisada.
+     */
+    private static String montaChave(final ContextoValidacao ctx, final Integer idPublicador,
+                                     final boolean autoridadeReduzida, final boolean tipoReduzido,
+                                     final char tipoPerfil) {
+        StringBuilder sb = ctx.chave;
+        sb.setLength(0);
+        sb.append(idPublicador).append(SEP).append(tipoPerfil).append(SEP);
+        ctx.nucleo.appendNucleo(sb, autoridadeReduzida, tipoReduzido);
+        return sb.toString();
+    }
+
+    private Integer getIdPublicadorRelacionamento(final DadosRegistro dados, final int i, final Integer idDefault) {
+        Integer idPublicador = dados.idPublicadoresRelacionamento.get(i);
         return idPublicador == null ? idDefault : idPublicador;
     }
 
+    /**
+     * Interrompe as regras de URN quando o tempo máximo de validação é excedido.
+     */
+    private static class PrazoExcedidoException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        PrazoExcedidoException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Núcleos de um lote de registros, verificados em uma única chamada a ValidadorServiceLote.nucleosValidos.
+     */
+    private static class LoteNucleos {
+
+        final Set<String> chaves = new HashSet<String>();
+
+        private Set<String> validos;
+
+        void resolve(final ValidadorServiceLote svc) {
+            if (chaves.isEmpty()) {
+                return;
+            }
+            try {
+                Set<String> resposta = svc.nucleosValidos(Collections.unmodifiableSet(chaves));
+                if (resposta == null) {
+                    throw new IllegalStateException("nucleosValidos retornou null");
+                }
+                validos = resposta;
+            }
+            catch (RuntimeException e) {
+                log.warn("Falha na verificação em lote de " + chaves.size()
+                    + " núcleos; serão verificados individualmente.", e);
+            }
+        }
+
+        /**
+         * @return se o núcleo é válido ou null se o núcleo não foi verificado no lote
+         */
+        Boolean consulta(final String chave) {
+            if (validos == null || !chaves.contains(chave)) {
+                return null;
+            }
+            return validos.contains(chave);
+        }
+
+    }
+
     private static class ContextoValidacao {
 
-        String tstNucleoURN;
-        String tstNucleoURNAutoridadeReduzida;
-        String tstNucleoURNTipoReduzida;
+        final ValidadorService svc;
+
+        final IndicePerfil indicePerfil;
+
+        // null se as medições estão desabilitadas
+        final OuvinteValidacao ouvinte;
+
+        final String idRegistroItem;
+
+        final Object ctxUsr;
+
+        ValidadorXMLHelper xmlHelper;
+
+        // Erro registrado; mensagem é usada somente quando não há erro registrado (RV#4)
+        ErroValidacao erro;
+
+        String mensagem;
+
+        // Publicador do primeiro Item, informado ao ouvinte
+        Integer idPublicador;
+
+        // Validação em lote: núcleos resolvidos de uma vez para todos os registros (null fora do lote)
+        LoteNucleos lote;
+
+        // Dados já lidos cujas regras de URN aguardam a resolução dos núcleos do lote
+        DadosRegistro dadosPendentes;
+
+        // Pré-validação em lote: XML cuja validação de schema aguarda as regras de URN
+        EntradaXML schemaPendente;
+
+        // Registro no cache adiado para o final da validação em lote
+        CacheResultadosValidacao cache;
+
+        byte[] digest;
+
+        long epoca;
+
+        // Núcleos consultados e seus resultados, informados ao destino (null se o destino não foi configurado)
+        DestinoDependencias destinoDependencias;
+
+        Map<String, Boolean> nucleosConsultados;
+
+        // Verificação dos limites de validação (null se não há limites configurados)
+        ControleLimites limites;
+
+        // Registro de aquecimento: erros e resultado não são informados
+        boolean aquecimento;
+
+        // Núcleo da última URN analisada por isEstruturalmenteValid
+        final NucleoURN nucleo = new NucleoURN();
+
+        // Buffer reutilizado na montagem das chaves de ValidadorService.isNucleoValido
+        final StringBuilder chave = new StringBuilder();
+
+        ContextoValidacao(final ValidadorService svc, final IndicePerfil indicePerfil,
+                          final OuvinteValidacao ouvinte, final String idRegistroItem, final Object ctxUsr) {
+            this.svc = svc;
+            this.indicePerfil = indicePerfil;
+            this.ouvinte = ouvinte;
+            this.idRegistroItem = idRegistroItem;
+            this.ctxUsr = ctxUsr;
+        }
+
+        void registraDependencias(final DestinoDependencias destino) {
+            if (destino != null) {
+                destinoDependencias = destino;
+                nucleosConsultados = new LinkedHashMap<String, Boolean>();
+            }
+        }
+
+        long agora() {
+            return ouvinte == null ? 0 : System.nanoTime();
+        }
+
+        void mede(final FaseValidacao fase, final long inicio) {
+            if (ouvinte != null) {
+                ouvinte.fase(fase, System.nanoTime() - inicio);
+            }
+        }
 
     }
 }
@@ -0,0 +1,215 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.collections.map.LRUMap;
+
+/**
+ * Decorador de {@link ValidadorService} que memoriza as respostas de
+ * {@link ValidadorService#isNucleoValido(String)}, inclusive as negativas.
+ * <p/>
+ * O cache é limitado por tamanho (descarta os núcleos menos usados) e, opcionalmente, por tempo de vida das
+ * entradas. Para reduzir a contenção entre threads, as entradas são distribuídas em até 16 segmentos independentes
+ * (uma potência de dois não maior que o tamanho máximo). O tamanho máximo é repartido entre os segmentos sem
+ * arredondamento para cima: o cache nunca excede o limite, mas, como cada núcleo pertence a um segmento fixo, pode
+ * descartar entradas antes de atingi-lo.
+ * Quando os perfis dos publicadores forem recarregados, chame {@link #invalidaTudo()}.
+ * <p/>
+ * Na verificação em lote ({@link #nucleosValidos(Collection)}), somente os núcleos ausentes do cache são repassados
+ * ao serviço decorado, em uma única chamada se ele também implementar {@link ValidadorServiceLote}.
+ */
+public class ValidadorServiceComCache implements ValidadorServiceLote {
+
+    private static final int MAXIMO_SEGMENTOS = 16;
+
+    private final ValidadorService svc;
+
+    private final long tempoVidaMillis;
+
+    private final LRUMap[] segmentos;
+
+    private final AtomicLong acertos = new AtomicLong();
+
+    private final AtomicLong falhas = new AtomicLong();
+
+    // Incrementado a cada invalidação; impede que consultas iniciadas antes dela repovoem o cache
+    private volatile long geracao;
+
+    /**
+     * @param svc Serviço decorado
+     * @param tamanhoMaximo Número máximo de núcleos mantidos no cache
+     */
+    public ValidadorServiceComCache(final ValidadorService svc, final int tamanhoMaximo) {
+        this(svc, tamanhoMaximo, 0);
+    }
+
+    /**
+     * @param svc Serviço decorado
+     * @param tamanhoMaximo Número máximo de núcleos mantidos no cache
+     * @param tempoVidaMillis Tempo de vida de cada entrada em milissegundos (zero para não expirar)
+     */
+    public ValidadorServiceComCache(final ValidadorService svc, final int tamanhoMaximo,
+                                    final long tempoVidaMillis) {
+        if (tamanhoMaximo < 1) {
+            throw new IllegalArgumentException("Tamanho do cache deve ser maior que zero: " + tamanhoMaximo);
+        }
+        this.svc = svc;
+        this.tempoVidaMillis = tempoVidaMillis;
+        segmentos = new LRUMap[Integer.highestOneBit(Math.min(MAXIMO_SEGMENTOS, tamanhoMaximo))];
+        int tamanhoSegmento = tamanhoMaximo / segmentos.length;
+        int resto = tamanhoMaximo % segmentos.length;
+        for (int i = 0; i < segmentos.length; i++) {
+            // O resto da divisão é distribuído entre os primeiros segmentos
+            segmentos[i] = new LRUMap(i < resto ? tamanhoSegmento + 1 : tamanhoSegmento);
+        }
+    }
+
+    public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                         final Object ctxUsr) {
+        svc.logError(idRegistroItem, tipoErro, msg, ctxUsr);
+    }
+
+    public boolean isNucleoValido(final String nucleo) {
+        long agora = tempoVidaMillis > 0 ? System.currentTimeMillis() : 0;
+
+        Entrada entrada = consultaCache(nucleo, agora);
+        if (entrada != null) {
+            acertos.incrementAndGet();
+            return entrada.valido;
+        }
+        falhas.incrementAndGet();
+
+        // A consulta ao serviço decorado é feita fora do bloqueio do segmento
+        long geracaoConsulta = geracao;
+        boolean valido = svc.isNucleoValido(nucleo);
+        armazena(nucleo, valido, agora, geracaoConsulta);
+        return valido;
+    }
+
+    public Set<String> nucleosValidos(final Collection<String> nucleos) {
+        long agora = tempoVidaMillis > 0 ? System.currentTimeMillis() : 0;
+
+        Set<String> validos = new HashSet<String>();
+        List<String> ausentes = new ArrayList<String>();
+        for (String nucleo : nucleos) {
+            Entrada entrada = consultaCache(nucleo, agora);
+            if (entrada == null) {
+                ausentes.add(nucleo);
+            }
+            else if (entrada.valido) {
+                validos.add(nucleo);
+            }
+        }
+        acertos.addAndGet(nucleos.size() - ausentes.size());
+        if (ausentes.isEmpty()) {
+            return validos;
+        }
+        falhas.addAndGet(ausentes.size());
+
+        long geracaoConsulta = geracao;
+        if (svc instanceof ValidadorServiceLote) {
+            Set<String> resposta = ((ValidadorServiceLote) svc).nucleosValidos(ausentes);
+            for (String nucleo : ausentes) {
+                boolean valido = resposta.contains(nucleo);
+                armazena(nucleo, valido, agora, geracaoConsulta);
+                if (valido) {
+                    validos.add(nucleo);
+                }
+            }
+        }
+        else {
+            for (String nucleo : ausentes) {
+                boolean valido = svc.isNucleoValido(nucleo);
+                armazena(nucleo, valido, agora, geracaoConsulta);
+                if (valido) {
+                    validos.add(nucleo);
+                }
+            }
+        }
+        return validos;
+    }
+
+    private Entrada consultaCache(final String nucleo, final long agora) {
+        LRUMap segmento = getSegmento(nucleo);
+        Entrada entrada;
+        synchronized (segmento) {
+            entrada = (Entrada) segmento.get(nucleo);
+        }
+        if (entrada != null && (tempoVidaMillis <= 0 || entrada.expiraEm > agora)) {
+            return entrada;
+        }
+        return null;
+    }
+
+    private void armazena(final String nucleo, final boolean valido, final long agora, final long geracaoConsulta) {
+        LRUMap segmento = getSegmento(nucleo);
+        synchronized (segmento) {
+            if (geracaoConsulta == geracao) {
+                segmento.put(nucleo, new Entrada(valido, agora + tempoVidaMillis));
+            }
+        }
+    }
+
+    /**
+     * Descarta todas as entradas do cache. Deve ser chamado quando os perfis dos publicadores forem
+     * recarregados.
+     */
+    public synchronized void invalidaTudo() {
+        geracao++;
+        for (LRUMap segmento : segmentos) {
+            synchronized (segmento) {
+                segmento.clear();
+            }
+        }
+    }
+
+    /**
+     * @return número de consultas respondidas pelo cache
+     */
+    public long getAcertos() {
+        return acertos.get();
+    }
+
+    /**
+     * @return número de consultas repassadas ao serviço decorado
+     */
+    public long getFalhas() {
+        return falhas.get();
+    }
+
+    public int getTamanho() {
+        int tamanho = 0;
+        for (LRUMap segmento : segmentos) {
+            synchronized (segmento) {
+                tamanho += segmento.size();
+            }
+        }
+        return tamanho;
+    }
+
+    private LRUMap getSegmento(final String nucleo) {
+        int h = nucleo.hashCode();
+        h ^= h >>> 16;
+        return segmentos[h & (segmentos.length - 1)];
+    }
+
+    private static class Entrada {
+
+        final boolean valido;
+
+        final long expiraEm;
+
+        Entrada(final boolean valido, final long expiraEm) {
+            this.valido = valido;
+            this.expiraEm = expiraEm;
+        }
+
+    }
+
+}
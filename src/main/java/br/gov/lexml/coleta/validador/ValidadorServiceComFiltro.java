@@ -0,0 +1,111 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decorador de {@link ValidadorService} que responde localmente, pelo {@link FiltroNucleos}, as consultas de núcleos
+ * que certamente não existem no perfil (em geral as variantes com autoridade ou tipo reduzidos). As demais consultas
+ * são repassadas ao serviço decorado, de modo que nenhum núcleo válido é rejeitado.
+ * <p/>
+ * O filtro deve ser montado com todos os núcleos válidos na carga dos perfis e substituído por
+ * {@link #setFiltro(FiltroNucleos)} quando os perfis forem recarregados. Sem filtro, todas as consultas são
+ * repassadas.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class ValidadorServiceComFiltro implements ValidadorServiceLote {
+
+    private final ValidadorService svc;
+
+    private volatile FiltroNucleos filtro;
+
+    private final AtomicLong descartados = new AtomicLong();
+
+    private final AtomicLong repassados = new AtomicLong();
+
+    public ValidadorServiceComFiltro(final ValidadorService svc) {
+        this(svc, null);
+    }
+
+    public ValidadorServiceComFiltro(final ValidadorService svc, final FiltroNucleos filtro) {
+        this.svc = svc;
+        this.filtro = filtro;
+    }
+
+    /**
+     * Substitui o filtro. As consultas em andamento terminam com o filtro anterior.
+     *
+     * @param filtro novo filtro ou null para repassar todas as consultas
+     */
+    public void setFiltro(final FiltroNucleos filtro) {
+        this.filtro = filtro;
+    }
+
+    public FiltroNucleos getFiltro() {
+        return filtro;
+    }
+
+    public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                         final Object ctxUsr) {
+        svc.logError(idRegistroItem, tipoErro, msg, ctxUsr);
+    }
+
+    public boolean isNucleoValido(final String nucleo) {
+        FiltroNucleos f = filtro;
+        if (f != null && !f.contemTalvez(nucleo)) {
+            descartados.incrementAndGet();
+            return false;
+        }
+        repassados.incrementAndGet();
+        return svc.isNucleoValido(nucleo);
+    }
+
+    public Set<String> nucleosValidos(final Collection<String> nucleos) {
+        FiltroNucleos f = filtro;
+        Collection<String> possiveis = nucleos;
+        if (f != null) {
+            List<String> filtrados = new ArrayList<String>(nucleos.size());
+            for (String nucleo : nucleos) {
+                if (f.contemTalvez(nucleo)) {
+                    filtrados.add(nucleo);
+                }
+            }
+            descartados.addAndGet(nucleos.size() - filtrados.size());
+            possiveis = filtrados;
+        }
+        repassados.addAndGet(possiveis.size());
+        if (possiveis.isEmpty()) {
+            return new HashSet<String>();
+        }
+        if (svc instanceof ValidadorServiceLote) {
+            return ((ValidadorServiceLote) svc).nucleosValidos(possiveis);
+        }
+        Set<String> validos = new HashSet<String>();
+        for (String nucleo : possiveis) {
+            if (svc.isNucleoValido(nucleo)) {
+                validos.add(nucleo);
+            }
+        }
+        return validos;
+    }
+
+    /**
+     * @return número de consultas respondidas pelo filtro, sem acesso ao serviço decorado
+     */
+    public long getDescartados() {
+        return descartados.get();
+    }
+
+    /**
+     * @return número de consultas repassadas ao serviço decorado
+     */
+    public long getRepassados() {
+        return repassados.get();
+    }
+
+}
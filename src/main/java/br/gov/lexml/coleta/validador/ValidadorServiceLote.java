@@ -0,0 +1,20 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * {@link ValidadorService} capaz de verificar vários núcleos em uma única consulta (por exemplo, um único SELECT
+ * ... IN). Usado por {@link ValidadorRegistroItem#validarLote} para resolver de uma vez os núcleos de todos os
+ * registros do lote.
+ */
+public interface ValidadorServiceLote extends ValidadorService {
+
+    /**
+     * Verifica os núcleos informados, no mesmo formato de {@link #isNucleoValido(String)}.
+     *
+     * @return os núcleos válidos dentre os informados
+     */
+    Set<String> nucleosValidos(Collection<String> nucleos);
+
+}
@@ -0,0 +1,81 @@
+
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link ValidadorService} local, sem banco de dados: os núcleos são consultados em um {@link IndicePerfil}
+ * (por exemplo, carregado de um arquivo de perfil) e os erros são apenas contados por tipo e registrados no log
+ * em nível debug. Útil para validações em massa e testes de carga fora do ambiente da coleta.
+ * <p/>
+ * Instâncias são thread-safe.
+ */
+public class ValidadorServicePerfilLocal implements ValidadorService {
+
+    private static final Logger log = LoggerFactory.getLogger(ValidadorServicePerfilLocal.class);
+
+    private final IndicePerfil indicePerfil;
+
+    private final AtomicLongArray erros = new AtomicLongArray(TipoErroValidacao.values().length);
+
+    public ValidadorServicePerfilLocal(final IndicePerfil indicePerfil) {
+        this.indicePerfil = indicePerfil;
+    }
+
+    /**
+     * Carrega o perfil de um arquivo no formato de {@link IndicePerfil#carrega(Reader)} (UTF-8) ou mapeia um
+     * arquivo gravado por {@link IndicePerfil#grava(File)}.
+     */
+    public static ValidadorServicePerfilLocal carrega(final File arquivoPerfil) throws IOException {
+        if (IndicePerfil.isArquivoBinario(arquivoPerfil)) {
+            return new ValidadorServicePerfilLocal(IndicePerfil.mapeia(arquivoPerfil));
+        }
+        Reader reader = new InputStreamReader(new FileInputStream(arquivoPerfil), "UTF-8");
+        try {
+            return new ValidadorServicePerfilLocal(IndicePerfil.carrega(reader));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    public IndicePerfil getIndicePerfil() {
+        return indicePerfil;
+    }
+
+    public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                         final Object ctxUsr) {
+        erros.incrementAndGet(tipoErro.ordinal());
+        if (log.isDebugEnabled()) {
+            log.debug("Erro " + tipoErro + " para REGISTRO_ITEM " + idRegistroItem + ": " + msg);
+        }
+    }
+
+    public boolean isNucleoValido(final String nucleo) {
+        return indicePerfil.isNucleoValido(nucleo);
+    }
+
+    /**
+     * @return número de erros registrados do tipo informado
+     */
+    public long getErros(final TipoErroValidacao tipoErro) {
+        return erros.get(tipoErro.ordinal());
+    }
+
+    public long getTotalErros() {
+        long total = 0;
+        for (int i = 0; i < erros.length(); i++) {
+            total += erros.get(i);
+        }
+        return total;
+    }
+
+}
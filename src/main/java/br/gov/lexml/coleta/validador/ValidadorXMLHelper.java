@@ -1,20 +1,30 @@
 
 package br.gov.lexml.coleta.validador;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
+import javax.xml.XMLConstants;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -22,33 +32,89 @@ import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.ErrorHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
+import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.DefaultHandler;
 
+/**
+ * Encapsula o parser e o XPath utilizados na validação. Instâncias <b>não</b> são thread-safe; para uso
+ * concorrente utilize {@link PoolValidadorXMLHelper}.
+ */
 public class ValidadorXMLHelper {
 
     private static final Logger log = LoggerFactory.getLogger(ValidadorXMLHelper.class);
 
+    private static final String SCHEMA_OAI_LEXML = "oai_lexml.xsd";
+
+    private static volatile Schema schemaCompartilhado;
+
+    private static volatile Schema schemaCompartilhadoOffline;
+
+    private final Schema schema;
+
+    private final boolean offline;
+
     private DocumentBuilder documentBuilder;
 
+    private XMLReader xmlReader;
+
+    private LeitorRegistroSAX leitorRegistro;
+
+    private XMLReader xmlReaderSemValidacao;
+
+    private LeitorRegistroSAX leitorSemValidacao;
+
     private XPath xpath;
 
+    // Expressões já compiladas por getString e getNodeList
+    private final Map<String, XPathExpression> expressoes = new HashMap<String, XPathExpression>();
+
     private List<String> parseErrors = new ArrayList<String>();
 
     public ValidadorXMLHelper() {
+        this(null);
+    }
+
+    /**
+     * Cria o helper validando os documentos contra o schema informado. Se o schema for nulo, o
+     * schema é resolvido a cada parse a partir do xsi:schemaLocation do documento.
+     * 
+     * @param schema Schema já compilado (ver {@link #getSchemaCompartilhado()})
+     */
+    public ValidadorXMLHelper(final Schema schema) {
+        this(schema, false);
+    }
+
+    /**
+     * @param schema Schema já compilado (ver {@link #getSchemaCompartilhado()}) ou null
+     * @param offline Se verdadeiro, entidades externas são resolvidas exclusivamente pelo {@link CatalogoSchemas};
+     *            qualquer outra referência interrompe o parse com {@link ReferenciaExternaException}
+     */
+    public ValidadorXMLHelper(final Schema schema, final boolean offline) {
+
+        this.schema = schema;
+        this.offline = offline;
 
         try {
             DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
             dbf.setNamespaceAware(true);
-            dbf.setValidating(true);
-            dbf.setFeature("http://xml.org/sax/features/validation", true);
-            dbf.setFeature("http://apache.org/xml/features/validation/schema", true);
+            if (schema == null) {
+                dbf.setValidating(true);
+                dbf.setFeature("http://xml.org/sax/features/validation", true);
+                dbf.setFeature("http://apache.org/xml/features/validation/schema", true);
+            }
+            else {
+                dbf.setSchema(schema);
+            }
             documentBuilder = dbf.newDocumentBuilder();
             documentBuilder.setErrorHandler(new MyErrorHandler());
             documentBuilder.setEntityResolver(new MyEntityResolver());
@@ -78,11 +144,211 @@ public class ValidadorXMLHelper {
 
     }
 
+    /**
+     * Retorna o schema oai_lexml compilado uma única vez a partir dos XSDs do classpath. O objeto
+     * Schema é imutável e pode ser compartilhado entre todos os helpers.
+     */
+    public static Schema getSchemaCompartilhado() {
+        return getSchemaCompartilhado(false);
+    }
+
+    /**
+     * Como {@link #getSchemaCompartilhado()}, mas no modo offline os imports/includes dos XSDs são resolvidos
+     * exclusivamente pelo {@link CatalogoSchemas}: qualquer outra referência interrompe a compilação em vez de ser
+     * buscada na rede.
+     */
+    public static Schema getSchemaCompartilhado(final boolean offline) {
+        Schema schema = offline ? schemaCompartilhadoOffline : schemaCompartilhado;
+        if (schema == null) {
+            synchronized (ValidadorXMLHelper.class) {
+                schema = offline ? schemaCompartilhadoOffline : schemaCompartilhado;
+                if (schema == null) {
+                    schema = carregaSchema(offline);
+                    if (offline) {
+                        schemaCompartilhadoOffline = schema;
+                    }
+                    else {
+                        schemaCompartilhado = schema;
+                    }
+                }
+            }
+        }
+        return schema;
+    }
+
+    private static Schema carregaSchema(final boolean offline) {
+        String resourceName = "/xsd/" + SCHEMA_OAI_LEXML;
+        URL url = ValidadorXMLHelper.class.getResource(resourceName);
+        if (url == null) {
+            throw new RuntimeException("Schema não encontrado: " + resourceName);
+        }
+        try {
+            long inicio = System.currentTimeMillis();
+            Schema schema = compilaSchema(new StreamSource(url.toExternalForm()), offline);
+            log.info("Schema " + SCHEMA_OAI_LEXML + " carregado em " + (System.currentTimeMillis() - inicio) + "ms");
+            return schema;
+        }
+        catch (SAXException e) {
+            log.error("Falha ao carregar schema " + resourceName, e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Compila o schema resolvendo os imports/includes pelo {@link CatalogoSchemas}.
+     * 
+     * @throws ReferenciaExternaException no modo offline, se algum import/include não consta do catálogo
+     */
+    static Schema compilaSchema(final Source fonte, final boolean offline) throws SAXException {
+        SchemaFactory sf = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        MyResourceResolver resolver = new MyResourceResolver(offline);
+        sf.setResourceResolver(resolver);
+        Schema schema;
+        try {
+            schema = sf.newSchema(fonte);
+        }
+        catch (SAXException e) {
+            // A entrada vazia devolvida para a referência recusada pode, por si só, invalidar o schema
+            resolver.verificaRecusadas();
+            throw e;
+        }
+        resolver.verificaRecusadas();
+        return schema;
+    }
+
+    /**
+     * Abre o XSD do classpath (/xsd/) correspondente ao systemId informado.
+     * 
+     * @return stream do XSD ou null se o systemId não corresponde a nenhum XSD conhecido
+     */
+    static InputStream abreSchema(final String systemId) {
+        return CatalogoSchemas.getPadrao().abre(systemId);
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
     public Document parse(final InputStream is) throws SAXException, IOException {
         parseErrors.clear();
+        documentBuilder.setErrorHandler(new MyErrorHandler());
         return documentBuilder.parse(is);
     }
 
+    /**
+     * Faz o parse acumulando os erros de validação na lista informada (e não na lista da instância).
+     * 
+     * @param is XML a ser lido
+     * @param erros Lista que recebe os erros de validação desta chamada
+     */
+    public Document parse(final InputStream is, final List<String> erros) throws SAXException, IOException {
+        return parse(new InputSource(is), erros);
+    }
+
+    /**
+     * Faz o parse acumulando os erros de validação na lista informada (e não na lista da instância).
+     * 
+     * @param is XML a ser lido (stream de bytes, cuja codificação é detectada pelo parser, ou de caracteres)
+     * @param erros Lista que recebe os erros de validação desta chamada
+     */
+    public Document parse(final InputSource is, final List<String> erros) throws SAXException, IOException {
+        return parse(is, erros, null);
+    }
+
+    /**
+     * Faz o parse verificando o prazo e o limite de erros de schema do controle informado (ou sem limites, se
+     * null).
+     */
+    Document parse(final InputSource is, final List<String> erros, final ControleLimites controle)
+        throws SAXException, IOException {
+        documentBuilder.setErrorHandler(criaErrorHandler(erros, controle));
+        return documentBuilder.parse(controle == null ? is : controle.limita(is));
+    }
+
+    /**
+     * Valida o XML e extrai os dados do registro em uma única passada SAX, sem montar o DOM. Os dados só devem ser
+     * convertidos ({@link LeitorRegistroSAX.Leitura#getDados()}) se não houver erros de validação.
+     * 
+     * @param is XML a ser lido
+     * @param erros Lista que recebe os erros de validação desta chamada
+     */
+    LeitorRegistroSAX.Leitura parseDados(final InputSource is, final List<String> erros)
+        throws SAXException, IOException {
+        return parseDados(is, erros, null);
+    }
+
+    /**
+     * Valida o XML e extrai os dados do registro em uma única passada SAX, verificando todos os limites do
+     * controle informado (ou sem limites, se null).
+     */
+    LeitorRegistroSAX.Leitura parseDados(final InputSource is, final List<String> erros,
+                                         final ControleLimites controle) throws SAXException, IOException {
+        if (xmlReader == null) {
+            xmlReader = criaXMLReader();
+            leitorRegistro = new LeitorRegistroSAX();
+            xmlReader.setContentHandler(leitorRegistro);
+            xmlReader.setProperty(LeitorRegistroSAX.PROPRIEDADE_LEXICAL_HANDLER, leitorRegistro);
+            xmlReader.setEntityResolver(new MyEntityResolver());
+        }
+        leitorRegistro.inicia(controle);
+        xmlReader.setErrorHandler(criaErrorHandler(erros, controle));
+        xmlReader.parse(controle == null ? is : controle.limita(is));
+        return leitorRegistro.getLeitura();
+    }
+
+    /**
+     * Extrai os dados do registro sem validação de schema e sem carregar DTDs ou entidades externas. Erros de
+     * XML mal formado são lançados como SAXException.
+     * 
+     * @param is XML a ser lido
+     */
+    DadosRegistro leDados(final InputSource is) throws SAXException, IOException {
+        return leDados(is, null);
+    }
+
+    DadosRegistro leDados(final InputSource is, final ControleLimites controle) throws SAXException, IOException {
+        if (xmlReaderSemValidacao == null) {
+            try {
+                SAXParserFactory spf = SAXParserFactory.newInstance();
+                spf.setNamespaceAware(true);
+                spf.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+                spf.setFeature("http://xml.org/sax/features/external-general-entities", false);
+                spf.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+                xmlReaderSemValidacao = spf.newSAXParser().getXMLReader();
+            }
+            catch (ParserConfigurationException e) {
+                log.error("Falha ao obter SAXParser.", e);
+                throw new RuntimeException(e);
+            }
+            leitorSemValidacao = new LeitorRegistroSAX();
+            xmlReaderSemValidacao.setContentHandler(leitorSemValidacao);
+            xmlReaderSemValidacao.setProperty(LeitorRegistroSAX.PROPRIEDADE_LEXICAL_HANDLER, leitorSemValidacao);
+        }
+        leitorSemValidacao.inicia(controle);
+        xmlReaderSemValidacao.parse(controle == null ? is : controle.limita(is));
+        return leitorSemValidacao.getDados();
+    }
+
+    private XMLReader criaXMLReader() throws SAXException {
+        try {
+            SAXParserFactory spf = SAXParserFactory.newInstance();
+            spf.setNamespaceAware(true);
+            if (schema == null) {
+                spf.setValidating(true);
+                spf.setFeature("http://xml.org/sax/features/validation", true);
+                spf.setFeature("http://apache.org/xml/features/validation/schema", true);
+            }
+            else {
+                spf.setSchema(schema);
+            }
+            return spf.newSAXParser().getXMLReader();
+        }
+        catch (ParserConfigurationException e) {
+            log.error("Falha ao obter SAXParser.", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     public String getAttribute(final Node node, final String attrName) {
         Node attr = node.getAttributes().getNamedItem(attrName);
         if (attr != null) {
@@ -99,44 +365,147 @@ public class ValidadorXMLHelper {
         return null;
     }
 
+    /**
+     * Avalia a expressão XPath (prefixo "lexml" para o namespace oai_lexml). A expressão é compilada na primeira
+     * chamada e reutilizada pelas chamadas seguintes deste helper.
+     */
     public String getString(final Node node, final String expression) {
         try {
-            return xpath.evaluate(expression, node);
+            return compila(expression).evaluate(node);
         }
         catch (XPathExpressionException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Avalia a expressão XPath como {@link #getString(Node, String)}, retornando os nós selecionados.
+     */
     public NodeList getNodeList(final Node node, final String expression) {
         try {
-            return (NodeList) xpath.evaluate(expression, node, XPathConstants.NODESET);
+            return (NodeList) compila(expression).evaluate(node, XPathConstants.NODESET);
         }
         catch (XPathExpressionException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private XPathExpression compila(final String expression) throws XPathExpressionException {
+        XPathExpression expr = expressoes.get(expression);
+        if (expr == null) {
+            expr = xpath.compile(expression);
+            expressoes.put(expression, expr);
+        }
+        return expr;
+    }
+
+    /**
+     * Retorna os elementos filhos do nó no namespace oai_lexml com o nome local informado, na ordem do documento.
+     * Equivale a getNodeList(node, "lexml:" + nomeLocal), percorrendo o DOM diretamente.
+     */
+    public List<Element> getFilhos(final Node node, final String nomeLocal) {
+        List<Element> filhos = new ArrayList<Element>();
+        for (Node filho = node.getFirstChild(); filho != null; filho = filho.getNextSibling()) {
+            if (isElementoLexml(filho, nomeLocal)) {
+                filhos.add((Element) filho);
+            }
+        }
+        return filhos;
+    }
+
+    /**
+     * Retorna o primeiro nó texto do primeiro filho do nó no namespace oai_lexml com o nome local informado, ou ""
+     * se não houver. Equivale a getString(node, "lexml:" + nomeLocal + "/text()"), percorrendo o DOM
+     * diretamente; como no XPath, nós Text e CDATASection adjacentes formam um único nó texto.
+     */
+    public String getTextoFilho(final Node node, final String nomeLocal) {
+        for (Node filho = node.getFirstChild(); filho != null; filho = filho.getNextSibling()) {
+            if (isElementoLexml(filho, nomeLocal)) {
+                return getPrimeiroTexto(filho);
+            }
+        }
+        return "";
+    }
+
+    private static boolean isElementoLexml(final Node node, final String nomeLocal) {
+        return node.getNodeType() == Node.ELEMENT_NODE && nomeLocal.equals(node.getLocalName())
+            && LeitorRegistroSAX.NS_LEXML.equals(node.getNamespaceURI());
+    }
+
+    private static String getPrimeiroTexto(final Node elemento) {
+        Node texto = elemento.getFirstChild();
+        while (texto != null && !isTexto(texto)) {
+            texto = texto.getNextSibling();
+        }
+        if (texto == null) {
+            return "";
+        }
+        Node proximo = texto.getNextSibling();
+        if (proximo == null || !isTexto(proximo)) {
+            return texto.getNodeValue();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (; texto != null && isTexto(texto); texto = texto.getNextSibling()) {
+            sb.append(texto.getNodeValue());
+        }
+        return sb.toString();
+    }
+
+    private static boolean isTexto(final Node node) {
+        short tipo = node.getNodeType();
+        return tipo == Node.TEXT_NODE || tipo == Node.CDATA_SECTION_NODE;
+    }
+
     public String getParseErrorsAsString() {
-        if (parseErrors.isEmpty()) {
+        return getErrorsAsString(parseErrors);
+    }
+
+    public static String getErrorsAsString(final List<String> erros) {
+        if (erros.isEmpty()) {
             return null;
         }
         StringBuilder sb = new StringBuilder();
-        for (String error : parseErrors) {
+        for (String error : erros) {
             sb.append(error);
             sb.append("\n");
         }
         return sb.toString();
     }
 
+    private ErrorHandler criaErrorHandler(final List<String> erros, final ControleLimites controle) {
+        return new MyErrorHandler(erros, controle == null ? 0 : controle.getLimites().getMaximoErrosSchema());
+    }
+
     public class MyErrorHandler implements ErrorHandler {
 
+        private final List<String> erros;
+
+        // Número de erros após o qual o parse é interrompido (0 = sem limite)
+        private final int maximoErros;
+
+        public MyErrorHandler() {
+            this(parseErrors);
+        }
+
+        public MyErrorHandler(final List<String> erros) {
+            this(erros, 0);
+        }
+
+        MyErrorHandler(final List<String> erros, final int maximoErros) {
+            this.erros = erros;
+            this.maximoErros = maximoErros;
+        }
+
         public void error(final SAXParseException exception) throws SAXException {
-            parseErrors.add(exception.getMessage());
+            erros.add(exception.getMessage());
+            if (maximoErros > 0 && erros.size() >= maximoErros) {
+                throw new ParseInterrompidoException(erros.size());
+            }
         }
 
         public void fatalError(final SAXParseException exception) throws SAXException {
-            error(exception);
+            // O parser lança a exceção em seguida
+            erros.add(exception.getMessage());
         }
 
         public void warning(final SAXParseException exception) throws SAXException {
@@ -145,24 +514,34 @@ public class ValidadorXMLHelper {
 
     }
 
+    /**
+     * Interrupção do parse ao atingir o limite de erros de schema; os erros encontrados estão na lista do
+     * {@link MyErrorHandler}.
+     */
+    static class ParseInterrompidoException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+
+        ParseInterrompidoException(final int erros) {
+            super("Validação de schema interrompida após " + erros + " erros");
+        }
+
+    }
+
     public class MyEntityResolver implements EntityResolver {
 
-        private Pattern PATTERN = Pattern.compile("([^/]+\\.xsd)$", Pattern.CASE_INSENSITIVE);
         private EntityResolver defaultHandler = new DefaultHandler();
 
         public InputSource resolveEntity(final String publicId, final String systemId) throws SAXException,
                                                                                       IOException {
 
-            Matcher m = PATTERN.matcher(systemId);
-            if (m.find()) {
-                String resourceName = "/xsd/" + m.group(1);
-                InputStream is = getClass().getResourceAsStream(resourceName);
-                if(is == null) {
-                	log.warn("Schema não encontrado: " + resourceName);
-                }
-                else {
-                	return new InputSource(is);
-                }
+            InputStream is = abreSchema(systemId);
+            if (is != null) {
+                return new InputSource(is);
+            }
+
+            if (offline && systemId != null) {
+                throw new ReferenciaExternaException(systemId);
             }
 
             return defaultHandler.resolveEntity(publicId, systemId);
@@ -170,4 +549,119 @@ public class ValidadorXMLHelper {
 
     }
 
+    /**
+     * Resolve os imports/includes do schema durante a compilação em {@link #getSchemaCompartilhado(boolean)}. No
+     * modo offline, uma referência fora do catálogo recebe uma entrada vazia em vez de ser buscada na rede (o
+     * LSResourceResolver não pode lançar SAXException); {@link #verificaRecusadas()} converte a recusa em
+     * {@link ReferenciaExternaException} ao fim da compilação, como faz o {@link MyEntityResolver}.
+     */
+    static class MyResourceResolver implements LSResourceResolver {
+
+        private final boolean offline;
+
+        private String recusada;
+
+        MyResourceResolver(final boolean offline) {
+            this.offline = offline;
+        }
+
+        public LSInput resolveResource(final String type, final String namespaceURI, final String publicId,
+                                       final String systemId, final String baseURI) {
+            InputStream is = abreSchema(systemId);
+            if (is != null) {
+                return new SchemaInput(publicId, systemId, baseURI, is);
+            }
+            if (offline && systemId != null) {
+                if (recusada == null) {
+                    recusada = systemId;
+                }
+                return new SchemaInput(publicId, systemId, baseURI, new ByteArrayInputStream(new byte[0]));
+            }
+            return null;
+        }
+
+        void verificaRecusadas() throws ReferenciaExternaException {
+            if (recusada != null) {
+                throw new ReferenciaExternaException(recusada);
+            }
+        }
+
+    }
+
+    private static class SchemaInput implements LSInput {
+
+        private String publicId;
+        private String systemId;
+        private String baseURI;
+        private InputStream byteStream;
+
+        SchemaInput(final String publicId, final String systemId, final String baseURI, final InputStream byteStream) {
+            this.publicId = publicId;
+            this.systemId = systemId;
+            this.baseURI = baseURI;
+            this.byteStream = byteStream;
+        }
+
+        public Reader getCharacterStream() {
+            return null;
+        }
+
+        public void setCharacterStream(final Reader characterStream) {
+        }
+
+        public InputStream getByteStream() {
+            return byteStream;
+        }
+
+        public void setByteStream(final InputStream byteStream) {
+            this.byteStream = byteStream;
+        }
+
+        public String getStringData() {
+            return null;
+        }
+
+        public void setStringData(final String stringData) {
+        }
+
+        public String getSystemId() {
+            return systemId;
+        }
+
+        public void setSystemId(final String systemId) {
+            this.systemId = systemId;
+        }
+
+        public String getPublicId() {
+            return publicId;
+        }
+
+        public void setPublicId(final String publicId) {
+            this.publicId = publicId;
+        }
+
+        public String getBaseURI() {
+            return baseURI;
+        }
+
+        public void setBaseURI(final String baseURI) {
+            this.baseURI = baseURI;
+        }
+
+        public String getEncoding() {
+            return null;
+        }
+
+        public void setEncoding(final String encoding) {
+        }
+
+        public boolean getCertifiedText() {
+            return false;
+        }
+
+        public void setCertifiedText(final boolean certifiedText) {
+        }
+
+    }
+
 }
@@ -0,0 +1,221 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CacheResultadosValidacaoTest {
+
+    private static final String ID = "oai:acordao.stf.jus.br:aco/100005";
+
+    private ServicoContador servico;
+
+    private ValidadorRegistroItem validador;
+
+    private File arquivo;
+
+    @Before
+    public void init() throws IOException {
+        servico = new ServicoContador();
+        validador = new ValidadorRegistroItem();
+        validador.setValidadorService(servico);
+        arquivo = File.createTempFile("resultados", ".cache");
+        arquivo.delete();
+    }
+
+    @After
+    public void finaliza() {
+        arquivo.delete();
+    }
+
+    @Test
+    public void testMemoria() throws IOException {
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100);
+        validador.setCacheResultados(cache);
+
+        byte[] xml = le("oai_acordao.stf.jus.br_aco_100005.xml");
+        Assert.assertTrue(validador.validar(ID, xml, "contexto"));
+        int consultas = servico.consultas;
+        Assert.assertTrue(validador.validar(ID, xml, "contexto"));
+        Assert.assertEquals(consultas, servico.consultas);
+        Assert.assertEquals(1, cache.getAcertos());
+
+        // Conteúdo alterado ou outro id: nova validação
+        byte[] erro = le("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml");
+        Assert.assertFalse(validador.validar(ID, erro, "contexto"));
+        Assert.assertTrue(validador.validar(ID + "-copia", xml, "contexto"));
+        Assert.assertEquals(3, cache.getFalhas());
+
+        // O resultado inválido do cache também é registrado em logError
+        int erros = servico.erros;
+        ResultadoValidacao resultado = validador.validarComResultado(ID, erro, "contexto");
+        Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL, resultado.getTipoErro());
+        Assert.assertEquals(erros + 1, servico.erros);
+        Assert.assertEquals(2, cache.getAcertos());
+    }
+
+    @Test
+    public void testEpoca() throws IOException {
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100, 1);
+        validador.setCacheResultados(cache);
+
+        byte[] xml = le("oai_acordao.stf.jus.br_aco_100005.xml");
+        validador.validar(ID, xml, "contexto");
+        cache.setEpoca(2);
+        validador.validar(ID, xml, "contexto");
+        Assert.assertEquals(0, cache.getAcertos());
+        Assert.assertEquals(2, cache.getFalhas());
+    }
+
+    @Test
+    public void testArquivo() throws IOException {
+        byte[] xml = le("oai_acordao.stf.jus.br_aco_100005.xml");
+        byte[] erro = le("oai_acordao.stf.jus.br_aco_100005-erro-schema.xml");
+
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100, arquivo, 7);
+        validador.setCacheResultados(cache);
+        validador.validar(ID, xml, "contexto");
+        validador.validar(ID + "-erro", erro, "contexto");
+        cache.close();
+
+        // Gravação interrompida no meio de um registro
+        RandomAccessFile raf = new RandomAccessFile(arquivo, "rw");
+        raf.seek(raf.length());
+        raf.writeInt(1000);
+        raf.write(new byte[10]);
+        raf.close();
+
+        cache = new CacheResultadosValidacao(100, arquivo, 7);
+        validador.setCacheResultados(cache);
+        Assert.assertTrue(validador.validar(ID, xml, "contexto"));
+        ResultadoValidacao resultado = validador.validarComResultado(ID + "-erro", erro, "contexto");
+        Assert.assertEquals(TipoErroValidacao.XML_INVALIDO, resultado.getTipoErro());
+        Assert.assertEquals(2, cache.getAcertos());
+        cache.close();
+
+        // Outra época: os resultados anteriores são descartados na abertura
+        cache = new CacheResultadosValidacao(100, arquivo, 8);
+        validador.setCacheResultados(cache);
+        validador.validar(ID, xml, "contexto");
+        Assert.assertEquals(0, cache.getAcertos());
+        cache.close();
+    }
+
+    @Test
+    public void testCompactacao() throws IOException {
+        preencheEpocaAnterior();
+        long tamanhoOriginal = arquivo.length();
+
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100, arquivo, 2);
+        Assert.assertTrue(arquivo.length() < tamanhoOriginal);
+        Assert.assertFalse(new File(arquivo.getPath() + ".tmp").exists());
+        Assert.assertTrue(cache.obtem(ID, new byte[] { 1 }).isValido());
+        cache.close();
+    }
+
+    @Test
+    public void testFalhaNaCompactacao() throws IOException {
+        preencheEpocaAnterior();
+        long tamanhoOriginal = arquivo.length();
+
+        // O temporário não pode ser criado: o arquivo original continua sendo usado
+        File temporario = new File(arquivo.getPath() + ".tmp");
+        Assert.assertTrue(temporario.mkdir());
+        try {
+            CacheResultadosValidacao cache = new CacheResultadosValidacao(100, arquivo, 2);
+            Assert.assertEquals(tamanhoOriginal, arquivo.length());
+            Assert.assertTrue(cache.obtem(ID, new byte[] { 1 }).isValido());
+            cache.registra(new ResultadoValidacao(ID + "-novo", true, null, null), new byte[] { 2 }, 2);
+            cache.close();
+            Assert.assertTrue(arquivo.length() > tamanhoOriginal);
+        }
+        finally {
+            temporario.delete();
+        }
+    }
+
+    @Test
+    public void testResultadoNaoRetemContexto() throws InterruptedException {
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100);
+        Object ctxUsr = new Object();
+        WeakReference<Object> referencia = new WeakReference<Object>(ctxUsr);
+        ErroValidacao erro = new ErroValidacao(ID, RegraValidacao.URN_DOCUMENTO_INCOMPATIVEL_ITEM,
+            TipoErroValidacao.URN_INCOMPATIVEL, ctxUsr, "Núcleo {} inválido", "x");
+        cache.registra(new ResultadoValidacao(false, erro), new byte[] { 1 }, 0);
+        erro = null;
+        ctxUsr = null;
+
+        for (int i = 0; i < 20 && referencia.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertNull(referencia.get());
+
+        ResultadoValidacao resultado = cache.obtem(ID, new byte[] { 1 });
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertEquals(RegraValidacao.URN_DOCUMENTO_INCOMPATIVEL_ITEM, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL, resultado.getTipoErro());
+        Assert.assertEquals("Núcleo x inválido", resultado.getMensagem());
+    }
+
+    @Test
+    public void testTamanhoMaximo() {
+        // Tamanhos menores que o número de segmentos ou não divisíveis por ele
+        for (int tamanho : new int[] { 1, 3, 15, 20, 32 }) {
+            CacheResultadosValidacao cache = new CacheResultadosValidacao(tamanho);
+            for (int i = 0; i < 1000; i++) {
+                cache.registra(new ResultadoValidacao(ID + i, true, null, null), new byte[] { (byte) i }, 0);
+                Assert.assertTrue(cache.getTamanho() <= tamanho);
+            }
+            Assert.assertEquals(tamanho, cache.getTamanho());
+        }
+    }
+
+    private void preencheEpocaAnterior() throws IOException {
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100, arquivo, 1);
+        for (int i = 0; i < 10; i++) {
+            cache.registra(new ResultadoValidacao(ID + i, true, null, null), new byte[] { 1 }, 1);
+        }
+        cache.setEpoca(2);
+        cache.registra(new ResultadoValidacao(ID, true, null, null), new byte[] { 1 }, 2);
+        cache.close();
+    }
+
+    private byte[] le(final String nome) throws IOException {
+        InputStream is = getClass().getResourceAsStream("/oai/" + nome);
+        byte[] xml = IOUtils.toByteArray(is);
+        is.close();
+        return xml;
+    }
+
+    private static class ServicoContador extends ValidadorServiceParaTeste {
+
+        volatile int consultas;
+
+        volatile int erros;
+
+        @Override
+        public boolean isNucleoValido(final String nucleo) {
+            consultas++;
+            return super.isNucleoValido(nucleo);
+        }
+
+        @Override
+        public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                             final Object ctx) {
+            erros++;
+            super.logError(idRegistroItem, tipoErro, msg, ctx);
+        }
+
+    }
+
+}
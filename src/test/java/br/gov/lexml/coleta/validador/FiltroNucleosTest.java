@@ -0,0 +1,115 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class FiltroNucleosTest {
+
+    @Test
+    public void testSemFalsosNegativos() throws IOException {
+        FiltroNucleos filtro = FiltroNucleos.carrega(new StringReader("# perfil de teste\n"
+            + "18:D:br:senado.federal:lei\n" + "18:R:br:camara.deputados:lei\n" + "\n" + "20:T:br:federal:decreto\n"),
+            0.01);
+
+        Assert.assertEquals(4, filtro.getQuantidade());
+        Assert.assertTrue(filtro.contemTalvez("18:D:br:senado.federal:lei"));
+        Assert.assertTrue(filtro.contemTalvez("18:R:br:camara.deputados:lei"));
+
+        // Perfil T vale para D e R
+        Assert.assertTrue(filtro.contemTalvez("20:D:br:federal:decreto"));
+        Assert.assertTrue(filtro.contemTalvez("20:R:br:federal:decreto"));
+
+        // Maiúsculas e minúsculas não são diferenciadas
+        Assert.assertTrue(filtro.contemTalvez("18:d:BR:Senado.Federal:lei"));
+    }
+
+    @Test
+    public void testTaxaFalsosPositivos() {
+        FiltroNucleos.Construtor construtor = FiltroNucleos.construtor(0.01);
+        for (int i = 0; i < 20000; i++) {
+            construtor.adiciona("18:D:br:autoridade." + i + ":lei");
+        }
+        FiltroNucleos filtro = construtor.constroi();
+
+        for (int i = 0; i < 20000; i++) {
+            Assert.assertTrue(filtro.contemTalvez("18:D:br:autoridade." + i + ":lei"));
+        }
+        int falsosPositivos = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filtro.contemTalvez("18:R:br:autoridade." + i + ":lei")) {
+                falsosPositivos++;
+            }
+        }
+        Assert.assertTrue("falsos positivos: " + falsosPositivos, falsosPositivos < 2000);
+    }
+
+    @Test
+    public void testConsultaPerfilTodos() {
+        FiltroNucleos filtro = FiltroNucleos.construtor(0.001).adiciona("20:T:br:federal:decreto")
+            .adiciona("18:D:br:senado.federal:lei").adiciona("18:R:br:senado.federal:lei")
+            .adiciona("18:D:br:camara.deputados:lei").constroi();
+
+        // Como no IndicePerfil, o perfil T exige o núcleo em D e em R
+        Assert.assertTrue(filtro.contemTalvez("20:T:br:federal:decreto"));
+        Assert.assertTrue(filtro.contemTalvez("18:t:br:senado.federal:lei"));
+        Assert.assertFalse(filtro.contemTalvez("18:T:br:camara.deputados:lei"));
+
+        ServicoContador servico = new ServicoContador();
+        ValidadorServiceComFiltro svc = new ValidadorServiceComFiltro(servico, filtro);
+        Assert.assertTrue(svc.isNucleoValido("18:T:br:senado.federal:lei"));
+        Assert.assertEquals(1, servico.consultas);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNucleoInvalido() {
+        FiltroNucleos.construtor(0.01).adiciona("18:D:br:senado.federal");
+    }
+
+    @Test
+    public void testServicoComFiltro() {
+        ServicoContador servico = new ServicoContador();
+        ValidadorServiceComFiltro svc = new ValidadorServiceComFiltro(servico);
+
+        // Sem filtro, tudo é repassado
+        Assert.assertTrue(svc.isNucleoValido("18:D:br:senado.federal:lei"));
+        Assert.assertEquals(1, servico.consultas);
+
+        svc.setFiltro(FiltroNucleos.construtor(0.001).adiciona("18:T:br:senado.federal:lei").constroi());
+        Assert.assertTrue(svc.isNucleoValido("18:R:br:senado.federal:lei"));
+        Assert.assertFalse(svc.isNucleoValido("18:D:br:senado.federal:decreto"));
+        Assert.assertEquals(2, servico.consultas);
+
+        Set<String> validos = svc.nucleosValidos(Arrays.asList("18:D:br:senado.federal:lei",
+            "18:D:br:camara.deputados:lei", "18:D:br:senado.federal:decreto"));
+        Assert.assertEquals(1, validos.size());
+        Assert.assertTrue(validos.contains("18:D:br:senado.federal:lei"));
+        Assert.assertEquals(3, servico.consultas);
+
+        Assert.assertEquals(3, svc.getDescartados());
+        Assert.assertEquals(3, svc.getRepassados());
+
+        // Troca do filtro na recarga do perfil
+        svc.setFiltro(FiltroNucleos.construtor(0.001).adiciona("18:D:br:camara.deputados:lei").constroi());
+        Assert.assertTrue(svc.isNucleoValido("18:D:br:camara.deputados:lei"));
+        Assert.assertFalse(svc.isNucleoValido("18:D:br:senado.federal:lei"));
+    }
+
+    private static class ServicoContador extends ValidadorServiceParaTeste {
+
+        int consultas;
+
+        @Override
+        public boolean isNucleoValido(final String nucleo) {
+            consultas++;
+            return super.isNucleoValido(nucleo);
+        }
+
+    }
+
+}
@@ -0,0 +1,656 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * Gerador de corpora sintéticos de registros LexML para testes de carga e de longa duração, sem dados reais
+ * dos publicadores. A mesma semente e a mesma configuração produzem sempre os mesmos bytes.
+ * <p/>
+ * Cada registro é válido ou contém um {@link Defeito}, que cobre uma regra de validação (RV#) e o
+ * {@link TipoErroValidacao} esperado. O perfil dos publicadores correspondente ao corpus é obtido com
+ * {@link #getIndicePerfil()} ou gravado com {@link #escrevePerfil(Writer)}, para uso com
+ * {@link ValidadorServicePerfilLocal}.
+ * <p/>
+ * Uso em linha de comando:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=br.gov.lexml.coleta.validador.GeradorCorpus \
+ *     -Dexec.args="listrecords target/corpus.xml 1000000 semente=42 defeitos=0.1"
+ * </pre>
+ */
+public class GeradorCorpus {
+
+    /**
+     * Defeitos introduzidos nos registros. A regra RV#8 não é coberta: ela não é alcançável, pois o
+     * idPublicador do primeiro Item é obrigatório no schema. O tipo URN_MAL_FORMADO não é gerado pelo
+     * validador.
+     */
+    public enum Defeito {
+
+        NENHUM(null, null, true),
+        ID_COM_ESPACO("RV#1", TipoErroValidacao.ERRO_GENERICO, true),
+        XML_VAZIO("RV#2", TipoErroValidacao.XML_MAL_FORMADO, false),
+        XML_MAL_FORMADO("RV#3", TipoErroValidacao.XML_MAL_FORMADO, false),
+        XML_INVALIDO("RV#3", TipoErroValidacao.XML_INVALIDO, true),
+        ID_VAZIO("RV#4", null, false),
+        URN_DOCUMENTO_MAL_FORMADA("RV#5", TipoErroValidacao.URN_INVALIDO, true),
+        URN_DOCUMENTO_INCOMPATIVEL_ITEM("RV#6", TipoErroValidacao.URN_INCOMPATIVEL, true),
+        URN_DOCUMENTO_INCOMPATIVEL_RELACIONAMENTO("RV#5", TipoErroValidacao.URN_INCOMPATIVEL, true),
+        URN_RELACIONAMENTO_INCOMPATIVEL("RV#7", TipoErroValidacao.URN_INCOMPATIVEL, true);
+
+        private final String regra;
+
+        private final TipoErroValidacao tipoErro;
+
+        private final boolean emListRecords;
+
+        private Defeito(final String regra, final TipoErroValidacao tipoErro, final boolean emListRecords) {
+            this.regra = regra;
+            this.tipoErro = tipoErro;
+            this.emListRecords = emListRecords;
+        }
+
+        /**
+         * @return regra de validação violada ou null para registros válidos
+         */
+        public String getRegra() {
+            return regra;
+        }
+
+        /**
+         * @return tipo de erro esperado na validação (null para registros válidos e para RV#4, que não registra
+         *         erro)
+         */
+        public TipoErroValidacao getTipoErro() {
+            return tipoErro;
+        }
+
+        /**
+         * @return se o defeito pode ser representado em uma resposta ListRecords (XML vazio ou mal formado e id
+         *         vazio tornariam a resposta inteira inválida)
+         */
+        public boolean isEmListRecords() {
+            return emListRecords;
+        }
+
+    }
+
+    /**
+     * Distribuição de quantidades (número de Items, de Relacionamentos, tamanho da Ementa).
+     */
+    public abstract static class Distribuicao {
+
+        abstract int sorteia(Random random);
+
+        public static Distribuicao fixa(final int n) {
+            return uniforme(n, n);
+        }
+
+        public static Distribuicao uniforme(final int minimo, final int maximo) {
+            if (minimo < 0 || maximo < minimo) {
+                throw new IllegalArgumentException("Intervalo inválido: " + minimo + ".." + maximo);
+            }
+            return new Distribuicao() {
+
+                @Override
+                int sorteia(final Random random) {
+                    return minimo + random.nextInt(maximo - minimo + 1);
+                }
+
+            };
+        }
+
+        /**
+         * Distribuição geométrica (cauda longa): a maioria dos valores é próxima do mínimo e alguns chegam ao
+         * máximo.
+         */
+        public static Distribuicao geometrica(final int minimo, final double media, final int maximo) {
+            if (minimo < 0 || maximo < minimo || media < minimo) {
+                throw new IllegalArgumentException("Parâmetros inválidos: " + minimo + ", " + media + ", " + maximo);
+            }
+            final double p = 1 / (1 + media - minimo);
+            return new Distribuicao() {
+
+                @Override
+                int sorteia(final Random random) {
+                    if (p >= 1) {
+                        return minimo;
+                    }
+                    double u = 1 - random.nextDouble();
+                    long n = minimo + (long) Math.floor(Math.log(u) / Math.log(1 - p));
+                    return (int) Math.min(n, maximo);
+                }
+
+            };
+        }
+
+        /**
+         * Lê a distribuição no formato "n", "min..max" ou "min~media..max" (geométrica).
+         */
+        public static Distribuicao parse(final String s) {
+            int sep = s.indexOf("..");
+            if (sep < 0) {
+                return fixa(Integer.parseInt(s.trim()));
+            }
+            String inicio = s.substring(0, sep);
+            int maximo = Integer.parseInt(s.substring(sep + 2).trim());
+            int til = inicio.indexOf('~');
+            if (til < 0) {
+                return uniforme(Integer.parseInt(inicio.trim()), maximo);
+            }
+            return geometrica(Integer.parseInt(inicio.substring(0, til).trim()),
+                Double.parseDouble(inicio.substring(til + 1).trim()), maximo);
+        }
+
+    }
+
+    /**
+     * Registro gerado.
+     */
+    public static class RegistroGerado {
+
+        private final String idRegistroItem;
+
+        private final byte[] xml;
+
+        private final Defeito defeito;
+
+        RegistroGerado(final String idRegistroItem, final byte[] xml, final Defeito defeito) {
+            this.idRegistroItem = idRegistroItem;
+            this.xml = xml;
+            this.defeito = defeito;
+        }
+
+        public String getIdRegistroItem() {
+            return idRegistroItem;
+        }
+
+        public byte[] getXml() {
+            return xml;
+        }
+
+        public Defeito getDefeito() {
+            return defeito;
+        }
+
+    }
+
+    private static final String[] LOCALIDADES = {"br", "br;sao.paulo", "br;minas.gerais", "br;rio.grande.sul",
+                                                 "br;minas.gerais;teofilo.otoni", "br;sao.paulo;campinas" };
+
+    private static final String[] AUTORIDADES = {"federal", "estadual", "municipal", "senado.federal",
+                                                 "camara.deputados", "supremo.tribunal.federal;turma.1",
+                                                 "superior.tribunal.justica;turma.2", "tribunal.contas.uniao;plenario" };
+
+    private static final String[] TIPOS = {"lei", "decreto", "resolucao", "portaria", "lei.complementar",
+                                           "acordao;ai.agr", "acordao;re", "sumula;vinculante" };
+
+    private static final String[] TIPOS_RELACIONAMENTO = {"revoga", "parte.de", "publicacao.oficial" };
+
+    private static final String[] PALAVRAS = {"dispõe", "sobre", "a", "o", "de", "da", "do", "criação", "programa",
+                                              "municipal", "estadual", "federal", "altera", "lei", "nº", "saúde",
+                                              "educação", "tributo", "servidores", "orçamento", "ação", "recurso",
+                                              "agravo", "regimental", "acórdão", "prequestionamento", "matéria" };
+
+    private static final int ID_PUBLICADOR_INICIAL = 100;
+
+    private static final int COMBINACOES_POR_PUBLICADOR = 4;
+
+    private final long semente;
+
+    private final Random random;
+
+    private int publicadores = 10;
+
+    private Distribuicao itens = Distribuicao.uniforme(1, 3);
+
+    private Distribuicao relacionamentos = Distribuicao.geometrica(0, 2, 200);
+
+    private Distribuicao tamanhoEmenta = Distribuicao.geometrica(0, 300, 20000);
+
+    private double proporcaoDefeitos = 0.1;
+
+    private List<Defeito> defeitos = new ArrayList<Defeito>(Arrays.asList(Defeito.values()));
+
+    // Perfil: combinações localidade/autoridade/tipo de cada publicador
+    private String[][][] perfil;
+
+    private long sequencial;
+
+    public GeradorCorpus(final long semente) {
+        this.semente = semente;
+        random = new Random(semente);
+        defeitos.remove(Defeito.NENHUM);
+    }
+
+    /**
+     * Número de publicadores do perfil (ids a partir de 100). Deve ser definido antes da geração.
+     */
+    public void setPublicadores(final int publicadores) {
+        if (perfil != null) {
+            throw new IllegalStateException("O perfil já foi gerado.");
+        }
+        this.publicadores = publicadores;
+    }
+
+    public void setItens(final Distribuicao itens) {
+        this.itens = itens;
+    }
+
+    public void setRelacionamentos(final Distribuicao relacionamentos) {
+        this.relacionamentos = relacionamentos;
+    }
+
+    /**
+     * Tamanho da Ementa em caracteres (aproximado); zero omite a Ementa.
+     */
+    public void setTamanhoEmenta(final Distribuicao tamanhoEmenta) {
+        this.tamanhoEmenta = tamanhoEmenta;
+    }
+
+    /**
+     * Fração dos registros com defeito (0 a 1). Padrão: 0,1.
+     */
+    public void setProporcaoDefeitos(final double proporcaoDefeitos) {
+        this.proporcaoDefeitos = proporcaoDefeitos;
+    }
+
+    /**
+     * Defeitos sorteados nos registros com defeito. Padrão: todos.
+     */
+    public void setDefeitos(final Defeito... defeitos) {
+        this.defeitos = new ArrayList<Defeito>(Arrays.asList(defeitos));
+        this.defeitos.remove(Defeito.NENHUM);
+    }
+
+    /**
+     * Gera o próximo registro com qualquer defeito configurado.
+     */
+    public RegistroGerado proximo() {
+        return proximo(false);
+    }
+
+    /**
+     * Gera o próximo registro.
+     *
+     * @param emListRecords Se verdadeiro, somente defeitos representáveis em uma resposta ListRecords são
+     *            sorteados (ver {@link Defeito#isEmListRecords()})
+     */
+    public RegistroGerado proximo(final boolean emListRecords) {
+        Defeito defeito = Defeito.NENHUM;
+        if (!defeitos.isEmpty() && random.nextDouble() < proporcaoDefeitos) {
+            defeito = defeitos.get(random.nextInt(defeitos.size()));
+            if (emListRecords && !defeito.isEmListRecords()) {
+                defeito = Defeito.XML_INVALIDO;
+            }
+        }
+        return gera(++sequencial, defeito);
+    }
+
+    /**
+     * Gera um registro com o defeito informado.
+     */
+    public RegistroGerado gera(final Defeito defeito) {
+        return gera(++sequencial, defeito);
+    }
+
+    /**
+     * @return perfil dos publicadores compatível com os registros gerados
+     */
+    public IndicePerfil getIndicePerfil() {
+        try {
+            StringWriter sw = new StringWriter();
+            escrevePerfil(sw);
+            return IndicePerfil.carrega(new StringReader(sw.toString()));
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Grava o perfil dos publicadores no formato de {@link IndicePerfil#carrega}. Combinações com autoridade e
+     * tipo compostos (com ";") são gravadas somente na forma reduzida, exercitando a validação pelos núcleos
+     * reduzidos.
+     */
+    public void escrevePerfil(final Writer w) throws IOException {
+        String[][][] perfil = getPerfil();
+        w.write("# Perfil sintético gerado com semente " + semente + "\n");
+        for (int p = 0; p < perfil.length; p++) {
+            int id = ID_PUBLICADOR_INICIAL + p;
+            for (String[] c : perfil[p]) {
+                String loc = c[0];
+                String aut = c[1];
+                String tipo = c[2];
+                int pvAut = aut.indexOf(';');
+                int pvTipo = tipo.indexOf(';');
+                if (pvAut >= 0 && pvTipo >= 0) {
+                    w.write(id + ":T:" + loc + ":" + aut.substring(0, pvAut) + ":" + tipo + "\n");
+                    w.write(id + ":T:" + loc + ":" + aut + ":" + tipo.substring(0, pvTipo) + "\n");
+                }
+                else {
+                    w.write(id + ":T:" + loc + ":" + aut + ":" + tipo + "\n");
+                }
+            }
+        }
+        w.flush();
+    }
+
+    /**
+     * Grava uma resposta ListRecords com a quantidade de registros informada.
+     *
+     * @return número de bytes gravados
+     */
+    public long escreveListRecords(final OutputStream out, final long quantidade) throws IOException {
+        ContadorOutputStream contador = new ContadorOutputStream(out);
+        Writer w = new BufferedWriter(new OutputStreamWriter(contador, "UTF-8"), 1 << 16);
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        w.write("<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\" "
+            + "xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "
+            + "xsi:schemaLocation=\"http://www.openarchives.org/OAI/2.0/ "
+            + "http://www.openarchives.org/OAI/2.0/OAI-PMH.xsd\">\n");
+        w.write("  <responseDate>2012-06-01T12:00:00Z</responseDate>\n");
+        w.write("  <request verb=\"ListRecords\" metadataPrefix=\"oai_lexml\">http://corpus.lexml.gov.br/oai</request>\n");
+        w.write("  <ListRecords>\n");
+        for (long i = 0; i < quantidade; i++) {
+            RegistroGerado registro = proximo(true);
+            w.write("    <record>\n      <header>\n        <identifier>");
+            w.write(StringEscapeUtils.escapeXml(registro.getIdRegistroItem()));
+            w.write("</identifier>\n        <datestamp>2012-05-31</datestamp>\n      </header>\n      <metadata>\n");
+            String xml = new String(registro.getXml(), "UTF-8");
+            // Remove a declaração XML do registro
+            w.write(xml.substring(xml.indexOf("?>") + 2).trim());
+            w.write("\n      </metadata>\n    </record>\n");
+        }
+        w.write("  </ListRecords>\n</OAI-PMH>\n");
+        w.flush();
+        return contador.total;
+    }
+
+    /**
+     * Grava um arquivo por registro no diretório informado e o gabarito (id, defeito, regra e tipo de erro
+     * esperado) em gabarito.txt.
+     */
+    public void escreveArquivos(final File diretorio, final int quantidade) throws IOException {
+        if (!diretorio.isDirectory() && !diretorio.mkdirs()) {
+            throw new IOException("Não foi possível criar o diretório " + diretorio);
+        }
+        Writer gabarito = new OutputStreamWriter(new FileOutputStream(new File(diretorio, "gabarito.txt")), "UTF-8");
+        try {
+            for (int i = 0; i < quantidade; i++) {
+                RegistroGerado registro = proximo(false);
+                String nome = String.format("registro-%08d.xml", sequencial);
+                OutputStream out = new FileOutputStream(new File(diretorio, nome));
+                try {
+                    out.write(registro.getXml());
+                }
+                finally {
+                    out.close();
+                }
+                Defeito defeito = registro.getDefeito();
+                gabarito.write(nome + "\t" + registro.getIdRegistroItem() + "\t" + defeito + "\t"
+                    + (defeito.getRegra() == null ? "-" : defeito.getRegra()) + "\t"
+                    + (defeito.getTipoErro() == null ? "-" : defeito.getTipoErro()) + "\n");
+            }
+        }
+        finally {
+            gabarito.close();
+        }
+    }
+
+    private RegistroGerado gera(final long n, final Defeito defeito) {
+        String[][][] perfil = getPerfil();
+        int p = random.nextInt(perfil.length);
+        int idPublicador = ID_PUBLICADOR_INICIAL + p;
+        String[] documento = perfil[p][random.nextInt(perfil[p].length)];
+
+        String id = "oai:corpus.lexml.gov.br:registro/" + n;
+        if (defeito == Defeito.ID_COM_ESPACO) {
+            id = "oai:corpus.lexml.gov.br:registro " + n;
+        }
+        else if (defeito == Defeito.ID_VAZIO) {
+            id = "";
+        }
+
+        if (defeito == Defeito.XML_VAZIO) {
+            return new RegistroGerado(id, new byte[0], defeito);
+        }
+
+        String data = String.format("%04d-%02d-%02d", 1990 + random.nextInt(30), 1 + random.nextInt(12),
+            1 + random.nextInt(28));
+        int numero = 1 + random.nextInt(100000);
+        String urnDocumento = urn(documento, data, numero);
+        if (defeito == Defeito.URN_DOCUMENTO_MAL_FORMADA) {
+            urnDocumento = "urn:lex:" + documento[0];
+        }
+        else if (defeito == Defeito.URN_DOCUMENTO_INCOMPATIVEL_ITEM) {
+            urnDocumento = urn(new String[] {documento[0], "autoridade.inexistente", documento[2] }, data, numero);
+        }
+
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append("<LexML xmlns=\"http://www.lexml.gov.br/oai_lexml\" ");
+        sb.append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" ");
+        sb.append("xsi:schemaLocation=\"http://www.lexml.gov.br/oai_lexml ");
+        sb.append("http://www.lexml.gov.br/esquemas/oai_lexml.xsd\">\n");
+
+        int qtdItens = Math.max(1, itens.sorteia(random));
+        for (int i = 0; i < qtdItens; i++) {
+            // O schema exige Item antes de DocumentoIndividual
+            String elemento = defeito == Defeito.XML_INVALIDO && i == 0 ? "Item1" : "Item";
+            boolean metadado = i % 2 == 0;
+            sb.append("  <").append(elemento).append(" formato=\"").append(metadado ? "text/html" : "application/pdf");
+            sb.append("\" idPublicador=\"").append(idPublicador).append("\" tipo=\"");
+            sb.append(metadado ? "metadado" : "conteudo").append("\">http://corpus.lexml.gov.br/");
+            sb.append(idPublicador).append('/').append(n).append('/').append(i).append("</").append(elemento);
+            sb.append(">\n");
+        }
+
+        sb.append("  <DocumentoIndividual>").append(urnDocumento).append("</DocumentoIndividual>\n");
+        sb.append("  <Epigrafe>Documento nº ").append(numero).append(", de ").append(data).append("</Epigrafe>\n");
+
+        int tamEmenta = tamanhoEmenta.sorteia(random);
+        if (tamEmenta > 0) {
+            sb.append("  <Ementa>");
+            int inicio = sb.length();
+            while (sb.length() - inicio < tamEmenta) {
+                if (sb.length() > inicio) {
+                    sb.append(' ');
+                }
+                sb.append(PALAVRAS[random.nextInt(PALAVRAS.length)]);
+            }
+            sb.append("</Ementa>\n");
+        }
+
+        int qtdRelacionamentos = relacionamentos.sorteia(random);
+        if (qtdRelacionamentos == 0
+            && (defeito == Defeito.URN_DOCUMENTO_INCOMPATIVEL_RELACIONAMENTO
+                || defeito == Defeito.URN_RELACIONAMENTO_INCOMPATIVEL)) {
+            qtdRelacionamentos = 1;
+        }
+        int relacionamentoComDefeito = qtdRelacionamentos > 0 ? random.nextInt(qtdRelacionamentos) : -1;
+        for (int i = 0; i < qtdRelacionamentos; i++) {
+            String[] alvo = perfil[p][random.nextInt(perfil[p].length)];
+            int idRelacionamento = idPublicador;
+            if (i == relacionamentoComDefeito) {
+                if (defeito == Defeito.URN_DOCUMENTO_INCOMPATIVEL_RELACIONAMENTO) {
+                    // Publicador sem perfil: o DocumentoIndividual não é compatível com ele
+                    idRelacionamento = ID_PUBLICADOR_INICIAL + perfil.length;
+                }
+                else if (defeito == Defeito.URN_RELACIONAMENTO_INCOMPATIVEL) {
+                    alvo = new String[] {alvo[0], alvo[1], "tipo.inexistente" };
+                }
+            }
+            sb.append("  <Relacionamento");
+            // Sem idPublicador, vale o do primeiro Item (que é o mesmo)
+            if (idRelacionamento != idPublicador || random.nextInt(5) > 0) {
+                sb.append(" idPublicador=\"").append(idRelacionamento).append('"');
+            }
+            sb.append(" tipo=\"").append(TIPOS_RELACIONAMENTO[random.nextInt(TIPOS_RELACIONAMENTO.length)]);
+            sb.append("\">").append(urn(alvo, data, 1 + random.nextInt(100000))).append("</Relacionamento>\n");
+        }
+
+        if (defeito == Defeito.XML_MAL_FORMADO) {
+            // Documento truncado: o elemento raiz não é fechado
+            sb.setLength(sb.length() - 1);
+        }
+        else {
+            sb.append("</LexML>\n");
+        }
+
+        try {
+            return new RegistroGerado(id, sb.toString().getBytes("UTF-8"), defeito);
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String urn(final String[] combinacao, final String data, final int numero) {
+        return "urn:lex:" + combinacao[0] + ":" + combinacao[1] + ":" + combinacao[2] + ":" + data + ";" + numero;
+    }
+
+    private String[][][] getPerfil() {
+        if (perfil == null) {
+            // Gerador independente do dos registros: o perfil depende apenas da semente e dos publicadores
+            Random r = new Random(semente * 31 + publicadores);
+            perfil = new String[publicadores][COMBINACOES_POR_PUBLICADOR][];
+            for (int p = 0; p < publicadores; p++) {
+                for (int c = 0; c < COMBINACOES_POR_PUBLICADOR; c++) {
+                    perfil[p][c] = new String[] {LOCALIDADES[r.nextInt(LOCALIDADES.length)],
+                                                 AUTORIDADES[r.nextInt(AUTORIDADES.length)],
+                                                 TIPOS[r.nextInt(TIPOS.length)] };
+                }
+            }
+        }
+        return perfil;
+    }
+
+    private static class ContadorOutputStream extends FilterOutputStream {
+
+        long total;
+
+        ContadorOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            total++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            out.write(b, off, len);
+            total += len;
+        }
+
+    }
+
+    /**
+     * Argumentos: <code>listrecords|arquivos saida quantidade [semente=n] [defeitos=fracao]
+     * [publicadores=n] [itens=dist] [relacionamentos=dist] [ementa=dist] [perfil=arquivo]</code>, onde
+     * <code>dist</code> é "n", "min..max" ou "min~media..max".
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Uso: GeradorCorpus listrecords|arquivos saida quantidade [semente=n] "
+                + "[defeitos=fracao] [publicadores=n] [itens=dist] [relacionamentos=dist] [ementa=dist] "
+                + "[perfil=arquivo]");
+            System.exit(1);
+        }
+        String modo = args[0];
+        File saida = new File(args[1]);
+        long quantidade = Long.parseLong(args[2]);
+
+        long semente = 0;
+        File arquivoPerfil = null;
+        List<String[]> opcoes = new ArrayList<String[]>();
+        for (int i = 3; i < args.length; i++) {
+            int igual = args[i].indexOf('=');
+            if (igual < 0) {
+                throw new IllegalArgumentException("Argumento inválido: " + args[i]);
+            }
+            String nome = args[i].substring(0, igual);
+            String valor = args[i].substring(igual + 1);
+            if ("semente".equals(nome)) {
+                semente = Long.parseLong(valor);
+            }
+            else if ("perfil".equals(nome)) {
+                arquivoPerfil = new File(valor);
+            }
+            else {
+                opcoes.add(new String[] {nome, valor });
+            }
+        }
+
+        GeradorCorpus gerador = new GeradorCorpus(semente);
+        for (String[] opcao : opcoes) {
+            if ("defeitos".equals(opcao[0])) {
+                gerador.setProporcaoDefeitos(Double.parseDouble(opcao[1]));
+            }
+            else if ("publicadores".equals(opcao[0])) {
+                gerador.setPublicadores(Integer.parseInt(opcao[1]));
+            }
+            else if ("itens".equals(opcao[0])) {
+                gerador.setItens(Distribuicao.parse(opcao[1]));
+            }
+            else if ("relacionamentos".equals(opcao[0])) {
+                gerador.setRelacionamentos(Distribuicao.parse(opcao[1]));
+            }
+            else if ("ementa".equals(opcao[0])) {
+                gerador.setTamanhoEmenta(Distribuicao.parse(opcao[1]));
+            }
+            else {
+                throw new IllegalArgumentException("Opção desconhecida: " + opcao[0]);
+            }
+        }
+
+        if ("listrecords".equals(modo)) {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(saida), 1 << 16);
+            try {
+                long bytes = gerador.escreveListRecords(out, quantidade);
+                System.out.println(quantidade + " registros (" + bytes + " bytes) gravados em " + saida);
+            }
+            finally {
+                out.close();
+            }
+        }
+        else if ("arquivos".equals(modo)) {
+            gerador.escreveArquivos(saida, (int) quantidade);
+            System.out.println(quantidade + " registros gravados em " + saida);
+        }
+        else {
+            throw new IllegalArgumentException("Modo desconhecido: " + modo);
+        }
+
+        if (arquivoPerfil != null) {
+            Writer w = new OutputStreamWriter(new FileOutputStream(arquivoPerfil), "UTF-8");
+            try {
+                gerador.escrevePerfil(w);
+            }
+            finally {
+                w.close();
+            }
+        }
+    }
+
+}
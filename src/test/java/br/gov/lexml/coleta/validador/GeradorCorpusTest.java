@@ -0,0 +1,95 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import br.gov.lexml.coleta.validador.GeradorCorpus.Defeito;
+import br.gov.lexml.coleta.validador.GeradorCorpus.RegistroGerado;
+
+public class GeradorCorpusTest {
+
+    @Test
+    public void testReprodutivel() throws IOException {
+        Assert.assertTrue(Arrays.equals(listRecords(42, 50), listRecords(42, 50)));
+        Assert.assertFalse(Arrays.equals(listRecords(42, 50), listRecords(43, 50)));
+    }
+
+    @Test
+    public void testDefeitos() {
+        GeradorCorpus gerador = new GeradorCorpus(7);
+        ValidadorServicePerfilLocal servico = new ValidadorServicePerfilLocal(gerador.getIndicePerfil());
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        validador.setValidadorService(servico);
+
+        for (Defeito defeito : Defeito.values()) {
+            for (int i = 0; i < 20; i++) {
+                RegistroGerado registro = gerador.gera(defeito);
+                ResultadoValidacao resultado = validador.validarComResultado(registro.getIdRegistroItem(),
+                    registro.getXml(), null);
+                Assert.assertEquals(defeito + ": " + resultado, defeito == Defeito.NENHUM, resultado.isValido());
+                Assert.assertEquals(defeito + ": " + resultado, defeito.getTipoErro(), resultado.getTipoErro());
+            }
+        }
+        Assert.assertEquals(20, servico.getErros(TipoErroValidacao.ERRO_GENERICO));
+        Assert.assertEquals(60, servico.getErros(TipoErroValidacao.URN_INCOMPATIVEL));
+    }
+
+    @Test
+    public void testListRecords() throws IOException {
+        byte[] corpus = listRecords(11, 300);
+
+        // Outro gerador com a mesma semente reproduz o gabarito
+        GeradorCorpus gabarito = new GeradorCorpus(11);
+        gabarito.setProporcaoDefeitos(0.3);
+        Map<String, Defeito> defeitos = new HashMap<String, Defeito>();
+        for (int i = 0; i < 300; i++) {
+            RegistroGerado registro = gabarito.proximo(true);
+            defeitos.put(registro.getIdRegistroItem(), registro.getDefeito());
+        }
+
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        validador.setMotorValidacao(MotorValidacao.STREAMING);
+        validador.setValidadorService(new ValidadorServicePerfilLocal(gabarito.getIndicePerfil()));
+
+        final Map<String, ResultadoValidacao> resultados = new HashMap<String, ResultadoValidacao>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            int total = new ValidadorLote(validador, executor).validar(new ByteArrayInputStream(corpus), null,
+                new OuvinteResultadoValidacao() {
+
+                    public void resultado(final ResultadoValidacao resultado) {
+                        resultados.put(resultado.getIdRegistroItem(), resultado);
+                    }
+                });
+            Assert.assertEquals(300, total);
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        for (Map.Entry<String, Defeito> e : defeitos.entrySet()) {
+            Assert.assertEquals(e.getKey(), e.getValue().getTipoErro(), resultados.get(e.getKey()).getTipoErro());
+        }
+    }
+
+    private static byte[] listRecords(final long semente, final int quantidade) throws IOException {
+        GeradorCorpus gerador = new GeradorCorpus(semente);
+        gerador.setProporcaoDefeitos(0.3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        gerador.escreveListRecords(out, quantidade);
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,121 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class IndiceImpactoTest {
+
+    private static final String STF = "br:supremo.tribunal.federal;turma.1:acordao;ai.agr";
+
+    @Test
+    public void testInclusaoEExclusao() {
+        IndiceImpacto indice = new IndiceImpacto();
+        indice.registra("a", consultas("18:D:br:senado.federal:lei", true));
+        indice.registra("b", consultas("18:D:br:senado.federal:lei", false, "18:D:br:senado:lei", true));
+        indice.registra("c", consultas());
+
+        // Inclusão afeta quem consultou com resultado inválido; exclusão, quem consultou com resultado válido
+        Assert.assertEquals(Collections.singleton("b"), afetados(indice, "18:D:br:senado.federal:lei", null));
+        Assert.assertEquals(Collections.singleton("a"), afetados(indice, null, "18:D:br:senado.federal:lei"));
+        Assert.assertEquals(Collections.singleton("b"), afetados(indice, null, "18:D:br:senado:lei"));
+        Assert.assertTrue(afetados(indice, "18:R:br:senado.federal:lei", null).isEmpty());
+        Assert.assertEquals(2, indice.afetados(Arrays.asList("18:D:br:senado.federal:lei")).size());
+
+        // Revalidação substitui as dependências anteriores
+        indice.registra("a", consultas("18:D:br:camara.deputados:lei", true));
+        Assert.assertTrue(afetados(indice, null, "18:D:br:senado.federal:lei").isEmpty());
+        Assert.assertEquals(Collections.singleton("a"), afetados(indice, null, "18:D:br:camara.deputados:lei"));
+
+        indice.remove("a");
+        Assert.assertTrue(afetados(indice, null, "18:D:br:camara.deputados:lei").isEmpty());
+    }
+
+    @Test
+    public void testDiferencaPerfil() throws IOException {
+        IndiceImpacto indice = new IndiceImpacto();
+        indice.registra("a", consultas("18:R:br:senado.federal:lei", true));
+        indice.registra("b", consultas("18:D:br:senado.federal:decreto", false));
+        indice.registra("c", consultas("18:D:br:senado.federal:lei", true));
+
+        // Perfil T passa a D: somente o relacionamento é afetado
+        Set<String> afetados = indice.afetados(new StringReader("18:T:br:senado.federal:lei\n"), new StringReader(
+            "18:D:br:senado.federal:lei\n18:D:br:senado.federal:decreto\n"));
+        Assert.assertEquals(Arrays.asList("a", "b"), Arrays.asList(afetados.toArray()));
+    }
+
+    @Test
+    public void testGravaCarrega() throws IOException {
+        IndiceImpacto indice = new IndiceImpacto();
+        for (int i = 0; i < 100; i++) {
+            indice.registra("r" + i, consultas("18:D:br:senado.federal:lei", i % 2 == 0, "18:D:br:x" + i + ":lei",
+                false));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        indice.grava(bytes);
+
+        IndiceImpacto carregado = IndiceImpacto.carrega(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals(100, carregado.getQuantidadeRegistros());
+        Assert.assertEquals(101, carregado.getQuantidadeNucleos());
+        Assert.assertEquals(50, afetados(carregado, null, "18:D:br:senado.federal:lei").size());
+        Assert.assertEquals(Collections.singleton("r7"), afetados(carregado, "18:D:br:x7:lei", null));
+    }
+
+    @Test
+    public void testCompactacao() {
+        IndiceImpacto indice = new IndiceImpacto();
+        for (int i = 0; i < 5000; i++) {
+            indice.registra("r" + (i % 10), consultas("18:D:br:a" + i + ":lei", true));
+        }
+        Assert.assertEquals(10, indice.getQuantidadeRegistros());
+        Assert.assertEquals(Collections.singleton("r9"), afetados(indice, null, "18:D:br:a4999:lei"));
+        Assert.assertTrue(afetados(indice, null, "18:D:br:a9:lei").isEmpty());
+    }
+
+    @Test
+    public void testValidador() throws IOException {
+        IndiceImpacto indice = new IndiceImpacto();
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setIndicePerfil(IndicePerfil.carrega(new StringReader("18:T:" + STF)));
+        validador.setDestinoDependencias(indice);
+
+        InputStream is = getClass().getResourceAsStream("/oai/oai_acordao.stf.jus.br_aco_100005.xml");
+        String xml = IOUtils.toString(is, "UTF-8");
+        is.close();
+
+        String id = "oai:acordao.stf.jus.br:aco/100005";
+        Assert.assertTrue(validador.validar(id, xml, "contexto"));
+        Map<String, Boolean> nucleos = indice.getNucleos(id);
+        Assert.assertEquals(Boolean.TRUE, nucleos.get("18:d:" + STF));
+
+        Set<String> afetados = indice.afetados(new StringReader("18:T:" + STF), new StringReader("18:R:" + STF));
+        Assert.assertEquals(Collections.singleton(id), afetados);
+    }
+
+    private static Set<String> afetados(final IndiceImpacto indice, final String incluido, final String excluido) {
+        return indice.afetados(incluido == null ? Collections.<String> emptySet() : Collections.singleton(incluido),
+            excluido == null ? Collections.<String> emptySet() : Collections.singleton(excluido));
+    }
+
+    private static Map<String, Boolean> consultas(final Object... chavesEResultados) {
+        Map<String, Boolean> consultas = new LinkedHashMap<String, Boolean>();
+        for (int i = 0; i < chavesEResultados.length; i += 2) {
+            consultas.put((String) chavesEResultados[i], (Boolean) chavesEResultados[i + 1]);
+        }
+        return consultas;
+    }
+
+}
@@ -0,0 +1,188 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class IndicePerfilTest {
+
+    private static final String STF = "br:supremo.tribunal.federal;turma.1:acordao;ai.agr";
+
+    @Test
+    public void testPerfis() throws IOException {
+        IndicePerfil indice = IndicePerfil.carrega(new StringReader("# perfil de teste\n"
+            + "18:D:br:senado.federal:lei\n" + "18:R:br:camara.deputados:lei\n" + "\n" + "20:T:br:federal:decreto\n"));
+
+        Assert.assertEquals(3, indice.getQuantidadeNucleos());
+
+        Assert.assertTrue(indice.isNucleoValido("18:D:br:senado.federal:lei"));
+        Assert.assertFalse(indice.isNucleoValido("18:R:br:senado.federal:lei"));
+        Assert.assertTrue(indice.isNucleoValido("18:R:br:camara.deputados:lei"));
+        Assert.assertFalse(indice.isNucleoValido("18:D:br:camara.deputados:lei"));
+        Assert.assertFalse(indice.isNucleoValido("19:D:br:senado.federal:lei"));
+
+        // Perfil T vale para D e R
+        Assert.assertTrue(indice.isNucleoValido("20:D:br:federal:decreto"));
+        Assert.assertTrue(indice.isNucleoValido("20:R:br:federal:decreto"));
+
+        Assert.assertFalse(indice.isNucleoValido("20:D:br:federal"));
+        Assert.assertFalse(indice.isNucleoValido("xx:D:br:federal:decreto"));
+    }
+
+    @Test
+    public void testConsultaPerfilTodos() throws IOException {
+        IndicePerfil indice = IndicePerfil.carrega(new StringReader("18:D:br:senado.federal:lei\n"
+            + "18:D:br:camara.deputados:lei\n" + "18:R:br:camara.deputados:lei\n" + "20:T:br:federal:decreto\n"));
+
+        // Consulta T exige o núcleo nos dois perfis
+        Assert.assertFalse(indice.isNucleoValido("18:T:br:senado.federal:lei"));
+        Assert.assertTrue(indice.isNucleoValido("18:T:br:camara.deputados:lei"));
+        Assert.assertTrue(indice.isNucleoValido("20:T:br:federal:decreto"));
+    }
+
+    @Test
+    public void testTrechos() {
+        IndicePerfil indice = IndicePerfil.construtor().adiciona(18, "D", "br", "senado.federal", "lei").constroi();
+
+        String urn = "urn:lex:br:senado.federal:lei:2012-05-15;6402";
+        Assert.assertTrue(indice.isNucleoValido(18, 'D', urn, 8, 10, urn, 11, 25, urn, 26, 29));
+        Assert.assertFalse(indice.isNucleoValido(18, 'D', urn, 8, 10, urn, 11, 24, urn, 26, 29));
+    }
+
+    @Test
+    public void testValidadorComIndice() throws IOException {
+        // Núcleo completo
+        Assert.assertTrue(valida("18:T:" + STF));
+        Assert.assertFalse(valida("18:R:" + STF));
+        Assert.assertFalse(valida("18:D:" + STF));
+
+        // Núcleos com autoridade e tipo reduzidos
+        Assert.assertTrue(valida("18:T:br:supremo.tribunal.federal:acordao;ai.agr\n"
+            + "18:T:br:supremo.tribunal.federal;turma.1:acordao"));
+        Assert.assertFalse(valida("18:T:br:supremo.tribunal.federal:acordao;ai.agr"));
+    }
+
+    @Test
+    public void testArquivoMapeado() throws IOException {
+        String perfil = "18:D:br:senado.federal:lei\n18:R:br:camara.deputados:lei\n20:T:br:federal:decreto\n";
+        IndicePerfil.Construtor construtor = IndicePerfil.construtor().versao(7);
+        for (String nucleo : perfil.split("\n")) {
+            construtor.adiciona(nucleo);
+        }
+        File arquivo = File.createTempFile("perfil", ".bin");
+        try {
+            construtor.constroi().grava(arquivo);
+            Assert.assertTrue(IndicePerfil.isArquivoBinario(arquivo));
+
+            IndicePerfil indice = IndicePerfil.mapeia(arquivo);
+            Assert.assertEquals(7, indice.getVersao());
+            Assert.assertEquals(3, indice.getQuantidadeNucleos());
+            Assert.assertTrue(indice.isNucleoValido("18:D:br:senado.federal:lei"));
+            Assert.assertFalse(indice.isNucleoValido("18:R:br:senado.federal:lei"));
+            Assert.assertTrue(indice.isNucleoValido("18:R:br:camara.deputados:lei"));
+            Assert.assertTrue(indice.isNucleoValido("20:D:br:federal:decreto"));
+            Assert.assertTrue(indice.isNucleoValido("20:R:br:federal:decreto"));
+            Assert.assertFalse(indice.isNucleoValido("20:R:br:federal:lei"));
+
+            // A nova versão substitui o arquivo; o índice já mapeado continua com a versão anterior
+            IndicePerfil.construtor().versao(8).adiciona("18:D:br:senado.federal:decreto").constroi().grava(arquivo);
+            Assert.assertTrue(indice.isNucleoValido("18:D:br:senado.federal:lei"));
+            IndicePerfil novo = IndicePerfil.mapeia(arquivo);
+            Assert.assertEquals(8, novo.getVersao());
+            Assert.assertFalse(novo.isNucleoValido("18:D:br:senado.federal:lei"));
+            Assert.assertTrue(novo.isNucleoValido("18:D:br:senado.federal:decreto"));
+        }
+        finally {
+            arquivo.delete();
+        }
+    }
+
+    @Test
+    public void testArquivoMapeadoCorpus() throws IOException {
+        GeradorCorpus gerador = new GeradorCorpus(23);
+        IndicePerfil indice = gerador.getIndicePerfil();
+        File arquivo = File.createTempFile("perfil", ".bin");
+        try {
+            indice.grava(arquivo);
+            ValidadorRegistroItem validador = new ValidadorRegistroItem();
+            validador.setValidadorService(new ValidadorServiceParaTeste());
+            validador.setIndicePerfil(IndicePerfil.mapeia(arquivo));
+            for (int i = 0; i < 200; i++) {
+                GeradorCorpus.RegistroGerado registro = gerador.proximo();
+                ResultadoValidacao resultado = validador.validarComResultado(registro.getIdRegistroItem(),
+                    registro.getXml(), null);
+                Assert.assertEquals(registro.getDefeito() == null ? null : registro.getDefeito().getTipoErro(),
+                    resultado.getTipoErro());
+            }
+        }
+        finally {
+            arquivo.delete();
+        }
+    }
+
+    @Test
+    public void testArquivoCorrompido() throws IOException {
+        File arquivo = File.createTempFile("perfil", ".bin");
+        try {
+            IndicePerfil.construtor().adiciona("18:D:br:senado.federal:lei").constroi().grava(arquivo);
+            RandomAccessFile raf = new RandomAccessFile(arquivo, "rw");
+            raf.seek(raf.length() - 1);
+            int b = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(b ^ 1);
+            raf.close();
+            try {
+                IndicePerfil.mapeia(arquivo);
+                Assert.fail();
+            }
+            catch (IOException e) {
+                // esperado
+            }
+            Assert.assertFalse(IndicePerfil.isArquivoBinario(new File(getClass().getResource(
+                "/oai/oai_acordao.stf.jus.br_aco_100005.xml").getFile())));
+        }
+        finally {
+            arquivo.delete();
+        }
+    }
+
+    @Test
+    public void testTrocaDuranteValidacao() throws IOException {
+        final ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setCacheResultados(new CacheResultadosValidacao(100));
+        final IndicePerfil vazio = IndicePerfil.construtor().constroi();
+        validador.setIndicePerfil(IndicePerfil.carrega(new StringReader("18:T:" + STF)));
+
+        // O índice é trocado no meio da validação: o registro termina com o índice do início, sem ir para o cache
+        validador.setOuvinteValidacao(new OuvinteValidacao() {
+
+            public void fase(final FaseValidacao fase, final long duracaoNanos) {
+            }
+
+            public void nucleo(final Integer idPublicador, final boolean valido, final long duracaoNanos) {
+                validador.setIndicePerfil(vazio);
+            }
+
+            public void registro(final String idRegistroItem, final Integer idPublicador, final RegraValidacao regra,
+                                 final TipoErroValidacao tipoErro, final long duracaoNanos) {
+            }
+        });
+        String xml = RegistrosParaTeste.leXml();
+        Assert.assertTrue(validador.validar("oai:acordao.stf.jus.br:aco/100005", xml, "contexto"));
+        Assert.assertFalse(validador.validar("oai:acordao.stf.jus.br:aco/100005", xml, "contexto"));
+    }
+
+    private boolean valida(final String perfil) throws IOException {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setIndicePerfil(IndicePerfil.carrega(new StringReader(perfil)));
+        return validador.validar("oai:acordao.stf.jus.br:aco/100005", RegistrosParaTeste.leXml(), "contexto");
+    }
+
+}
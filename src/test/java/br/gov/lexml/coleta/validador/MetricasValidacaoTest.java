@@ -0,0 +1,78 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+public class MetricasValidacaoTest {
+
+    @Test
+    public void testMetricasPorFaseTipoEPublicador() throws IOException {
+        MetricasValidacao metricas = new MetricasValidacao();
+        ValidadorRegistroItem validador = criaValidador(metricas);
+
+        Assert.assertTrue(validador.validar("ok", leXml("oai_acordao.stf.jus.br_aco_100005.xml"), null));
+        Assert.assertFalse(validador.validar("rel", leXml("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml"),
+            null));
+        Assert.assertFalse(validador.validar("xml", leXml("oai_acordao.stf.jus.br_aco_100005-erro-xml.xml"), null));
+
+        Assert.assertEquals(3, metricas.getRegistros().getContagem());
+        Assert.assertEquals(1, metricas.getValidos().getContagem());
+        Assert.assertEquals(1, metricas.getErros(TipoErroValidacao.URN_INCOMPATIVEL).getContagem());
+        Assert.assertEquals(1, metricas.getErros(TipoErroValidacao.XML_MAL_FORMADO).getContagem());
+        Assert.assertEquals(1, metricas.getViolacoes(RegraValidacao.URN_RELACIONAMENTO_INCOMPATIVEL));
+
+        Assert.assertEquals(3, metricas.getFase(FaseValidacao.PARSE).getContagem());
+        Assert.assertEquals(2, metricas.getFase(FaseValidacao.EXTRACAO).getContagem());
+        Assert.assertEquals(2, metricas.getFase(FaseValidacao.URN_RELACIONAMENTO).getContagem());
+        Assert.assertEquals(0, metricas.getFase(FaseValidacao.CACHE).getContagem());
+        Assert.assertTrue(metricas.getNucleos().getContagem() > 0);
+        Assert.assertTrue(metricas.getNucleosInvalidos() > 0);
+
+        Assert.assertEquals(1, metricas.getIdPublicadores().size());
+        MetricasValidacao.MetricasPublicador publicador =
+            metricas.getPublicador(metricas.getIdPublicadores().iterator().next());
+        Assert.assertEquals(2, publicador.getRegistros().getContagem());
+        Assert.assertEquals(1, publicador.getErros());
+    }
+
+    @Test
+    public void testHistograma() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        Assert.assertEquals(0, histograma.getPercentilNanos(50));
+        for (int i = 1; i <= 100; i++) {
+            histograma.registra(i * 1000);
+        }
+        Assert.assertEquals(100, histograma.getContagem());
+        Assert.assertEquals(100000, histograma.getMaximoNanos());
+        Assert.assertEquals(50500, histograma.getMediaNanos());
+
+        // Precisão de um fator 2
+        long p50 = histograma.getPercentilNanos(50);
+        Assert.assertTrue(p50 >= 50000 && p50 < 100000);
+        Assert.assertEquals(100000, histograma.getPercentilNanos(100));
+    }
+
+    static ValidadorRegistroItem criaValidador(final OuvinteValidacao ouvinte) {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setSchemaCompartilhado(true);
+        validador.setOuvinteValidacao(ouvinte);
+        return validador;
+    }
+
+    static byte[] leXml(final String arquivo) throws IOException {
+        InputStream is = MetricasValidacaoTest.class.getResourceAsStream("/oai/" + arquivo);
+        try {
+            return IOUtils.toByteArray(is);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+}
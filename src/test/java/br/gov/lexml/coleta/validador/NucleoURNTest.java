@@ -0,0 +1,59 @@
+package br.gov.lexml.coleta.validador;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class NucleoURNTest {
+
+    private static final String[] URNS = {
+        "urn:lex:br:supremo.tribunal.federal;turma.1:acordao;ai.agr:2002-02-05;273657",
+        "urn:lex:br;minas.gerais;teofilo.otoni:municipal:lei:2012-05-15;6402",
+        "urn:lex:br:senado.federal:lei",
+        "urn:lex:br:senado.federal:lei:",
+        "urn:lex:br:senado.federal:",
+        "urn:lex:br:senado.federal::",
+        "urn:lex:br:senado.federal::x",
+        "urn:lex:br::lei",
+        "urn:lex:::x",
+        "urn:lex:br:senado.federal",
+        "urn:lex:",
+        "urn:lex",
+        "",
+        "URN:LEX:br:a:b",
+        "urn:lex:br:a;b:c",
+        "urn:lex:br:a:b;c",
+        "urn:lex:br:;:;" };
+
+    @Test
+    public void testEquivalenteAoSplit() {
+        NucleoURN nucleo = new NucleoURN();
+        for (String urn : URNS) {
+            String[] part = urn.startsWith("urn:lex:") ? urn.substring(8).split(":") : new String[0];
+            boolean valida = part.length >= 3;
+
+            Assert.assertEquals(urn, valida, nucleo.analisa(urn));
+            if (!valida) {
+                continue;
+            }
+
+            Assert.assertEquals(urn, part[0] + ":" + part[1] + ":" + part[2], nucleo(nucleo, false, false));
+
+            boolean reduzidos = part[1].contains(";") && part[2].contains(";");
+            Assert.assertEquals(urn, reduzidos, nucleo.temNucleosReduzidos());
+            if (reduzidos) {
+                Assert.assertEquals(urn, part[0] + ":" + part[1].substring(0, part[1].indexOf(";")) + ":" + part[2],
+                    nucleo(nucleo, true, false));
+                Assert.assertEquals(urn, part[0] + ":" + part[1] + ":" + part[2].substring(0, part[2].indexOf(";")),
+                    nucleo(nucleo, false, true));
+            }
+        }
+    }
+
+    private String nucleo(final NucleoURN nucleo, final boolean autoridadeReduzida, final boolean tipoReduzido) {
+        StringBuilder sb = new StringBuilder();
+        nucleo.appendNucleo(sb, autoridadeReduzida, tipoReduzido);
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,158 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class PublicadorErrosValidacaoTest {
+
+    @Test
+    public void testEntregaEmLotes() throws Exception {
+        DestinoParaTeste destino = new DestinoParaTeste();
+        PublicadorErrosValidacao publicador = new PublicadorErrosValidacao(destino, 100, 3);
+
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setPublicadorErros(publicador);
+
+        byte[] xml = RegistrosParaTeste.leBytes("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml");
+        List<ResultadoValidacao> resultados = new ArrayList<ResultadoValidacao>();
+        for (int i = 0; i < 10; i++) {
+            resultados.add(validador.validarComResultado("id" + i, xml, "ctx" + i));
+        }
+        publicador.close();
+
+        Assert.assertEquals(10, destino.erros.size());
+        for (Integer tamanho : destino.tamanhosLote) {
+            Assert.assertTrue(tamanho <= 3);
+        }
+        for (int i = 0; i < 10; i++) {
+            ErroValidacao erro = destino.erros.get(i);
+            Assert.assertEquals("id" + i, erro.getIdRegistroItem());
+            Assert.assertEquals("ctx" + i, erro.getCtxUsr());
+            Assert.assertEquals("RV#7", erro.getCodigo());
+            Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL, erro.getTipoErro());
+            Assert.assertEquals(resultados.get(i).getMensagem(), erro.getMensagem());
+            Assert.assertTrue(erro.getMensagem().startsWith("RV#7 A URN de Relacionamento \"urn:lex:br:erro"));
+        }
+    }
+
+    @Test
+    public void testFilaCheiaAguarda() throws Exception {
+        final DestinoParaTeste destino = new DestinoParaTeste();
+        destino.liberacao = new CountDownLatch(1);
+        final PublicadorErrosValidacao publicador = new PublicadorErrosValidacao(destino, 2, 10);
+
+        Thread produtor = new Thread() {
+
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    publicador.publica(criaErro(i));
+                }
+            }
+        };
+        produtor.start();
+
+        // Destino retido e fila cheia: o produtor aguarda
+        for (int i = 0; i < 500 && publicador.getPendentes() < 2; i++) {
+            Thread.sleep(10);
+        }
+        produtor.join(100);
+        Assert.assertTrue(produtor.isAlive());
+        Assert.assertTrue(publicador.getPublicados() < 10);
+        Assert.assertEquals(2, publicador.getPendentes());
+
+        destino.liberacao.countDown();
+        produtor.join(5000);
+        Assert.assertFalse(produtor.isAlive());
+        publicador.flush();
+        Assert.assertEquals(10, destino.erros.size());
+        publicador.close();
+    }
+
+    @Test
+    public void testFalhaDestino() throws Exception {
+        PublicadorErrosValidacao publicador = new PublicadorErrosValidacao(new DestinoErrosValidacao() {
+
+            public void registra(final List<ErroValidacao> erros) {
+                throw new IllegalStateException("banco indisponível");
+            }
+        }, 10, 10);
+        publicador.publica(criaErro(1));
+        try {
+            publicador.flush();
+            Assert.fail();
+        }
+        catch (IOException e) {
+            Assert.assertEquals(1, publicador.getFalhas());
+        }
+        publicador.close();
+    }
+
+    @Test
+    public void testPublicaAposClose() throws Exception {
+        DestinoParaTeste destino = new DestinoParaTeste();
+        PublicadorErrosValidacao publicador = new PublicadorErrosValidacao(destino, 10, 10);
+        publicador.publica(criaErro(1));
+        publicador.close();
+        Assert.assertEquals(1, destino.erros.size());
+        try {
+            publicador.publica(criaErro(2));
+            Assert.fail();
+        }
+        catch (IllegalStateException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testMensagemMontadaSobDemanda() {
+        ErroValidacao erro = new ErroValidacao("id", RegraValidacao.URN_DOCUMENTO_MAL_FORMADA,
+            TipoErroValidacao.URN_INVALIDO, null, "RV#5 A URN de DocumentoIndividual \"{}\" é estruturalmente inválida",
+            "urn:x");
+        Assert.assertEquals("RV#5 A URN de DocumentoIndividual \"urn:x\" é estruturalmente inválida",
+            erro.getMensagem());
+        Assert.assertEquals("id: URN_INVALIDO RV#5 A URN de DocumentoIndividual \"urn:x\" é estruturalmente inválida",
+            new ResultadoValidacao(false, erro).toString());
+
+        erro = new ErroValidacao("id", RegraValidacao.XML_INVALIDO, TipoErroValidacao.XML_INVALIDO, null, "RV#3 {}",
+            "valor {} literal");
+        Assert.assertEquals("RV#3 valor {} literal", erro.getMensagem());
+    }
+
+    private static ErroValidacao criaErro(final int i) {
+        return new ErroValidacao("id" + i, RegraValidacao.ID_COM_ESPACOS, TipoErroValidacao.ERRO_GENERICO, null,
+            "RV#1 ID_REGISTRO_ITEM não pode conter espaços em branco");
+    }
+
+    private static class DestinoParaTeste implements DestinoErrosValidacao {
+
+        final List<ErroValidacao> erros = Collections.synchronizedList(new ArrayList<ErroValidacao>());
+
+        final List<Integer> tamanhosLote = Collections.synchronizedList(new ArrayList<Integer>());
+
+        CountDownLatch liberacao;
+
+        public void registra(final List<ErroValidacao> lote) {
+            if (liberacao != null) {
+                try {
+                    liberacao.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            tamanhosLote.add(lote.size());
+            erros.addAll(lote);
+        }
+    }
+
+}
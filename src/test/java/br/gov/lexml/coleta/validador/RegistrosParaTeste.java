@@ -0,0 +1,37 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Leitura dos registros de exemplo em /oai/ no classpath de teste.
+ */
+public class RegistrosParaTeste {
+
+    /** Registro válido usado na maior parte dos testes */
+    public static final String ACORDAO = "oai_acordao.stf.jus.br_aco_100005.xml";
+
+    public static String leXml() throws IOException {
+        return leXml(ACORDAO);
+    }
+
+    public static String leXml(final String arquivo) throws IOException {
+        return new String(leBytes(arquivo), "UTF-8");
+    }
+
+    public static byte[] leBytes(final String arquivo) throws IOException {
+        InputStream is = RegistrosParaTeste.class.getResourceAsStream("/oai/" + arquivo);
+        if (is == null) {
+            throw new IOException("Registro de teste não encontrado: /oai/" + arquivo);
+        }
+        try {
+            return IOUtils.toByteArray(is);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+}
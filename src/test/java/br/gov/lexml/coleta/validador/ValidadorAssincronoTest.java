@@ -0,0 +1,94 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ValidadorAssincronoTest {
+
+    @Test
+    public void testValidacoesConcorrentesComPoolDeUmParser() throws Exception {
+        ServicoLento svc = new ServicoLento();
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(svc);
+        validador.setSchemaCompartilhado(true);
+        validador.setTamanhoPool(1);
+
+        byte[] ok = MetricasValidacaoTest.leXml("oai_acordao.stf.jus.br_aco_100005.xml");
+        byte[] erro = MetricasValidacaoTest.leXml("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml");
+
+        ValidadorAssincrono assincrono = new ValidadorAssincrono(validador, 8);
+        List<CompletableFuture<ResultadoValidacao>> futuros = new ArrayList<CompletableFuture<ResultadoValidacao>>();
+        for (int i = 0; i < 16; i++) {
+            futuros.add(assincrono.validarAsync("id" + i, i % 2 == 0 ? ok : erro, null));
+        }
+        for (int i = 0; i < 16; i++) {
+            ResultadoValidacao resultado = futuros.get(i).get();
+            Assert.assertEquals("id" + i, resultado.getIdRegistroItem());
+            Assert.assertEquals(i % 2 == 0, resultado.isValido());
+        }
+        assincrono.close();
+
+        // O único parser não fica retido durante as consultas ao ValidadorService
+        Assert.assertTrue(svc.maximoSimultaneo.get() > 1);
+    }
+
+    @Test
+    public void testFalhaCompletaFuturo() throws Exception {
+        ValidadorAssincrono assincrono = new ValidadorAssincrono(new ValidadorRegistroItem(), 1);
+        try {
+            assincrono.validarAsync("id", "<xml/>", null).get();
+            Assert.fail();
+        }
+        catch (ExecutionException e) {
+            // ValidadorService não informado
+            Assert.assertTrue(e.getCause() instanceof RuntimeException);
+        }
+        assincrono.close();
+    }
+
+    @Test
+    public void testExecutorVirtual() {
+        boolean disponivel;
+        try {
+            Thread.class.getMethod("ofVirtual");
+            disponivel = ValidadorAssincrono.criaExecutorVirtual() != null;
+        }
+        catch (NoSuchMethodException e) {
+            disponivel = false;
+        }
+        ValidadorAssincrono assincrono = new ValidadorAssincrono(new ValidadorRegistroItem());
+        Assert.assertEquals(disponivel, assincrono.isThreadsVirtuais());
+    }
+
+    private static class ServicoLento extends ValidadorServiceParaTeste {
+
+        final AtomicInteger emAndamento = new AtomicInteger();
+
+        final AtomicInteger maximoSimultaneo = new AtomicInteger();
+
+        @Override
+        public boolean isNucleoValido(final String nucleo) {
+            int n = emAndamento.incrementAndGet();
+            int max = maximoSimultaneo.get();
+            while (n > max && !maximoSimultaneo.compareAndSet(max, n)) {
+                max = maximoSimultaneo.get();
+            }
+            try {
+                Thread.sleep(20);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            emAndamento.decrementAndGet();
+            return super.isNucleoValido(nucleo);
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidadorEmMassaTest {
+
+    private File diretorio;
+
+    @Before
+    public void init() throws IOException {
+        diretorio = File.createTempFile("validacao", "");
+        diretorio.delete();
+        diretorio.mkdirs();
+    }
+
+    @After
+    public void fim() throws IOException {
+        FileUtils.deleteDirectory(diretorio);
+    }
+
+    @Test
+    public void testDiretorioZipGzip() throws IOException {
+        GeradorCorpus gerador = new GeradorCorpus(42);
+        gerador.setProporcaoDefeitos(0);
+
+        gerador.escreveArquivos(new File(diretorio, "arquivos"), 20);
+
+        // ListRecords grande o bastante para ser mapeado em memória
+        OutputStream out = new FileOutputStream(new File(diretorio, "grande.xml"));
+        try {
+            Assert.assertTrue(gerador.escreveListRecords(out, 100) > 64 * 1024);
+        }
+        finally {
+            out.close();
+        }
+
+        out = new GZIPOutputStream(new FileOutputStream(new File(diretorio, "dump.xml.gz")));
+        try {
+            gerador.escreveListRecords(out, 30);
+        }
+        finally {
+            out.close();
+        }
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(diretorio, "coleta.zip")));
+        try {
+            zip.putNextEntry(new ZipEntry("lote/listrecords.xml"));
+            gerador.escreveListRecords(zip, 25);
+            zip.putNextEntry(new ZipEntry("lote/LEIAME.txt"));
+            zip.write("ignorado".getBytes("UTF-8"));
+            zip.putNextEntry(new ZipEntry("lote/registro-invalido.xml"));
+            InputStream is = getClass().getResourceAsStream("/oai/oai_acordao.stf.jus.br_aco_100005-erro-xml.xml");
+            IOUtils.copy(is, zip);
+            is.close();
+        }
+        finally {
+            zip.close();
+        }
+
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        validador.setIndicePerfil(gerador.getIndicePerfil());
+
+        StringWriter saida = new StringWriter();
+        ValidadorEmMassa validadorEmMassa = new ValidadorEmMassa(validador, 4, saida);
+        ResumoValidacao resumo;
+        try {
+            validadorEmMassa.valida(diretorio);
+            resumo = validadorEmMassa.conclui();
+        }
+        finally {
+            validadorEmMassa.close();
+        }
+
+        Assert.assertEquals(24, resumo.getArquivos());
+        Assert.assertEquals(0, resumo.getFalhasLeitura());
+        Assert.assertEquals(176, resumo.getRegistros());
+        Assert.assertEquals(1, resumo.getInvalidos());
+        Assert.assertEquals(Long.valueOf(1), resumo.getErros().get(TipoErroValidacao.XML_MAL_FORMADO));
+        Assert.assertEquals(176, resumo.getLatencia().getContagem());
+        Assert.assertTrue(resumo.getVazao() > 0);
+
+        String[] linhas = saida.toString().split("\n");
+        Assert.assertEquals(176, linhas.length);
+        int invalidos = 0;
+        for (String linha : linhas) {
+            Assert.assertTrue(linha, linha.startsWith("{\"id\":\"") && linha.endsWith("}"));
+            if (linha.contains("\"valido\":false")) {
+                invalidos++;
+                Assert.assertTrue(linha, linha.contains("\"id\":\"registro-invalido\""));
+                Assert.assertTrue(linha, linha.contains("\"tipoErro\":\"XML_MAL_FORMADO\""));
+            }
+        }
+        Assert.assertEquals(1, invalidos);
+        Assert.assertTrue(resumo.toJSON(), resumo.toJSON().contains("\"registros\":176"));
+    }
+
+    @Test
+    public void testFalhaLeitura() throws IOException {
+        OutputStream out = new FileOutputStream(new File(diretorio, "truncado.xml"));
+        try {
+            out.write("<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><ListRecords><record>"
+                .getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        ValidadorEmMassa validadorEmMassa = new ValidadorEmMassa(validador, 1, new StringWriter());
+        try {
+            validadorEmMassa.valida(diretorio);
+            Assert.assertEquals(1, validadorEmMassa.conclui().getFalhasLeitura());
+        }
+        finally {
+            validadorEmMassa.close();
+        }
+    }
+
+    @Test
+    public void testDiretorioInacessivel() throws IOException {
+        File bloqueado = new File(diretorio, "bloqueado");
+        bloqueado.mkdirs();
+        FileUtils.writeStringToFile(new File(bloqueado, "registro.xml"), "<LexML/>", "UTF-8");
+        bloqueado.setReadable(false, false);
+        bloqueado.setExecutable(false, false);
+        try {
+            // Sem efeito quando executado como root
+            Assume.assumeTrue(!bloqueado.canRead());
+
+            ValidadorRegistroItem validador = new ValidadorRegistroItem();
+            validador.setValidadorService(new ValidadorServiceParaTeste());
+            ValidadorEmMassa validadorEmMassa = new ValidadorEmMassa(validador, 1, new StringWriter());
+            try {
+                validadorEmMassa.valida(diretorio);
+                Assert.assertEquals(1, validadorEmMassa.conclui().getFalhasLeitura());
+            }
+            finally {
+                validadorEmMassa.close();
+            }
+        }
+        finally {
+            bloqueado.setReadable(true, false);
+            bloqueado.setExecutable(true, false);
+        }
+    }
+
+    @Test
+    public void testIdentificacao() throws IOException {
+        Assert.assertTrue(isListRecords("<?xml version=\"1.0\"?>\n<!-- resposta -->\n<oai:OAI-PMH xmlns:oai=\"x\">"));
+        Assert.assertFalse(isListRecords("<?xml version=\"1.0\"?>\n<LexML xmlns=\"http://www.lexml.gov.br/oai_lexml\">"));
+
+        Assert.assertEquals("registro-1", LeitorEntradas.getIdRegistroItem("dir/registro-1.xml.gz"));
+        Assert.assertEquals("registro-1", LeitorEntradas.getIdRegistroItem("coleta.zip!/lote/registro-1.xml"));
+    }
+
+    private static boolean isListRecords(final String inicio) throws IOException {
+        byte[] bytes = inicio.getBytes("UTF-8");
+        return LeitorEntradas.isListRecords(bytes, bytes.length);
+    }
+
+}
@@ -0,0 +1,95 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ValidadorLoteTest {
+
+    @Test
+    public void testListRecords() throws IOException {
+        verificaListRecords(1);
+    }
+
+    @Test
+    public void testListRecordsEmGrupos() throws IOException {
+        verificaListRecords(2);
+    }
+
+    @Test
+    public void testPoolProprio() throws IOException {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setTamanhoPool(2);
+        validador.setValidadorService(new ValidadorServiceParaTeste() {
+
+            @Override
+            public boolean isNucleoValido(final String nucleo) {
+                threads.add(Thread.currentThread().getName());
+                return super.isNucleoValido(nucleo);
+            }
+        });
+
+        InputStream is = getClass().getResourceAsStream("/oai/listrecords.xml");
+        try {
+            Assert.assertEquals(3, new ValidadorLote(validador).validar(is, null, new OuvinteResultadoValidacao() {
+
+                public void resultado(final ResultadoValidacao resultado) {
+                }
+            }));
+        }
+        finally {
+            is.close();
+        }
+        Assert.assertFalse(threads.isEmpty());
+        for (String thread : threads) {
+            Assert.assertTrue(thread, thread.startsWith("ValidadorLote-"));
+        }
+    }
+
+    private void verificaListRecords(final int tamanhoGrupo) throws IOException {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        validador.setValidadorService(new ValidadorServiceComCache(new ValidadorServiceParaTeste(), 100));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ValidadorLote lote = new ValidadorLote(validador, executor);
+            lote.setMaximoEmAndamento(2);
+            lote.setTamanhoGrupo(tamanhoGrupo);
+
+            final Map<String, ResultadoValidacao> resultados = new HashMap<String, ResultadoValidacao>();
+            InputStream is = getClass().getResourceAsStream("/oai/listrecords.xml");
+            int total = lote.validar(is, "contexto", new OuvinteResultadoValidacao() {
+
+                public void resultado(final ResultadoValidacao resultado) {
+                    resultados.put(resultado.getIdRegistroItem(), resultado);
+                }
+            });
+            is.close();
+
+            // O registro excluído (sem metadado) é ignorado
+            Assert.assertEquals(3, total);
+            Assert.assertEquals(3, resultados.size());
+            Assert.assertTrue(resultados.get("oai:acordao.stf.jus.br:aco/100005").isValido());
+            Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL,
+                resultados.get("oai:acordao.stf.jus.br:aco/100006").getTipoErro());
+            Assert.assertEquals(TipoErroValidacao.XML_INVALIDO,
+                resultados.get("oai:acordao.stf.jus.br:aco/100007").getTipoErro());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidadorParticionadoTest {
+
+    private File diretorio;
+
+    private File entradas;
+
+    private GeradorCorpus gerador;
+
+    @Before
+    public void init() throws IOException {
+        diretorio = File.createTempFile("particoes", "");
+        diretorio.delete();
+        entradas = new File(diretorio, "entradas");
+        entradas.mkdirs();
+
+        gerador = new GeradorCorpus(24);
+        gerador.setProporcaoDefeitos(0.2);
+        gerador.escreveArquivos(new File(entradas, "arquivos"), 30);
+        OutputStream out = new FileOutputStream(new File(entradas, "dump.xml"));
+        try {
+            gerador.escreveListRecords(out, 200);
+        }
+        finally {
+            out.close();
+        }
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(entradas, "coleta.zip")));
+        try {
+            zip.putNextEntry(new ZipEntry("lote/listrecords.xml"));
+            gerador.escreveListRecords(zip, 50);
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    @After
+    public void fim() throws IOException {
+        FileUtils.deleteDirectory(diretorio);
+    }
+
+    @Test
+    public void testParticoes() throws IOException {
+        StringWriter saida = new StringWriter();
+        ValidadorEmMassa validadorEmMassa = new ValidadorEmMassa(criaValidador(null), 4, saida);
+        ResumoValidacao esperado;
+        try {
+            validadorEmMassa.valida(entradas);
+            esperado = validadorEmMassa.conclui();
+        }
+        finally {
+            validadorEmMassa.close();
+        }
+        Assert.assertEquals(280, esperado.getRegistros());
+        Assert.assertTrue(esperado.getInvalidos() > 0);
+
+        List<File> relatorios = new ArrayList<File>();
+        Set<String> linhas = new HashSet<String>();
+        int total = 0;
+        for (int i = 0; i < 3; i++) {
+            File trabalho = new File(diretorio, "particao" + i);
+            trabalho.mkdirs();
+            ValidadorParticionado validador = new ValidadorParticionado(criaValidador(null), i, 3, trabalho, 4);
+            try {
+                ResumoValidacao resumo = validador.executa(Collections.singletonList(entradas));
+                List<String> resultados = FileUtils.readLines(validador.getArquivoResultados(), "UTF-8");
+                Assert.assertEquals(resumo.getRegistros(), resultados.size());
+                for (String linha : resultados) {
+                    String id = linha.substring(7, linha.indexOf('"', 7));
+                    Assert.assertEquals(i, ValidadorParticionado.getParticao(id, 3));
+                }
+                linhas.addAll(resultados);
+                total += resultados.size();
+                relatorios.add(validador.getArquivoControle());
+            }
+            finally {
+                validador.close();
+            }
+        }
+        Assert.assertEquals(total, linhas.size());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(saida.toString().split("\n"))), linhas);
+
+        ResumoValidacao resumo = ValidadorParticionado.mescla(relatorios);
+        Assert.assertEquals(esperado.getArquivos(), resumo.getArquivos());
+        Assert.assertEquals(esperado.getRegistros(), resumo.getRegistros());
+        Assert.assertEquals(esperado.getValidos(), resumo.getValidos());
+        Assert.assertEquals(esperado.getErros(), resumo.getErros());
+        Assert.assertEquals(esperado.getRegistros(), resumo.getLatencia().getContagem());
+
+        try {
+            ValidadorParticionado.mescla(relatorios.subList(0, 2));
+            Assert.fail();
+        }
+        catch (IOException e) {
+            // esperado
+        }
+    }
+
+    @Test
+    public void testDiretorioInacessivel() throws IOException {
+        File bloqueado = new File(entradas, "bloqueado");
+        bloqueado.mkdirs();
+        FileUtils.writeStringToFile(new File(bloqueado, "registro.xml"), "<LexML/>", "UTF-8");
+        bloqueado.setReadable(false, false);
+        bloqueado.setExecutable(false, false);
+        try {
+            // Sem efeito quando executado como root
+            Assume.assumeTrue(!bloqueado.canRead());
+
+            List<File> relatorios = new ArrayList<File>();
+            for (int i = 0; i < 3; i++) {
+                File trabalho = new File(diretorio, "particao" + i);
+                trabalho.mkdirs();
+                ValidadorParticionado validador = new ValidadorParticionado(criaValidador(null), i, 3, trabalho, 4);
+                try {
+                    validador.executa(Collections.singletonList(entradas));
+                    relatorios.add(validador.getArquivoControle());
+                }
+                finally {
+                    validador.close();
+                }
+            }
+            ResumoValidacao resumo = ValidadorParticionado.mescla(relatorios);
+            Assert.assertEquals(280, resumo.getRegistros());
+            Assert.assertEquals(1, resumo.getFalhasLeitura());
+        }
+        finally {
+            bloqueado.setReadable(true, false);
+            bloqueado.setExecutable(true, false);
+        }
+    }
+
+    @Test
+    public void testRetomada() throws IOException {
+        File referencia = new File(diretorio, "referencia");
+        referencia.mkdirs();
+        ValidadorParticionado validador = new ValidadorParticionado(criaValidador(null), 1, 2, referencia, 4);
+        ResumoValidacao esperado;
+        try {
+            esperado = validador.executa(Collections.singletonList(entradas));
+        }
+        finally {
+            validador.close();
+        }
+
+        // Interrompida depois de alguns registros, com pontos de controle a cada registro aplicado
+        File trabalho = new File(diretorio, "trabalho");
+        trabalho.mkdirs();
+        validador = new ValidadorParticionado(criaValidador(new AtomicInteger(150)), 1, 2, trabalho, 4);
+        validador.setIntervaloControle(0, TimeUnit.SECONDS);
+        try {
+            validador.executa(Collections.singletonList(entradas));
+            Assert.fail();
+        }
+        catch (Queda e) {
+            // esperado
+        }
+        finally {
+            validador.close();
+        }
+        Assert.assertTrue(validador.getArquivoControle().exists());
+
+        validador = new ValidadorParticionado(criaValidador(null), 1, 2, trabalho, 4);
+        ResumoValidacao resumo;
+        try {
+            resumo = validador.executa(Collections.singletonList(entradas));
+        }
+        finally {
+            validador.close();
+        }
+        Assert.assertEquals(FileUtils.readFileToString(new File(referencia, "particao-1-de-2.jsonl"), "UTF-8"),
+            FileUtils.readFileToString(validador.getArquivoResultados(), "UTF-8"));
+        Assert.assertEquals(esperado.getArquivos(), resumo.getArquivos());
+        Assert.assertEquals(esperado.getRegistros(), resumo.getRegistros());
+        Assert.assertEquals(esperado.getValidos(), resumo.getValidos());
+        Assert.assertEquals(esperado.getErros(), resumo.getErros());
+
+        // Partição concluída: o resumo gravado é retornado sem nova validação
+        validador = new ValidadorParticionado(criaValidador(new AtomicInteger(0)), 1, 2, trabalho, 4);
+        try {
+            Assert.assertEquals(esperado.getRegistros(),
+                validador.executa(Collections.singletonList(entradas)).getRegistros());
+        }
+        finally {
+            validador.close();
+        }
+
+        // Outras entradas não usam o ponto de controle da tarefa
+        validador = new ValidadorParticionado(criaValidador(null), 1, 2, trabalho, 4);
+        try {
+            validador.executa(Collections.singletonList(new File(entradas, "arquivos")));
+            Assert.fail();
+        }
+        catch (IOException e) {
+            // esperado
+        }
+        finally {
+            validador.close();
+        }
+    }
+
+    @Test
+    public void testParticao() {
+        Assert.assertEquals(ValidadorParticionado.getParticao("oai:acordao.stf.jus.br:aco/100005", 1000),
+            ValidadorParticionado.getParticao("oai:acordao.stf.jus.br:aco/100005", 1000));
+        int[] contagens = new int[4];
+        for (int i = 0; i < 4000; i++) {
+            contagens[ValidadorParticionado.getParticao("oai:senado.gov.br:" + i, 4)]++;
+        }
+        for (int contagem : contagens) {
+            Assert.assertTrue(contagem > 800);
+        }
+    }
+
+    /**
+     * Simula a queda do processo durante a validação.
+     */
+    private static class Queda extends Error {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /**
+     * @param consultas número de consultas de núcleo até a queda (null: sem queda)
+     */
+    private ValidadorRegistroItem criaValidador(final AtomicInteger consultas) {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ValidadorServicePerfilLocal(gerador.getIndicePerfil()) {
+
+            @Override
+            public boolean isNucleoValido(final String nucleo) {
+                if (consultas != null && consultas.getAndDecrement() <= 0) {
+                    throw new Queda();
+                }
+                return super.isNucleoValido(nucleo);
+            }
+        });
+        return validador;
+    }
+
+}
@@ -0,0 +1,133 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ValidadorRegistroItemAquecimentoTest {
+
+    @Test
+    public void testAquece() {
+        for (MotorValidacao motor : MotorValidacao.values()) {
+            for (boolean preValidacao : new boolean[] { false, true }) {
+                ServicoContador svc = new ServicoContador();
+                ValidadorRegistroItem validador = new ValidadorRegistroItem();
+                validador.setValidadorService(svc);
+                validador.setMotorValidacao(motor);
+                validador.setPreValidacao(preValidacao);
+                Assert.assertFalse(validador.isPronto());
+
+                validador.aquece(2);
+                Assert.assertTrue(validador.isPronto());
+                Assert.assertEquals(0, svc.erros.get());
+                Assert.assertEquals(0, svc.nucleos.get());
+            }
+        }
+    }
+
+    @Test
+    public void testAquecimentoNaoRegistraResultados() throws Exception {
+        final AtomicInteger erros = new AtomicInteger();
+        final AtomicInteger dependencias = new AtomicInteger();
+        PublicadorErrosValidacao publicador = new PublicadorErrosValidacao(new DestinoErrosValidacao() {
+
+            public void registra(final List<ErroValidacao> lote) {
+                erros.addAndGet(lote.size());
+            }
+        }, 16, 4);
+        CacheResultadosValidacao cache = new CacheResultadosValidacao(100);
+
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ServicoContador());
+        validador.setIndicePerfil(IndicePerfil.construtor().constroi());
+        validador.setSchemaCompartilhado(true);
+        validador.setTamanhoPool(2);
+        validador.setPublicadorErros(publicador);
+        validador.setCacheResultados(cache);
+        validador.setDestinoDependencias(new DestinoDependencias() {
+
+            public void registra(final String idRegistroItem, final Map<String, Boolean> nucleos) {
+                dependencias.incrementAndGet();
+            }
+        });
+        validador.aquece(1);
+        publicador.close();
+
+        Assert.assertTrue(validador.isPronto());
+        Assert.assertEquals(0, publicador.getPublicados());
+        Assert.assertEquals(0, erros.get());
+        Assert.assertEquals(0, cache.getTamanho());
+        Assert.assertEquals(0, dependencias.get());
+    }
+
+    @Test
+    public void testAlteracaoDosParsers() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ServicoContador());
+        validador.aquece(1);
+        Assert.assertTrue(validador.isPronto());
+
+        validador.setSchemaCompartilhado(true);
+        Assert.assertFalse(validador.isPronto());
+        validador.aquece(1);
+        Assert.assertTrue(validador.isPronto());
+
+        validador.setTamanhoPool(2);
+        Assert.assertFalse(validador.isPronto());
+        validador.aquece(1);
+        validador.setOffline(true);
+        Assert.assertFalse(validador.isPronto());
+        validador.aquece(1);
+        Assert.assertTrue(validador.isPronto());
+    }
+
+    @Test
+    public void testAquecimentoSemLimites() {
+        // Limites que recusariam todos os registros de aquecimento não se aplicam a eles
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(new ServicoContador());
+        validador.setLimitesValidacao(LimitesValidacao.construtor().tamanhoMaximo(10).profundidadeMaxima(1)
+            .constroi());
+        validador.aquece(1);
+        Assert.assertTrue(validador.isPronto());
+        Assert.assertEquals(RegraValidacao.LIMITE_EXCEDIDO,
+            validador.validarComResultado("id", "<LexML xmlns=\"http://www.lexml.gov.br/oai_lexml\"/>", null)
+                .getRegra());
+    }
+
+    @Test
+    public void testIteracoesInvalidas() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        try {
+            validador.aquece(0);
+            Assert.fail();
+        }
+        catch (IllegalArgumentException e) {
+            // esperado
+        }
+        Assert.assertFalse(validador.isPronto());
+    }
+
+    private static class ServicoContador implements ValidadorService {
+
+        final AtomicInteger erros = new AtomicInteger();
+
+        final AtomicInteger nucleos = new AtomicInteger();
+
+        public void logError(final String idRegistroItem, final TipoErroValidacao tipoErro, final String msg,
+                             final Object ctxUsr) {
+            erros.incrementAndGet();
+        }
+
+        public boolean isNucleoValido(final String nucleo) {
+            nucleos.incrementAndGet();
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ValidadorRegistroItemLimitesTest {
+
+    private static final String ID = "oai:acordao.stf.jus.br:aco/100005";
+
+    @Test
+    public void testSemLimites() throws IOException {
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.DOM, LimitesValidacao.SEM_LIMITES);
+        Assert.assertTrue(validador.validarComResultado(ID, RegistrosParaTeste.leXml(), null).isValido());
+    }
+
+    @Test
+    public void testDentroDosLimites() throws IOException {
+        LimitesValidacao limites = LimitesValidacao.construtor().tamanhoMaximo(64 * 1024).profundidadeMaxima(8)
+            .maximoElementos(100).maximoItens(4).maximoRelacionamentos(4).maximoErrosSchema(10)
+            .tempoMaximo(10, TimeUnit.SECONDS).constroi();
+        for (MotorValidacao motor : MotorValidacao.values()) {
+            ValidadorRegistroItem validador = criaValidador(motor, limites);
+            ResultadoValidacao resultado = validador.validarComResultado(ID, RegistrosParaTeste.leXml(), null);
+            Assert.assertTrue(motor + ": " + resultado, resultado.isValido());
+        }
+    }
+
+    @Test
+    public void testTamanhoMaximo() throws IOException {
+        String xml = RegistrosParaTeste.leXml();
+        byte[] bytes = xml.getBytes("UTF-8");
+        // Em caracteres para String, em bytes nos demais casos (o XML tem caracteres acentuados)
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.STREAMING,
+            LimitesValidacao.construtor().tamanhoMaximo(xml.length() - 1).constroi());
+
+        verificaLimite(validador.validarComResultado(ID, bytes, null), "Tamanho máximo");
+        verificaLimite(validador.validarComResultado(ID, new ByteArrayInputStream(bytes), null), "Tamanho máximo");
+        verificaLimite(validador.validarComResultado(ID, xml, null), "Tamanho máximo");
+
+        validador.setLimitesValidacao(LimitesValidacao.construtor().tamanhoMaximo(bytes.length).constroi());
+        Assert.assertTrue(validador.validarComResultado(ID, new ByteArrayInputStream(bytes), null).isValido());
+    }
+
+    @Test
+    public void testProfundidadeMaxima() throws IOException {
+        String xml = RegistrosParaTeste.leXml().replace("</Ementa>", "</Ementa><a><b><c><d><e/></d></c></b></a>");
+        LimitesValidacao limites = LimitesValidacao.construtor().profundidadeMaxima(4).constroi();
+        for (MotorValidacao motor : MotorValidacao.values()) {
+            verificaLimite(criaValidador(motor, limites).validarComResultado(ID, xml, null), "Profundidade");
+        }
+    }
+
+    @Test
+    public void testMaximoRelacionamentos() {
+        GeradorCorpus gerador = new GeradorCorpus(22);
+        gerador.setProporcaoDefeitos(0);
+        gerador.setRelacionamentos(GeradorCorpus.Distribuicao.fixa(50));
+        GeradorCorpus.RegistroGerado registro = gerador.proximo();
+
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.DOM,
+            LimitesValidacao.construtor().maximoRelacionamentos(10).constroi());
+        validador.setIndicePerfil(gerador.getIndicePerfil());
+        verificaLimite(validador.validarComResultado(registro.getIdRegistroItem(), registro.getXml(), null),
+            "Relacionamento");
+
+        validador.setLimitesValidacao(LimitesValidacao.construtor().maximoRelacionamentos(50).constroi());
+        Assert.assertTrue(validador.validarComResultado(registro.getIdRegistroItem(), registro.getXml(), null)
+            .isValido());
+    }
+
+    @Test
+    public void testMaximoErrosSchema() throws IOException {
+        String xml = RegistrosParaTeste.leXml().replace("idPublicador=\"18\"", "idPublicador=\"x\"");
+        for (MotorValidacao motor : MotorValidacao.values()) {
+            ValidadorRegistroItem validador = criaValidador(motor,
+                LimitesValidacao.construtor().maximoErrosSchema(2).constroi());
+            ResultadoValidacao resultado = validador.validarComResultado(ID, xml, null);
+            Assert.assertFalse(resultado.isValido());
+            Assert.assertEquals(RegraValidacao.XML_INVALIDO, resultado.getRegra());
+            Assert.assertEquals(resultado.getMensagem(), 2, resultado.getMensagem().split("\n").length);
+        }
+    }
+
+    @Test
+    public void testTempoMaximo() throws IOException {
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.STREAMING,
+            LimitesValidacao.construtor().tempoMaximo(50, TimeUnit.MILLISECONDS).constroi());
+        validador.setValidadorService(new ValidadorServiceParaTeste() {
+
+            @Override
+            public boolean isNucleoValido(final String nucleo) {
+                try {
+                    Thread.sleep(100);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.isNucleoValido(nucleo);
+            }
+        });
+        verificaLimite(validador.validarComResultado(ID, RegistrosParaTeste.leXml(), null), "Tempo máximo");
+    }
+
+    @Test
+    public void testTipoErroConfigurado() throws IOException {
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.STREAMING,
+            LimitesValidacao.construtor().tamanhoMaximo(10).constroi());
+        validador.setTipoErro(RegraValidacao.LIMITE_EXCEDIDO, TipoErroValidacao.LIMITE_EXCEDIDO);
+        ResultadoValidacao resultado = validador.validarComResultado(ID, RegistrosParaTeste.leXml(), null);
+        Assert.assertEquals(RegraValidacao.LIMITE_EXCEDIDO, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.LIMITE_EXCEDIDO, resultado.getTipoErro());
+    }
+
+    @Test
+    public void testXMLMalFormado() throws IOException {
+        String xml = RegistrosParaTeste.leXml().replace("</LexML>", "");
+        ValidadorRegistroItem validador = criaValidador(MotorValidacao.STREAMING,
+            LimitesValidacao.construtor().profundidadeMaxima(8).tamanhoMaximo(64 * 1024).constroi());
+        Assert.assertEquals(RegraValidacao.XML_MAL_FORMADO,
+            validador.validarComResultado(ID, new ByteArrayInputStream(xml.getBytes("UTF-8")), null).getRegra());
+    }
+
+    private static void verificaLimite(final ResultadoValidacao resultado, final String mensagem) {
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertEquals(RegraValidacao.LIMITE_EXCEDIDO, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.ERRO_GENERICO, resultado.getTipoErro());
+        Assert.assertTrue(resultado.getMensagem(), resultado.getMensagem().startsWith("RV#9 ")
+            && resultado.getMensagem().contains(mensagem));
+    }
+
+    private static ValidadorRegistroItem criaValidador(final MotorValidacao motor, final LimitesValidacao limites) {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setMotorValidacao(motor);
+        validador.setLimitesValidacao(limites);
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        return validador;
+    }
+
+}
@@ -0,0 +1,137 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+public class ValidadorRegistroItemLoteTest {
+
+    @Test
+    public void testLoteEquivaleAValidacaoIndividual() {
+        verificaLote(false);
+    }
+
+    @Test
+    public void testLoteComPreValidacao() {
+        verificaLote(true);
+    }
+
+    @Test
+    public void testFalhaNaConsultaEmLote() {
+        GeradorCorpus gerador = new GeradorCorpus(3);
+        gerador.setProporcaoDefeitos(0);
+        ServicoLote svc = new ServicoLote(gerador.getIndicePerfil());
+        svc.falha = true;
+        List<RegistroItem> registros = geraRegistros(gerador, 20);
+
+        List<ResultadoValidacao> resultados = criaValidador(svc, false).validarLote(registros, null);
+        Assert.assertEquals(20, resultados.size());
+        for (ResultadoValidacao resultado : resultados) {
+            Assert.assertTrue(resultado.isValido());
+        }
+        Assert.assertTrue(svc.consultasIndividuais.get() > 0);
+    }
+
+    @Test
+    public void testServicoSemLote() {
+        GeradorCorpus gerador = new GeradorCorpus(4);
+        ValidadorServicePerfilLocal svc = new ValidadorServicePerfilLocal(gerador.getIndicePerfil());
+        List<ResultadoValidacao> resultados = criaValidador(svc, false).validarLote(geraRegistros(gerador, 5), null);
+        Assert.assertEquals(5, resultados.size());
+    }
+
+    private void verificaLote(final boolean preValidacao) {
+        GeradorCorpus gerador = new GeradorCorpus(2);
+        gerador.setProporcaoDefeitos(0.5);
+        ServicoLote svc = new ServicoLote(gerador.getIndicePerfil());
+        List<RegistroItem> registros = geraRegistros(gerador, 200);
+
+        ValidadorRegistroItem validador = criaValidador(svc, preValidacao);
+        List<ResultadoValidacao> individuais = new ArrayList<ResultadoValidacao>();
+        for (RegistroItem registro : registros) {
+            individuais.add(validador.validarComResultado(registro.getIdRegistroItem(), registro.getXml(), null));
+        }
+        int consultasIndividuais = svc.consultasIndividuais.getAndSet(0);
+        long erros = svc.getTotalErros();
+
+        List<ResultadoValidacao> lote = validador.validarLote(registros, null);
+
+        Assert.assertEquals(registros.size(), lote.size());
+        for (int i = 0; i < registros.size(); i++) {
+            ResultadoValidacao esperado = individuais.get(i);
+            ResultadoValidacao resultado = lote.get(i);
+            Assert.assertEquals(esperado.getIdRegistroItem(), resultado.getIdRegistroItem());
+            Assert.assertEquals(esperado.isValido(), resultado.isValido());
+            Assert.assertEquals(esperado.getRegra(), resultado.getRegra());
+            Assert.assertEquals(esperado.getTipoErro(), resultado.getTipoErro());
+            Assert.assertEquals(esperado.getMensagem(), resultado.getMensagem());
+        }
+        Assert.assertEquals(2 * erros, svc.getTotalErros());
+
+        // Uma única consulta em lote, com núcleos distintos, em vez de uma consulta por núcleo
+        Assert.assertEquals(0, svc.consultasIndividuais.get());
+        Assert.assertEquals(1, svc.consultasLote.get());
+        Assert.assertTrue(svc.nucleosConsultados.get() < consultasIndividuais);
+    }
+
+    private static ValidadorRegistroItem criaValidador(final ValidadorService svc, final boolean preValidacao) {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setValidadorService(svc);
+        validador.setSchemaCompartilhado(true);
+        validador.setPreValidacao(preValidacao);
+        return validador;
+    }
+
+    private static List<RegistroItem> geraRegistros(final GeradorCorpus gerador, final int quantidade) {
+        List<RegistroItem> registros = new ArrayList<RegistroItem>();
+        for (int i = 0; i < quantidade; i++) {
+            GeradorCorpus.RegistroGerado gerado = gerador.proximo();
+            registros.add(new RegistroItem(gerado.getIdRegistroItem(), gerado.getXml()));
+        }
+        return registros;
+    }
+
+    private static class ServicoLote extends ValidadorServicePerfilLocal implements ValidadorServiceLote {
+
+        final AtomicInteger consultasIndividuais = new AtomicInteger();
+
+        final AtomicInteger consultasLote = new AtomicInteger();
+
+        final AtomicInteger nucleosConsultados = new AtomicInteger();
+
+        boolean falha;
+
+        ServicoLote(final IndicePerfil indicePerfil) {
+            super(indicePerfil);
+        }
+
+        @Override
+        public boolean isNucleoValido(final String nucleo) {
+            consultasIndividuais.incrementAndGet();
+            return super.isNucleoValido(nucleo);
+        }
+
+        public Set<String> nucleosValidos(final Collection<String> nucleos) {
+            if (falha) {
+                throw new IllegalStateException("banco indisponível");
+            }
+            consultasLote.incrementAndGet();
+            nucleosConsultados.addAndGet(nucleos.size());
+            Set<String> validos = new HashSet<String>();
+            for (String nucleo : nucleos) {
+                if (super.isNucleoValido(nucleo)) {
+                    validos.add(nucleo);
+                }
+            }
+            return validos;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Executa os mesmos casos de {@link ValidadorRegistroItemTest} resolvendo os schemas somente pelo
+ * {@link CatalogoSchemas}.
+ */
+public class ValidadorRegistroItemOfflineTest extends ValidadorRegistroItemTest {
+
+    @Override
+    protected ValidadorRegistroItem criaValidador() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setOffline(true);
+        return validador;
+    }
+
+    @Test
+    public void testSchemaForaDoCatalogo() throws IOException {
+        String xml = RegistrosParaTeste.leXml().replace("http://www.lexml.gov.br/esquemas/oai_lexml.xsd",
+            "http://servidor.invalido/esquemas/desconhecido.xsd");
+        ResultadoValidacao resultado = validaComResultado(xml);
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertEquals(TipoErroValidacao.XML_INVALIDO, resultado.getTipoErro());
+    }
+
+    @Test
+    public void testDTDExterno() throws IOException {
+        String xml = RegistrosParaTeste.leXml().replace("<?xml version=\"1.0\"?>",
+            "<?xml version=\"1.0\"?>\n<!DOCTYPE LexML SYSTEM \"http://servidor.invalido/lexml.dtd\">");
+        ResultadoValidacao resultado = validaComResultado(xml);
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertEquals(TipoErroValidacao.XML_INVALIDO, resultado.getTipoErro());
+    }
+
+    @Test
+    public void testCatalogo() {
+        CatalogoSchemas catalogo = CatalogoSchemas.getPadrao();
+        Assert.assertTrue(catalogo.contem("http://www.lexml.gov.br/esquemas/oai_lexml.xsd"));
+        Assert.assertFalse(catalogo.contem("http://servidor.invalido/esquemas/desconhecido.xsd"));
+        Assert.assertNull(catalogo.abre("http://servidor.invalido/lexml.dtd"));
+    }
+
+    private ResultadoValidacao validaComResultado(final String xml) {
+        ValidadorRegistroItem validador = criaValidador();
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        return validador.validarComResultado("oai:acordao.stf.jus.br:aco/100005", xml, "contexto");
+    }
+
+}
@@ -0,0 +1,64 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Executa os mesmos casos de {@link ValidadorRegistroItemTest} com a pré-validação das URNs.
+ */
+public class ValidadorRegistroItemPreValidacaoTest extends ValidadorRegistroItemTest {
+
+    @Override
+    protected ValidadorRegistroItem criaValidador() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        validador.setPreValidacao(true);
+        return validador;
+    }
+
+    @Test
+    public void testURNAntesDoSchema() throws IOException {
+        // Registro inválido segundo o schema e com Relacionamento incompatível com o perfil
+        String xml = RegistrosParaTeste.leXml("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml")
+            .replace("<Item ", "<Item1 ").replace("</Item>", "</Item1>");
+
+        ResultadoValidacao resultado = valida(criaValidador(), xml);
+        Assert.assertEquals(RegraValidacao.URN_RELACIONAMENTO_INCOMPATIVEL, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL, resultado.getTipoErro());
+
+        ValidadorRegistroItem semPreValidacao = criaValidador();
+        semPreValidacao.setPreValidacao(false);
+        resultado = valida(semPreValidacao, xml);
+        Assert.assertEquals(RegraValidacao.XML_INVALIDO, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.XML_INVALIDO, resultado.getTipoErro());
+    }
+
+    @Test
+    public void testXMLMalFormado() throws IOException {
+        ResultadoValidacao resultado = valida(criaValidador(),
+            RegistrosParaTeste.leXml("oai_acordao.stf.jus.br_aco_100005-erro-xml.xml"));
+        Assert.assertEquals(TipoErroValidacao.XML_MAL_FORMADO, resultado.getTipoErro());
+    }
+
+    @Test
+    public void testTipoErroConfigurado() throws IOException {
+        ValidadorRegistroItem validador = criaValidador();
+        validador.setTipoErro(RegraValidacao.URN_RELACIONAMENTO_INCOMPATIVEL, TipoErroValidacao.URN_INVALIDO);
+
+        ResultadoValidacao resultado = valida(validador,
+            RegistrosParaTeste.leXml("oai_acordao.stf.jus.br_aco_100005-erro-relacionamento.xml"));
+        Assert.assertEquals(RegraValidacao.URN_RELACIONAMENTO_INCOMPATIVEL, resultado.getRegra());
+        Assert.assertEquals(TipoErroValidacao.URN_INVALIDO, resultado.getTipoErro());
+        Assert.assertEquals(TipoErroValidacao.URN_INCOMPATIVEL,
+            validador.getTipoErro(RegraValidacao.URN_DOCUMENTO_INCOMPATIVEL_ITEM));
+    }
+
+    private ResultadoValidacao valida(final ValidadorRegistroItem validador, final String xml) {
+        validador.setValidadorService(new ValidadorServiceParaTeste());
+        return validador.validarComResultado("oai:acordao.stf.jus.br:aco/100005", xml, "contexto");
+    }
+
+}
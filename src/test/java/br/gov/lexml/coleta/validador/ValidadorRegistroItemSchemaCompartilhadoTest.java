@@ -0,0 +1,15 @@
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Executa os mesmos casos de {@link ValidadorRegistroItemTest} usando o schema compilado uma única vez.
+ */
+public class ValidadorRegistroItemSchemaCompartilhadoTest extends ValidadorRegistroItemTest {
+
+    @Override
+    protected ValidadorRegistroItem criaValidador() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        return validador;
+    }
+
+}
@@ -0,0 +1,16 @@
+package br.gov.lexml.coleta.validador;
+
+/**
+ * Executa os mesmos casos de {@link ValidadorRegistroItemTest} usando o motor de validação SAX.
+ */
+public class ValidadorRegistroItemStreamingTest extends ValidadorRegistroItemTest {
+
+    @Override
+    protected ValidadorRegistroItem criaValidador() {
+        ValidadorRegistroItem validador = new ValidadorRegistroItem();
+        validador.setSchemaCompartilhado(true);
+        validador.setMotorValidacao(MotorValidacao.STREAMING);
+        return validador;
+    }
+
+}
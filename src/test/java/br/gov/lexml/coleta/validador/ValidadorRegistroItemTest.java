@@ -1,8 +1,16 @@
 
 package br.gov.lexml.coleta.validador;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import junit.framework.Assert;
 
@@ -16,10 +24,14 @@ public class ValidadorRegistroItemTest {
 
     @Before
     public void init() {
-        validador = new ValidadorRegistroItem();
+        validador = criaValidador();
         validador.setValidadorService(new ValidadorServiceParaTeste());
     }
 
+    protected ValidadorRegistroItem criaValidador() {
+        return new ValidadorRegistroItem();
+    }
+
     @Test
     public void testSucesso() throws IOException {
         Assert.assertTrue(valida("oai:acordao.stf.jus.br:aco/100005"));
@@ -45,6 +57,26 @@ public class ValidadorRegistroItemTest {
         Assert.assertFalse(valida("oai:acordao.stf.jus.br:aco/100005-erro-relacionamento"));
     }
 
+    @Test
+    public void testComentarioNaURN() throws IOException {
+        // Somente o primeiro nó texto de DocumentoIndividual é considerado, nos dois motores
+        String id = "oai:acordao.stf.jus.br:aco/100005-comentario-urn";
+        ResultadoValidacao resultado = validador.validarComResultado(id, getBytes(id), "contexto");
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertTrue(resultado.getMensagem(), resultado.getMensagem().contains("\"urn:lex:br:\""));
+    }
+
+    @Test
+    public void testIdPublicadorNaoNumerico() throws IOException {
+        // Rejeitado pelo schema (e não como XML mal formado) em todos os motores
+        String id = "oai:acordao.stf.jus.br:aco/100005";
+        String xml = new String(getBytes(id), "UTF-8").replace("idPublicador=\"18\" tipo=\"metadado\"",
+            "idPublicador=\"x\" tipo=\"metadado\"");
+        ResultadoValidacao resultado = validador.validarComResultado(id, xml, "contexto");
+        Assert.assertFalse(resultado.isValido());
+        Assert.assertEquals(resultado.getMensagem(), RegraValidacao.XML_INVALIDO, resultado.getRegra());
+    }
+
     @Test
     public void testEmentaComHtml() throws IOException {
         Assert.assertTrue(valida("oai:cojur.tse.gov.br:acordao/000037322"));
@@ -70,6 +102,83 @@ public class ValidadorRegistroItemTest {
     	Assert.assertTrue(valida("teofilootoni"));
     }
     
+    @Test
+    public void testEntradaEmBytes() throws IOException {
+        byte[] xml = getBytes("oai:acordao.stf.jus.br:aco/100005");
+        Assert.assertTrue(validador.validar("oai:acordao.stf.jus.br:aco/100005", xml, "contexto"));
+        Assert.assertTrue(validador.validar("oai:acordao.stf.jus.br:aco/100005", new ByteArrayInputStream(xml),
+            "contexto"));
+
+        ByteBuffer direto = ByteBuffer.allocateDirect(xml.length);
+        direto.put(xml).flip();
+        Assert.assertTrue(validador.validar("oai:acordao.stf.jus.br:aco/100005", direto, "contexto"));
+        Assert.assertEquals(0, direto.position());
+
+        byte[] erro = getBytes("oai:acordao.stf.jus.br:aco/100005-erro-relacionamento");
+        Assert.assertFalse(validador.validar("oai:acordao.stf.jus.br:aco/100005-erro-relacionamento", erro,
+            "contexto"));
+
+        Assert.assertEquals(TipoErroValidacao.XML_MAL_FORMADO,
+            validador.validarComResultado("vazio", new byte[0], "contexto").getTipoErro());
+        Assert.assertEquals(TipoErroValidacao.XML_MAL_FORMADO,
+            validador.validarComResultado("vazio", new ByteArrayInputStream(new byte[0]), "contexto").getTipoErro());
+    }
+
+    @Test
+    public void testSemValidadorService() throws Exception {
+        ValidadorRegistroItem semServico = criaValidador();
+        try {
+            semServico.validarDocumento("oai:acordao.stf.jus.br:aco/100005", new ValidadorXMLHelper().parse(
+                new ByteArrayInputStream(getBytes("oai:acordao.stf.jus.br:aco/100005"))), null);
+            Assert.fail();
+        }
+        catch (RuntimeException e) {
+            Assert.assertEquals("ValidatorService não informado.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testCodificacaoDeclarada() throws IOException {
+        Assert.assertTrue(validador.validar("oai:acordao.stf.jus.br:aco/100005-latin1",
+            getBytes("oai:acordao.stf.jus.br:aco/100005-latin1"), "contexto"));
+    }
+
+    @Test
+    public void testConcorrente() throws Exception {
+        final String[] ids = { "oai:acordao.stf.jus.br:aco/100005", "oai:acordao.stf.jus.br:aco/100005-erro-schema",
+                              "oai:acordao.stf.jus.br:aco/100005-erro-relacionamento", "oai:rvbi-ok",
+                              "oai:rvbi-falha-ordem", "teofilootoni" };
+        final boolean[] esperado = { true, false, false, true, false, true };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> resultados = new ArrayList<Future<Boolean>>();
+            for (int i = 0; i < 200; i++) {
+                final int n = i % ids.length;
+                resultados.add(executor.submit(new Callable<Boolean>() {
+
+                    public Boolean call() throws Exception {
+                        return valida(ids[n]) == esperado[n];
+                    }
+                }));
+            }
+            for (Future<Boolean> resultado : resultados) {
+                Assert.assertTrue(resultado.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    private byte[] getBytes(final String idRegistroItem) throws IOException {
+        String fileName = "/oai/" + idRegistroItem.replace('/', '_').replace(':', '_') + ".xml";
+        InputStream is = getClass().getResourceAsStream(fileName);
+        byte[] xml = IOUtils.toByteArray(is);
+        is.close();
+        return xml;
+    }
+
     private boolean valida(final String idRegistroItem) throws IOException {
 
         String fileName = "/oai/" + idRegistroItem.replace('/', '_').replace(':', '_') + ".xml";
@@ -0,0 +1,110 @@
+package br.gov.lexml.coleta.validador;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidadorServiceComCacheTest {
+
+    private ServicoContador servico;
+
+    @Before
+    public void init() {
+        servico = new ServicoContador();
+    }
+
+    @Test
+    public void testAcertosEFalhas() {
+        ValidadorServiceComCache cache = new ValidadorServiceComCache(servico, 100);
+
+        Assert.assertTrue(cache.isNucleoValido("18:D:br:supremo.tribunal.federal:acordao"));
+        Assert.assertTrue(cache.isNucleoValido("18:D:br:supremo.tribunal.federal:acordao"));
+        Assert.assertFalse(cache.isNucleoValido("18:D:br:erro:acordao"));
+        Assert.assertFalse(cache.isNucleoValido("18:D:br:erro:acordao"));
+
+        Assert.assertEquals(2, servico.consultas);
+        Assert.assertEquals(2, cache.getAcertos());
+        Assert.assertEquals(2, cache.getFalhas());
+    }
+
+    @Test
+    public void testInvalidaTudo() {
+        ValidadorServiceComCache cache = new ValidadorServiceComCache(servico, 100);
+
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+        cache.invalidaTudo();
+        Assert.assertEquals(0, cache.getTamanho());
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+
+        Assert.assertEquals(2, servico.consultas);
+    }
+
+    @Test
+    public void testTamanhoMaximo() {
+        ValidadorServiceComCache cache = new ValidadorServiceComCache(servico, 32);
+
+        for (int i = 0; i < 1000; i++) {
+            cache.isNucleoValido("18:D:br:senado.federal:lei" + i);
+        }
+
+        Assert.assertTrue(cache.getTamanho() <= 32);
+
+        // Tamanhos menores que o número de segmentos ou não divisíveis por ele
+        for (int tamanho : new int[] { 1, 3, 15, 20 }) {
+            cache = new ValidadorServiceComCache(servico, tamanho);
+            for (int i = 0; i < 1000; i++) {
+                cache.isNucleoValido("18:D:br:senado.federal:lei" + i);
+            }
+            Assert.assertEquals(tamanho, cache.getTamanho());
+        }
+    }
+
+    @Test
+    public void testTempoVida() throws InterruptedException {
+        ValidadorServiceComCache cache = new ValidadorServiceComCache(servico, 100, 20);
+
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+        Assert.assertEquals(1, servico.consultas);
+
+        Thread.sleep(50);
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+        Assert.assertEquals(2, servico.consultas);
+    }
+
+    @Test
+    public void testVerificacaoEmLote() {
+        ValidadorServiceComCache cache = new ValidadorServiceComCache(servico, 100);
+
+        cache.isNucleoValido("18:D:br:senado.federal:lei");
+        Set<String> validos = cache.nucleosValidos(Arrays.asList("18:D:br:senado.federal:lei",
+            "18:D:br:camara.deputados:lei", "18:D:br:erro:lei"));
+        Assert.assertEquals(2, validos.size());
+        Assert.assertFalse(validos.contains("18:D:br:erro:lei"));
+        Assert.assertEquals(3, servico.consultas);
+
+        // Todos em cache
+        Assert.assertEquals(validos, cache.nucleosValidos(Arrays.asList("18:D:br:camara.deputados:lei",
+            "18:D:br:erro:lei", "18:D:br:senado.federal:lei")));
+        Assert.assertEquals(3, servico.consultas);
+        Assert.assertEquals(4, cache.getAcertos());
+        Assert.assertEquals(3, cache.getFalhas());
+    }
+
+    private static class ServicoContador extends ValidadorServiceParaTeste {
+
+        int consultas;
+
+        @Override
+        public boolean isNucleoValido(final String nucleo) {
+            consultas++;
+            return super.isNucleoValido(nucleo);
+        }
+
+    }
+
+}
@@ -0,0 +1,91 @@
+package br.gov.lexml.coleta.validador;
+
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+public class ValidadorXMLHelperTest {
+
+    private final ValidadorXMLHelper helper = new ValidadorXMLHelper(ValidadorXMLHelper.getSchemaCompartilhado());
+
+    @Test
+    public void testConsultasDiretasEquivalemAoXPath() throws Exception {
+        for (String arquivo : new String[] { "oai_acordao.stf.jus.br_aco_100005.xml",
+            "oai_cojur.tse.gov.br_acordao_000037322.xml", "oai_rvbi-ok.xml", "item_com_nota_sem_uri.xml" }) {
+            InputStream is = getClass().getResourceAsStream("/oai/" + arquivo);
+            try {
+                comparaComXPath(parse(new InputSource(is)).getDocumentElement());
+            }
+            finally {
+                is.close();
+            }
+        }
+    }
+
+    @Test
+    public void testTextoEmPartes() throws Exception {
+        Node root = parse(new InputSource(new StringReader("<LexML xmlns='http://www.lexml.gov.br/oai_lexml'"
+            + " xmlns:x='urn:outro'><x:DocumentoIndividual>outro</x:DocumentoIndividual>"
+            + "<DocumentoIndividual><!-- c -->urn:lex:<![CDATA[br:federal]]>:lei<x:y/>:fim</DocumentoIndividual>"
+            + "<Item idPublicador='1'/><x:Item/><Item idPublicador='2'/></LexML>"))).getDocumentElement();
+
+        comparaComXPath(root);
+        Assert.assertEquals("urn:lex:br:federal:lei", helper.getTextoFilho(root, "DocumentoIndividual"));
+        Assert.assertEquals("", helper.getTextoFilho(root, "Relacionamento"));
+        Assert.assertEquals(2, helper.getFilhos(root, "Item").size());
+    }
+
+    @Test
+    public void testImportForaDoCatalogoOffline() throws Exception {
+        String xsd = "<xs:schema xmlns:xs='http://www.w3.org/2001/XMLSchema' targetNamespace='urn:teste'>"
+            + "<xs:import namespace='urn:externo' schemaLocation='http://exemplo.invalid/externo.xsd'/>"
+            + "<xs:element name='a' type='xs:string'/></xs:schema>";
+        try {
+            ValidadorXMLHelper.compilaSchema(new StreamSource(new StringReader(xsd)), true);
+            Assert.fail();
+        }
+        catch (ReferenciaExternaException e) {
+            Assert.assertEquals("http://exemplo.invalid/externo.xsd", e.getSystemId());
+        }
+    }
+
+    @Test
+    public void testSchemaCompartilhadoOffline() {
+        Schema schema = ValidadorXMLHelper.getSchemaCompartilhado(true);
+        Assert.assertNotNull(schema);
+        Assert.assertSame(schema, ValidadorXMLHelper.getSchemaCompartilhado(true));
+    }
+
+    private void comparaComXPath(final Node root) {
+        Assert.assertEquals(helper.getString(root, "lexml:DocumentoIndividual/text()"),
+            helper.getTextoFilho(root, "DocumentoIndividual"));
+        for (String nome : new String[] { "Item", "Relacionamento" }) {
+            NodeList esperados = helper.getNodeList(root, "lexml:" + nome);
+            List<Element> filhos = helper.getFilhos(root, nome);
+            Assert.assertEquals(esperados.getLength(), filhos.size());
+            for (int i = 0; i < filhos.size(); i++) {
+                Assert.assertSame(esperados.item(i), filhos.get(i));
+            }
+        }
+    }
+
+    private static Document parse(final InputSource is) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(is);
+    }
+
+}